@@ -0,0 +1,176 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.noise_planet.noisecapture;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hand-off of the measurement events from the processing threads to an executor, as the user interface thread.
+ * The processing threads never wait for the delegate: when the number of pending results reaches the capacity the
+ * new results are dropped and counted. State changes and stored measurements are never dropped, unless the
+ * executor has been shut down: the pending events are then dropped and counted as well.
+ */
+public class AsyncMeasurementListener implements MeasurementService.MeasurementServiceListener {
+    /** About four seconds of fast results */
+    public static final int DEFAULT_CAPACITY = 32;
+    private final MeasurementService.MeasurementServiceListener delegate;
+    private final Executor executor;
+    private final int capacity;
+    private final Queue<Event> events = new ConcurrentLinkedQueue<Event>();
+    private final AtomicInteger pendingResults = new AtomicInteger(0);
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            // Events queued after this point schedule a new drain
+            scheduled.set(false);
+            Event event;
+            while ((event = events.poll()) != null) {
+                event.dispatch(delegate);
+            }
+        }
+    };
+
+    /**
+     * @param delegate Receiver of the events, called by the executor
+     * @param executor Executor of the delegate calls, events are dispatched in order if it runs the tasks in order
+     * @param capacity Maximal number of pending results
+     */
+    public AsyncMeasurementListener(MeasurementService.MeasurementServiceListener delegate, Executor executor,
+                                    int capacity) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    public AsyncMeasurementListener(MeasurementService.MeasurementServiceListener delegate, Executor executor) {
+        this(delegate, executor, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return Number of events not delivered because the delegate was late or the executor was shut down
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    private void push(Event event) {
+        events.offer(event);
+        if(scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drain);
+            } catch (RejectedExecutionException ex) {
+                // The executor has been shut down while the processing threads are still running
+                Event rejected;
+                while ((rejected = events.poll()) != null) {
+                    if(rejected instanceof MeasureEvent) {
+                        pendingResults.decrementAndGet();
+                    }
+                    droppedEvents.incrementAndGet();
+                }
+                scheduled.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void onMeasure(AudioProcess.MEASURE measure, AudioProcess.AudioMeasureResult result) {
+        if(pendingResults.incrementAndGet() > capacity) {
+            pendingResults.decrementAndGet();
+            droppedEvents.incrementAndGet();
+        } else {
+            push(new MeasureEvent(measure, result));
+        }
+    }
+
+    @Override
+    public void onStateChanged(AudioProcess.STATE oldState, AudioProcess.STATE newState) {
+        push(new StateEvent(oldState, newState));
+    }
+
+    @Override
+    public void onNewMeasurement(MeasurementService.MeasurementEventObject measurement) {
+        push(new NewMeasurementEvent(measurement));
+    }
+
+    private interface Event {
+        void dispatch(MeasurementService.MeasurementServiceListener listener);
+    }
+
+    private final class MeasureEvent implements Event {
+        private final AudioProcess.MEASURE measure;
+        private final AudioProcess.AudioMeasureResult result;
+
+        private MeasureEvent(AudioProcess.MEASURE measure, AudioProcess.AudioMeasureResult result) {
+            this.measure = measure;
+            this.result = result;
+        }
+
+        @Override
+        public void dispatch(MeasurementService.MeasurementServiceListener listener) {
+            pendingResults.decrementAndGet();
+            listener.onMeasure(measure, result);
+        }
+    }
+
+    private static final class StateEvent implements Event {
+        private final AudioProcess.STATE oldState;
+        private final AudioProcess.STATE newState;
+
+        private StateEvent(AudioProcess.STATE oldState, AudioProcess.STATE newState) {
+            this.oldState = oldState;
+            this.newState = newState;
+        }
+
+        @Override
+        public void dispatch(MeasurementService.MeasurementServiceListener listener) {
+            listener.onStateChanged(oldState, newState);
+        }
+    }
+
+    private static final class NewMeasurementEvent implements Event {
+        private final MeasurementService.MeasurementEventObject measurement;
+
+        private NewMeasurementEvent(MeasurementService.MeasurementEventObject measurement) {
+            this.measurement = measurement;
+        }
+
+        @Override
+        public void dispatch(MeasurementService.MeasurementServiceListener listener) {
+            listener.onNewMeasurement(measurement);
+        }
+    }
+}
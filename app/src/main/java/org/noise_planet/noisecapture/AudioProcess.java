@@ -27,23 +27,29 @@
 
 package org.noise_planet.noisecapture;
 
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
-import android.util.Log;
-
 import org.orbisgis.sos.AcousticIndicators;
+import org.orbisgis.sos.AudioSource;
+import org.orbisgis.sos.CascadedWindow;
+import org.orbisgis.sos.ClippingDetector;
+import org.orbisgis.sos.DecibelConversion;
 import org.orbisgis.sos.FFTSignalProcessing;
+import org.orbisgis.sos.FrequencyWeighting;
+import org.orbisgis.sos.LatencyHistogram;
+import org.orbisgis.sos.PipelineMetrics;
+import org.orbisgis.sos.SampleRing;
+import org.orbisgis.sos.TimeWeighting;
+import org.orbisgis.sos.WaitStrategy;
 import org.orbisgis.sos.Window;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Processing thread of packets of Audio signal
@@ -54,16 +60,57 @@ public class AudioProcess implements Runnable {
     private AtomicBoolean canceled;
     private boolean doFastLeq = true;
     private boolean doOneSecondLeq = true;
+    private boolean cascadedSlowLeq = false;
+    private boolean slowFineSpectrum = false;
     private final int bufferSize;
-    private final int encoding;
+    // Captured frames shared by the processing threads, about 4 s at the 125 ms buffer size
+    private static final int RING_CAPACITY = 32;
+    // Processing threads are woken by each captured frame, and periodically in order to check the cancellation
+    private static final WaitStrategy.TYPE PROCESSING_WAIT_STRATEGY = WaitStrategy.TYPE.PARK;
+    private static final long PROCESSING_WAIT_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(50);
+    // Changes of the frames addressed to a processing thread kept for the clipping flags of its pending results
+    private static final int CLIPPING_OFFSET_HISTORY = 64;
+    // Sources that are not real time wait for a free frame instead of dropping their samples
+    private static final long CAPTURE_WAIT_PERIOD = TimeUnit.MILLISECONDS.toNanos(1);
+    private final SampleRing sampleRing;
+    private final AudioSource audioSource;
     private final int rate;
-    private final int audioChannel;
     public enum STATE { WAITING, PROCESSING,WAITING_END_PROCESSING, CLOSED }
-    private STATE currentState = STATE.WAITING;
-    private PropertyChangeSupport listeners = new PropertyChangeSupport(this);
+    private volatile STATE currentState = STATE.WAITING;
+    private final ListenerArray<MeasurementListener> measurementListeners =
+            new ListenerArray<MeasurementListener>(new MeasurementListener[0]);
+    // Property events of the measurement listeners, created on demand
+    private PropertyChangeSupport listeners;
     public static final String PROP_FAST_LEQ = "PROP_MS";
     public static final String PROP_SLOW_LEQ = "PROP_DSP";
+    // 1 s thin spectrum of the slow FFT, when the slow levels are derived from the fast levels
+    public static final String PROP_SLOW_SPECTRUM = "PROP_SLOW_SPECTRUM";
     public static final String PROP_STATE_CHANGED = "PROP_STATE_CHANGED";
+
+    /**
+     * Results published by the processing threads
+     */
+    public enum MEASURE {
+        /** 125 ms levels */
+        FAST_LEQ(PROP_FAST_LEQ),
+        /** 1 s levels */
+        SLOW_LEQ(PROP_SLOW_LEQ),
+        /** 1 s thin spectrum of the slow FFT, when the slow levels are derived from the fast levels */
+        SLOW_SPECTRUM(PROP_SLOW_SPECTRUM);
+
+        private final String propertyName;
+
+        MEASURE(String propertyName) {
+            this.propertyName = propertyName;
+        }
+
+        /**
+         * @return Name of the property event of this result, see {@link #getListeners()}
+         */
+        public String getPropertyName() {
+            return propertyName;
+        }
+    }
     // 1s level evaluation for upload to server
     private final LeqProcessingThread fastLeqProcessing;
     private final LeqProcessingThread slowLeqProcessing;
@@ -73,7 +120,9 @@ public class AudioProcess implements Runnable {
     public static final int REALTIME_SAMPLE_RATE_LIMITATION = 16000;
     public static final double[] realTimeCenterFrequency = FFTSignalProcessing.computeFFTCenterFrequency(REALTIME_SAMPLE_RATE_LIMITATION);
     private float gain = 1;
-    private boolean hasGain = false;
+    // Software gain and clipping counters, in a single pass over the captured samples
+    private final ClippingDetector clippingDetector = new ClippingDetector();
+    private final PipelineMetrics metrics = new PipelineMetrics();
     private boolean hannWindowFast = false;
     private boolean hannWindowOneSecond = true;
 
@@ -85,49 +134,57 @@ public class AudioProcess implements Runnable {
     }
 
     /**
-     * Constructor
+     * Constructor, capture the microphone of the device
      * @param recording Recording state
      * @param canceled Canceled state
      * @param customLeqProcessing Custom receiver of sound signals
      */
     public AudioProcess(AtomicBoolean recording, AtomicBoolean canceled, ProcessingThread
             customLeqProcessing) {
+        this(recording, canceled, customLeqProcessing, new MicrophoneAudioSource());
+    }
+
+    /**
+     * Constructor
+     * @param recording Recording state
+     * @param canceled Canceled state
+     * @param customLeqProcessing Custom receiver of sound signals
+     * @param audioSource Captured samples, the recording stops at the end of the source
+     */
+    public AudioProcess(AtomicBoolean recording, AtomicBoolean canceled, ProcessingThread
+            customLeqProcessing, AudioSource audioSource) {
         this.recording = recording;
         this.canceled = canceled;
         this.customLeqProcessing = customLeqProcessing;
-        final int[] mSampleRates = new int[] {44100}; // AWeigting coefficient are based on 44100
-        // Hz sampling rate, so we do not support other samplings (22050, 16000, 11025,8000)
-        final int[] encodings = new int[] { AudioFormat.ENCODING_PCM_16BIT , AudioFormat.ENCODING_PCM_8BIT };
-        final short[] audioChannels = new short[] { AudioFormat.CHANNEL_IN_MONO, AudioFormat.CHANNEL_IN_STEREO };
-        for (int tryRate : mSampleRates) {
-            for (int tryEncoding : encodings) {
-                for(short tryAudioChannel : audioChannels) {
-                    int tryBufferSize = AudioRecord.getMinBufferSize(tryRate,
-                            tryAudioChannel, tryEncoding);
-                    if (tryBufferSize != AudioRecord.ERROR_BAD_VALUE) {
-                        // Take a higher buffer size in order to get a smooth recording under load
-                        // avoiding Buffer overflow error on AudioRecord side.
-                        bufferSize = Math.max(tryBufferSize,
-                                (int)(AcousticIndicators.TIMEPERIOD_FAST * tryRate));
-                        encoding = tryEncoding;
-                        audioChannel = tryAudioChannel;
-                        rate = tryRate;
-                        this.fastLeqProcessing = new LeqProcessingThread(this,
-                                AcousticIndicators.TIMEPERIOD_FAST, true,
-                                hannWindowFast ? FFTSignalProcessing.WINDOW_TYPE.TUKEY :
-                                        FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, PROP_FAST_LEQ, true);
-                        this.slowLeqProcessing = new LeqProcessingThread(this,
-                                AcousticIndicators.TIMEPERIOD_SLOW, true,
-                                hannWindowOneSecond ? FFTSignalProcessing.WINDOW_TYPE.TUKEY :
-                                        FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR,
-                                PROP_SLOW_LEQ, false);
-                        return;
-                    }
-                }
+        this.audioSource = audioSource;
+        bufferSize = audioSource.getBufferSize();
+        rate = audioSource.getSampleRate();
+        sampleRing = new SampleRing(RING_CAPACITY, bufferSize);
+        // 125 ms windows are not a power of two, tapered windows are zero-padded for a faster FFT
+        this.fastLeqProcessing = new LeqProcessingThread(this,
+                AcousticIndicators.TIMEPERIOD_FAST, true,
+                hannWindowFast ? FFTSignalProcessing.WINDOW_TYPE.TUKEY :
+                        FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, MEASURE.FAST_LEQ, true, true, "fast");
+        this.slowLeqProcessing = new LeqProcessingThread(this,
+                AcousticIndicators.TIMEPERIOD_SLOW, true,
+                hannWindowOneSecond ? FFTSignalProcessing.WINDOW_TYPE.TUKEY :
+                        FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR,
+                MEASURE.SLOW_LEQ, false, false, "slow");
+        this.fastLeqProcessing.setCascadedWindow(new CascadedWindow(AcousticIndicators.TIMEPERIOD_FAST,
+                AcousticIndicators.TIMEPERIOD_SLOW), MEASURE.SLOW_LEQ);
+        // Eight results per second, converted with an error lower than 1e-5 dB
+        this.fastLeqProcessing.setDecibelConversion(DecibelConversion.FAST);
+        // The 125 ms bins are 8 Hz wide
+        this.fastLeqProcessing.setPartialBinWeighting(true);
+        updateCascade();
+        metrics.registerGauge("capture.overrun_frames", new PipelineMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return sampleRing.getOverruns();
             }
-        }
-        throw new IllegalStateException("This device is not compatible");
+        });
     }
+
     public STATE getCurrentState() {
         return currentState;
     }
@@ -148,19 +205,57 @@ public class AudioProcess implements Runnable {
 
     public void setHannWindowOneSecond(boolean hannWindowOneSecond) {
         this.hannWindowOneSecond = hannWindowOneSecond;
-        fastLeqProcessing.setWindowType(hannWindowOneSecond ? FFTSignalProcessing.WINDOW_TYPE.TUKEY :
+        slowLeqProcessing.setWindowType(hannWindowOneSecond ? FFTSignalProcessing.WINDOW_TYPE.TUKEY :
                 FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR);
     }
 
     public void setDoFastLeq(boolean doFastLeq) {
         this.doFastLeq = doFastLeq;
         if(!doFastLeq) {
-            fastLeqProcessing.bufferToProcess.clear();
+            fastLeqProcessing.skipPendingFrames();
         }
+        updateCascade();
     }
 
     public void setDoOneSecondLeq(boolean doOneSecondLeq) {
         this.doOneSecondLeq = doOneSecondLeq;
+        updateCascade();
+    }
+
+    /**
+     * @param cascadedSlowLeq True to derive the 1 s levels from the eight 125 ms levels when both are computed,
+     *                        instead of a second FFT of the samples. Disabled by default, the derived levels differ
+     *                        from the 1 s FFT: the 125 ms windows are rectangular by default, and at 44.1 kHz eight
+     *                        windows of 5512 samples drift by 4 samples each second.
+     */
+    public void setCascadedSlowLeq(boolean cascadedSlowLeq) {
+        this.cascadedSlowLeq = cascadedSlowLeq;
+        updateCascade();
+    }
+
+    public boolean isCascadedSlowLeq() {
+        return cascadedSlowLeq;
+    }
+
+    /**
+     * @param slowFineSpectrum True to keep the 1 s FFT when the slow levels are derived from the fast levels. Its
+     *                         results are published as {@link MEASURE#SLOW_SPECTRUM}.
+     */
+    public void setSlowFineSpectrum(boolean slowFineSpectrum) {
+        this.slowFineSpectrum = slowFineSpectrum;
+    }
+
+    /**
+     * @return True if the 1 s levels are derived from the 125 ms levels
+     */
+    private boolean isCascadeActive() {
+        return cascadedSlowLeq && doFastLeq && doOneSecondLeq;
+    }
+
+    private void updateCascade() {
+        boolean cascade = isCascadeActive();
+        fastLeqProcessing.setCascading(cascade);
+        slowLeqProcessing.setMeasure(cascade ? MEASURE.SLOW_SPECTRUM : MEASURE.SLOW_LEQ);
     }
 
     public void setWeightingA(boolean weightingA) {
@@ -168,37 +263,84 @@ public class AudioProcess implements Runnable {
         slowLeqProcessing.setAweighting(weightingA);
     }
 
+    /**
+     * Weight the power spectrum instead of filtering the time signal, the A, C and Z weighted global levels are then
+     * available in the results. Disabled by default, the levels differ slightly from the time domain A-weighting
+     * above 5 kHz.
+     * @param frequencyWeighting Weighting of the bands and of the global level, null to go back to the time domain
+     *                           A-weighting of {@link #setWeightingA(boolean)}
+     */
+    public void setFrequencyWeighting(FrequencyWeighting.WEIGHTING frequencyWeighting) {
+        fastLeqProcessing.setFrequencyWeighting(frequencyWeighting);
+        slowLeqProcessing.setFrequencyWeighting(frequencyWeighting);
+    }
+
     /**
      * Multiply the signal by the provided factor
      * @param gain Factor on signal, 1 for no gain
      */
     public void setGain(float gain) {
         this.gain = gain;
-        this.hasGain = Float.compare(1, gain) != 0;
     }
 
     private void setCurrentState(STATE state) {
         STATE oldState = currentState;
         currentState = state;
-        listeners.firePropertyChange(PROP_STATE_CHANGED, oldState, currentState );
+        // Processing threads check the state
+        sampleRing.signalConsumers();
+        for(MeasurementListener listener : measurementListeners.get()) {
+            listener.onStateChanged(oldState, state);
+        }
         LOGGER.info("AudioRecord : "+oldState+" -> "+state.toString());
     }
     /**
-     * @return Frequency feed in {@link AudioProcess#PROP_FAST_LEQ} {@link PropertyChangeEvent#getNewValue()}
+     * @return Frequency feed in the {@link MEASURE#FAST_LEQ} results
     */
     public double[] getRealtimeCenterFrequency() {
         return realTimeCenterFrequency;
     }
 
     /**
-     * @return Frequency feed in {@link AudioProcess#PROP_SLOW_LEQ} {@link PropertyChangeEvent#getNewValue()}
+     * @return Frequency feed in the {@link MEASURE#SLOW_LEQ} results
      */
     public double[] getDelayedCenterFrequency() {
         return realTimeCenterFrequency;
     }
 
+    /**
+     * @return Number of captured frames not yet read by the processing threads
+     */
     public int getRemainingNotProcessSamples() {
-        return slowLeqProcessing.bufferToProcess.size() + fastLeqProcessing.bufferToProcess.size();
+        return (int) (slowLeqProcessing.consumer.getBacklog() + fastLeqProcessing.consumer.getBacklog());
+    }
+
+    /**
+     * @return Number of captured buffers dropped because the processing threads were late
+     */
+    public long getOverrunFrames() {
+        return sampleRing.getOverruns();
+    }
+
+    /**
+     * Health metrics of the pipeline:
+     * <ul>
+     *     <li>capture.gain: Software gain and clipping detection of each captured buffer</li>
+     *     <li>capture.frames, capture.overrun_frames, capture.dropped_samples: Captured buffers, buffers that did
+     *     not find a free frame and their samples</li>
+     *     <li>capture.copied_bytes: Bytes allocated for the copies given to the custom receiver</li>
+     *     <li>fast.fft, slow.fft: Push of a frame in the window, including the FFT and the weighting of the
+     *     completed windows but not the time domain A-weighting</li>
+     *     <li>fast.aweighting, slow.aweighting: Time domain A-weighting filter of the pushed samples</li>
+     *     <li>fast.dispatch, slow.dispatch: Notification of the listeners of each result</li>
+     *     <li>fast.queue_depth, fast.lag_ms, fast.processed_samples, fast.samples_per_second and their slow
+     *     counterparts: Frames not read yet, delay of the processing, processed samples and processed samples by
+     *     second of processing time</li>
+     *     <li>fast.results, slow.results: Published results</li>
+     * </ul>
+     * @return Metrics registry of this pipeline, other stages may add their own metrics
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -212,7 +354,9 @@ public class AudioProcess implements Runnable {
      * @return Currently pushed samples
      */
     public long getSlowProcessedSamples() {
-        if(slowLeqProcessing != null) {
+        if(isCascadeActive()) {
+            return fastLeqProcessing.getPushedSamples();
+        } else if(slowLeqProcessing != null) {
             return slowLeqProcessing.getPushedSamples();
         } else {
             return 0;
@@ -227,23 +371,6 @@ public class AudioProcess implements Runnable {
         return fastLeqProcessing.getThirdOctaveFrequencySPL();
     }
 
-    private AudioRecord createAudioRecord() {
-        // Source:
-        //  section 5.3 of the Android 4.0 Compatibility Definition
-        // https://source.android.com/compatibility/4.0/android-4.0-cdd.pdf
-        // Using VOICE_RECOGNITION
-        // Noise reduction processing, if present, is disabled.
-        // Except for 5.0+ where android.media.audiofx.NoiseSuppressor could be use to cancel such processing
-        // Automatic gain control, if present, is disabled.
-        if (bufferSize != AudioRecord.ERROR_BAD_VALUE) {
-            return new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION,
-                    rate, audioChannel,
-                    encoding, bufferSize);
-        } else {
-            return null;
-        }
-    }
-
     public double getFFTDelay() {
         return fastLeqProcessing.getWindow().getWindowTime();
     }
@@ -252,51 +379,77 @@ public class AudioProcess implements Runnable {
     public void run() {
         try {
             setCurrentState(STATE.PROCESSING);
-            AudioRecord audioRecord = createAudioRecord();
-            short[] buffer;
-            if (recording.get() && audioRecord != null) {
+            if (recording.get()) {
                 try {
-                    try {
-                        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
-                    } catch (IllegalArgumentException | SecurityException ex) {
-                        // Ignore
-                    }
-                    new Thread(fastLeqProcessing).start();
-                    new Thread(slowLeqProcessing).start();
-                    audioRecord.startRecording();
+                    Thread fastThread = new Thread(fastLeqProcessing);
+                    Thread slowThread = new Thread(slowLeqProcessing);
+                    fastThread.start();
+                    slowThread.start();
+                    audioSource.start();
 
+                    // Samples read while the ring is full are dropped
+                    short[] overrunBuffer = new short[bufferSize];
+                    final boolean realTime = audioSource.isRealTime();
+                    final LatencyHistogram gainTiming = metrics.getHistogram("capture.gain");
+                    final AtomicLong capturedFrames = metrics.getCounter("capture.frames");
+                    final AtomicLong droppedSamples = metrics.getCounter("capture.dropped_samples");
+                    final AtomicLong copiedBytes = metrics.getCounter("capture.copied_bytes");
                     while (recording.get()) {
-                        buffer = new short[bufferSize];
-                        int read = audioRecord.read(buffer, 0, buffer.length);
-                        if(read < buffer.length) {
-                            buffer = Arrays.copyOfRange(buffer, 0, read);
+                        if(!realTime && sampleRing.isFull()) {
+                            LockSupport.parkNanos(CAPTURE_WAIT_PERIOD);
+                            continue;
                         }
-                        if (hasGain) {
-                            // In place multiply
-                            for (int i = 0; i < buffer.length; i++) {
-                                buffer[i] = (short) (Math.max(Math.min(buffer[i] * gain, Short.MAX_VALUE), Short.MIN_VALUE));
+                        SampleRing.Frame frame = sampleRing.claim();
+                        if(frame == null) {
+                            int dropped = audioSource.read(overrunBuffer, 0, overrunBuffer.length);
+                            if(dropped < 0) {
+                                break;
                             }
+                            droppedSamples.addAndGet(dropped);
+                            // The results of the windows spanning the gap are flagged
+                            clippingDetector.drop(dropped);
+                            continue;
+                        }
+                        short[] buffer = frame.getSamples();
+                        int read = audioSource.read(buffer, 0, buffer.length);
+                        if(read < 0) {
+                            // End of a replayed recording
+                            break;
                         }
+                        // Index of the frame in the samples of the clipping detector
+                        long position = clippingDetector.getProcessedSamples();
+                        // In place multiply and count the clipped samples
+                        long beginGain = System.nanoTime();
+                        clippingDetector.process(buffer, 0, read, gain);
+                        gainTiming.recordSince(beginGain);
+                        capturedFrames.incrementAndGet();
+                        boolean cascade = isCascadeActive();
+                        int consumers = 0;
                         if(doFastLeq) {
-                            fastLeqProcessing.addSample(buffer);
+                            consumers |= fastLeqProcessing.consumer.getBit();
+                            fastLeqProcessing.countPushedSamples(read);
                         }
-                        if(doOneSecondLeq) {
-                            slowLeqProcessing.addSample(buffer);
+                        if(doOneSecondLeq && (!cascade || slowFineSpectrum)) {
+                            consumers |= slowLeqProcessing.consumer.getBit();
+                            slowLeqProcessing.countPushedSamples(read);
                         }
                         if(customLeqProcessing != null) {
-                            customLeqProcessing.addSample(buffer);
+                            // The custom receiver keeps the buffer, it can not share the ring frame
+                            customLeqProcessing.addSample(Arrays.copyOf(buffer, read));
+                            copiedBytes.addAndGet(read * 2);
                         }
+                        sampleRing.publish(read, consumers, position);
                     }
                     setCurrentState(STATE.WAITING_END_PROCESSING);
-                    while (fastLeqProcessing.isProcessing() || slowLeqProcessing.isProcessing()) {
-                        Thread.sleep(10);
-                    }
+                    fastThread.join();
+                    slowThread.join();
                 } catch (Exception ex) {
-                    Log.e("tag_record", "Error while recording", ex);
+                    LOGGER.error("Error while recording", ex);
                 } finally {
-                    if(audioRecord.getState() != AudioRecord.STATE_UNINITIALIZED) {
-                        audioRecord.stop();
-                        audioRecord.release();
+                    try {
+                        audioSource.close();
+                    } catch (IOException ex) {
+                        LOGGER.error("Error while closing the audio source", ex);
                     }
                 }
             }
@@ -312,9 +465,33 @@ public class AudioProcess implements Runnable {
         return fastLeqProcessing.getFFTFreqArrayStep();
     }
     /**
-     * @return Listener manager
+     * @param listener Receiver of the results and of the state changes, called by the processing threads
+     */
+    public void addMeasurementListener(MeasurementListener listener) {
+        measurementListeners.add(listener);
+    }
+
+    public void removeMeasurementListener(MeasurementListener listener) {
+        measurementListeners.remove(listener);
+    }
+
+    private void fireMeasure(MEASURE measure, AudioMeasureResult result) {
+        for(MeasurementListener listener : measurementListeners.get()) {
+            listener.onMeasure(measure, result);
+        }
+    }
+
+    /**
+     * The results are published as property events only once this method has been called, prefer
+     * {@link #addMeasurementListener(MeasurementListener)}.
+     * @return Property events of the results, named by {@link MEASURE#getPropertyName()}, and of the state changes,
+     * named {@link #PROP_STATE_CHANGED}
      */
-    public PropertyChangeSupport getListeners() {
+    public synchronized PropertyChangeSupport getListeners() {
+        if(listeners == null) {
+            listeners = new PropertyChangeSupport(this);
+            addMeasurementListener(new PropertyChangeBridge(listeners));
+        }
         return listeners;
     }
 
@@ -322,7 +499,9 @@ public class AudioProcess implements Runnable {
      * @return Fast refreshed 1s leq
      */
     double getLeq(boolean movingLeq) {
-        if(doOneSecondLeq && movingLeq) {
+        if(isCascadeActive() && movingLeq) {
+            return fastLeqProcessing.getCascadedLeq();
+        } else if(doOneSecondLeq && movingLeq) {
             return slowLeqProcessing.computeLeq();
         } else if(doFastLeq && !movingLeq){
             return fastLeqProcessing.getLeq();
@@ -335,6 +514,41 @@ public class AudioProcess implements Runnable {
         return rate;
     }
 
+    /**
+     * Receiver of the processing results. Methods are called by the processing threads, a slow listener delays the
+     * processing, see {@link AsyncMeasurementListener}.
+     */
+    public interface MeasurementListener {
+        /**
+         * @param measure Kind of result
+         * @param result Levels of the result
+         */
+        void onMeasure(MEASURE measure, AudioMeasureResult result);
+
+        void onStateChanged(STATE oldState, STATE newState);
+    }
+
+    /**
+     * Publish the results as property events
+     */
+    private static final class PropertyChangeBridge implements MeasurementListener {
+        private final PropertyChangeSupport listeners;
+
+        private PropertyChangeBridge(PropertyChangeSupport listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void onMeasure(MEASURE measure, AudioMeasureResult result) {
+            listeners.firePropertyChange(measure.getPropertyName(), null, result);
+        }
+
+        @Override
+        public void onStateChanged(STATE oldState, STATE newState) {
+            listeners.firePropertyChange(PROP_STATE_CHANGED, oldState, newState);
+        }
+    }
+
     public interface  ProcessingThread extends Runnable {
         /**
          * Add Signed Short sound samples
@@ -343,41 +557,161 @@ public class AudioProcess implements Runnable {
         void addSample(short[] sample);
     }
 
-    public static final class LeqProcessingThread implements ProcessingThread {
-        private Queue<short[]> bufferToProcess = new ConcurrentLinkedQueue<short[]>();
+    public static final class LeqProcessingThread implements Runnable {
+        // Cursor of this thread on the captured frames
+        private final SampleRing.Consumer consumer;
+        private volatile boolean skipPendingFrames = false;
         private final AudioProcess audioProcess;
         private AtomicBoolean processing = new AtomicBoolean(false);
         private Window window;
+        // Exponential time-weighting of the A-weighted samples of the window, LAF or LAS
+        private final TimeWeighting timeWeighting;
         private double leq = 0;
-        private String propertyName;
+        private volatile MEASURE measure;
         private double timePeriod;
-        private boolean Aweighting;
+        private final boolean powerOfTwoFFT;
+        private volatile FFTSignalProcessing.WINDOW_TYPE requestedWindowType;
+        private volatile boolean requestedAweighting;
+        // Weighting of the power spectrum instead of the time signal, null for the time domain A-weighting
+        private volatile FrequencyWeighting.WEIGHTING requestedWeighting;
+        private volatile DecibelConversion requestedDecibelConversion = DecibelConversion.EXACT;
+        private volatile boolean requestedPartialBinWeighting = false;
+        // Longer window derived from the results of this thread
+        private CascadedWindow cascadedWindow;
+        private MEASURE cascadedMeasure;
+        private volatile boolean cascading = false;
+        private volatile double cascadedLeq = 0;
         private long pushedSamples = 0;
-        private long processedSamples = 0;
+        // Offsets of the processed samples in the samples of the clipping detector, from the processed sample
+        // index where each offset starts. The offset changes when frames are not addressed to this thread.
+        private final long[] clippingOffsetBegins = new long[CLIPPING_OFFSET_HISTORY];
+        private final long[] clippingOffsets = new long[CLIPPING_OFFSET_HISTORY];
+        private int clippingOffsetCount = 0;
+        private long lastResultEnd = 0;
+        private long lastCascadedEnd = 0;
+        private volatile long processedSamples = 0;
         private int lastPushIndex = 0;
+        private final LatencyHistogram fftTiming;
+        private final LatencyHistogram aWeightingTiming;
+        private final LatencyHistogram dispatchTiming;
+        private final AtomicLong publishedResults;
 
         // Output only frequency response on this sample rate on the real time result (center + upper band)
         private float[] thirdOctaveSplLevels;
 
+        /**
+         * @param powerOfTwoFFT True to zero-pad tapered windows up to a power of two FFT size. Rectangular windows
+         *                      are never zero-padded, as it would reveal the leakage of their sinc response.
+         */
         public LeqProcessingThread(AudioProcess audioProcess, double timePeriod, boolean Aweighting,
-                                   FFTSignalProcessing.WINDOW_TYPE window_type, String propertyName, boolean outputSpectrogram) {
+                                   FFTSignalProcessing.WINDOW_TYPE window_type, MEASURE measure,
+                                   boolean outputSpectrogram, boolean powerOfTwoFFT, String metricsName) {
             this.audioProcess = audioProcess;
-            this.propertyName = propertyName;
+            this.consumer = audioProcess.sampleRing.addConsumer(WaitStrategy.create(PROCESSING_WAIT_STRATEGY));
+            this.measure = measure;
             this.timePeriod = timePeriod;
-            this.Aweighting = Aweighting;
+            this.powerOfTwoFFT = powerOfTwoFFT;
             this.window = new Window(window_type,
                     audioProcess.getRate(), audioProcess.getRealtimeCenterFrequency(), timePeriod,
-                    Aweighting, FFTSignalProcessing.DB_FS_REFERENCE, outputSpectrogram);
+                    Aweighting, FFTSignalProcessing.DB_FS_REFERENCE, outputSpectrogram, 0,
+                    isPowerOfTwoFFT(window_type));
+            this.requestedWindowType = window_type;
+            this.requestedAweighting = Aweighting;
+            this.timeWeighting = new TimeWeighting(audioProcess.getRate(), timePeriod, false,
+                    FFTSignalProcessing.DB_FS_REFERENCE);
+            if(Aweighting) {
+                window.setTimeWeighting(timeWeighting);
+            }
             thirdOctaveSplLevels = new float[audioProcess.getRealtimeCenterFrequency().length];
+            PipelineMetrics metrics = audioProcess.metrics;
+            fftTiming = metrics.getHistogram(metricsName + ".fft");
+            aWeightingTiming = metrics.getHistogram(metricsName + ".aweighting");
+            window.setAWeightingTiming(aWeightingTiming);
+            dispatchTiming = metrics.getHistogram(metricsName + ".dispatch");
+            publishedResults = metrics.getCounter(metricsName + ".results");
+            metrics.registerGauge(metricsName + ".queue_depth", new PipelineMetrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return consumer.getBacklog();
+                }
+            });
+            metrics.registerGauge(metricsName + ".lag_ms", new PipelineMetrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return (pushedSamples - processedSamples) * 1000 / LeqProcessingThread.this.audioProcess.getRate();
+                }
+            });
+            metrics.registerGauge(metricsName + ".processed_samples", new PipelineMetrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return processedSamples;
+                }
+            });
+            metrics.registerGauge(metricsName + ".samples_per_second", new PipelineMetrics.Gauge() {
+                @Override
+                public long getValue() {
+                    long processingTime = fftTiming.getTotalNanos() + aWeightingTiming.getTotalNanos();
+                    return processingTime == 0 ? 0 : (long) (processedSamples * 1e9 / processingTime);
+                }
+            });
         }
 
+        private boolean isPowerOfTwoFFT(FFTSignalProcessing.WINDOW_TYPE windowType) {
+            return powerOfTwoFFT && windowType != FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR;
+        }
+
+        /**
+         * @param windowType Window function, applied by the processing thread before the next samples
+         */
         public void setWindowType(FFTSignalProcessing.WINDOW_TYPE windowType) {
-            if(windowType != window.getWindowType()) {
-                this.window = new Window(windowType,
-                        audioProcess.getRate(), audioProcess.getRealtimeCenterFrequency(), timePeriod,
-                        window.isAWeighting(), FFTSignalProcessing.DB_FS_REFERENCE, window.isOutputThinFrequency());
-                lastPushIndex = 0;
-            }
+            requestedWindowType = windowType;
+        }
+
+        /**
+         * @param cascadedWindow Aggregation of the results of this thread into longer windows
+         * @param cascadedMeasure Kind of the longer window results
+         */
+        public void setCascadedWindow(CascadedWindow cascadedWindow, MEASURE cascadedMeasure) {
+            this.cascadedWindow = cascadedWindow;
+            this.cascadedMeasure = cascadedMeasure;
+        }
+
+        /**
+         * @param cascading True to publish the results of the cascaded window
+         */
+        public void setCascading(boolean cascading) {
+            this.cascading = cascading;
+        }
+
+        /**
+         * @param decibelConversion Conversion of the energies into levels, applied by the processing thread before
+         *                          the next samples
+         */
+        public void setDecibelConversion(DecibelConversion decibelConversion) {
+            requestedDecibelConversion = decibelConversion;
+        }
+
+        /**
+         * @param partialBinWeighting True to weight the FFT bins on the band edges by the part of the bin covered by
+         *                            the band, for tapered windows and for the cascaded window. The bands of the
+         *                            rectangular window displayed alone sum whole bins.
+         */
+        public void setPartialBinWeighting(boolean partialBinWeighting) {
+            requestedPartialBinWeighting = partialBinWeighting;
+        }
+
+        /**
+         * @param measure Kind of the results of this thread
+         */
+        public void setMeasure(MEASURE measure) {
+            this.measure = measure;
+        }
+
+        /**
+         * @return Moving level of the cascaded window
+         */
+        public double getCascadedLeq() {
+            return cascadedLeq;
         }
 
         /**
@@ -387,11 +721,19 @@ public class AudioProcess implements Runnable {
             return processedSamples;
         }
 
+        /**
+         * @param Aweighting True for A-weighted levels, applied by the processing thread before the next samples
+         */
         public void setAweighting(boolean Aweighting) {
-            if(Aweighting != this.Aweighting) {
-                this.Aweighting = Aweighting;
-                window.setaWeighting(Aweighting);
-            }
+            requestedAweighting = Aweighting;
+        }
+
+        /**
+         * @param frequencyWeighting Weighting of the power spectrum, null for the time domain A-weighting. Applied by
+         *                           the processing thread before the next samples.
+         */
+        public void setFrequencyWeighting(FrequencyWeighting.WEIGHTING frequencyWeighting) {
+            requestedWeighting = frequencyWeighting;
         }
 
         public Window getWindow() {
@@ -402,7 +744,7 @@ public class AudioProcess implements Runnable {
          * @return In the array fftResultLvl, how many frequency cover one cell.
          */
         public double getFFTFreqArrayStep() {
-            return 1 / timePeriod;
+            return window.getFFTFreqArrayStep();
         }
 
         public double getLeq() {
@@ -424,15 +766,89 @@ public class AudioProcess implements Runnable {
             return thirdOctaveSplLevels;
         }
 
-        public void addSample(short[] sample) {
-            bufferToProcess.add(sample);
-            pushedSamples+=sample.length;
+        /**
+         * Called by the capture thread for each frame addressed to this thread
+         * @param length Number of samples of the frame
+         */
+        private void countPushedSamples(int length) {
+            pushedSamples+=length;
+        }
+
+        /**
+         * Release the frames published so far without processing them
+         */
+        public void skipPendingFrames() {
+            skipPendingFrames = true;
         }
 
         public long getPushedSamples() {
             return pushedSamples;
         }
 
+        private long getBeginRecordTime(FFTSignalProcessing.ProcessingResult result) {
+            // Compute record time
+            // Take current time minus the computed delay of the measurement
+            return System.currentTimeMillis() -
+                    (long) (((pushedSamples - result.getId())  /
+                            (double) audioProcess.getRate()) * 1000);
+        }
+
+        /**
+         * @param beginSample First sample pushed in this thread
+         * @param endSample Sample following the last sample
+         * @return Clipping flags of the captured samples
+         */
+        private int getSignalFlags(long beginSample, long endSample) {
+            if(endSample <= beginSample) {
+                return 0;
+            }
+            return audioProcess.clippingDetector.getStatistics(beginSample + getClippingOffset(beginSample),
+                    endSample + getClippingOffset(endSample - 1)).getFlags();
+        }
+
+        /**
+         * @param sample Processed sample index
+         * @return Offset of this sample in the samples of the clipping detector
+         */
+        private long getClippingOffset(long sample) {
+            int count = Math.min(clippingOffsetCount, CLIPPING_OFFSET_HISTORY);
+            int index = 0;
+            for(int i = 1; i <= count; i++) {
+                index = (clippingOffsetCount - i) % CLIPPING_OFFSET_HISTORY;
+                if(clippingOffsetBegins[index] <= sample) {
+                    break;
+                }
+            }
+            // Samples older than the history take its oldest offset
+            return count == 0 ? 0 : clippingOffsets[index];
+        }
+
+        /**
+         * @param frame Frame about to be processed
+         */
+        private void recordClippingOffset(SampleRing.Frame frame) {
+            long offset = frame.getPosition() - processedSamples;
+            if(clippingOffsetCount > 0 &&
+                    clippingOffsets[(clippingOffsetCount - 1) % CLIPPING_OFFSET_HISTORY] == offset) {
+                return;
+            }
+            int index = clippingOffsetCount % CLIPPING_OFFSET_HISTORY;
+            clippingOffsetBegins[index] = processedSamples;
+            clippingOffsets[index] = offset;
+            clippingOffsetCount++;
+        }
+
+        private void publishCascadedResult(FFTSignalProcessing.ProcessingResult cascadedResult,
+                                           long beginRecordTime) {
+            int signalFlags = getSignalFlags(lastCascadedEnd, cascadedResult.getId());
+            lastCascadedEnd = cascadedResult.getId();
+            long beginDispatch = System.nanoTime();
+            audioProcess.fireMeasure(cascadedMeasure,
+                    new AudioMeasureResult(cascadedResult, beginRecordTime, signalFlags));
+            dispatchTiming.recordSince(beginDispatch);
+            publishedResults.incrementAndGet();
+        }
+
         private void processWindow() {
             lastPushIndex = window.getWindowIndex();
             FFTSignalProcessing.ProcessingResult  result = window.getLastWindowMean();
@@ -440,22 +856,103 @@ public class AudioProcess implements Runnable {
             thirdOctaveSplLevels = result.getdBaLevels();
             // Compute leq
             leq = result.getGlobaldBaValue();
-            // Compute record time
-            // Take current time minus the computed delay of the measurement
-            long beginRecordTime = System.currentTimeMillis() -
-                    (long) (((pushedSamples - result.getId())  /
-                            (double) audioProcess.getRate()) * 1000);
-            audioProcess.listeners.firePropertyChange(propertyName,
-                    null,
-                    new AudioMeasureResult(result,  beginRecordTime));
+            long beginRecordTime = getBeginRecordTime(result);
+            int signalFlags = getSignalFlags(lastResultEnd, result.getId());
+            double maxLevel = Double.NaN;
+            double minLevel = Double.NaN;
+            if(window.isAWeighting()) {
+                maxLevel = timeWeighting.getMaxLevel();
+                minLevel = timeWeighting.getMinLevel();
+                timeWeighting.resetMinMax();
+            }
+            long beginDispatch = System.nanoTime();
+            audioProcess.fireMeasure(measure, new AudioMeasureResult(result,  beginRecordTime, signalFlags,
+                    maxLevel, minLevel));
+            dispatchTiming.recordSince(beginDispatch);
+            publishedResults.incrementAndGet();
+            if(cascadedWindow != null) {
+                if(cascading) {
+                    if(cascadedWindow.getPendingCount() == 0) {
+                        lastCascadedEnd = lastResultEnd;
+                    }
+                    FFTSignalProcessing.ProcessingResult cascadedResult = cascadedWindow.addResult(result);
+                    if(cascadedWindow.getPendingCount() == 1) {
+                        // The pending windows are removed when the weighted levels appear or disappear
+                        lastCascadedEnd = lastResultEnd;
+                    }
+                    cascadedLeq = cascadedWindow.getMovingLevel();
+                    if(cascadedResult != null) {
+                        publishCascadedResult(cascadedResult, beginRecordTime);
+                    }
+                } else if(cascadedWindow.getPendingCount() > 0) {
+                    cascadedWindow.clear();
+                }
+            }
+            lastResultEnd = result.getId();
         }
 
-        private void processSample(short[] buffer) {
-            window.pushSample(buffer);
+        private void processSample(short[] buffer, int offset, int length) {
+            FFTSignalProcessing.WINDOW_TYPE windowType = requestedWindowType;
+            if(windowType != window.getWindowType()) {
+                // The window keeps its sample history and its window index
+                window.setWindowType(windowType, isPowerOfTwoFFT(windowType));
+            }
+            FrequencyWeighting.WEIGHTING weighting = requestedWeighting;
+            if(weighting != window.getFrequencyWeighting()) {
+                window.setFrequencyWeighting(weighting);
+            }
+            boolean aWeighting = requestedAweighting;
+            if(aWeighting != window.isAWeighting()) {
+                window.setaWeighting(aWeighting);
+                window.setTimeWeighting(aWeighting ? timeWeighting : null);
+                timeWeighting.resetMinMax();
+            }
+            // The derived bands cover the same frequencies as the bands of the slow window
+            boolean partialBinWeighting = requestedPartialBinWeighting &&
+                    (windowType != FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR || cascading);
+            if(partialBinWeighting != window.isPartialBinWeighting()) {
+                window.setPartialBinWeighting(partialBinWeighting);
+            }
+            DecibelConversion decibelConversion = requestedDecibelConversion;
+            if(decibelConversion != window.getDecibelConversion()) {
+                window.setDecibelConversion(decibelConversion);
+                if(cascadedWindow != null) {
+                    cascadedWindow.setDecibelConversion(decibelConversion);
+                }
+            }
+            long beginPush = System.nanoTime();
+            long aWeightingTime = aWeightingTiming.getTotalNanos();
+            window.pushSample(buffer, offset, length);
+            // The A-weighting filter is recorded as its own stage
+            fftTiming.record(System.nanoTime() - beginPush - (aWeightingTiming.getTotalNanos() - aWeightingTime));
             if (window.getWindowIndex() != lastPushIndex) {
                 processWindow();
             }
-            processedSamples += buffer.length;
+            processedSamples += length;
+        }
+
+        /**
+         * @return True if at least one frame has been processed
+         */
+        private boolean processPendingFrames() {
+            boolean processed = false;
+            SampleRing.Frame frame;
+            while (!audioProcess.canceled.get() && (frame = consumer.poll()) != null) {
+                processing.set(true);
+                processed = true;
+                recordClippingOffset(frame);
+                short[] buffer = frame.getSamples();
+                final int length = frame.getLength();
+                // Split the frame when it is too large for the window, the frame is not copied
+                int cursor = 0;
+                while (cursor < length) {
+                    int sampleLen = Math.min(window.getMaximalBufferSize(), length - cursor);
+                    processSample(buffer, cursor, sampleLen);
+                    cursor += sampleLen;
+                }
+                consumer.release();
+            }
+            return processed;
         }
 
         public boolean isProcessing() {
@@ -465,40 +962,39 @@ public class AudioProcess implements Runnable {
         @Override
         public void run() {
             try {
+                int idleCount = 0;
                 while (audioProcess.currentState != STATE.WAITING_END_PROCESSING &&
                         !audioProcess.canceled.get()
                         && audioProcess.currentState != STATE.CLOSED) {
-                    while (!bufferToProcess.isEmpty() && !audioProcess.canceled.get()) {
-                        processing.set(true);
-                        short[] buffer = bufferToProcess.poll();
-                        if(buffer != null) {
-                            if (buffer.length <= window.getMaximalBufferSize()) {
-                                // Good buffer size, use it
-                                processSample(buffer);
-                            } else {
-                                // Buffer is too large for the window
-                                // Split the buffer in multiple parts
-                                int cursor = 0;
-                                while (cursor < buffer.length) {
-                                    int sampleLen = Math.min(window.getMaximalBufferSize(), buffer.length - cursor);
-                                    short[] samples = Arrays.copyOfRange(buffer, cursor, cursor + sampleLen);
-                                    cursor += samples.length;
-                                    processSample(samples);
-                                }
-                            }
+                    if(skipPendingFrames) {
+                        skipPendingFrames = false;
+                        while (consumer.poll() != null) {
+                            consumer.release();
                         }
                     }
+                    if(processPendingFrames()) {
+                        idleCount = 0;
+                    }
                     try {
-                        Thread.sleep(5);
+                        consumer.await(idleCount++, PROCESSING_WAIT_TIMEOUT);
                     } catch (InterruptedException ex) {
                         break;
                     }
                 }
+                // Frames captured before the end of the recording, all of them for a replayed recording
+                processPendingFrames();
                 // Gather incomplete window
                 if(!window.isCacheEmpty()) {
                     processWindow();
                 }
+                if(cascadedWindow != null && cascading) {
+                    FFTSignalProcessing.ProcessingResult cascadedResult = cascadedWindow.flush();
+                    if(cascadedResult != null) {
+                        publishCascadedResult(cascadedResult, getBeginRecordTime(cascadedResult));
+                    }
+                }
             } finally {
+                consumer.close();
                 processing.set(false);
             }
         }
@@ -507,10 +1003,35 @@ public class AudioProcess implements Runnable {
     public static final class AudioMeasureResult {
         private final FFTSignalProcessing.ProcessingResult result;
         private final long beginRecordTime;
+        private final int signalFlags;
+        private final double timeWeightedMaxLevel;
+        private final double timeWeightedMinLevel;
 
         public AudioMeasureResult(FFTSignalProcessing.ProcessingResult result, long beginRecordTime) {
+            this(result, beginRecordTime, 0);
+        }
+
+        /**
+         * @param signalFlags Clipping and dropped samples flags of the samples of this measure
+         * @see ClippingDetector#FLAG_CLIPPED
+         * @see ClippingDetector#FLAG_DROPPED_SAMPLES
+         */
+        public AudioMeasureResult(FFTSignalProcessing.ProcessingResult result, long beginRecordTime,
+                                  int signalFlags) {
+            this(result, beginRecordTime, signalFlags, Double.NaN, Double.NaN);
+        }
+
+        /**
+         * @param timeWeightedMaxLevel Maximum time-weighted A level of the samples of this measure [dB]
+         * @param timeWeightedMinLevel Minimum time-weighted A level of the samples of this measure [dB]
+         */
+        public AudioMeasureResult(FFTSignalProcessing.ProcessingResult result, long beginRecordTime,
+                                  int signalFlags, double timeWeightedMaxLevel, double timeWeightedMinLevel) {
             this.result = result;
             this.beginRecordTime = beginRecordTime;
+            this.signalFlags = signalFlags;
+            this.timeWeightedMaxLevel = timeWeightedMaxLevel;
+            this.timeWeightedMinLevel = timeWeightedMinLevel;
         }
 
         public FFTSignalProcessing.ProcessingResult getResult() {
@@ -528,12 +1049,44 @@ public class AudioProcess implements Runnable {
             return result.getGlobaldBaValue();
         }
 
+        /**
+         * @param weighting Frequency weighting
+         * @return Global level of this weighting, as LAeq, LCeq or LZeq. NaN without
+         * {@link AudioProcess#setFrequencyWeighting(FrequencyWeighting.WEIGHTING)}.
+         */
+        public float getWeightedLevel(FrequencyWeighting.WEIGHTING weighting) {
+            return result.getWeightedLevel(weighting);
+        }
+
         /**
          * @return Millisecond since epoch of this measure.
          */
         public long getBeginRecordTime() {
             return beginRecordTime;
         }
+
+        /**
+         * @return Combination of the {@link ClippingDetector} flags, 0 for a clean and contiguous signal
+         */
+        public int getSignalFlags() {
+            return signalFlags;
+        }
+
+        /**
+         * @return LAFmax of the fast measures, LASmax of the slow measures [dB]. NaN without the time domain
+         * A-weighting and for the levels derived from the fast measures.
+         */
+        public double getTimeWeightedMaxLevel() {
+            return timeWeightedMaxLevel;
+        }
+
+        /**
+         * @return LAFmin of the fast measures, LASmin of the slow measures [dB]. NaN without the time domain
+         * A-weighting, for the levels derived from the fast measures and while the detector settles.
+         */
+        public double getTimeWeightedMinLevel() {
+            return timeWeightedMinLevel;
+        }
     }
 }
 
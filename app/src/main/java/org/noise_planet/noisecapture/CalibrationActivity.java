@@ -336,7 +336,7 @@ public class CalibrationActivity extends MainActivity implements PropertyChangeL
     private void initAudioProcess() {
         canceled.set(false);
         recording.set(true);
-        audioProcess = new AudioProcess(recording, canceled);
+        audioProcess = new AudioProcess(recording, canceled, null, new MicrophoneAudioSource(this));
         audioProcess.setDoFastLeq(false);
         audioProcess.setDoOneSecondLeq(true);
         audioProcess.setWeightingA(true);
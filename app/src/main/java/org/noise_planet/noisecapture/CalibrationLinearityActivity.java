@@ -407,7 +407,7 @@ public class CalibrationLinearityActivity extends MainActivity implements Proper
     private void initAudioProcess() {
         canceled.set(false);
         recording.set(true);
-        audioProcess = new AudioProcess(recording, canceled);
+        audioProcess = new AudioProcess(recording, canceled, null, new MicrophoneAudioSource(this));
         audioProcess.setDoFastLeq(false);
         audioProcess.setDoOneSecondLeq(true);
         audioProcess.setWeightingA(false);
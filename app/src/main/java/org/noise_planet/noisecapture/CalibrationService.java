@@ -49,6 +49,7 @@ import org.noise_planet.jwarble.OpenWarble;
 import org.orbisgis.sos.LeqStats;
 import org.orbisgis.sos.SOSSignalProcessing;
 import org.orbisgis.sos.ThirdOctaveBandsFiltering;
+import org.orbisgis.sos.WaitStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +60,7 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -149,7 +151,8 @@ public class CalibrationService extends Service implements PropertyChangeListene
             canceled.set(false);
             recording.set(true);
             AcousticModemListener acousticModemListener = new AcousticModemListener(this, canceled, recordingModem);
-            audioProcess = new AudioProcess(recording, canceled, acousticModemListener);
+            audioProcess = new AudioProcess(recording, canceled, acousticModemListener,
+                    new MicrophoneAudioSource(this));
             audioProcess.setDoFastLeq(false);
             audioProcess.setDoOneSecondLeq(false);
             audioProcess.setWeightingA(true);
@@ -543,6 +546,7 @@ public class CalibrationService extends Service implements PropertyChangeListene
         private final AtomicBoolean recording;
         private OpenWarble openWarble;
         private Queue<short[]> bufferToProcess = new ConcurrentLinkedQueue<short[]>();
+        private final WaitStrategy waitStrategy = WaitStrategy.create(WaitStrategy.TYPE.PARK);
 
         public AcousticModemListener(CalibrationService calibrationService, AtomicBoolean
                 canceled, AtomicBoolean recording) {
@@ -559,13 +563,16 @@ public class CalibrationService extends Service implements PropertyChangeListene
         public void addSample(short[] sample) {
             if(recording.get()) {
                 bufferToProcess.add(sample);
+                waitStrategy.signal();
             }
         }
 
         @Override
         public void run() {
+            int idleCount = 0;
             while (!canceled.get() && openWarble != null) {
                 while(!bufferToProcess.isEmpty()) {
+                    idleCount = 0;
                     short[] buffer = bufferToProcess.poll();
                     if(buffer != null) {
                         boolean doProcessBuffer = true;
@@ -584,7 +591,8 @@ public class CalibrationService extends Service implements PropertyChangeListene
                     }
                 }
                 try {
-                    Thread.sleep(5);
+                    // Woken by the next sample, or periodically in order to check the cancellation
+                    waitStrategy.await(idleCount++, TimeUnit.MILLISECONDS.toNanos(50));
                 } catch (InterruptedException ex) {
                     break;
                 }
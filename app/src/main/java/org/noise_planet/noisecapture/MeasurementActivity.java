@@ -69,13 +69,14 @@ import com.github.mikephil.charting.data.BarEntry;
 import com.github.mikephil.charting.formatter.YAxisValueFormatter;
 import com.github.mikephil.charting.interfaces.datasets.IBarDataSet;
 
+import org.orbisgis.sos.DecibelConversion;
 import org.orbisgis.sos.LeqStats;
 
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MeasurementActivity extends MainActivity implements
@@ -88,6 +89,9 @@ public class MeasurementActivity extends MainActivity implements
     // For the Charts
     protected HorizontalBarChart mChart; // VUMETER representation
     private DoProcessing doProcessing;
+    // Results are processed out of the audio processing threads
+    private ExecutorService measurementExecutor;
+    private AsyncMeasurementListener measurementListener;
     private ImageButton buttonrecord;
     private ImageButton buttonPause;
     private ViewPagerExt viewPager;
@@ -258,6 +262,8 @@ public class MeasurementActivity extends MainActivity implements
         // Actions on record button
         doProcessing = new DoProcessing(this);
         buttonrecord.setOnClickListener(doProcessing);
+        measurementExecutor = Executors.newSingleThreadExecutor();
+        measurementListener = new AsyncMeasurementListener(doProcessing, measurementExecutor);
 
         // Action on cancel button (during recording)
         buttonPause.setOnClickListener(onButtonPause);
@@ -549,7 +555,7 @@ public class MeasurementActivity extends MainActivity implements
                 for(MeasurementManager.LeqBatch location : locations) {
                     Storage.Leq leq = location.getLeq();
                     String htmlColor = MeasurementExport.getColorFromLevel
-                            (location.computeGlobalLeq());
+                            (location.computeGlobalLeq(DecibelConversion.FAST));
                     mapFragment.addMeasurement(new MapFragment.LatLng(leq.getLatitude(), leq
                             .getLongitude()), htmlColor);
                 }
@@ -571,7 +577,7 @@ public class MeasurementActivity extends MainActivity implements
     }
 
     private static class DoProcessing implements CompoundButton.OnClickListener,
-            PropertyChangeListener {
+            MeasurementService.MeasurementServiceListener {
         private MeasurementActivity activity;
 
         public DoProcessing(MeasurementActivity activity) {
@@ -579,10 +585,8 @@ public class MeasurementActivity extends MainActivity implements
         }
 
         @Override
-        public void propertyChange(PropertyChangeEvent event) {
-            if(AudioProcess.PROP_FAST_LEQ.equals(event.getPropertyName())) {
-                AudioProcess.AudioMeasureResult measure =
-                        (AudioProcess.AudioMeasureResult) event.getNewValue();
+        public void onMeasure(AudioProcess.MEASURE measureType, AudioProcess.AudioMeasureResult measure) {
+            if(measureType == AudioProcess.MEASURE.FAST_LEQ) {
                 // Realtime audio processing
                 Spectrogram spectrogram = activity.getSpectrogram();
                 if(spectrogram  != null) {
@@ -604,11 +608,7 @@ public class MeasurementActivity extends MainActivity implements
                         }
                     });
                 }
-            } else if(AudioProcess.PROP_STATE_CHANGED.equals(event.getPropertyName())) {
-                if (AudioProcess.STATE.CLOSED.equals(event.getNewValue())) {
-                    activity.runOnUiThread(new UpdateText(activity));
-                }
-            } else if(AudioProcess.PROP_SLOW_LEQ.equals(event.getPropertyName())) {
+            } else if(measureType == AudioProcess.MEASURE.SLOW_LEQ) {
                 if(activity.hasMaximalMeasurementTime && activity.measurementService.isStoring() &&
                         activity.maximalMeasurementTime <= activity.measurementService.getLeqAdded()) {
                     activity.runOnUiThread(new Runnable() {
@@ -619,23 +619,31 @@ public class MeasurementActivity extends MainActivity implements
                     });
                 }
             }
-            else if(MeasurementService.PROP_NEW_MEASUREMENT.equals(event.getPropertyName())) {
-                if(BuildConfig.DEBUG) {
-                    System.out.println("Measure offset "+activity.measurementService.getAudioProcess().getFastNotProcessedMilliseconds()+" ms");
-                }
-                MapFragment mapFragment = activity.getMapControler();
-                if(mapFragment != null) {
-                    final MeasurementService.MeasurementEventObject measurement = (MeasurementService.MeasurementEventObject) event.getNewValue();
-                    if(!(Double.compare(measurement.leq.getLatitude(), 0) == 0 && Double.compare(measurement.leq.getLongitude(), 0) == 0)) {
-                        activity.runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                String htmlColor = MeasurementExport.getColorFromLevel
-                                        (measurement.measure.getGlobaldBaValue());
-                                activity.getMapControler().addMeasurement(new MapFragment.LatLng(measurement.leq.getLatitude(), measurement.leq.getLongitude()), htmlColor);
-                            }
-                        });
-                    }
+        }
+
+        @Override
+        public void onStateChanged(AudioProcess.STATE oldState, AudioProcess.STATE newState) {
+            if (newState == AudioProcess.STATE.CLOSED) {
+                activity.runOnUiThread(new UpdateText(activity));
+            }
+        }
+
+        @Override
+        public void onNewMeasurement(final MeasurementService.MeasurementEventObject measurement) {
+            if(BuildConfig.DEBUG) {
+                System.out.println("Measure offset "+activity.measurementService.getAudioProcess().getFastNotProcessedMilliseconds()+" ms");
+            }
+            MapFragment mapFragment = activity.getMapControler();
+            if(mapFragment != null) {
+                if(!(Double.compare(measurement.leq.getLatitude(), 0) == 0 && Double.compare(measurement.leq.getLongitude(), 0) == 0)) {
+                    activity.runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            String htmlColor = MeasurementExport.getColorFromLevel
+                                    (measurement.measure.getGlobaldBaValue());
+                            activity.getMapControler().addMeasurement(new MapFragment.LatLng(measurement.leq.getLatitude(), measurement.leq.getLongitude()), htmlColor);
+                        }
+                    });
                 }
             }
         }
@@ -808,7 +816,7 @@ public class MeasurementActivity extends MainActivity implements
             measurementService.setdBGain(
                     getDouble(sharedPref,"settings_recording_gain", 0), getInteger(sharedPref, "settings_calibration_method", 0));
             // Init gui if recording is ongoing
-            measurementService.addPropertyChangeListener(doProcessing);
+            measurementService.addMeasurementListener(measurementListener);
 
             if(!measurementService.isRecording()) {
                 measurementService.startRecording();
@@ -826,7 +834,7 @@ public class MeasurementActivity extends MainActivity implements
             // unexpectedly disconnected -- that is, its process crashed.
             // Because it is running in our same process, we should never
             // see this happen.
-            measurementService.removePropertyChangeListener(doProcessing);
+            measurementService.removeMeasurementListener(measurementListener);
             measurementService = null;
         }
     };
@@ -847,7 +855,7 @@ public class MeasurementActivity extends MainActivity implements
 
     void doUnbindService() {
         if (mIsBound && measurementService != null) {
-            measurementService.removePropertyChangeListener(doProcessing);
+            measurementService.removeMeasurementListener(measurementListener);
             // Detach our existing connection.
             unbindService(mConnection);
             mIsBound = false;
@@ -881,6 +889,7 @@ public class MeasurementActivity extends MainActivity implements
     protected void onDestroy() {
         super.onDestroy();
         doUnbindService();
+        measurementExecutor.shutdown();
     }
 }
 
@@ -44,6 +44,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -75,6 +76,9 @@ public class MeasurementExport {
     public static final String PROP_BUILD_TIME  = "build_date";
     public static final String PROP_VERSION_INT  = "version_number";
     public static final String PROP_USER_PROFILE  = "user_profile";
+    // Prefix of the measurement pipeline metrics, written if enabled in the settings
+    public static final String PROP_PIPELINE_METRICS_PREFIX  = "pipeline_";
+    public static final String SETTINGS_EXPORT_PIPELINE_METRICS = "settings_export_pipeline_metrics";
 
     public MeasurementExport(Context context) {
         this.measurementManager = new MeasurementManager(context);
@@ -180,6 +184,9 @@ public class MeasurementExport {
                 if (leq.getSpeed() != null) {
                     featureProperties.put(Storage.Leq.COLUMN_SPEED, boundValue(leq.getSpeed(), 0, 1200));
                 }
+                if (leq.getSignalFlags() != 0) {
+                    featureProperties.put(Storage.Leq.COLUMN_SIGNAL_FLAGS, leq.getSignalFlags());
+                }
                 for (Storage.LeqValue leqValue : entry.getLeqValues()) {
                     featureProperties.put("leq_" + leqValue.getFrequency(),
                             boundValue(leqValue.getSpl(),0,150 ));
@@ -257,6 +264,10 @@ public class MeasurementExport {
                     writer.name(Storage.Leq.COLUMN_SPEED);
                     writer.value(boundValue(leq.getSpeed(), 0, 1200));
                 }
+                if (leq.getSignalFlags() != 0) {
+                    writer.name(Storage.Leq.COLUMN_SIGNAL_FLAGS);
+                    writer.value(leq.getSignalFlags());
+                }
                 for (Storage.LeqValue leqValue : entry.getLeqValues()) {
                     writer.name("leq_" + leqValue.getFrequency());
                     writer.value(boundValue(leqValue.getSpl(),0,150 ));
@@ -320,6 +331,14 @@ public class MeasurementExport {
             tagsString.append(tag);
         }
         properties.setProperty(PROP_TAGS, tagsString.toString());
+        if(record.getPipelineMetrics() != null &&
+                sharedPref.getBoolean(SETTINGS_EXPORT_PIPELINE_METRICS, false)) {
+            Properties pipelineMetrics = new Properties();
+            pipelineMetrics.load(new StringReader(record.getPipelineMetrics()));
+            for(String name : pipelineMetrics.stringPropertyNames()) {
+                properties.setProperty(PROP_PIPELINE_METRICS_PREFIX + name, pipelineMetrics.getProperty(name));
+            }
+        }
         zipOutputStream.putNextEntry(new ZipEntry(PROPERTY_FILENAME));
         properties.store(zipOutputStream, "NoiseCapture export header file");
         zipOutputStream.closeEntry();
@@ -38,6 +38,7 @@ import android.database.sqlite.SQLiteStatement;
 import android.location.Location;
 import android.net.Uri;
 
+import org.orbisgis.sos.DecibelConversion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +46,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 /**
@@ -630,6 +632,29 @@ public class MeasurementManager {
     }
 
 
+    /**
+     * @param recordId Record identifier
+     * @param pipelineMetrics Metrics of the measurement pipeline, see {@link AudioProcess#getMetrics()}
+     */
+    public void updateRecordPipelineMetrics(int recordId, Map<String, String> pipelineMetrics) {
+        StringBuilder lines = new StringBuilder();
+        for(Map.Entry<String, String> entry : pipelineMetrics.entrySet()) {
+            lines.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        SQLiteDatabase database = storage.getWritableDatabase();
+        try {
+            try {
+                database.execSQL("UPDATE " + Storage.Record.TABLE_NAME + " SET " +
+                        Storage.Record.COLUMN_PIPELINE_METRICS + " = ? WHERE " +
+                        Storage.Record.COLUMN_ID + " = ?", new Object[]{lines.toString(), recordId});
+            } catch (SQLException sqlException) {
+                LOGGER.error(sqlException.getLocalizedMessage(), sqlException);
+            }
+        } finally {
+            database.close();
+        }
+    }
+
     public void updateRecordUUID(int recordId, String uuid) {
         SQLiteDatabase database = storage.getWritableDatabase();
         try {
@@ -665,8 +690,9 @@ public class MeasurementManager {
                                 Storage.Leq.COLUMN_ACCURACY + "," +
                                 Storage.Leq.COLUMN_LOCATION_UTC + "," +
                                 Storage.Leq.COLUMN_SPEED + "," +
-                                Storage.Leq.COLUMN_BEARING +
-                                ") VALUES (?, ?,?,?,?,?,?,?,?)");
+                                Storage.Leq.COLUMN_BEARING + "," +
+                                Storage.Leq.COLUMN_SIGNAL_FLAGS +
+                                ") VALUES (?, ?,?,?,?,?,?,?,?,?)");
                 SQLiteStatement leqValueStatement = database.compileStatement("INSERT INTO " +
                         Storage.LeqValue.TABLE_NAME + " VALUES (?,?,?)");
                 for (LeqBatch leqBatch : leqBatches) {
@@ -693,6 +719,7 @@ public class MeasurementManager {
                     } else {
                         leqStatement.bindNull(9);
                     }
+                    leqStatement.bindLong(10, leq.getSignalFlags());
                     long leqId = leqStatement.executeInsert();
                     for (Storage.LeqValue leqValue : leqBatch.getLeqValues()) {
                         leqValueStatement.clearBindings();
@@ -795,11 +822,19 @@ public class MeasurementManager {
         }
 
         public double computeGlobalLeq() {
+            return computeGlobalLeq(DecibelConversion.EXACT);
+        }
+
+        /**
+         * @param conversion Conversion between the band levels and their energies
+         * @return Global level of the bands
+         */
+        public double computeGlobalLeq(DecibelConversion conversion) {
             double globalLeq = 0;
             for(Storage.LeqValue leqValue : leqValues) {
-                globalLeq += Math.pow(10, leqValue.getSpl() / 10.);
+                globalLeq += conversion.toEnergy(leqValue.getSpl());
             }
-            return 10 * Math.log10(globalLeq);
+            return conversion.toDecibel(globalLeq);
         }
 
         public Storage.Leq getLeq() {
@@ -52,12 +52,10 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 
 import org.orbisgis.sos.LeqStats;
+import org.orbisgis.sos.PipelineMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
-import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -79,8 +77,6 @@ public class MeasurementService extends Service {
     private CommonLocationListener gpsLocationListener;
     private CommonLocationListener networkLocationListener;
     private CommonLocationListener passiveLocationListener;
-    // New measurement record sent to the database Event object is Storage.Leq
-    public static final String PROP_NEW_MEASUREMENT = "PROP_NEW_MEASUREMENT";
     private long minTimeDelay = 1000;
     private static final long MAXIMUM_LOCATION_HISTORY = 50;
     private AudioProcess audioProcess;
@@ -101,7 +97,8 @@ public class MeasurementService extends Service {
     private int deletedLeqOnPause = 0;
     private double dBGain = 0;
     private int calibrationMethod = 0;
-    private PropertyChangeSupport listeners = new PropertyChangeSupport(this);
+    private final ListenerArray<MeasurementServiceListener> listeners =
+            new ListenerArray<MeasurementServiceListener>(new MeasurementServiceListener[0]);
     private static final Logger LOGGER = LoggerFactory.getLogger(MeasurementService.class);
 
     private NavigableMap<Long, Location> timeLocation = new TreeMap<Long, Location>();
@@ -172,6 +169,15 @@ public class MeasurementService extends Service {
         return audioProcess;
     }
 
+    /**
+     * @return Health metrics of the measurement pipeline, including the storage of the results, or null if
+     * recording has not been started
+     */
+    public PipelineMetrics getPipelineMetrics() {
+        AudioProcess process = audioProcess;
+        return process == null ? null : process.getMetrics();
+    }
+
     @Override
     public void onCreate() {
         mNM = (NotificationManager)getSystemService(NOTIFICATION_SERVICE);
@@ -233,11 +239,11 @@ public class MeasurementService extends Service {
         canceled.set(false);
         initLocalisationServices();
         isRecording.set(true);
-        this.audioProcess = new AudioProcess(isRecording, canceled);
+        this.audioProcess = new AudioProcess(isRecording, canceled, null, new MicrophoneAudioSource(this));
         if(Double.compare(0, dBGain) != 0) {
             audioProcess.setGain((float) Math.pow(10, dBGain / 20));
         }
-        audioProcess.getListeners().addPropertyChangeListener(doProcessing);
+        audioProcess.addMeasurementListener(doProcessing);
 
         // Start measurement
         new Thread(audioProcess).start();
@@ -424,12 +430,26 @@ public class MeasurementService extends Service {
         }
     }
 
-    public void addPropertyChangeListener(PropertyChangeListener propertyChangeListener) {
-        listeners.addPropertyChangeListener(propertyChangeListener);
+    /**
+     * @param listener Receiver of the results, called by the processing threads
+     */
+    public void addMeasurementListener(MeasurementServiceListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeMeasurementListener(MeasurementServiceListener listener) {
+        listeners.remove(listener);
     }
 
-    public void removePropertyChangeListener(PropertyChangeListener propertyChangeListener) {
-        listeners.removePropertyChangeListener(propertyChangeListener);
+    /**
+     * Receiver of the results of the audio processing and of the stored measurements. Methods are called by the
+     * processing threads, user interface updates should go through an {@link AsyncMeasurementListener}.
+     */
+    public interface MeasurementServiceListener extends AudioProcess.MeasurementListener {
+        /**
+         * @param measurement 1 s result stored in the record
+         */
+        void onNewMeasurement(MeasurementEventObject measurement);
     }
 
     public void setPause(boolean newState) {
@@ -578,7 +598,7 @@ public class MeasurementService extends Service {
         }
     }
 
-    private static class DoProcessing implements  PropertyChangeListener {
+    private static class DoProcessing implements AudioProcess.MeasurementListener {
         private MeasurementService measurementService;
 
         public DoProcessing(MeasurementService measurementService) {
@@ -586,26 +606,25 @@ public class MeasurementService extends Service {
         }
 
         @Override
-        public void propertyChange(PropertyChangeEvent event) {
+        public void onMeasure(AudioProcess.MEASURE measureType, AudioProcess.AudioMeasureResult measure) {
+            MeasurementEventObject newMeasurement = null;
             // Skip event if we do not record or if the pause is active
-            if (AudioProcess.PROP_SLOW_LEQ.equals(event.getPropertyName
-                    ())) {
+            if (measureType == AudioProcess.MEASURE.SLOW_LEQ) {
                 if (measurementService.isStoring() && !measurementService.isPaused.get()) {
                     // Delayed audio processing
-                    AudioProcess.AudioMeasureResult measure =
-                            (AudioProcess.AudioMeasureResult) event.getNewValue();
                     Location location = measurementService.fetchLocation(measure.getBeginRecordTime());
                     Storage.Leq leq;
                     if (location == null) {
                         leq = new Storage.Leq(measurementService.recordId, -1, measure
-                                .getBeginRecordTime(), 0, 0, null, null, null, 0.f, 0);
+                                .getBeginRecordTime(), 0, 0, null, null, null, 0.f, 0,
+                                measure.getSignalFlags());
                     } else {
                         leq = new Storage.Leq(measurementService.recordId, -1, measure
                                 .getBeginRecordTime(), location.getLatitude(), location.getLongitude(),
                                 location.hasAltitude() ? location.getAltitude() : null,
                                 location.hasSpeed() ? location.getSpeed() : null,
                                 location.hasBearing() ? location.getBearing() : null,
-                                location.getAccuracy(), location.getTime());
+                                location.getAccuracy(), location.getTime(), measure.getSignalFlags());
                     }
                     double[] freqValues = measurementService.audioProcess.getDelayedCenterFrequency();
                     final float[] leqs = measure.getLeqs();
@@ -618,45 +637,64 @@ public class MeasurementService extends Service {
                         leqValueList
                                 .add(new Storage.LeqValue(-1, (int) freqValues[idFreq], leqs[idFreq]));
                     }
+                    long beginInsert = System.nanoTime();
                     measurementService.measurementManager
                             .addLeqBatch(new MeasurementManager.LeqBatch(leq, leqValueList));
+                    measurementService.audioProcess.getMetrics().getHistogram("storage.insert")
+                            .recordSince(beginInsert);
                     measurementService.leqAdded.addAndGet(1);
-                    measurementService.listeners.firePropertyChange(PROP_NEW_MEASUREMENT, null, new MeasurementEventObject(measure, leq));
+                    newMeasurement = new MeasurementEventObject(measure, leq);
                 }
-            } else if(AudioProcess.PROP_FAST_LEQ.equals(event.getPropertyName())) {
+            } else if(measureType == AudioProcess.MEASURE.FAST_LEQ) {
                 if (measurementService.isStoring() && !measurementService.isPaused.get()) {
-                    AudioProcess.AudioMeasureResult measure =
-                            (AudioProcess.AudioMeasureResult) event.getNewValue();
                     measurementService.leqStatsFast.addLeq(measure.getGlobaldBaValue());
                 }
-            } else if (AudioProcess.PROP_STATE_CHANGED.equals(event.getPropertyName())) {
-                if (AudioProcess.STATE.CLOSED.equals(event.getNewValue())) {
-                    if(measurementService.recordId > -1) {
-                        // Recording and processing of audio has been closed
-                        // Cancel the persistent notification.
-                        if (measurementService.canceled.get() || measurementService.leqAdded.get()
-                                < measurementService.minimalLeqCount) {
-                            // Canceled or has not the minimal leq count
-                            // Destroy record
-                            measurementService.measurementManager
-                                    .deleteRecord(measurementService.recordId);
-                        } else {
-                            // Update record
-                            measurementService.measurementManager
-                                    .updateRecordFinal(measurementService.recordId,
-                                            (float) measurementService.leqStats.getLeqMean(),
-                                            measurementService.leqAdded.get(),
-                                            (float)measurementService.dBGain);
-                        }
+            }
+            long beginDispatch = System.nanoTime();
+            for(MeasurementServiceListener listener : measurementService.listeners.get()) {
+                if(newMeasurement != null) {
+                    listener.onNewMeasurement(newMeasurement);
+                }
+                listener.onMeasure(measureType, measure);
+            }
+            measurementService.audioProcess.getMetrics().getHistogram("service.dispatch")
+                    .recordSince(beginDispatch);
+        }
+
+        @Override
+        public void onStateChanged(AudioProcess.STATE oldState, AudioProcess.STATE newState) {
+            if (newState == AudioProcess.STATE.CLOSED) {
+                if(measurementService.recordId > -1) {
+                    // Recording and processing of audio has been closed
+                    // Cancel the persistent notification.
+                    if (measurementService.canceled.get() || measurementService.leqAdded.get()
+                            < measurementService.minimalLeqCount) {
+                        // Canceled or has not the minimal leq count
+                        // Destroy record
+                        measurementService.measurementManager
+                                .deleteRecord(measurementService.recordId);
+                    } else {
+                        // Keep the pipeline health with the record, for the export
+                        measurementService.measurementManager
+                                .updateRecordPipelineMetrics(measurementService.recordId,
+                                        measurementService.audioProcess.getMetrics().snapshot());
+                        // Update record
+                        measurementService.measurementManager
+                                .updateRecordFinal(measurementService.recordId,
+                                        (float) measurementService.leqStats.getLeqMean(),
+                                        measurementService.leqAdded.get(),
+                                        (float)measurementService.dBGain);
                     }
-                    measurementService.isRecording.set(false);
-                    measurementService.stopLocalisationServices();
-                    // Stop task
-                    measurementService.stopForeground(true);
-                    measurementService.stopSelf();
                 }
+                measurementService.isRecording.set(false);
+                measurementService.stopLocalisationServices();
+                // Stop task
+                measurementService.stopForeground(true);
+                measurementService.stopSelf();
+            }
+            for(MeasurementServiceListener listener : measurementService.listeners.get()) {
+                listener.onStateChanged(oldState, newState);
             }
-            measurementService.listeners.firePropertyChange(event);
         }
     }
 
@@ -0,0 +1,177 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.noise_planet.noisecapture;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Build;
+
+import org.orbisgis.sos.AcousticIndicators;
+import org.orbisgis.sos.AudioSource;
+
+import java.io.IOException;
+
+/**
+ * Microphone of the device, read through {@link AudioRecord}
+ */
+public class MicrophoneAudioSource implements AudioSource {
+    private final int bufferSize;
+    private final int encoding;
+    private final int rate;
+    private final int audioChannel;
+    private AudioRecord audioRecord;
+
+    /**
+     * Find a capture configuration supported by the device, without knowing its native rate
+     * @throws IllegalStateException If the device does not support any configuration
+     */
+    public MicrophoneAudioSource() {
+        this(null);
+    }
+
+    /**
+     * Find a capture configuration supported by the device, the native rate of the device first
+     * @param context Context of the audio service, null if the native rate is unknown
+     * @throws IllegalStateException If the device does not support any configuration
+     */
+    public MicrophoneAudioSource(Context context) {
+        final int[] mSampleRates = getSampleRates(context);
+        final int[] encodings = new int[] { AudioFormat.ENCODING_PCM_16BIT , AudioFormat.ENCODING_PCM_8BIT };
+        final short[] audioChannels = new short[] { AudioFormat.CHANNEL_IN_MONO, AudioFormat.CHANNEL_IN_STEREO };
+        for (int tryRate : mSampleRates) {
+            for (int tryEncoding : encodings) {
+                for(short tryAudioChannel : audioChannels) {
+                    int tryBufferSize = AudioRecord.getMinBufferSize(tryRate,
+                            tryAudioChannel, tryEncoding);
+                    if (tryBufferSize != AudioRecord.ERROR_BAD_VALUE) {
+                        // Take a higher buffer size in order to get a smooth recording under load
+                        // avoiding Buffer overflow error on AudioRecord side.
+                        bufferSize = Math.max(tryBufferSize,
+                                (int)(AcousticIndicators.TIMEPERIOD_FAST * tryRate));
+                        encoding = tryEncoding;
+                        audioChannel = tryAudioChannel;
+                        rate = tryRate;
+                        return;
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("This device is not compatible");
+    }
+
+    /**
+     * @param context Context of the audio service, null if the native rate is unknown
+     * @return Capture rates by order of preference
+     */
+    private static int[] getSampleRates(Context context) {
+        // Filter coefficients are designed for the capture rate. The native rate of the device avoids the resampling
+        // of the Android audio framework, 48 kHz is the native rate of most devices. Lower rates (22050, 16000,
+        // 11025, 8000) do not cover the 20 kHz third octave band.
+        int nativeRate = 0;
+        if(context != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            String outputRate = audioManager == null ? null :
+                    audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+            if(outputRate != null) {
+                try {
+                    nativeRate = Integer.parseInt(outputRate);
+                } catch (NumberFormatException ex) {
+                    // Ignore
+                }
+            }
+        }
+        if(nativeRate == 44100) {
+            return new int[] {44100, 48000};
+        } else {
+            return new int[] {48000, 44100};
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return rate;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
+    }
+
+    @Override
+    public void start() throws IOException {
+        try {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
+        } catch (IllegalArgumentException | SecurityException ex) {
+            // Ignore
+        }
+        // Source:
+        //  section 5.3 of the Android 4.0 Compatibility Definition
+        // https://source.android.com/compatibility/4.0/android-4.0-cdd.pdf
+        // Using VOICE_RECOGNITION
+        // Noise reduction processing, if present, is disabled.
+        // Except for 5.0+ where android.media.audiofx.NoiseSuppressor could be use to cancel such processing
+        // Automatic gain control, if present, is disabled.
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION,
+                rate, audioChannel,
+                encoding, bufferSize);
+        if(audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            close();
+            throw new IOException("Audio record initialization failed");
+        }
+        audioRecord.startRecording();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        int read = audioRecord.read(buffer, offset, length);
+        if(read < 0) {
+            throw new IOException("Audio record read error " + read);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() {
+        if(audioRecord != null) {
+            if(audioRecord.getState() != AudioRecord.STATE_UNINITIALIZED) {
+                audioRecord.stop();
+            }
+            audioRecord.release();
+            audioRecord = null;
+        }
+    }
+}
@@ -96,7 +96,7 @@ public class Storage extends SQLiteOpenHelper {
         }
     }
     // If you change the database schema, you must increment the database version.
-    public static final int DATABASE_VERSION = 11;
+    public static final int DATABASE_VERSION = 13;
     public static final String DATABASE_NAME = "Storage.db";
     private static final String ACTIVATE_FOREIGN_KEY = "PRAGMA foreign_keys=ON;";
 
@@ -195,6 +195,18 @@ public class Storage extends SQLiteOpenHelper {
             }
             oldVersion = 11;
         }
+        if(oldVersion == 11) {
+            if(!db.isReadOnly()) {
+                db.execSQL("ALTER TABLE leq ADD COLUMN signal_flags INTEGER DEFAULT 0");
+            }
+            oldVersion = 12;
+        }
+        if(oldVersion == 12) {
+            if(!db.isReadOnly()) {
+                db.execSQL("ALTER TABLE record ADD COLUMN pipeline_metrics TEXT");
+            }
+            oldVersion = 13;
+        }
     }
 
 
@@ -302,6 +314,7 @@ public class Storage extends SQLiteOpenHelper {
         public static final String COLUMN_CALIBRATION_GAIN = "calibration_gain";
         public static final String COLUMN_NOISEPARTY_TAG = "noiseparty_tag";
         public static final String COLUMN_CALIBRATION_METHOD = "calibration_method";
+        public static final String COLUMN_PIPELINE_METRICS = "pipeline_metrics"; // properties of the pipeline health
 
         private int id;
         private long utc;
@@ -314,6 +327,7 @@ public class Storage extends SQLiteOpenHelper {
         private float calibrationGain;
         private String noisePartyTag;
         private CALIBRATION_METHODS calibrationMethod;
+        private String pipelineMetrics;
 
 
         public Record(Cursor cursor) {
@@ -331,6 +345,7 @@ public class Storage extends SQLiteOpenHelper {
                 photoUri = Uri.parse(uriString);
             }
             pleasantness = getInt(cursor, COLUMN_PLEASANTNESS);
+            pipelineMetrics = getString(cursor, COLUMN_PIPELINE_METRICS);
         }
 
         public Record(int id, long utc, String uploadId, float leqMean, int timeLength,
@@ -375,6 +390,14 @@ public class Storage extends SQLiteOpenHelper {
             this.calibrationMethod = calibrationMethod;
         }
 
+        /**
+         * @return Metrics of the measurement pipeline at the end of the record, one name=value line each, null if
+         * not available
+         */
+        public String getPipelineMetrics() {
+            return pipelineMetrics;
+        }
+
         /**
          * @return Calibration gain in dB
          */
@@ -430,7 +453,8 @@ public class Storage extends SQLiteOpenHelper {
             Record.COLUMN_PLEASANTNESS + " SMALLINT," +
             Record.COLUMN_CALIBRATION_GAIN + " FLOAT DEFAULT 0," +
             Record.COLUMN_NOISEPARTY_TAG + " TEXT," +
-            Record.COLUMN_CALIBRATION_METHOD + " INTEGER DEFAULT 0" +
+            Record.COLUMN_CALIBRATION_METHOD + " INTEGER DEFAULT 0," +
+            Record.COLUMN_PIPELINE_METRICS + " TEXT" +
             ")";
 
 
@@ -446,6 +470,7 @@ public class Storage extends SQLiteOpenHelper {
         public static final String COLUMN_SPEED = "speed"; // device speed estimation
         public static final String COLUMN_BEARING = "bearing"; // device orientation estimation
         public static final String COLUMN_LOCATION_UTC = "location_utc"; // date of last obtained location
+        public static final String COLUMN_SIGNAL_FLAGS = "signal_flags"; // clipping flags of the audio samples
 
         private int recordId;
         private int leqId;
@@ -457,6 +482,7 @@ public class Storage extends SQLiteOpenHelper {
         private Float bearing;
         private float accuracy;
         private long locationUTC;
+        private int signalFlags;
 
         /**
          * @param recordId Record id or -1 if unknown
@@ -472,6 +498,17 @@ public class Storage extends SQLiteOpenHelper {
          */
         public Leq(int recordId, int leqId, long leqUtc, double latitude, double longitude,
                    Double altitude, Float speed, Float bearing, float accuracy, long locationUTC) {
+            this(recordId, leqId, leqUtc, latitude, longitude, altitude, speed, bearing, accuracy, locationUTC, 0);
+        }
+
+        /**
+         * @param signalFlags Clipping flags of the audio samples, 0 for a clean signal
+         * @see org.orbisgis.sos.ClippingDetector#FLAG_CLIPPED
+         * @see org.orbisgis.sos.ClippingDetector#FLAG_DROPPED_SAMPLES
+         */
+        public Leq(int recordId, int leqId, long leqUtc, double latitude, double longitude,
+                   Double altitude, Float speed, Float bearing, float accuracy, long locationUTC,
+                   int signalFlags) {
             this.recordId = recordId;
             this.leqId = leqId;
             this.leqUtc = leqUtc;
@@ -482,6 +519,7 @@ public class Storage extends SQLiteOpenHelper {
             this.bearing = bearing;
             this.accuracy = accuracy;
             this.locationUTC = locationUTC;
+            this.signalFlags = signalFlags;
         }
 
         public Leq(Cursor cursor) {
@@ -494,7 +532,8 @@ public class Storage extends SQLiteOpenHelper {
                     getFloat(cursor, COLUMN_SPEED),
                     getFloat(cursor, COLUMN_BEARING),
                     cursor.getFloat(cursor.getColumnIndex(COLUMN_ACCURACY)),
-                    cursor.getLong(cursor.getColumnIndex(COLUMN_LOCATION_UTC)));
+                    cursor.getLong(cursor.getColumnIndex(COLUMN_LOCATION_UTC)),
+                    cursor.getColumnIndex(COLUMN_SIGNAL_FLAGS) != -1 ? cursor.getInt(cursor.getColumnIndex(COLUMN_SIGNAL_FLAGS)) : 0);
         }
 
         public static String getAllFields(String prepend) {
@@ -502,7 +541,7 @@ public class Storage extends SQLiteOpenHelper {
                     COLUMN_LEQ_ID, prepend + COLUMN_LEQ_UTC, prepend + COLUMN_LATITUDE, prepend +
                     COLUMN_LONGITUDE, prepend + COLUMN_ALTITUDE, prepend + COLUMN_ACCURACY,
                     prepend + COLUMN_SPEED, prepend + COLUMN_BEARING, prepend +
-                    COLUMN_LOCATION_UTC});
+                    COLUMN_LOCATION_UTC, prepend + COLUMN_SIGNAL_FLAGS});
         }
 
         public int getRecordId() {
@@ -550,6 +589,13 @@ public class Storage extends SQLiteOpenHelper {
         public long getLocationUTC() {
             return locationUTC;
         }
+
+        /**
+         * @return Clipping flags of the audio samples, 0 for a clean signal
+         */
+        public int getSignalFlags() {
+            return signalFlags;
+        }
     }
 
     public static final String CREATE_LEQ = "CREATE TABLE " + Leq.TABLE_NAME + "(" +
@@ -563,6 +609,7 @@ public class Storage extends SQLiteOpenHelper {
             Leq.COLUMN_SPEED + " FLOAT, " +
             Leq.COLUMN_ACCURACY + " FLOAT, " +
             Leq.COLUMN_LOCATION_UTC + " LONG, " +
+            Leq.COLUMN_SIGNAL_FLAGS + " INTEGER DEFAULT 0, " +
             "FOREIGN KEY(" + Leq.COLUMN_RECORD_ID + ") REFERENCES record("+Record.COLUMN_ID+") ON DELETE CASCADE)";
 
     public static final class LeqValue implements BaseColumns {
@@ -208,7 +208,7 @@ public class TrafficCalibrationActivity extends MainActivity implements Property
         }
         canceled.set(false);
         recording.set(true);
-        audioProcess = new AudioProcess(recording, canceled);
+        audioProcess = new AudioProcess(recording, canceled, null, new MicrophoneAudioSource(this));
         audioProcess.setDoFastLeq(true);
         audioProcess.setDoOneSecondLeq(false);
         audioProcess.setWeightingA(true);
@@ -0,0 +1,112 @@
+package org.noise_planet.noisecapture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the measurement listeners dispatch
+ */
+public class AsyncMeasurementListenerTest {
+
+    /**
+     * Keep the tasks until {@link #runAll()}, as a late user interface thread
+     */
+    private static final class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static final class RecordingListener implements MeasurementService.MeasurementServiceListener {
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void onMeasure(AudioProcess.MEASURE measure, AudioProcess.AudioMeasureResult result) {
+            events.add(measure.name());
+        }
+
+        @Override
+        public void onStateChanged(AudioProcess.STATE oldState, AudioProcess.STATE newState) {
+            events.add(newState.name());
+        }
+
+        @Override
+        public void onNewMeasurement(MeasurementService.MeasurementEventObject measurement) {
+            events.add("NEW");
+        }
+    }
+
+    @Test
+    public void testDropResultsKeepStates() {
+        RecordingListener delegate = new RecordingListener();
+        ManualExecutor executor = new ManualExecutor();
+        AsyncMeasurementListener listener = new AsyncMeasurementListener(delegate, executor, 2);
+        listener.onStateChanged(AudioProcess.STATE.WAITING, AudioProcess.STATE.PROCESSING);
+        for(int i = 0; i < 5; i++) {
+            listener.onMeasure(AudioProcess.MEASURE.FAST_LEQ, null);
+        }
+        listener.onStateChanged(AudioProcess.STATE.PROCESSING, AudioProcess.STATE.CLOSED);
+        // Nothing is delivered on the calling thread
+        assertTrue(delegate.events.isEmpty());
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(3, listener.getDroppedEvents());
+        assertEquals(4, delegate.events.size());
+        assertEquals("PROCESSING", delegate.events.get(0));
+        assertEquals("CLOSED", delegate.events.get(3));
+        // Delivered results free their place
+        listener.onMeasure(AudioProcess.MEASURE.SLOW_LEQ, null);
+        listener.onMeasure(AudioProcess.MEASURE.SLOW_LEQ, null);
+        executor.runAll();
+        assertEquals(3, listener.getDroppedEvents());
+        assertEquals("SLOW_LEQ", delegate.events.get(5));
+    }
+
+    @Test
+    public void testShutdownExecutor() {
+        RecordingListener delegate = new RecordingListener();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        AsyncMeasurementListener listener = new AsyncMeasurementListener(delegate, executor, 2);
+        // The processing threads are not stopped by the rejected events
+        listener.onMeasure(AudioProcess.MEASURE.FAST_LEQ, null);
+        listener.onStateChanged(AudioProcess.STATE.PROCESSING, AudioProcess.STATE.CLOSED);
+        listener.onMeasure(AudioProcess.MEASURE.FAST_LEQ, null);
+        listener.onMeasure(AudioProcess.MEASURE.FAST_LEQ, null);
+        assertEquals(4, listener.getDroppedEvents());
+        assertTrue(delegate.events.isEmpty());
+    }
+
+    @Test
+    public void testListenerArray() {
+        ListenerArray<String> listeners = new ListenerArray<String>(new String[0]);
+        listeners.add("a");
+        listeners.add("b");
+        listeners.add("c");
+        String[] snapshot = listeners.get();
+        assertTrue(listeners.remove("b"));
+        assertFalse(listeners.remove("d"));
+        assertArrayEquals(new String[] {"a", "c"}, listeners.get());
+        // Arrays given to the notifying threads are not modified
+        assertArrayEquals(new String[] {"a", "b", "c"}, snapshot);
+    }
+}
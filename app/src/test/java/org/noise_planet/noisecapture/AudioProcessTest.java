@@ -0,0 +1,358 @@
+package org.noise_planet.noisecapture;
+
+import org.junit.Test;
+import org.orbisgis.sos.AudioSource;
+import org.orbisgis.sos.ClippingDetector;
+import org.orbisgis.sos.FrequencyWeighting;
+import org.orbisgis.sos.PipelineMetrics;
+import org.orbisgis.sos.SyntheticAudioSource;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Run the measurement pipeline on generated signals, without the Android audio framework
+ */
+public class AudioProcessTest {
+
+    private static List<AudioProcess.AudioMeasureResult> run(AudioSource source, float gain,
+                                                             AudioProcess.MEASURE measureType) {
+        AtomicBoolean recording = new AtomicBoolean(true);
+        AtomicBoolean canceled = new AtomicBoolean(false);
+        return run(new AudioProcess(recording, canceled, null, source), gain, measureType);
+    }
+
+    private static List<AudioProcess.AudioMeasureResult> run(AudioProcess audioProcess, float gain,
+                                                             final AudioProcess.MEASURE measureType) {
+        audioProcess.setGain(gain);
+        final List<AudioProcess.AudioMeasureResult> results =
+                new CopyOnWriteArrayList<AudioProcess.AudioMeasureResult>();
+        audioProcess.addMeasurementListener(new AudioProcess.MeasurementListener() {
+            @Override
+            public void onMeasure(AudioProcess.MEASURE measure, AudioProcess.AudioMeasureResult result) {
+                if(measure == measureType) {
+                    results.add(result);
+                }
+            }
+
+            @Override
+            public void onStateChanged(AudioProcess.STATE oldState, AudioProcess.STATE newState) {
+            }
+        });
+        // The recording stops at the end of the source
+        audioProcess.run();
+        assertEquals(AudioProcess.STATE.CLOSED, audioProcess.getCurrentState());
+        assertEquals(0, audioProcess.getOverrunFrames());
+        return results;
+    }
+
+    @Test
+    public void testSineLevels() {
+        long begin = System.nanoTime();
+        List<AudioProcess.AudioMeasureResult> results = run(SyntheticAudioSource.sine(48000, 1000, 2500, 3),
+                1, AudioProcess.MEASURE.SLOW_LEQ);
+        // Faster than real time
+        assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(3));
+        assertEquals(3, results.size());
+        for(AudioProcess.AudioMeasureResult result : results) {
+            assertEquals(90, result.getGlobaldBaValue(), 0.5);
+            assertEquals(0, result.getSignalFlags());
+        }
+    }
+
+    /**
+     * LAFmax and LAFmin of each fast measure, the minimum is known once the detector has settled
+     */
+    @Test
+    public void testTimeWeightedLevels() {
+        List<AudioProcess.AudioMeasureResult> results = run(SyntheticAudioSource.sine(48000, 1000, 2500, 2),
+                1, AudioProcess.MEASURE.FAST_LEQ);
+        assertEquals(16, results.size());
+        // The detector rises during the first time constant
+        assertEquals(90 + 10 * Math.log10(1 - Math.exp(-1)), results.get(0).getTimeWeightedMaxLevel(), 0.1);
+        // Five time constants of 125 ms
+        for(int i = 0; i < 5; i++) {
+            assertTrue(Double.isNaN(results.get(i).getTimeWeightedMinLevel()));
+        }
+        for(int i = 5; i < results.size(); i++) {
+            assertEquals(90, results.get(i).getTimeWeightedMaxLevel(), 0.1);
+            assertEquals(90, results.get(i).getTimeWeightedMinLevel(), 0.1);
+        }
+    }
+
+    /**
+     * The default rectangular 125 ms window of 5512 samples is not zero-padded, the Tukey window is zero-padded to a
+     * power of two FFT
+     */
+    @Test
+    public void testFastFFTSize() {
+        AudioProcess audioProcess = new AudioProcess(new AtomicBoolean(true), new AtomicBoolean(false), null,
+                SyntheticAudioSource.sine(44100, 1000, 2500, 1));
+        assertFalse(audioProcess.isHannWindowFast());
+        assertEquals(44100 / 5512., audioProcess.getFFTFreqArrayStep(), 1e-9);
+        audioProcess.setHannWindowFast(true);
+        List<AudioProcess.AudioMeasureResult> results = run(audioProcess, 1, AudioProcess.MEASURE.FAST_LEQ);
+        assertEquals(44100 / 8192., audioProcess.getFFTFreqArrayStep(), 1e-9);
+        assertEquals(8, results.size());
+        for(AudioProcess.AudioMeasureResult result : results) {
+            assertEquals(90, result.getGlobaldBaValue(), 0.5);
+        }
+    }
+
+    /**
+     * The time signal is A-weighted by default, the spectrum weighting is opt-in
+     */
+    @Test
+    public void testFrequencyWeighting() {
+        List<AudioProcess.AudioMeasureResult> results = run(SyntheticAudioSource.sine(48000, 1000, 2500, 1),
+                1, AudioProcess.MEASURE.SLOW_LEQ);
+        assertEquals(1, results.size());
+        assertTrue(Float.isNaN(results.get(0).getWeightedLevel(FrequencyWeighting.WEIGHTING.C)));
+        AudioProcess audioProcess = new AudioProcess(new AtomicBoolean(true), new AtomicBoolean(false), null,
+                SyntheticAudioSource.sine(48000, 1000, 2500, 1));
+        audioProcess.setFrequencyWeighting(FrequencyWeighting.WEIGHTING.A);
+        List<AudioProcess.AudioMeasureResult> weightedResults = run(audioProcess, 1, AudioProcess.MEASURE.SLOW_LEQ);
+        assertEquals(1, weightedResults.size());
+        assertEquals(results.get(0).getGlobaldBaValue(), weightedResults.get(0).getGlobaldBaValue(), 0.1);
+        assertEquals(weightedResults.get(0).getGlobaldBaValue(),
+                weightedResults.get(0).getWeightedLevel(FrequencyWeighting.WEIGHTING.C), 0.1);
+    }
+
+    /**
+     * Frames of a real time source are dropped while the processing is late, the results spanning the gap are flagged
+     */
+    @Test
+    public void testDroppedFramesFlag() {
+        // 120 frames of 125 ms, produced every 10 ms
+        final SyntheticAudioSource synthetic = SyntheticAudioSource.sine(48000, 1000, 2500, 15);
+        AudioSource realTimeSource = new AudioSource() {
+            @Override
+            public int getSampleRate() {
+                return synthetic.getSampleRate();
+            }
+
+            @Override
+            public int getBufferSize() {
+                return synthetic.getBufferSize();
+            }
+
+            @Override
+            public boolean isRealTime() {
+                return true;
+            }
+
+            @Override
+            public void start() throws IOException {
+                synthetic.start();
+            }
+
+            @Override
+            public int read(short[] buffer, int offset, int length) throws IOException {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                return synthetic.read(buffer, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                synthetic.close();
+            }
+        };
+        AudioProcess audioProcess = new AudioProcess(new AtomicBoolean(true), new AtomicBoolean(false), null,
+                realTimeSource);
+        final List<AudioProcess.AudioMeasureResult> results =
+                new CopyOnWriteArrayList<AudioProcess.AudioMeasureResult>();
+        audioProcess.addMeasurementListener(new AudioProcess.MeasurementListener() {
+            @Override
+            public void onMeasure(AudioProcess.MEASURE measure, AudioProcess.AudioMeasureResult result) {
+                if(measure == AudioProcess.MEASURE.FAST_LEQ) {
+                    results.add(result);
+                    if(results.size() == 1) {
+                        // The fast thread is late while the source fills the 32 frames of the ring, then drops
+                        // about 30 frames
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(600));
+                    }
+                }
+            }
+
+            @Override
+            public void onStateChanged(AudioProcess.STATE oldState, AudioProcess.STATE newState) {
+            }
+        });
+        audioProcess.run();
+        assertTrue(audioProcess.getOverrunFrames() > 0);
+        assertEquals(0, results.get(0).getSignalFlags());
+        int flagged = 0;
+        for(AudioProcess.AudioMeasureResult result : results) {
+            if((result.getSignalFlags() & ClippingDetector.FLAG_DROPPED_SAMPLES) != 0) {
+                flagged++;
+            }
+        }
+        // The windows are contiguous again after the gap
+        assertEquals(1, flagged);
+    }
+
+    /**
+     * The fast results computed after the fast measure has been switched off and on again are flagged with the
+     * clipping of their own samples, even when the capture is ahead of the fast thread
+     */
+    @Test
+    public void testClippingFlagsAfterSkippedFrames() {
+        // 24 frames of 125 ms, the fast thread does not receive the 8 clipped frames of the second second
+        final SyntheticAudioSource synthetic = SyntheticAudioSource.sine(48000, 1000, 2500, 3);
+        final AudioProcess[] audioProcess = new AudioProcess[1];
+        AudioSource source = new AudioSource() {
+            private int frame = 0;
+
+            @Override
+            public int getSampleRate() {
+                return synthetic.getSampleRate();
+            }
+
+            @Override
+            public int getBufferSize() {
+                return synthetic.getBufferSize();
+            }
+
+            @Override
+            public boolean isRealTime() {
+                return false;
+            }
+
+            @Override
+            public void start() throws IOException {
+                synthetic.start();
+            }
+
+            @Override
+            public int read(short[] buffer, int offset, int length) throws IOException {
+                if(frame == 8) {
+                    audioProcess[0].setDoFastLeq(false);
+                } else if(frame == 16) {
+                    audioProcess[0].setDoFastLeq(true);
+                }
+                int read = synthetic.read(buffer, offset, length);
+                if(frame >= 8 && frame < 16) {
+                    for(int i = offset; i < offset + read; i++) {
+                        buffer[i] = i % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+                    }
+                }
+                frame++;
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                synthetic.close();
+            }
+        };
+        audioProcess[0] = new AudioProcess(new AtomicBoolean(true), new AtomicBoolean(false), null, source);
+        final List<AudioProcess.AudioMeasureResult> fastResults =
+                new CopyOnWriteArrayList<AudioProcess.AudioMeasureResult>();
+        final List<AudioProcess.AudioMeasureResult> slowResults =
+                new CopyOnWriteArrayList<AudioProcess.AudioMeasureResult>();
+        audioProcess[0].addMeasurementListener(new AudioProcess.MeasurementListener() {
+            @Override
+            public void onMeasure(AudioProcess.MEASURE measure, AudioProcess.AudioMeasureResult result) {
+                if(measure == AudioProcess.MEASURE.FAST_LEQ) {
+                    fastResults.add(result);
+                    if(fastResults.size() == 1) {
+                        // The capture ends before the fast thread processes its next frames
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(300));
+                    }
+                } else if(measure == AudioProcess.MEASURE.SLOW_LEQ) {
+                    slowResults.add(result);
+                }
+            }
+
+            @Override
+            public void onStateChanged(AudioProcess.STATE oldState, AudioProcess.STATE newState) {
+            }
+        });
+        audioProcess[0].run();
+        assertTrue(fastResults.size() > 0);
+        for(AudioProcess.AudioMeasureResult result : fastResults) {
+            assertEquals(0, result.getSignalFlags() & ClippingDetector.FLAG_CLIPPED);
+        }
+        assertEquals(3, slowResults.size());
+        assertEquals(0, slowResults.get(0).getSignalFlags() & ClippingDetector.FLAG_CLIPPED);
+        assertEquals(ClippingDetector.FLAG_CLIPPED, slowResults.get(1).getSignalFlags() & ClippingDetector.FLAG_CLIPPED);
+        assertEquals(0, slowResults.get(2).getSignalFlags() & ClippingDetector.FLAG_CLIPPED);
+    }
+
+    @Test
+    public void testGain() {
+        List<AudioProcess.AudioMeasureResult> results = run(SyntheticAudioSource.sine(48000, 1000, 2500, 2),
+                2, AudioProcess.MEASURE.FAST_LEQ);
+        assertEquals(16, results.size());
+        for(AudioProcess.AudioMeasureResult result : results) {
+            assertEquals(96.02, result.getGlobaldBaValue(), 0.5);
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        AudioProcess audioProcess = new AudioProcess(new AtomicBoolean(true), new AtomicBoolean(false), null,
+                SyntheticAudioSource.sine(48000, 1000, 2500, 2));
+        run(audioProcess, 1, AudioProcess.MEASURE.FAST_LEQ);
+        PipelineMetrics metrics = audioProcess.getMetrics();
+        assertEquals(16, metrics.getCounter("capture.frames").get());
+        assertEquals(0, metrics.getCounter("capture.dropped_samples").get());
+        assertEquals(16, metrics.getHistogram("capture.gain").getCount());
+        assertEquals(Long.valueOf(96000), metrics.getGaugeValue("fast.processed_samples"));
+        assertEquals(Long.valueOf(0), metrics.getGaugeValue("fast.lag_ms"));
+        assertEquals(16, metrics.getCounter("fast.results").get());
+        assertEquals(16, metrics.getHistogram("fast.dispatch").getCount());
+        // The time signal is A-weighted from the first window, then on each pushed frame
+        assertEquals(16, metrics.getHistogram("fast.aweighting").getCount());
+        assertEquals(2, metrics.getCounter("slow.results").get());
+        assertTrue(metrics.getGaugeValue("fast.samples_per_second") > 48000);
+        assertEquals("16", metrics.snapshot().get("capture.frames"));
+    }
+
+    @Test
+    public void testCascadedSlowLeq() {
+        AudioProcess audioProcess = new AudioProcess(new AtomicBoolean(true), new AtomicBoolean(false), null,
+                SyntheticAudioSource.sine(48000, 1000, 2500, 2));
+        assertFalse(audioProcess.isCascadedSlowLeq());
+        audioProcess.setCascadedSlowLeq(true);
+        List<AudioProcess.AudioMeasureResult> results = run(audioProcess, 1, AudioProcess.MEASURE.SLOW_LEQ);
+        assertEquals(2, results.size());
+        for(AudioProcess.AudioMeasureResult result : results) {
+            assertEquals(90, result.getGlobaldBaValue(), 0.5);
+        }
+        // The 1 s levels are derived from the 125 ms levels, they are published by the fast thread
+        PipelineMetrics metrics = audioProcess.getMetrics();
+        assertEquals(16 + 2, metrics.getCounter("fast.results").get());
+        assertEquals(0, metrics.getCounter("slow.results").get());
+    }
+
+    @Test
+    public void testPropertyChangeEvents() {
+        AudioProcess audioProcess = new AudioProcess(new AtomicBoolean(true), new AtomicBoolean(false), null,
+                SyntheticAudioSource.sine(48000, 1000, 2500, 1));
+        final List<String> events = new CopyOnWriteArrayList<String>();
+        audioProcess.getListeners().addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                events.add(event.getPropertyName());
+            }
+        });
+        run(audioProcess, 1, AudioProcess.MEASURE.FAST_LEQ);
+        // Three state changes, eight fast results and the 1 s result
+        assertEquals(12, events.size());
+        assertEquals(8, Collections.frequency(events, AudioProcess.PROP_FAST_LEQ));
+        assertEquals(1, Collections.frequency(events, AudioProcess.PROP_SLOW_LEQ));
+        assertEquals(AudioProcess.PROP_STATE_CHANGED, events.get(events.size() - 1));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+
+/**
+ * Audio inputs of the benchmarks, shared with the unit tests resources
+ */
+final class BenchmarkSignals {
+    static final int SAMPLE_RATE = 44100;
+    static final String PINK_NOISE = "pinknoise_1s.raw";
+    static final String CAPTURE_1000HZ = "capture_1000hz_16bits_44100hz_signed.raw";
+
+    private BenchmarkSignals() {
+    }
+
+    /**
+     * @param name {@link #PINK_NOISE} or {@link #CAPTURE_1000HZ}
+     * @return 16 bits samples of the resource
+     */
+    static short[] load(String name) throws IOException {
+        ByteOrder byteOrder = PINK_NOISE.equals(name) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        InputStream inputStream = BenchmarkSignals.class.getResourceAsStream(name);
+        if(inputStream == null) {
+            throw new IOException("Missing benchmark input " + name);
+        }
+        try {
+            return SOSSignalProcessing.loadShortStream(inputStream, byteOrder);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Copy the next part of a signal, read as an endless loop
+     * @param signal Source signal
+     * @param cursor Index of the first sample to copy
+     * @param buffer Destination
+     * @return Index of the next sample to copy
+     */
+    static int nextBuffer(short[] signal, int cursor, short[] buffer) {
+        for(int i = 0; i < buffer.length; i++) {
+            buffer[i] = signal[cursor];
+            cursor = (cursor + 1) % signal.length;
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decibel conversions of {@link DecibelConversion} against {@link Math}, on 1024 values of the audible range.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecibelConversionBenchmark {
+    private static final int SIZE = 1024;
+
+    @Param({"EXACT", "FAST"})
+    public DecibelConversion conversion;
+
+    private final double[] levels = new double[SIZE];
+    private final double[] energies = new double[SIZE];
+    private FFTSignalProcessing.ProcessingResult[] windowLevels;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for(int i = 0; i < SIZE; i++) {
+            levels[i] = 20 + random.nextDouble() * 100;
+            energies[i] = Math.pow(10, levels[i] / 10);
+        }
+        // Eight 125 ms results of 31 bands merged into 1 s
+        windowLevels = new FFTSignalProcessing.ProcessingResult[8];
+        for(int i = 0; i < windowLevels.length; i++) {
+            float[] bands = new float[31];
+            for(int j = 0; j < bands.length; j++) {
+                bands[j] = (float) levels[i * bands.length + j];
+            }
+            windowLevels[i] = new FFTSignalProcessing.ProcessingResult(i, null, bands, (float) levels[i]);
+        }
+    }
+
+    @Benchmark
+    public double toDecibel() {
+        double sum = 0;
+        for(double energy : energies) {
+            sum += conversion.toDecibel(energy);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double toEnergy() {
+        double sum = 0;
+        for(double level : levels) {
+            sum += conversion.toEnergy(level);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public FFTSignalProcessing.ProcessingResult mergeLevels() {
+        return new FFTSignalProcessing.ProcessingResult(conversion, windowLevels.length, windowLevels);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FFT processing of the 125 ms and 1 s windows, for each window function, with the FFT of the window size or
+ * zero-padded up to the next power of two
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FFTSignalProcessingBenchmark {
+
+    @Param({"RECTANGULAR", "HANN", "TUKEY"})
+    public FFTSignalProcessing.WINDOW_TYPE windowType;
+
+    @Param({BenchmarkSignals.PINK_NOISE, BenchmarkSignals.CAPTURE_1000HZ})
+    public String input;
+
+    @Param({"0.125", "1"})
+    public double windowTime;
+
+    @Param({"false", "true"})
+    public boolean powerOfTwoFFT;
+
+    private short[] signal;
+    private short[] buffer;
+    // 10 ms of samples, the size of a small audio record read
+    private final short[] smallBuffer = new short[BenchmarkSignals.SAMPLE_RATE / 100];
+    private int cursor = 0;
+    private FFTSignalProcessing fftSignalProcessing;
+    private final FFTSignalProcessing.ProcessingResult result = new FFTSignalProcessing.ProcessingResult();
+
+    @Setup
+    public void setUp() throws IOException {
+        signal = BenchmarkSignals.load(input);
+        int windowSize = (int) (BenchmarkSignals.SAMPLE_RATE * windowTime);
+        fftSignalProcessing = new FFTSignalProcessing(BenchmarkSignals.SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize, FFTSignalProcessing.DB_FS_REFERENCE,
+                powerOfTwoFFT ? FFTSignalProcessing.getPowerOfTwoSize(windowSize) : windowSize);
+        buffer = new short[windowSize];
+    }
+
+    @Benchmark
+    public FFTSignalProcessing.ProcessingResult processSample() {
+        cursor = BenchmarkSignals.nextBuffer(signal, cursor, buffer);
+        fftSignalProcessing.addSample(buffer);
+        fftSignalProcessing.processSample(windowType, false, true, result);
+        return result;
+    }
+
+    /**
+     * A-weighting of the time signal by the IIR filter before the FFT
+     */
+    @Benchmark
+    public FFTSignalProcessing.ProcessingResult processSampleTimeAWeighting() {
+        cursor = BenchmarkSignals.nextBuffer(signal, cursor, buffer);
+        fftSignalProcessing.addSample(buffer);
+        fftSignalProcessing.processSample(windowType, true, true, result);
+        return result;
+    }
+
+    /**
+     * A-weighting of the power spectrum, with the A, C and Z weighted levels
+     */
+    @Benchmark
+    public FFTSignalProcessing.ProcessingResult processSampleFrequencyWeighting() {
+        cursor = BenchmarkSignals.nextBuffer(signal, cursor, buffer);
+        fftSignalProcessing.addSample(buffer);
+        fftSignalProcessing.processSample(windowType, FrequencyWeighting.WEIGHTING.A, true, result);
+        return result;
+    }
+
+    /**
+     * Push of a small buffer into the window history, without processing
+     */
+    @Benchmark
+    public FFTSignalProcessing addSample() {
+        cursor = BenchmarkSignals.nextBuffer(signal, cursor, smallBuffer);
+        fftSignalProcessing.addSample(smallBuffer);
+        return fftSignalProcessing;
+    }
+}
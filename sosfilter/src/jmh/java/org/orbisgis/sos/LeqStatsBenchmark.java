@@ -0,0 +1,99 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of one hour of 125 ms levels. The levels are the A-weighted levels of the input signal, read as an
+ * endless loop, with a slow gain variation so that the level classes are spread as in a real recording.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeqStatsBenchmark {
+    private static final int LEQ_COUNT = 3600 * 8;
+    private static final double[][] CLASS_RANGES = new double[][]{{Double.MIN_VALUE, 45}, {45, 55}, {55, 65},
+            {65, 75}, {75, Double.MAX_VALUE}};
+
+    @Param({BenchmarkSignals.PINK_NOISE, BenchmarkSignals.CAPTURE_1000HZ})
+    public String input;
+
+    private double[] leqs;
+    private int leqIndex = 0;
+    private LeqStats leqStats;
+    private LeqStats filledLeqStats;
+
+    @Setup
+    public void setUp() throws IOException {
+        short[] signal = BenchmarkSignals.load(input);
+        int windowSize = (int) (BenchmarkSignals.SAMPLE_RATE * AcousticIndicators.TIMEPERIOD_FAST);
+        FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(BenchmarkSignals.SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+        short[] buffer = new short[windowSize];
+        int cursor = 0;
+        leqs = new double[LEQ_COUNT];
+        filledLeqStats = new LeqStats();
+        for(int i = 0; i < leqs.length; i++) {
+            cursor = BenchmarkSignals.nextBuffer(signal, cursor, buffer);
+            fftSignalProcessing.addSample(buffer);
+            // Gain variation of +/- 20 dB with a period of 10 minutes
+            leqs[i] = fftSignalProcessing.computeSpl(true) + 20 * Math.sin(2 * Math.PI * i / (8 * 600));
+            filledLeqStats.addLeq(leqs[i]);
+        }
+        leqStats = new LeqStats();
+    }
+
+    @Benchmark
+    public LeqStats addLeq() {
+        leqStats.addLeq(leqs[leqIndex]);
+        leqIndex = (leqIndex + 1) % leqs.length;
+        return leqStats;
+    }
+
+    @Benchmark
+    public LeqStats.LeqOccurrences computeLeqOccurrences() {
+        return filledLeqStats.computeLeqOccurrences(CLASS_RANGES);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Third octave bands filtering of a 5 s signal, the bands being filtered concurrently by a fixed thread pool
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelFilteringBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int threadCount;
+
+    private double[] signal;
+    private ThirdOctaveBandsFiltering reducedFiltering;
+    private ThirdOctaveBandsFiltering fullFiltering;
+    private ExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        signal = SOSSignalProcessing.convertShortToDouble(SOSSignalProcessing.makePinkNoise(
+                BenchmarkSignals.SAMPLE_RATE * 5, (short)2500, 0));
+        reducedFiltering = new ThirdOctaveBandsFiltering(BenchmarkSignals.SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED);
+        fullFiltering = new ThirdOctaveBandsFiltering(BenchmarkSignals.SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.FREQUENCY_BANDS.FULL);
+        executorService = Executors.newFixedThreadPool(threadCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    @Benchmark
+    public double[][] reducedBands() {
+        return reducedFiltering.thirdOctaveFiltering(signal, executorService);
+    }
+
+    @Benchmark
+    public double[][] fullBandsDecimated() {
+        return fullFiltering.thirdOctaveFilteringDecimated(signal, executorService);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from the publication of a captured frame to the property change event of its 125 ms window, with the
+ * processing thread of the application waiting with each {@link WaitStrategy}. The latency includes the
+ * processing of the window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessingLatencyBenchmark {
+    private static final String PROP_FAST_LEQ = "PROP_MS";
+    private static final long WAIT_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Param({"SLEEP", "PARK", "BLOCKING", "PROGRESSIVE"})
+    public WaitStrategy.TYPE waitStrategy;
+
+    private short[] signal;
+    private int cursor = 0;
+    private SampleRing ring;
+    private SampleRing.Consumer consumer;
+    private Thread processingThread;
+    private volatile boolean running;
+    private volatile long eventCount = 0;
+    private long publishedCount = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        signal = BenchmarkSignals.load(BenchmarkSignals.PINK_NOISE);
+        final Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, BenchmarkSignals.SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_FAST, false,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        window.setFrequencyWeighting(FrequencyWeighting.WEIGHTING.A);
+        int windowSize = (int) (BenchmarkSignals.SAMPLE_RATE * AcousticIndicators.TIMEPERIOD_FAST);
+        ring = new SampleRing(8, windowSize);
+        consumer = ring.addConsumer(WaitStrategy.create(waitStrategy));
+        final PropertyChangeSupport listeners = new PropertyChangeSupport(this);
+        listeners.addPropertyChangeListener(PROP_FAST_LEQ, new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                eventCount++;
+            }
+        });
+        running = true;
+        // Same loop as the processing threads of the application
+        processingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int idleCount = 0;
+                int lastPushIndex = window.getWindowIndex();
+                while (running) {
+                    SampleRing.Frame frame;
+                    while ((frame = consumer.poll()) != null) {
+                        idleCount = 0;
+                        window.pushSample(frame.getSamples(), 0, frame.getLength());
+                        consumer.release();
+                        if(window.getWindowIndex() != lastPushIndex) {
+                            lastPushIndex = window.getWindowIndex();
+                            FFTSignalProcessing.ProcessingResult result = window.getLastWindowMean();
+                            window.cleanWindows();
+                            listeners.firePropertyChange(PROP_FAST_LEQ, null, result);
+                        }
+                    }
+                    try {
+                        consumer.await(idleCount++, WAIT_TIMEOUT);
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
+            }
+        });
+        processingThread.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        ring.signalConsumers();
+        processingThread.join();
+    }
+
+    /**
+     * Publish one window of samples and wait for its event
+     */
+    @Benchmark
+    public long publishToEvent() {
+        SampleRing.Frame frame = ring.claim();
+        while (frame == null) {
+            Thread.yield();
+            frame = ring.claim();
+        }
+        cursor = BenchmarkSignals.nextBuffer(signal, cursor, frame.getSamples());
+        ring.publish(frame.getSamples().length, consumer.getBit());
+        publishedCount++;
+        while (eventCount < publishedCount) {
+            Thread.yield();
+        }
+        return eventCount;
+    }
+}
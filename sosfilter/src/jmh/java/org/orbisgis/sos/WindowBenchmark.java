@@ -0,0 +1,122 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overlapped windows processing, and publication of the mean of overlapped windows: merge of the window levels in
+ * decibels against the running energy sums of {@link Window}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowBenchmark {
+    @Param({"0", "0.5", "0.75"})
+    public double overlap;
+
+    @Param({BenchmarkSignals.PINK_NOISE, BenchmarkSignals.CAPTURE_1000HZ})
+    public String input;
+
+    private short[] signal;
+    private short[] hop;
+    private int cursor = 0;
+    private int lastWindowIndex = 0;
+    private Window window;
+    private FFTSignalProcessing.ProcessingResult[] windowLevels;
+
+    @Setup
+    public void setUp() throws IOException {
+        signal = BenchmarkSignals.load(input);
+        window = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, BenchmarkSignals.SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_FAST, true,
+                FFTSignalProcessing.DB_FS_REFERENCE, true, overlap);
+        int windowSize = (int) (BenchmarkSignals.SAMPLE_RATE * AcousticIndicators.TIMEPERIOD_FAST);
+        FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(BenchmarkSignals.SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+        hop = new short[(int) (windowSize * (1 - overlap))];
+        windowLevels = new FFTSignalProcessing.ProcessingResult[(int) Math.round(1 / (1 - overlap))];
+        for (int i = 0; i < windowLevels.length * 2; i++) {
+            cursor = BenchmarkSignals.nextBuffer(signal, cursor, hop);
+            window.pushSample(hop);
+            fftSignalProcessing.addSample(hop);
+            System.arraycopy(windowLevels, 1, windowLevels, 0, windowLevels.length - 1);
+            windowLevels[windowLevels.length - 1] = fftSignalProcessing.processSample(
+                    FFTSignalProcessing.WINDOW_TYPE.TUKEY, true, true);
+        }
+        lastWindowIndex = window.getWindowIndex();
+    }
+
+    /**
+     * Push one hop of samples, so one window is processed. The mean of the overlapped windows is published when
+     * the window index changes, as done by the application.
+     */
+    @Benchmark
+    public Window pushSample() {
+        cursor = BenchmarkSignals.nextBuffer(signal, cursor, hop);
+        window.pushSample(hop);
+        if(window.getWindowIndex() != lastWindowIndex) {
+            lastWindowIndex = window.getWindowIndex();
+            window.getLastWindowMean();
+            window.cleanWindows();
+        }
+        return window;
+    }
+
+    /**
+     * Previous implementation, levels converted to energy and back on each merge
+     */
+    @Benchmark
+    public FFTSignalProcessing.ProcessingResult mergeLevels() {
+        return new FFTSignalProcessing.ProcessingResult(1, windowLevels);
+    }
+
+    /**
+     * Conversion of the running energy sums to levels
+     */
+    @Benchmark
+    public FFTSignalProcessing.ProcessingResult sumEnergies() {
+        return window.getLastWindowMean();
+    }
+}
@@ -27,6 +27,10 @@
 
 package org.orbisgis.sos;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Created by G. Guillaume on 03/06/2015.
  * A-weighting of a time signal
@@ -36,6 +40,11 @@ package org.orbisgis.sos;
  */
 public class AWeighting {
 
+    /**
+     * Sampling rate of the {@link #denominator} and {@link #numerator} coefficients
+     */
+    public static final int DEFAULT_SAMPLING_RATE = 44100;
+
     /**
      * Denominator coefficients of the A-weighting filter determined by means of a bilinear transform that converts
      * second-order section analog weights to second-order section digital weights.
@@ -60,37 +69,203 @@ public class AWeighting {
                                                           -0.51148225040851569,
                                                            0.25574112520425768};
 
+    private static final int ORDER = Math.max(denominator.length, numerator.length);
+
+    // Pole frequencies [Hz] of the analog A-weighting filter and its gain at 1 kHz [dB]
+    private static final double F1 = 20.598997;
+    private static final double F2 = 107.65265;
+    private static final double F3 = 737.86223;
+    private static final double F4 = 12194.217;
+    private static final double A1000 = 1.9997;
+
+    // {numerator, denominator} coefficients by sampling rate, the published coefficients are kept at 44.1 kHz
+    private static final ConcurrentMap<Integer, double[][]> COEFFICIENTS_CACHE =
+            new ConcurrentHashMap<Integer, double[][]>();
+
+    static {
+        COEFFICIENTS_CACHE.put(DEFAULT_SAMPLING_RATE, new double[][]{numerator, denominator});
+    }
+
+    private final double[] numeratorCoefficients;
+    private final double[] denominatorCoefficients;
+
+    // Filter delays, kept between calls
+    private final double[] z = new double[ORDER - 1];
+
     /**
-     * A-weighting of the raw time signal
-     * Second order section filtering
-     * @param inputSignal Raw time signal
-     * @return A-weighted time signal
+     * Streaming A-weighting filter of a signal sampled at {@link #DEFAULT_SAMPLING_RATE}. The filter state is kept
+     * between calls so that consecutive buffers are weighted as a continuous signal.
      */
-    public static double[] aWeightingSignal(double[] inputSignal) {
+    public AWeighting() {
+        this(DEFAULT_SAMPLING_RATE);
+    }
 
-        int signalLength = inputSignal.length;
-        int order = Math.max(denominator.length, numerator.length);
-        double[] weightedSignal = new double[signalLength];
-        // Filter delays
-        double[][] z = new double[order-1][signalLength];
-
-        for (int idT = 0; idT < signalLength; idT++){
-            // Avoid iteration idT=0 exception (z[0][idT-1]=0)
-            weightedSignal[idT] = numerator[0]*inputSignal[idT] + (idT == 0 ? 0 : z[0][idT-1]);
-            // Avoid iteration idT=0 exception (z[1][idT-1]=0)
-            z[0][idT] = numerator[1]*inputSignal[idT] + (idT == 0 ? 0 : z[1][idT-1]) - denominator[1]*inputSignal[idT];
-            for (int k = 0; k<order-2; k++){
-                // Avoid iteration idT=0 exception (z[k+1][idT-1]=0)
-                z[k][idT] = numerator[k+1]*inputSignal[idT] + (idT ==0 ? 0 : z[k+1][idT-1]) - denominator[k+1]*weightedSignal[idT];
+    /**
+     * Streaming A-weighting filter. The filter state is kept between calls so that consecutive buffers are
+     * weighted as a continuous signal.
+     * @param samplingRate Sampling rate of the signal [Hz]
+     */
+    public AWeighting(int samplingRate) {
+        double[][] coefficients = getCoefficients(samplingRate);
+        numeratorCoefficients = coefficients[0];
+        denominatorCoefficients = coefficients[1];
+    }
+
+    /**
+     * A-weighting filter coefficients, designed once per sampling rate
+     * @param samplingRate Sampling rate [Hz]
+     * @return Numerator and denominator coefficients
+     */
+    static double[][] getCoefficients(int samplingRate) {
+        double[][] coefficients = COEFFICIENTS_CACHE.get(samplingRate);
+        if(coefficients == null) {
+            coefficients = designCoefficients(samplingRate);
+            double[][] previous = COEFFICIENTS_CACHE.putIfAbsent(samplingRate, coefficients);
+            if(previous != null) {
+                coefficients = previous;
             }
-            z[order-2][idT] = numerator[order-1]*inputSignal[idT] - denominator[order-1]*weightedSignal[idT];
         }
-        return weightedSignal;
+        return coefficients;
     }
 
+    /**
+     * Bilinear transform of the analog A-weighting filter, without frequency pre-warping
+     * @param samplingRate Sampling rate [Hz]
+     * @return Numerator and denominator coefficients
+     */
+    static double[][] designCoefficients(int samplingRate) {
+        final double c = 2. * samplingRate;
+        // Four zeros at 0 Hz, two zeros at the Nyquist frequency
+        double[] num = new double[]{1};
+        for(int i = 0; i < 4; i++) {
+            num = polynomialProduct(num, new double[]{c, -c});
+        }
+        for(int i = 0; i < 2; i++) {
+            num = polynomialProduct(num, new double[]{1, 1});
+        }
+        double[] den = new double[]{1};
+        for(double poleFrequency : new double[]{F1, F1, F2, F3, F4, F4}) {
+            final double w = 2 * Math.PI * poleFrequency;
+            den = polynomialProduct(den, new double[]{c + w, w - c});
+        }
+        final double gain = Math.pow(2 * Math.PI * F4, 2) * Math.pow(10, A1000 / 20);
+        final double a0 = den[0];
+        for(int i = 0; i < num.length; i++) {
+            num[i] *= gain / a0;
+        }
+        for(int i = 0; i < den.length; i++) {
+            den[i] /= a0;
+        }
+        return new double[][]{num, den};
+    }
 
+    /**
+     * @param p1 Polynomial coefficients
+     * @param p2 Polynomial coefficients
+     * @return Coefficients of the product of the two polynomials
+     */
+    private static double[] polynomialProduct(double[] p1, double[] p2) {
+        double[] product = new double[p1.length + p2.length - 1];
+        for(int i = 0; i < p1.length; i++) {
+            for(int j = 0; j < p2.length; j++) {
+                product[i + j] += p1[i] * p2[j];
+            }
+        }
+        return product;
+    }
 
+    /**
+     * Clear the filter state, the next sample is processed as the beginning of a new signal
+     */
+    public void reset() {
+        Arrays.fill(z, 0);
+    }
 
+    /**
+     * Transposed direct form II filtering of one sample
+     * @param sample Input sample
+     * @return A-weighted sample
+     */
+    double filterSample(double sample) {
+        final double[] b = numeratorCoefficients;
+        final double[] a = denominatorCoefficients;
+        final double weighted = b[0] * sample + z[0];
+        for (int k = 0; k < ORDER - 2; k++) {
+            z[k] = b[k + 1] * sample + z[k + 1] - a[k + 1] * weighted;
+        }
+        z[ORDER - 2] = b[ORDER - 1] * sample - a[ORDER - 1] * weighted;
+        return weighted;
+    }
+
+    /**
+     * In place A-weighting of the provided signal
+     * @param signal Raw time signal, replaced by the A-weighted signal
+     */
+    public void filter(double[] signal) {
+        filter(signal, 0, signal.length);
+    }
+
+    /**
+     * In place A-weighting of a part of the provided signal
+     * @param signal Raw time signal, replaced by the A-weighted signal
+     * @param offset First sample to filter
+     * @param length Number of samples to filter
+     */
+    public void filter(double[] signal, int offset, int length) {
+        for (int idT = offset; idT < offset + length; idT++) {
+            signal[idT] = filterSample(signal[idT]);
+        }
+    }
+
+    /**
+     * In place A-weighting of the provided signal
+     * @param signal Raw time signal, replaced by the A-weighted signal
+     */
+    public void filter(float[] signal) {
+        for (int idT = 0; idT < signal.length; idT++) {
+            signal[idT] = (float) filterSample(signal[idT]);
+        }
+    }
+
+    /**
+     * A-weighting of audio samples
+     * @param input Raw audio samples
+     * @param inputOffset First sample to filter
+     * @param output A-weighted samples destination, null to only update the filter state
+     * @param outputOffset Index of the first weighted sample in output
+     * @param length Number of samples to filter
+     */
+    public void filter(short[] input, int inputOffset, float[] output, int outputOffset, int length) {
+        for (int idT = 0; idT < length; idT++) {
+            final double weighted = filterSample(input[inputOffset + idT]);
+            if(output != null) {
+                output[outputOffset + idT] = (float) weighted;
+            }
+        }
+    }
+
+    /**
+     * A-weighting of the raw time signal
+     * Second order section filtering
+     * @param inputSignal Raw time signal
+     * @return A-weighted time signal
+     */
+    public static double[] aWeightingSignal(double[] inputSignal) {
+        return aWeightingSignal(inputSignal, DEFAULT_SAMPLING_RATE);
+    }
+
+    /**
+     * A-weighting of the raw time signal
+     * Second order section filtering
+     * @param inputSignal Raw time signal
+     * @param samplingRate Sampling rate of the signal [Hz]
+     * @return A-weighted time signal
+     */
+    public static double[] aWeightingSignal(double[] inputSignal, int samplingRate) {
+        double[] weightedSignal = Arrays.copyOf(inputSignal, inputSignal.length);
+        new AWeighting(samplingRate).filter(weightedSignal);
+        return weightedSignal;
+    }
 
     /**
      * A-weighting of the raw time signal
@@ -99,24 +274,19 @@ public class AWeighting {
      * @return A-weighted time signal
      */
     public static float[] aWeightingSignal(float[] inputSignal) {
+        return aWeightingSignal(inputSignal, DEFAULT_SAMPLING_RATE);
+    }
 
-        int signalLength = inputSignal.length;
-        int order = Math.max(denominator.length, numerator.length);
-        float[] weightedSignal = new float[signalLength];
-        // Filter delays
-        float[][] z = new float[order-1][signalLength];
-
-        for (int idT = 0; idT < signalLength; idT++){
-            // Avoid iteration idT=0 exception (z[0][idT-1]=0)
-            weightedSignal[idT] = (float)(numerator[0]*inputSignal[idT] + (idT == 0 ? 0 : z[0][idT-1]));
-            // Avoid iteration idT=0 exception (z[1][idT-1]=0)
-            z[0][idT] = (float)(numerator[1]*inputSignal[idT] + (idT == 0 ? 0 : z[1][idT-1]) - denominator[1]*inputSignal[idT]);
-            for (int k = 0; k<order-2; k++){
-                // Avoid iteration idT=0 exception (z[k+1][idT-1]=0)
-                z[k][idT] = (float)(numerator[k+1]*inputSignal[idT] + (idT ==0 ? 0 : z[k+1][idT-1]) - denominator[k+1]*weightedSignal[idT]);
-            }
-            z[order-2][idT] = (float)(numerator[order-1]*inputSignal[idT] - denominator[order-1]*weightedSignal[idT]);
-        }
+    /**
+     * A-weighting of the raw time signal
+     * Second order section filtering
+     * @param inputSignal Raw time signal
+     * @param samplingRate Sampling rate of the signal [Hz]
+     * @return A-weighted time signal
+     */
+    public static float[] aWeightingSignal(float[] inputSignal, int samplingRate) {
+        float[] weightedSignal = Arrays.copyOf(inputSignal, inputSignal.length);
+        new AWeighting(samplingRate).filter(weightedSignal);
         return weightedSignal;
     }
 }
\ No newline at end of file
@@ -109,13 +109,24 @@ public class AcousticIndicators {
     }
 
     public static double tukeyWindow(float[] signal, double tukey_alpha) {
+        return tukeyWindow(signal, signal.length, tukey_alpha);
+    }
+
+    /**
+     * Apply a Tukey window to the first samples of a signal
+     * @param signal time signal
+     * @param length Number of samples of the window, following samples are not modified
+     * @param tukey_alpha Ratio of the window in the cosine tapers
+     * @return Sum of the squared window coefficients
+     */
+    public static double tukeyWindow(float[] signal, int length, double tukey_alpha) {
         double energy_correction = 0;
-        int index_begin_flat = (int)((tukey_alpha / 2) * signal.length);
-        int index_end_flat = signal.length - index_begin_flat;
+        int index_begin_flat = (int)((tukey_alpha / 2) * length);
+        int index_end_flat = length - index_begin_flat;
         double window_value;
         // Begin Hann part
         for(int i=0; i < index_begin_flat; i++) {
-            window_value = (0.5 * (1 + Math.cos(2 * Math.PI / tukey_alpha * ((i / (float)signal.length) - tukey_alpha / 2))));
+            window_value = (0.5 * (1 + Math.cos(2 * Math.PI / tukey_alpha * ((i / (float)length) - tukey_alpha / 2))));
             energy_correction += window_value * window_value;
             signal[i] *= window_value;
         }
@@ -123,8 +134,8 @@ public class AcousticIndicators {
         energy_correction += index_end_flat - index_begin_flat;
         // No changes
         // End Hann part
-        for(int i=index_end_flat; i < signal.length; i++) {
-            window_value = (0.5 * (1 + Math.cos(2 * Math.PI / tukey_alpha * ((i / (float)signal.length) - 1 + tukey_alpha / 2))));
+        for(int i=index_end_flat; i < length; i++) {
+            window_value = (0.5 * (1 + Math.cos(2 * Math.PI / tukey_alpha * ((i / (float)length) - 1 + tukey_alpha / 2))));
             energy_correction += window_value * window_value;
             signal[i] *= window_value;
         }
@@ -136,11 +147,21 @@ public class AcousticIndicators {
      * @return the windowed signal
      */
     public static double hannWindow(float[] signal) {
+        return hannWindow(signal, signal.length);
+    }
+
+    /**
+     * Apply a Hanning window to the first samples of a signal
+     * @param signal time signal
+     * @param length Number of samples of the window, following samples are not modified
+     * @return Sum of the squared window coefficients
+     */
+    public static double hannWindow(float[] signal, int length) {
         double energyCorrection = 0;
         // Iterate until the last line of the data buffer
-        for (int n = 1; n < signal.length; n++) {
+        for (int n = 1; n < length; n++) {
             // reduce unnecessarily performed frequency part of each and every frequency
-            double coeff = 0.5 * (1 - Math.cos((2 * Math.PI * n) / (signal.length - 1)));
+            double coeff = 0.5 * (1 - Math.cos((2 * Math.PI * n) / (length - 1)));
             signal[n] *= coeff;
             energyCorrection += coeff * coeff;
         }
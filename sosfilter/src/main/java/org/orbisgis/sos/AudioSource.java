@@ -0,0 +1,80 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Input of 16 bits signed mono samples of the measurement pipeline: the microphone of the device, the replay of a
+ * recording or a generated signal. The source is read by a single capture thread:
+ * <pre>
+ * source.start();
+ * short[] buffer = new short[source.getBufferSize()];
+ * int read;
+ * while((read = source.read(buffer, 0, buffer.length)) != -1) {
+ *     window.pushSample(buffer, 0, read);
+ * }
+ * source.close();
+ * </pre>
+ */
+public interface AudioSource extends Closeable {
+    /**
+     * @return Sampling rate of the samples
+     */
+    int getSampleRate();
+
+    /**
+     * @return Number of samples of each read
+     */
+    int getBufferSize();
+
+    /**
+     * @return True if the samples are produced at the sampling rate whatever the reader does, as a microphone.
+     * The capture drops the samples of a real time source when the processing is late, other sources are read only
+     * when the processing is ready.
+     */
+    boolean isRealTime();
+
+    /**
+     * Start the capture, called by the capture thread before the first read
+     * @throws IOException If the source can not be started
+     */
+    void start() throws IOException;
+
+    /**
+     * Read the next samples, blocking until they are available
+     * @param buffer Destination array
+     * @param offset First index to fill
+     * @param length Maximal number of samples to read
+     * @return Number of samples read, -1 if the end of the source has been reached
+     * @throws IOException On read error
+     */
+    int read(short[] buffer, int offset, int length) throws IOException;
+}
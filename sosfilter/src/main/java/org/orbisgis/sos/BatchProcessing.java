@@ -0,0 +1,483 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line reprocessing of raw or WAV recordings into third octave band levels, one row per second.
+ * <pre>
+ * java org.orbisgis.sos.BatchProcessing [options] file|directory|@fileList ...
+ * </pre>
+ * Each input file is written next to it (or in -output directory) with the .csv or .bin extension.
+ * The binary output is big endian: the band count (int), the band frequencies (float), then the band levels
+ * (float) of each second.
+ */
+public class BatchProcessing {
+    private static final List<String> VALUED_OPTIONS = Arrays.asList("-engine", "-format", "-threads", "-bands",
+            "-rate", "-byteorder", "-dbfs", "-gain", "-output");
+    public enum ENGINE {SOS, FFT}
+    public enum FORMAT {CSV, BINARY}
+
+    private ENGINE engine = ENGINE.SOS;
+    private FORMAT format = FORMAT.CSV;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int rawSamplingRate = 44100;
+    private ByteOrder rawByteOrder = ByteOrder.LITTLE_ENDIAN;
+    private ThirdOctaveBandsFiltering.FREQUENCY_BANDS frequencyBands = ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED;
+    private boolean aWeighting = false;
+    private double dbFsReference = FFTSignalProcessing.DB_FS_REFERENCE;
+    private double gain = 0;
+    private File outputDirectory;
+
+    public void setEngine(ENGINE engine) {
+        this.engine = engine;
+    }
+
+    public void setFormat(FORMAT format) {
+        this.format = format;
+    }
+
+    /**
+     * @param threads Number of files processed concurrently
+     */
+    public void setThreads(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param rawSamplingRate Sampling rate of the raw files, WAV files use the rate of their header
+     * @param rawByteOrder Byte order of the raw files
+     */
+    public void setRawFormat(int rawSamplingRate, ByteOrder rawByteOrder) {
+        this.rawSamplingRate = rawSamplingRate;
+        this.rawByteOrder = rawByteOrder;
+    }
+
+    public void setFrequencyBands(ThirdOctaveBandsFiltering.FREQUENCY_BANDS frequencyBands) {
+        this.frequencyBands = frequencyBands;
+    }
+
+    public void setAWeighting(boolean aWeighting) {
+        this.aWeighting = aWeighting;
+    }
+
+    /**
+     * @param dbFsReference Level in dB of a full scale signal, see {@link FFTSignalProcessing#DB_FS_REFERENCE}
+     * @param gain Calibration gain in dB added to the levels
+     */
+    public void setCalibration(double dbFsReference, double gain) {
+        this.dbFsReference = dbFsReference;
+        this.gain = gain;
+    }
+
+    /**
+     * @param outputDirectory Directory of the output files, null to write them next to the input files
+     */
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    private static boolean isAudioFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        return file.isFile() && (name.endsWith(".raw") || name.endsWith(".wav"));
+    }
+
+    /**
+     * @param arguments Files, directories (searched recursively) or @fileList text files with one path per line
+     * @return Audio files to process
+     * @throws IOException If a file list cannot be read
+     */
+    public static List<File> listFiles(List<String> arguments) throws IOException {
+        List<File> files = new ArrayList<File>();
+        for(String argument : arguments) {
+            if(argument.startsWith("@")) {
+                BufferedReader reader = new BufferedReader(new FileReader(argument.substring(1)));
+                try {
+                    String line;
+                    while((line = reader.readLine()) != null) {
+                        if(!line.trim().isEmpty()) {
+                            addFiles(new File(line.trim()), files);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } else {
+                addFiles(new File(argument), files);
+            }
+        }
+        return files;
+    }
+
+    private static void addFiles(File file, List<File> files) {
+        if(file.isDirectory()) {
+            File[] children = file.listFiles();
+            if(children != null) {
+                Arrays.sort(children);
+                for(File child : children) {
+                    addFiles(child, files);
+                }
+            }
+        } else if(isAudioFile(file)) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * @param input Audio file
+     * @return Output file of the levels
+     */
+    public File getOutputFile(File input) {
+        String name = input.getName();
+        int extension = name.lastIndexOf('.');
+        name = (extension > 0 ? name.substring(0, extension) : name) + (format == FORMAT.CSV ? ".csv" : ".bin");
+        return new File(outputDirectory != null ? outputDirectory : input.getAbsoluteFile().getParentFile(), name);
+    }
+
+    private PcmStreamReader open(File file) throws IOException {
+        if(file.getName().toLowerCase(Locale.ROOT).endsWith(".wav")) {
+            return PcmStreamReader.openWav(file);
+        } else {
+            return PcmStreamReader.openRaw(file, rawSamplingRate, rawByteOrder);
+        }
+    }
+
+    /**
+     * Process one file
+     * @param file Raw or WAV recording
+     * @return Number of processed seconds
+     * @throws IOException On read or write error
+     */
+    public int processFile(File file) throws IOException {
+        PcmStreamReader reader = open(file);
+        try {
+            double[] frequencies = ThirdOctaveBandsFiltering.getStandardFrequencies(frequencyBands);
+            final LevelsWriter writer = format == FORMAT.CSV ? new CsvLevelsWriter(getOutputFile(file), frequencies) :
+                    new BinaryLevelsWriter(getOutputFile(file), frequencies);
+            try {
+                if (engine == ENGINE.SOS) {
+                    return processSOS(reader, writer);
+                } else {
+                    return processFFT(reader, frequencies, writer);
+                }
+            } finally {
+                writer.close();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private int processSOS(PcmStreamReader reader, final LevelsWriter writer) throws IOException {
+        SOSSignalProcessing signalProcessing = new SOSSignalProcessing(reader.getSamplingRate(), frequencyBands);
+        signalProcessing.setAweighting(aWeighting);
+        final IOException[] writeError = new IOException[1];
+        final int[] seconds = new int[1];
+        signalProcessing.processAudio(reader, 1 / Math.pow(10, (dbFsReference + gain) / 20),
+                new SOSSignalProcessing.LeqListener() {
+                    @Override
+                    public void onLeq(double[] leq) {
+                        if(writeError[0] == null) {
+                            try {
+                                writer.write(leq);
+                                seconds[0]++;
+                            } catch (IOException ex) {
+                                writeError[0] = ex;
+                            }
+                        }
+                    }
+                });
+        if(writeError[0] != null) {
+            throw writeError[0];
+        }
+        return seconds[0];
+    }
+
+    private int processFFT(PcmStreamReader reader, double[] frequencies, LevelsWriter writer) throws IOException {
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, reader.getSamplingRate(), frequencies,
+                AcousticIndicators.TIMEPERIOD_SLOW, aWeighting, dbFsReference + gain, false);
+        short[] frame = new short[window.getMaximalBufferSize()];
+        double[] leq = new double[frequencies.length];
+        int seconds = 0;
+        while(reader.read(frame) == frame.length) {
+            window.pushSample(frame);
+            FFTSignalProcessing.ProcessingResult result = window.getLastWindowMean();
+            window.cleanWindows();
+            float[] levels = result.getdBaLevels();
+            for(int idFreq = 0; idFreq < leq.length; idFreq++) {
+                leq[idFreq] = levels[idFreq];
+            }
+            writer.write(leq);
+            seconds++;
+        }
+        return seconds;
+    }
+
+    /**
+     * Process the files concurrently
+     * @param files Raw or WAV recordings
+     * @return Processing report
+     * @throws InterruptedException If interrupted while waiting for the workers
+     */
+    public Report process(List<File> files) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        Report report = new Report();
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>(files.size());
+            for (final File file : files) {
+                results.add(executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return processFile(file);
+                    }
+                }));
+            }
+            for (int idFile = 0; idFile < files.size(); idFile++) {
+                try {
+                    report.audioSeconds += results.get(idFile).get();
+                    report.processedFiles++;
+                } catch (ExecutionException ex) {
+                    report.errors.add(files.get(idFile) + ": " + ex.getCause().getMessage());
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        report.wallSeconds = (System.nanoTime() - start) / 1e9;
+        return report;
+    }
+
+    /**
+     * Result of {@link #process(List)}
+     */
+    public static class Report {
+        private int processedFiles = 0;
+        private long audioSeconds = 0;
+        private double wallSeconds = 0;
+        private final List<String> errors = new ArrayList<String>();
+
+        public int getProcessedFiles() {
+            return processedFiles;
+        }
+
+        /**
+         * @return Processed audio duration in seconds
+         */
+        public long getAudioSeconds() {
+            return audioSeconds;
+        }
+
+        /**
+         * @return Processing duration in seconds
+         */
+        public double getWallSeconds() {
+            return wallSeconds;
+        }
+
+        /**
+         * @return Seconds of audio processed per second
+         */
+        public double getThroughput() {
+            return wallSeconds > 0 ? audioSeconds / wallSeconds : 0;
+        }
+
+        /**
+         * @return Error message of each failed file
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * Destination of the band levels of each second
+     */
+    private interface LevelsWriter extends Closeable {
+        void write(double[] leq) throws IOException;
+    }
+
+    private static class CsvLevelsWriter implements LevelsWriter {
+        private final BufferedWriter writer;
+        private int second = 0;
+
+        CsvLevelsWriter(File file, double[] frequencies) throws IOException {
+            writer = new BufferedWriter(new FileWriter(file));
+            writer.write("second");
+            for(double frequency : frequencies) {
+                writer.write(String.format(Locale.ROOT, ",%.0f", frequency));
+            }
+            writer.newLine();
+        }
+
+        @Override
+        public void write(double[] leq) throws IOException {
+            writer.write(Integer.toString(second++));
+            for(double level : leq) {
+                writer.write(String.format(Locale.ROOT, ",%.2f", level));
+            }
+            writer.newLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    private static class BinaryLevelsWriter implements LevelsWriter {
+        private final DataOutputStream outputStream;
+
+        BinaryLevelsWriter(File file, double[] frequencies) throws IOException {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            outputStream.writeInt(frequencies.length);
+            for(double frequency : frequencies) {
+                outputStream.writeFloat((float) frequency);
+            }
+        }
+
+        @Override
+        public void write(double[] leq) throws IOException {
+            for(double level : leq) {
+                outputStream.writeFloat((float) level);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: BatchProcessing [options] file|directory|@fileList ...\n" +
+                "  -engine sos|fft        Third octave SOS filter bank or FFT window (default sos)\n" +
+                "  -format csv|binary     Output format (default csv)\n" +
+                "  -threads n             Files processed concurrently (default number of processors)\n" +
+                "  -bands reduced|full    Frequency bands (default reduced)\n" +
+                "  -aweighting            A-weighted band levels\n" +
+                "  -rate hz               Sampling rate of raw files (default 44100)\n" +
+                "  -byteorder little|big  Byte order of raw files (default little)\n" +
+                "  -dbfs db               Level of a full scale signal (default " +
+                String.format(Locale.ROOT, "%.2f", FFTSignalProcessing.DB_FS_REFERENCE) + ")\n" +
+                "  -gain db               Calibration gain added to the levels (default 0)\n" +
+                "  -output directory      Output directory (default next to the input files)");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BatchProcessing batchProcessing = new BatchProcessing();
+        List<String> inputs = new ArrayList<String>();
+        int rate = 44100;
+        ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+        double dbFs = FFTSignalProcessing.DB_FS_REFERENCE;
+        double gain = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-aweighting".equals(arg)) {
+                    batchProcessing.setAWeighting(true);
+                } else if (arg.startsWith("-")) {
+                    if (!VALUED_OPTIONS.contains(arg)) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    if (i + 1 >= args.length) {
+                        throw new IllegalArgumentException("Missing value of " + arg);
+                    }
+                    String value = args[++i];
+                    if ("-engine".equals(arg)) {
+                        batchProcessing.setEngine(ENGINE.valueOf(value.toUpperCase(Locale.ROOT)));
+                    } else if ("-format".equals(arg)) {
+                        batchProcessing.setFormat(FORMAT.valueOf(value.toUpperCase(Locale.ROOT)));
+                    } else if ("-threads".equals(arg)) {
+                        batchProcessing.setThreads(Integer.parseInt(value));
+                    } else if ("-bands".equals(arg)) {
+                        batchProcessing.setFrequencyBands(
+                                ThirdOctaveBandsFiltering.FREQUENCY_BANDS.valueOf(value.toUpperCase(Locale.ROOT)));
+                    } else if ("-rate".equals(arg)) {
+                        rate = Integer.parseInt(value);
+                    } else if ("-byteorder".equals(arg)) {
+                        byteOrder = "big".equalsIgnoreCase(value) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+                    } else if ("-dbfs".equals(arg)) {
+                        dbFs = Double.parseDouble(value);
+                    } else if ("-gain".equals(arg)) {
+                        gain = Double.parseDouble(value);
+                    } else if ("-output".equals(arg)) {
+                        batchProcessing.setOutputDirectory(new File(value));
+                    }
+                } else {
+                    inputs.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+        if(inputs.isEmpty()) {
+            printUsage();
+            System.exit(1);
+        }
+        batchProcessing.setRawFormat(rate, byteOrder);
+        batchProcessing.setCalibration(dbFs, gain);
+        List<File> files = listFiles(inputs);
+        Report report = batchProcessing.process(files);
+        for(String error : report.getErrors()) {
+            System.err.println(error);
+        }
+        System.out.println(String.format(Locale.ROOT, "%d/%d files, %d s of audio processed in %.1f s (%.1f s/s)",
+                report.getProcessedFiles(), files.size(), report.getAudioSeconds(), report.getWallSeconds(),
+                report.getThroughput()));
+        if(!report.getErrors().isEmpty()) {
+            System.exit(2);
+        }
+    }
+}
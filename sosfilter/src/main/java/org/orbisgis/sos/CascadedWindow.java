@@ -0,0 +1,198 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.util.Arrays;
+
+/**
+ * Energetic aggregation of the results of consecutive short windows into the levels of a longer window, such as the
+ * 1 s levels from eight 125 ms results. The long window levels are derived without a second FFT of the samples. The
+ * thin spectrum is not aggregated, as its resolution is the one of the short windows. The pending short windows are
+ * removed when the weighted levels appear or disappear, or when the decibel conversion changes.
+ */
+public class CascadedWindow {
+    private final int windowCount;
+    private int count = 0;
+    private double[] bandEnergySum;
+    private double globalEnergySum;
+    private double[] weightedEnergySum;
+    // True if the pending short windows have weighted levels
+    private boolean pendingWeighted = false;
+    private long lastId;
+    // Global energies of the last short windows, for the moving level
+    private final double[] lastGlobalEnergies;
+    private int lastCursor = 0;
+    private int lastCount = 0;
+    private DecibelConversion decibelConversion = DecibelConversion.EXACT;
+
+    /**
+     * @param windowCount Number of short windows in a long window
+     */
+    public CascadedWindow(int windowCount) {
+        if(windowCount < 1) {
+            throw new IllegalArgumentException("Window count must be strictly positive");
+        }
+        this.windowCount = windowCount;
+        this.lastGlobalEnergies = new double[windowCount];
+    }
+
+    /**
+     * @param shortWindowTime Duration of the aggregated windows [s]
+     * @param longWindowTime Duration of the long window, a multiple of the short window duration [s]
+     */
+    public CascadedWindow(double shortWindowTime, double longWindowTime) {
+        this((int) Math.round(longWindowTime / shortWindowTime));
+    }
+
+    /**
+     * @param decibelConversion Conversion between the levels of the short windows and their energies, the pending
+     *                          short windows and the moving level history are removed when it changes
+     */
+    public void setDecibelConversion(DecibelConversion decibelConversion) {
+        if(decibelConversion != this.decibelConversion) {
+            this.decibelConversion = decibelConversion;
+            clear();
+        }
+    }
+
+    public DecibelConversion getDecibelConversion() {
+        return decibelConversion;
+    }
+
+    public int getWindowCount() {
+        return windowCount;
+    }
+
+    /**
+     * @return Number of short windows of the pending long window
+     */
+    public int getPendingCount() {
+        return count;
+    }
+
+    /**
+     * Add the result of the next short window
+     * @param result Short window result
+     * @return The long window result once the short windows are complete, null otherwise
+     */
+    public FFTSignalProcessing.ProcessingResult addResult(FFTSignalProcessing.ProcessingResult result) {
+        float[] weightedLevels = result.weightedLevels;
+        if(count > 0 && (weightedLevels != null) != pendingWeighted) {
+            // The weighted levels would not be the mean of all the pending short windows
+            clearPending();
+        }
+        pendingWeighted = weightedLevels != null;
+        float[] levels = result.getdBaLevels();
+        if(bandEnergySum == null || bandEnergySum.length != levels.length) {
+            bandEnergySum = new double[levels.length];
+        }
+        for(int i = 0; i < levels.length; i++) {
+            bandEnergySum[i] += decibelConversion.toEnergy(levels[i]);
+        }
+        final double globalEnergy = decibelConversion.toEnergy(result.getGlobaldBaValue());
+        globalEnergySum += globalEnergy;
+        if(weightedLevels != null) {
+            if(weightedEnergySum == null || weightedEnergySum.length != weightedLevels.length) {
+                weightedEnergySum = new double[weightedLevels.length];
+            }
+            for(int i = 0; i < weightedLevels.length; i++) {
+                weightedEnergySum[i] += decibelConversion.toEnergy(weightedLevels[i]);
+            }
+        }
+        lastId = result.getId();
+        lastGlobalEnergies[lastCursor] = globalEnergy;
+        lastCursor = (lastCursor + 1) % lastGlobalEnergies.length;
+        lastCount = Math.min(lastCount + 1, lastGlobalEnergies.length);
+        count++;
+        if(count == windowCount) {
+            return flush();
+        }
+        return null;
+    }
+
+    /**
+     * @return Mean level of the last short windows up to the long window duration, overlapping the long windows.
+     * NaN if no result has been added.
+     */
+    public double getMovingLevel() {
+        if(lastCount == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for(int i = 0; i < lastCount; i++) {
+            sum += lastGlobalEnergies[i];
+        }
+        return decibelConversion.toDecibel(sum / lastCount);
+    }
+
+    /**
+     * Complete the pending long window with the added short windows
+     * @return Mean of the pending short windows, null if none
+     */
+    public FFTSignalProcessing.ProcessingResult flush() {
+        if(count == 0) {
+            return null;
+        }
+        float[] dBaLevels = new float[bandEnergySum.length];
+        for(int i = 0; i < dBaLevels.length; i++) {
+            dBaLevels[i] = (float) decibelConversion.toDecibel(bandEnergySum[i] / count);
+        }
+        float[] weightedLevels = null;
+        if(pendingWeighted) {
+            weightedLevels = new float[weightedEnergySum.length];
+            for(int i = 0; i < weightedLevels.length; i++) {
+                weightedLevels[i] = (float) decibelConversion.toDecibel(weightedEnergySum[i] / count);
+            }
+        }
+        FFTSignalProcessing.ProcessingResult result = new FFTSignalProcessing.ProcessingResult(lastId, null,
+                dBaLevels, (float) decibelConversion.toDecibel(globalEnergySum / count), weightedLevels);
+        clearPending();
+        return result;
+    }
+
+    private void clearPending() {
+        count = 0;
+        if(bandEnergySum != null) {
+            Arrays.fill(bandEnergySum, 0);
+        }
+        globalEnergySum = 0;
+        if(weightedEnergySum != null) {
+            Arrays.fill(weightedEnergySum, 0);
+        }
+    }
+
+    /**
+     * Remove the pending short windows and the moving level history
+     */
+    public void clear() {
+        clearPending();
+        lastCount = 0;
+        lastCursor = 0;
+    }
+}
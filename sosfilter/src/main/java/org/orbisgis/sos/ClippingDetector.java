@@ -0,0 +1,282 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+/**
+ * Streaming detector of clipped and saturated audio samples. The optional software gain is applied in the same pass
+ * over the samples. Counters are cumulative from the first sample, a short history of the counters at the end of each
+ * buffer gives the statistics of a range of samples, such as the samples of a processed window. Captured samples
+ * dropped before being processed are counted too, they are not part of the sample indices.
+ */
+public class ClippingDetector {
+    /** Samples at the full scale, clipped by the device or by the software gain */
+    public static final int FLAG_CLIPPED = 1;
+    /** Runs of identical samples of high amplitude, saturation below the full scale */
+    public static final int FLAG_FLAT_TOPPED = 2;
+    /** Mean value of the samples away from zero */
+    public static final int FLAG_DC_OFFSET = 4;
+    /** Captured samples dropped before the buffers of the range, the samples of the range are not contiguous */
+    public static final int FLAG_DROPPED_SAMPLES = 8;
+
+    public static final int DEFAULT_FLAT_RUN_LENGTH = 4;
+    public static final short DEFAULT_FLAT_THRESHOLD = Short.MAX_VALUE / 2;
+    public static final double DEFAULT_DC_OFFSET_THRESHOLD = Short.MAX_VALUE / 100.;
+    public static final int DEFAULT_HISTORY_SIZE = 256;
+
+    private final int flatRunLength;
+    private final short flatThreshold;
+    private final double dcOffsetThreshold;
+    // Cumulative counters at the end of the last buffers, in a circular buffer
+    private final long[] historySamples;
+    private final long[] historyFullScale;
+    private final long[] historyFlat;
+    private final long[] historySum;
+    private final long[] historyDropped;
+    private int historyCursor = 0;
+    private int historyCount = 0;
+    private long totalSamples = 0;
+    private long totalFullScale = 0;
+    private long totalFlat = 0;
+    private long totalSum = 0;
+    private long totalDropped = 0;
+    // Flat run state carried between buffers
+    private short previousSample = 0;
+    private int runLength = 0;
+
+    public ClippingDetector() {
+        this(DEFAULT_FLAT_RUN_LENGTH, DEFAULT_FLAT_THRESHOLD, DEFAULT_DC_OFFSET_THRESHOLD, DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * @param flatRunLength Minimal number of identical consecutive samples of a flat top
+     * @param flatThreshold Minimal absolute value of the samples of a flat top
+     * @param dcOffsetThreshold Absolute mean value of the samples over which the DC offset is flagged
+     * @param historySize Number of buffers kept in order to compute the statistics of past samples
+     */
+    public ClippingDetector(int flatRunLength, short flatThreshold, double dcOffsetThreshold, int historySize) {
+        this.flatRunLength = flatRunLength;
+        this.flatThreshold = flatThreshold;
+        this.dcOffsetThreshold = dcOffsetThreshold;
+        this.historySamples = new long[historySize];
+        this.historyFullScale = new long[historySize];
+        this.historyFlat = new long[historySize];
+        this.historySum = new long[historySize];
+        this.historyDropped = new long[historySize];
+    }
+
+    /**
+     * @return Number of processed samples
+     */
+    public synchronized long getProcessedSamples() {
+        return totalSamples;
+    }
+
+    /**
+     * Count captured samples that are dropped instead of being processed, the next processed buffer is flagged with
+     * {@link #FLAG_DROPPED_SAMPLES}
+     * @param length Number of dropped samples
+     */
+    public synchronized void drop(long length) {
+        totalDropped += length;
+    }
+
+    /**
+     * Apply the gain in place and count the clipped samples
+     * @param buffer Audio samples, multiplied by the gain and clamped to the full scale
+     * @param offset First sample
+     * @param length Number of samples
+     * @param gain Factor on the signal, 1 for no gain
+     */
+    public void process(short[] buffer, int offset, int length, float gain) {
+        final boolean hasGain = Float.compare(1, gain) != 0;
+        long fullScale = 0;
+        long flat = 0;
+        long sum = 0;
+        short previous = previousSample;
+        int run = runLength;
+        for(int i = offset; i < offset + length; i++) {
+            short sample = buffer[i];
+            if(hasGain) {
+                sample = (short) (Math.max(Math.min(sample * gain, Short.MAX_VALUE), Short.MIN_VALUE));
+                buffer[i] = sample;
+            }
+            if(sample == Short.MAX_VALUE || sample == Short.MIN_VALUE) {
+                fullScale++;
+            }
+            if(sample == previous && (sample >= flatThreshold || sample <= -flatThreshold)) {
+                run++;
+                if(run == flatRunLength) {
+                    flat += flatRunLength;
+                } else if(run > flatRunLength) {
+                    flat++;
+                }
+            } else {
+                run = 1;
+            }
+            previous = sample;
+            sum += sample;
+        }
+        previousSample = previous;
+        runLength = run;
+        synchronized (this) {
+            totalSamples += length;
+            totalFullScale += fullScale;
+            totalFlat += flat;
+            totalSum += sum;
+            historySamples[historyCursor] = totalSamples;
+            historyFullScale[historyCursor] = totalFullScale;
+            historyFlat[historyCursor] = totalFlat;
+            historySum[historyCursor] = totalSum;
+            historyDropped[historyCursor] = totalDropped;
+            historyCursor = (historyCursor + 1) % historySamples.length;
+            historyCount = Math.min(historyCount + 1, historySamples.length);
+        }
+    }
+
+    /**
+     * @param sampleIndex Sample index
+     * @return Index in the history of the last buffer ending at or before the sample index, -1 if before the
+     * first buffer
+     */
+    private int findHistory(long sampleIndex) {
+        int found = -1;
+        for(int i = 0; i < historyCount; i++) {
+            int index = (historyCursor - 1 - i + historySamples.length) % historySamples.length;
+            found = index;
+            if(historySamples[index] <= sampleIndex) {
+                return index;
+            }
+        }
+        // Older than the history, the oldest buffer is used
+        return historyCount == historySamples.length ? found : -1;
+    }
+
+    /**
+     * Statistics of a range of samples, at the resolution of the processed buffers
+     * @param beginSample Index of the first sample
+     * @param endSample Index following the last sample
+     * @return Statistics of the buffers ending in the range
+     */
+    public synchronized Statistics getStatistics(long beginSample, long endSample) {
+        int begin = findHistory(beginSample);
+        int end = findHistory(endSample);
+        long samples = end == -1 ? 0 : historySamples[end];
+        long fullScale = end == -1 ? 0 : historyFullScale[end];
+        long flat = end == -1 ? 0 : historyFlat[end];
+        long sum = end == -1 ? 0 : historySum[end];
+        long dropped = end == -1 ? 0 : historyDropped[end];
+        if(begin != -1) {
+            samples -= historySamples[begin];
+            fullScale -= historyFullScale[begin];
+            flat -= historyFlat[begin];
+            sum -= historySum[begin];
+            dropped -= historyDropped[begin];
+        }
+        int flags = 0;
+        if(fullScale > 0) {
+            flags |= FLAG_CLIPPED;
+        }
+        if(flat > 0) {
+            flags |= FLAG_FLAT_TOPPED;
+        }
+        double dcOffset = samples > 0 ? sum / (double) samples : 0;
+        if(Math.abs(dcOffset) > dcOffsetThreshold) {
+            flags |= FLAG_DC_OFFSET;
+        }
+        if(dropped > 0) {
+            flags |= FLAG_DROPPED_SAMPLES;
+        }
+        return new Statistics(samples, fullScale, flat, dcOffset, dropped, flags);
+    }
+
+    /**
+     * Clipping statistics of a range of samples
+     */
+    public static final class Statistics {
+        private final long samples;
+        private final long fullScaleSamples;
+        private final long flatSamples;
+        private final double dcOffset;
+        private final long droppedSamples;
+        private final int flags;
+
+        public Statistics(long samples, long fullScaleSamples, long flatSamples, double dcOffset, long droppedSamples,
+                          int flags) {
+            this.samples = samples;
+            this.fullScaleSamples = fullScaleSamples;
+            this.flatSamples = flatSamples;
+            this.dcOffset = dcOffset;
+            this.droppedSamples = droppedSamples;
+            this.flags = flags;
+        }
+
+        /**
+         * @return Number of analysed samples
+         */
+        public long getSamples() {
+            return samples;
+        }
+
+        /**
+         * @return Number of samples at the full scale
+         */
+        public long getFullScaleSamples() {
+            return fullScaleSamples;
+        }
+
+        /**
+         * @return Number of samples in flat topped runs
+         */
+        public long getFlatSamples() {
+            return flatSamples;
+        }
+
+        /**
+         * @return Mean value of the samples
+         */
+        public double getDcOffset() {
+            return dcOffset;
+        }
+
+        /**
+         * @return Number of captured samples dropped before the analysed samples
+         */
+        public long getDroppedSamples() {
+            return droppedSamples;
+        }
+
+        /**
+         * @return Combination of {@link #FLAG_CLIPPED}, {@link #FLAG_FLAT_TOPPED}, {@link #FLAG_DC_OFFSET} and
+         * {@link #FLAG_DROPPED_SAMPLES}
+         */
+        public int getFlags() {
+            return flags;
+        }
+    }
+}
@@ -147,6 +147,13 @@ public class Complex {
         return sin().divides(cos());
     }
 
+    // return a new Complex object whose value is the principal square root of this
+    public Complex sqrt() {
+        double modulus = Math.sqrt(abs());
+        double angle = phase() / 2;
+        return new Complex(modulus * Math.cos(angle), modulus * Math.sin(angle));
+    }
+
 
 
     // a static version of plus
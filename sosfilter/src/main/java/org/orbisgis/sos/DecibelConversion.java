@@ -0,0 +1,117 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+/**
+ * Conversions between decibels and energies, the squared ratio of a sound pressure over the reference pressure.
+ * {@link #EXACT} relies on {@link Math}, {@link #FAST} on linear interpolation in tables of 256 steps per octave,
+ * with a maximal error of 1e-5 dB over the whole double range.
+ */
+public enum DecibelConversion {
+    EXACT {
+        @Override
+        public double toDecibel(double energy) {
+            return 10 * Math.log10(energy);
+        }
+
+        @Override
+        public double toEnergy(double level) {
+            return Math.pow(10, level / 10);
+        }
+    },
+    FAST {
+        @Override
+        public double toDecibel(double energy) {
+            final long bits = Double.doubleToRawLongBits(energy);
+            final int exponent = (int) (bits >>> MANTISSA_BITS);
+            if(exponent <= 0 || exponent >= EXPONENT_MASK) {
+                // Zero, subnormal, negative, infinite or NaN
+                return 10 * Math.log10(energy);
+            }
+            final int index = (int) ((bits & MANTISSA_MASK) >>> INDEX_SHIFT);
+            final double fraction = (bits & FRACTION_MASK) * FRACTION_SCALE;
+            return DB_PER_OCTAVE * (exponent - EXPONENT_BIAS) + LOG_TABLE[index] + LOG_SLOPE[index] * fraction;
+        }
+
+        @Override
+        public double toEnergy(double level) {
+            final double steps = level * STEPS_PER_DB;
+            if(!(steps > -MAX_STEPS && steps < MAX_STEPS)) {
+                // Out of the normal double range, or NaN
+                return Math.pow(10, level / 10);
+            }
+            final int step = (int) Math.floor(steps);
+            final int index = step & (TABLE_SIZE - 1);
+            final double octave = Double.longBitsToDouble((long) ((step >> TABLE_BITS) + EXPONENT_BIAS)
+                    << MANTISSA_BITS);
+            return (EXP_TABLE[index] + EXP_SLOPE[index] * (steps - step)) * octave;
+        }
+    };
+
+    private static final int TABLE_BITS = 8;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int MANTISSA_BITS = 52;
+    private static final int EXPONENT_MASK = 0x7ff;
+    private static final int EXPONENT_BIAS = 1023;
+    private static final long MANTISSA_MASK = (1L << MANTISSA_BITS) - 1;
+    private static final int INDEX_SHIFT = MANTISSA_BITS - TABLE_BITS;
+    private static final long FRACTION_MASK = (1L << INDEX_SHIFT) - 1;
+    private static final double FRACTION_SCALE = 1. / (1L << INDEX_SHIFT);
+    private static final double DB_PER_OCTAVE = 10 * Math.log10(2);
+    private static final double STEPS_PER_DB = TABLE_SIZE / DB_PER_OCTAVE;
+    // Energies of normal doubles, from 2^-1022 to 2^1023
+    private static final double MAX_STEPS = (double) (EXPONENT_BIAS - 1) * TABLE_SIZE;
+    // Level of each step of the octave, and its slope over the step
+    private static final double[] LOG_TABLE = new double[TABLE_SIZE];
+    private static final double[] LOG_SLOPE = new double[TABLE_SIZE];
+    // Energy of each step of the octave, and its slope over the step
+    private static final double[] EXP_TABLE = new double[TABLE_SIZE];
+    private static final double[] EXP_SLOPE = new double[TABLE_SIZE];
+
+    static {
+        for(int i = 0; i < TABLE_SIZE; i++) {
+            LOG_TABLE[i] = 10 * Math.log10(1 + i / (double) TABLE_SIZE);
+            LOG_SLOPE[i] = 10 * Math.log10(1 + (i + 1) / (double) TABLE_SIZE) - LOG_TABLE[i];
+            EXP_TABLE[i] = Math.pow(2, i / (double) TABLE_SIZE);
+            EXP_SLOPE[i] = Math.pow(2, (i + 1) / (double) TABLE_SIZE) - EXP_TABLE[i];
+        }
+    }
+
+    /**
+     * @param energy Energy, squared pressure ratio
+     * @return Level in decibels, 10 * log10(energy)
+     */
+    public abstract double toDecibel(double energy);
+
+    /**
+     * @param level Level in decibels
+     * @return Energy, 10^(level / 10)
+     */
+    public abstract double toEnergy(double level);
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Mapping of the FFT bins to third octave bands. The band edges are the base 10 edges of NF-EN 61260, a band sums the
+ * bins whose frequency is within its edges. With partial bins, the bins on the edges are weighted by the part of the
+ * bin covered by the band instead, so the energy of a bin on the edge of two bands is shared between them.
+ * The plan depends only on the sampling rate, the window size, the bands and the partial bins option, it is immutable
+ * and shared by all the processing of the same configuration.
+ */
+public final class FFTBandPlan {
+    private static final ConcurrentMap<Key, FFTBandPlan> PLANS = new ConcurrentHashMap<Key, FFTBandPlan>();
+
+    private final int[] firstBin;
+    private final int[] lastBin;
+    private final double[] firstBinWeight;
+    private final double[] lastBinWeight;
+    private final float[] aWeighting;
+    private final boolean partialBins;
+
+    private FFTBandPlan(int samplingRate, int windowSize, double[] standardFrequencies, boolean partialBins) {
+        this.partialBins = partialBins;
+        final int bandCount = standardFrequencies.length;
+        firstBin = new int[bandCount];
+        lastBin = new int[bandCount];
+        firstBinWeight = new double[bandCount];
+        lastBinWeight = new double[bandCount];
+        aWeighting = new float[bandCount];
+        final double freqByCell = samplingRate / (double) windowSize;
+        final int maxBin = windowSize / 2 - 1;
+        int refFreq = Arrays.binarySearch(standardFrequencies, 1000);
+        for(int idBand = 0; idBand < bandCount; idBand++) {
+            int freqIndex = Arrays.binarySearch(ThirdOctaveFrequencies.STANDARD_FREQUENCIES,
+                    standardFrequencies[idBand]);
+            if(freqIndex < 0) {
+                throw new IllegalArgumentException(standardFrequencies[idBand] +
+                        " Hz is not a standard third octave band");
+            }
+            aWeighting[idBand] = (float) ThirdOctaveFrequencies.A_WEIGHTING[freqIndex];
+            // Compute lower and upper value of third-octave
+            // NF-EN 61260
+            // base 10
+            double fCenter = Math.pow(10, (idBand - refFreq) / 10.) * 1000;
+            final double fLower = fCenter * Math.pow(10, -1. / 20.);
+            final double fUpper = fCenter * Math.pow(10, 1. / 20.);
+            if(!partialBins) {
+                firstBin[idBand] = (int) (Math.ceil(fLower / freqByCell));
+                lastBin[idBand] = Math.min(maxBin, (int) (Math.floor(fUpper / freqByCell)));
+                firstBinWeight[idBand] = 1;
+                lastBinWeight[idBand] = 1;
+                continue;
+            }
+            // Bin k covers [k - 0.5, k + 0.5[ * freqByCell, positions are shifted by half a bin
+            double lowerPosition = fLower / freqByCell + 0.5;
+            double upperPosition = fUpper / freqByCell + 0.5;
+            int first = (int) Math.floor(lowerPosition);
+            int last = (int) Math.floor(upperPosition);
+            if(first > maxBin) {
+                // Band above the Nyquist frequency
+                firstBin[idBand] = maxBin + 1;
+                lastBin[idBand] = maxBin;
+                continue;
+            }
+            firstBin[idBand] = first;
+            if(first == last) {
+                firstBinWeight[idBand] = upperPosition - lowerPosition;
+                lastBin[idBand] = last;
+            } else {
+                firstBinWeight[idBand] = first + 1 - lowerPosition;
+                if(last > maxBin) {
+                    lastBin[idBand] = maxBin;
+                    lastBinWeight[idBand] = 1;
+                } else {
+                    lastBin[idBand] = last;
+                    lastBinWeight[idBand] = upperPosition - last;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param samplingRate Sampling rate [Hz]
+     * @param windowSize FFT window size
+     * @param standardFrequencies Nominal center frequencies of the bands
+     * @return Shared plan of this configuration, summing whole bins
+     */
+    public static FFTBandPlan getPlan(int samplingRate, int windowSize, double[] standardFrequencies) {
+        return getPlan(samplingRate, windowSize, standardFrequencies, false);
+    }
+
+    /**
+     * @param samplingRate Sampling rate [Hz]
+     * @param windowSize FFT window size
+     * @param standardFrequencies Nominal center frequencies of the bands
+     * @param partialBins True to weight the bins on the band edges by the part of the bin covered by the band
+     * @return Shared plan of this configuration
+     */
+    public static FFTBandPlan getPlan(int samplingRate, int windowSize, double[] standardFrequencies,
+                                      boolean partialBins) {
+        Key key = new Key(samplingRate, windowSize, standardFrequencies, partialBins);
+        FFTBandPlan plan = PLANS.get(key);
+        if(plan == null) {
+            plan = new FFTBandPlan(samplingRate, windowSize, standardFrequencies, partialBins);
+            FFTBandPlan previous = PLANS.putIfAbsent(key, plan);
+            if(previous != null) {
+                plan = previous;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @return Number of bands
+     */
+    public int getBandCount() {
+        return firstBin.length;
+    }
+
+    /**
+     * @return True if the bins on the band edges are weighted by the part of the bin covered by the band
+     */
+    public boolean isPartialBins() {
+        return partialBins;
+    }
+
+    /**
+     * @param squareAbsoluteFFT Square of the absolute value of the FFT bins
+     * @param idBand Band index
+     * @return Weighted sum of the bins of the band
+     */
+    public double getBandEnergy(float[] squareAbsoluteFFT, int idBand) {
+        final int first = firstBin[idBand];
+        final int last = lastBin[idBand];
+        if(first > last) {
+            return 0;
+        }
+        double sum = firstBinWeight[idBand] * squareAbsoluteFFT[first];
+        if(last > first) {
+            for(int idCell = first + 1; idCell < last; idCell++) {
+                sum += squareAbsoluteFFT[idCell];
+            }
+            sum += lastBinWeight[idBand] * squareAbsoluteFFT[last];
+        }
+        return sum;
+    }
+
+    /**
+     * @param idBand Band index
+     * @return A-weighting of the band [dB]
+     */
+    public float getAWeighting(int idBand) {
+        return aWeighting[idBand];
+    }
+
+    private static final class Key {
+        private final int samplingRate;
+        private final int windowSize;
+        private final double[] standardFrequencies;
+        private final boolean partialBins;
+
+        Key(int samplingRate, int windowSize, double[] standardFrequencies, boolean partialBins) {
+            this.samplingRate = samplingRate;
+            this.windowSize = windowSize;
+            this.standardFrequencies = Arrays.copyOf(standardFrequencies, standardFrequencies.length);
+            this.partialBins = partialBins;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return samplingRate == key.samplingRate && windowSize == key.windowSize &&
+                    partialBins == key.partialBins && Arrays.equals(standardFrequencies, key.standardFrequencies);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = samplingRate;
+            result = 31 * result + windowSize;
+            result = 31 * result + Arrays.hashCode(standardFrequencies);
+            result = 31 * result + (partialBins ? 1 : 0);
+            return result;
+        }
+    }
+}
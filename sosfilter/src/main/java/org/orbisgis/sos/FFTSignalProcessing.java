@@ -28,6 +28,8 @@
 package org.orbisgis.sos;
 
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jtransforms.fft.FloatFFT_1D;
 
@@ -38,35 +40,103 @@ public class FFTSignalProcessing {
 
     public enum WINDOW_TYPE { RECTANGULAR, HANN, TUKEY }
     public final int samplingRate;
-    private short[] sampleBuffer;
+    // Circular buffer of the last samples, the oldest sample is at writeCursor
+    private final short[] sampleBuffer;
+    private int writeCursor = 0;
     double[] standardFrequencies;
     double tukeyAlpha = 0.2;
     private final int windowSize;
-    private FloatFFT_1D floatFFT_1D;
+    private final int fftSize;
+    // Divisor of the square root of the half power spectrum sum, giving the RMS value of the window
+    private final double spectrumNormalization;
+    private final FloatFFT_1D floatFFT_1D;
+    // FFT plans shared by all instances, the transforms do not modify the plan
+    private static final ConcurrentMap<Integer, FloatFFT_1D> FFT_PLANS = new ConcurrentHashMap<Integer, FloatFFT_1D>();
+    // Coefficients of the last used window function
+    private WindowFunction windowFunction;
     private static final double RMS_REFERENCE_90DB = 2500;
     public static final double DB_FS_REFERENCE = - (20 * Math.log10(RMS_REFERENCE_90DB)) + 90;
     private final double refSoundPressure;
+    private DecibelConversion decibelConversion = DecibelConversion.EXACT;
     private long sampleAdded = 0;
+    // Scratch buffers reused by processSample in order to not allocate on each window
+    private final float[] fftBuffer;
+    private final float[] squareAbsoluteFFT;
+    private double powerSpectrumSum;
+    private final double[] weightedSums = new double[FrequencyWeighting.WEIGHTING.values().length];
+    // A-weighted copy of sampleBuffer, fed by addSample once a window has been processed with A-weighting
+    private final AWeighting aWeightingFilter;
+    private float[] aWeightedSampleBuffer;
+    // Duration of the A-weighting filter, null if it is not measured
+    private LatencyHistogram aWeightingTiming;
+    // Detector fed with the A-weighted samples, null if there is none
+    private TimeWeighting timeWeighting;
+    // Mapping of the FFT bins to the third octave bands, shared with other instances of the same configuration
+    private FFTBandPlan bandPlan;
+    // Weighting curves of the FFT bins, shared with other instances of the same configuration
+    private final FrequencyWeighting frequencyWeighting;
 
     public FFTSignalProcessing(int samplingRate, double[] standardFrequencies, int windowSize) {
-        this.windowSize = windowSize;
-        this.standardFrequencies = standardFrequencies;
-        this.samplingRate = samplingRate;
-        this.sampleBuffer = new short[windowSize];
-        this.floatFFT_1D = new FloatFFT_1D(windowSize);
-        this.refSoundPressure = 1 / Math.pow(10, DB_FS_REFERENCE / 20);
+        this(samplingRate, standardFrequencies, windowSize, DB_FS_REFERENCE);
     }
 
     public FFTSignalProcessing(int samplingRate, double[] standardFrequencies, int windowSize, double dbFsReference) {
+        this(samplingRate, standardFrequencies, windowSize, dbFsReference, windowSize);
+    }
+
+    /**
+     * @param samplingRate Sampling rate
+     * @param standardFrequencies Third octave bands center frequencies
+     * @param windowSize Number of samples of the analysed window
+     * @param dbFsReference Level in dB of a full scale signal
+     * @param fftSize Size of the FFT, not lower than the window size. The windowed samples are zero-padded up to
+     *                this size, see {@link #getPowerOfTwoSize(int)} in order to use the fastest FFT.
+     */
+    public FFTSignalProcessing(int samplingRate, double[] standardFrequencies, int windowSize, double dbFsReference,
+                               int fftSize) {
+        if(fftSize < windowSize) {
+            throw new IllegalArgumentException("FFT size " + fftSize + " is lower than the window size " + windowSize);
+        }
         this.windowSize = windowSize;
+        this.fftSize = fftSize;
         this.standardFrequencies = standardFrequencies;
         this.samplingRate = samplingRate;
         this.sampleBuffer = new short[windowSize];
-        this.floatFFT_1D = new FloatFFT_1D(windowSize);
+        this.floatFFT_1D = getFFTPlan(fftSize);
         this.refSoundPressure = 1 / Math.pow(10, dbFsReference / 20);
+        this.fftBuffer = new float[fftSize];
+        this.squareAbsoluteFFT = new float[fftSize / 2];
+        // Parseval, the sum of the half power spectrum is (fftSize / 2) * windowSize * mean square
+        this.spectrumNormalization = Math.sqrt((double)(fftSize / 2) * (windowSize / 2));
+        this.aWeightingFilter = new AWeighting(samplingRate);
+        this.bandPlan = FFTBandPlan.getPlan(samplingRate, fftSize, standardFrequencies);
+        this.frequencyWeighting = FrequencyWeighting.getWeighting(samplingRate, fftSize);
     }
 
+    /**
+     * @param fftSize FFT size
+     * @return Shared FFT plan of this size
+     */
+    static FloatFFT_1D getFFTPlan(int fftSize) {
+        FloatFFT_1D plan = FFT_PLANS.get(fftSize);
+        if(plan == null) {
+            plan = new FloatFFT_1D(fftSize);
+            FloatFFT_1D previous = FFT_PLANS.putIfAbsent(fftSize, plan);
+            if(previous != null) {
+                plan = previous;
+            }
+        }
+        return plan;
+    }
 
+    /**
+     * @param windowSize Window size
+     * @return Smallest power of two not lower than the window size
+     */
+    public static int getPowerOfTwoSize(int windowSize) {
+        int fftSize = Integer.highestOneBit(windowSize);
+        return fftSize < windowSize ? fftSize << 1 : fftSize;
+    }
 
     public static double[] computeFFTCenterFrequency(int maxLimitation) {
         double[] allCenterFreq = ThirdOctaveBandsFiltering.getStandardFrequencies(ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED);
@@ -93,6 +163,13 @@ public class FFTSignalProcessing {
         return windowSize;
     }
 
+    /**
+     * @return Size of the FFT, greater than the window size when zero-padded
+     */
+    public int getFftSize() {
+        return fftSize;
+    }
+
     /**
      * @return Computed frequencies
      */
@@ -101,31 +178,124 @@ public class FFTSignalProcessing {
     }
 
     /**
-     * @return Internal sample buffer where length depends on minimal frequency.
+     * @return Copy of the last samples of the window, from the oldest to the newest
      */
     public short[] getSampleBuffer() {
-        return sampleBuffer;
+        short[] samples = new short[sampleBuffer.length];
+        int oldestLength = sampleBuffer.length - writeCursor;
+        System.arraycopy(sampleBuffer, writeCursor, samples, 0, oldestLength);
+        System.arraycopy(sampleBuffer, 0, samples, oldestLength, writeCursor);
+        return samples;
     }
 
     /**
      * Add an audio sample to the buffer.
      * 1000 Hz sinusoidal 2500 RMS for 16-bits audio samples yields a 90dB SPL value.
+     * Samples are written in a circular buffer, previous samples are not moved.
      * @param sample audio sample
      */
     public void addSample(short[] sample) {
-        if(sample.length < sampleBuffer.length) {
-            // Move previous samples backward
-            System.arraycopy(sampleBuffer, sample.length, sampleBuffer, 0, sampleBuffer.length - sample.length);
-            System.arraycopy(sample, 0, sampleBuffer, sampleBuffer.length - sample.length, sample.length);
-            sampleAdded+=sample.length;
-        } else {
-            // Take last samples
-            System.arraycopy(sample, Math.max(0, sample.length - sampleBuffer.length), sampleBuffer, 0,
-                    sampleBuffer.length);
-            sampleAdded+=sampleBuffer.length;
+        addSample(sample, 0, sample.length);
+    }
+
+    /**
+     * Add a part of the provided samples, the array is not kept
+     * @param sample Audio samples
+     * @param offset First sample to add
+     * @param sampleLength Number of samples to add
+     */
+    public void addSample(short[] sample, int offset, int sampleLength) {
+        // Only the last samples are kept when the sample is longer than the window
+        final int skipped = Math.max(0, sampleLength - sampleBuffer.length);
+        final int length = sampleLength - skipped;
+        final int cursor = writeCursor;
+        // Part written up to the end of the circular buffer, then the remaining part from its start
+        final int endLength = Math.min(length, sampleBuffer.length - cursor);
+        System.arraycopy(sample, offset + skipped, sampleBuffer, cursor, endLength);
+        System.arraycopy(sample, offset + skipped + endLength, sampleBuffer, 0, length - endLength);
+        sampleAdded += length;
+        float[] weightedBuffer = aWeightedSampleBuffer;
+        if(weightedBuffer != null) {
+            final LatencyHistogram timing = aWeightingTiming;
+            final long beginFilter = timing != null ? System.nanoTime() : 0;
+            // Filter only the new samples, the filter state carry on the previous ones
+            aWeightingFilter.filter(sample, offset, null, 0, skipped);
+            aWeightingFilter.filter(sample, offset + skipped, weightedBuffer, cursor, endLength);
+            aWeightingFilter.filter(sample, offset + skipped + endLength, weightedBuffer, 0, length - endLength);
+            if(timing != null) {
+                timing.recordSince(beginFilter);
+            }
+            final TimeWeighting detector = timeWeighting;
+            if(detector != null) {
+                detector.process(weightedBuffer, cursor, endLength);
+                detector.process(weightedBuffer, 0, length - endLength);
+            }
+        }
+        writeCursor = (cursor + length) % sampleBuffer.length;
+    }
+
+    /**
+     * @param aWeightingTiming Receiver of the durations of the time domain A-weighting filter, null to not measure
+     *                         them
+     */
+    public void setAWeightingTiming(LatencyHistogram aWeightingTiming) {
+        this.aWeightingTiming = aWeightingTiming;
+    }
+
+    public LatencyHistogram getAWeightingTiming() {
+        return aWeightingTiming;
+    }
+
+    /**
+     * Feed a time-weighted detector with the A-weighted samples added from now, the samples are A-weighted once
+     * for both the spectrum and the detector
+     * @param timeWeighting Detector built without A-weighting, null to stop feeding it
+     */
+    public void setTimeWeighting(TimeWeighting timeWeighting) {
+        this.timeWeighting = timeWeighting;
+        if(timeWeighting != null) {
+            // Start the continuous filtering of the added samples
+            getAWeightedSampleBuffer();
         }
     }
 
+    public TimeWeighting getTimeWeighting() {
+        return timeWeighting;
+    }
+
+    /**
+     * Copy the sample history and the count of added samples
+     * @param other Processing of the same window size
+     */
+    void copySamples(FFTSignalProcessing other) {
+        System.arraycopy(other.sampleBuffer, 0, sampleBuffer, 0, sampleBuffer.length);
+        writeCursor = other.writeCursor;
+        sampleAdded = other.sampleAdded;
+        aWeightedSampleBuffer = null;
+    }
+
+    /**
+     * @return A-weighted circular sample buffer, continuously filtered since the first call. It shares the write
+     * cursor of the sample buffer.
+     */
+    private float[] getAWeightedSampleBuffer() {
+        if(aWeightedSampleBuffer == null) {
+            final LatencyHistogram timing = aWeightingTiming;
+            final long beginFilter = timing != null ? System.nanoTime() : 0;
+            float[] weightedBuffer = new float[sampleBuffer.length];
+            aWeightingFilter.reset();
+            // Filter from the oldest to the newest sample
+            aWeightingFilter.filter(sampleBuffer, writeCursor, weightedBuffer, writeCursor,
+                    sampleBuffer.length - writeCursor);
+            aWeightingFilter.filter(sampleBuffer, 0, weightedBuffer, 0, writeCursor);
+            aWeightedSampleBuffer = weightedBuffer;
+            if(timing != null) {
+                timing.recordSince(beginFilter);
+            }
+        }
+        return aWeightedSampleBuffer;
+    }
+
     public double computeRms() {
         return AcousticIndicators.computeRms(sampleBuffer);
     }
@@ -134,48 +304,281 @@ public class FFTSignalProcessing {
         return AcousticIndicators.getLeq(sampleBuffer, refSoundPressure);
     }
 
+    /**
+     * @param decibelConversion Conversion of the energies into the levels of the processing results
+     */
+    public void setDecibelConversion(DecibelConversion decibelConversion) {
+        this.decibelConversion = decibelConversion;
+    }
+
+    public DecibelConversion getDecibelConversion() {
+        return decibelConversion;
+    }
+
+    /**
+     * @param partialBinWeighting True to weight the FFT bins on the band edges by the part of the bin covered by the
+     *                            band, instead of summing the bins whose frequency is within the band. The bins of
+     *                            short windows are wide, the bands then cover the same frequencies as with a longer
+     *                            window. The edge bins of a rectangular window mostly hold the leakage of the
+     *                            neighbouring bands, whole bins give a closer spectrum for tonal signals.
+     */
+    public void setPartialBinWeighting(boolean partialBinWeighting) {
+        if(partialBinWeighting != bandPlan.isPartialBins()) {
+            bandPlan = FFTBandPlan.getPlan(samplingRate, fftSize, standardFrequencies, partialBinWeighting);
+        }
+    }
+
+    public boolean isPartialBinWeighting() {
+        return bandPlan.isPartialBins();
+    }
+
     public double todBspl(double rms) {
-        return AcousticIndicators.todBspl (rms,  refSoundPressure);
+        final double pressureRatio = rms / refSoundPressure;
+        return decibelConversion.toDecibel(pressureRatio * pressureRatio);
     }
 
     public double computeSpl(boolean aWeighting) {
-        if(aWeighting) {
-            float[] signal = new float[sampleBuffer.length];
+        float[] weightedBuffer = aWeightedSampleBuffer;
+        if(aWeighting && weightedBuffer != null) {
+            return AcousticIndicators.todBspl(AcousticIndicators.computeRms(weightedBuffer),
+                    refSoundPressure);
+        } else if(aWeighting) {
+            short[] samples = getSampleBuffer();
+            float[] signal = new float[samples.length];
             for(int i=0; i < signal.length; i++) {
-                signal[i] = sampleBuffer[i];
+                signal[i] = samples[i];
             }
-            signal = AWeighting.aWeightingSignal(signal);
+            signal = AWeighting.aWeightingSignal(signal, samplingRate);
             return AcousticIndicators.todBspl(AcousticIndicators.computeRms(signal),
                     refSoundPressure);
         } else {
             return todBspl(computeRms());
         }
     }
+    /**
+     * Sound pressure level of the sample buffer, weighted on the power spectrum of the rectangular window
+     * @param weighting Frequency weighting
+     * @return Weighted sound pressure level
+     */
+    public double computeSpl(FrequencyWeighting.WEIGHTING weighting) {
+        final double energyCorrection = computePowerSpectrum(WINDOW_TYPE.RECTANGULAR, false);
+        return todBspl(squareAbsoluteFFTToRMS(frequencyWeighting.getWeightedSum(weighting, squareAbsoluteFFT))
+                * energyCorrection);
+    }
+
     /**
      * Calculation of the equivalent sound pressure level per third octave bands
      * @see "http://stackoverflow.com/questions/18684948/how-to-measure-sound-volume-in-db-scale-android"
      * @return List of double array of equivalent sound pressure level per third octave bands
      */
     public ProcessingResult processSample(WINDOW_TYPE window, boolean aWeighting, boolean outputThinFrequency) {
-        float[] signal = new float[sampleBuffer.length];
-        for(int i=0; i < signal.length; i++) {
-            signal[i] = sampleBuffer[i];
-        }
-        double energyCorrection = signal.length;
-        switch (window) {
-            case HANN:
-                energyCorrection = AcousticIndicators.hannWindow(signal);
-                break;
-            case TUKEY:
-                energyCorrection = AcousticIndicators.tukeyWindow(signal, tukeyAlpha);
+        ProcessingResult result = new ProcessingResult();
+        processSample(window, aWeighting, outputThinFrequency, result);
+        return result;
+    }
+
+    /**
+     * Calculation of the equivalent sound pressure level per third octave bands.
+     * Internal buffers are reused and the levels are written into the provided result, so successive calls on
+     * the same result instance do not allocate memory. This instance must not be shared between threads.
+     * @param window Window function applied before the FFT
+     * @param aWeighting True to apply A-weighting on the time signal. From the first A-weighted window the samples
+     *                   are filtered as a continuous stream by {@link #addSample(short[])}. Processing a window without
+     *                   A-weighting stops the streaming filter.
+     * @param outputThinFrequency True to fill {@link ProcessingResult#getFftResult()}
+     * @param result Destination of the levels. Arrays are allocated only on first use or if the size changed.
+     */
+    public void processSample(WINDOW_TYPE window, boolean aWeighting, boolean outputThinFrequency,
+                              ProcessingResult result) {
+        final double energyCorrection = computePowerSpectrum(window, aWeighting);
+        // Compute A weighted third octave bands
+        if(result.dBaLevels == null || result.dBaLevels.length != standardFrequencies.length) {
+            result.dBaLevels = new float[standardFrequencies.length];
+        }
+        thirdOctaveProcessing(squareAbsoluteFFT, false, energyCorrection, result.dBaLevels);
+        // Limit spectrum output by specified frequencies and convert to dBspl
+        if(outputThinFrequency) {
+            int spectrumLength = getSpectrumLength();
+            if(result.fftResult == null || result.fftResult.length != spectrumLength) {
+                result.fftResult = new float[spectrumLength];
+            }
+            float[] spectrumSplLevels = result.fftResult;
+            for (int i = 0; i < spectrumSplLevels.length; i++) {
+                spectrumSplLevels[i] = (float) todBspl(squareAbsoluteFFTToRMS(squareAbsoluteFFT[i
+                        ]) * energyCorrection);
+            }
+        } else {
+            result.fftResult = null;
         }
-        energyCorrection = 1.0 / Math.sqrt(energyCorrection / signal.length);
+        result.id = sampleAdded;
+        result.weightedLevels = null;
+        result.globaldBaValue = (float)todBspl(squareAbsoluteFFTToRMS(powerSpectrumSum)
+                        * energyCorrection);
+    }
+
+    /**
+     * Calculation of the equivalent sound pressure level per third octave bands, weighted on the power spectrum. The
+     * time signal is not filtered, and the A, C and Z weighted global levels are computed from the same FFT.
+     * @param window Window function applied before the FFT
+     * @param weighting Frequency weighting of the bands, the thin spectrum and the global level
+     * @param outputThinFrequency True to fill {@link ProcessingResult#getFftResult()}
+     * @param result Destination of the levels. Arrays are allocated only on first use or if the size changed.
+     */
+    public void processSample(WINDOW_TYPE window, FrequencyWeighting.WEIGHTING weighting,
+                              boolean outputThinFrequency, ProcessingResult result) {
+        final double energyCorrection = computePowerSpectrum(window, false);
+        if(result.weightedLevels == null) {
+            result.weightedLevels = new float[weightedSums.length];
+        }
+        double[] weightedSums = computeWeightedSums(weighting);
+        for(int i = 0; i < weightedSums.length; i++) {
+            result.weightedLevels[i] = (float) todBspl(squareAbsoluteFFTToRMS(weightedSums[i]) * energyCorrection);
+        }
+        if(result.dBaLevels == null || result.dBaLevels.length != standardFrequencies.length) {
+            result.dBaLevels = new float[standardFrequencies.length];
+        }
+        thirdOctaveProcessing(squareAbsoluteFFT, false, energyCorrection, result.dBaLevels);
+        if(outputThinFrequency) {
+            int spectrumLength = getSpectrumLength();
+            if(result.fftResult == null || result.fftResult.length != spectrumLength) {
+                result.fftResult = new float[spectrumLength];
+            }
+            for (int i = 0; i < spectrumLength; i++) {
+                result.fftResult[i] = (float) todBspl(squareAbsoluteFFTToRMS(squareAbsoluteFFT[i]) *
+                        energyCorrection);
+            }
+        } else {
+            result.fftResult = null;
+        }
+        result.id = sampleAdded;
+        result.globaldBaValue = result.weightedLevels[weighting.ordinal()];
+    }
+
+    /**
+     * Calculation of the energy per third octave bands, the squared sound pressure divided by the squared reference
+     * sound pressure. 10 * log10 of the energy is the level computed by
+     * {@link #processSample(WINDOW_TYPE, boolean, boolean, ProcessingResult)}. Energies of successive windows can be
+     * summed without conversion from and to decibels.
+     * @param window Window function applied before the FFT
+     * @param aWeighting True to apply A-weighting on the time signal
+     * @param outputThinFrequency True to fill {@link ProcessingEnergy#getFftEnergy()}
+     * @param energy Destination of the energies. Arrays are allocated only on first use or if the size changed.
+     */
+    public void processSampleEnergy(WINDOW_TYPE window, boolean aWeighting, boolean outputThinFrequency,
+                                    ProcessingEnergy energy) {
+        final double energyCorrection = computePowerSpectrum(window, aWeighting);
+        energy.weightedEnergy = null;
+        fillEnergy(energyCorrection, outputThinFrequency, energy);
+    }
+
+    /**
+     * Calculation of the energy per third octave bands, weighted on the power spectrum. The time signal is not
+     * filtered, and the A, C and Z weighted global energies are computed from the same FFT.
+     * @param window Window function applied before the FFT
+     * @param weighting Frequency weighting of the bands, the thin spectrum and the global energy
+     * @param outputThinFrequency True to fill {@link ProcessingEnergy#getFftEnergy()}
+     * @param energy Destination of the energies. Arrays are allocated only on first use or if the size changed.
+     */
+    public void processSampleEnergy(WINDOW_TYPE window, FrequencyWeighting.WEIGHTING weighting,
+                                    boolean outputThinFrequency, ProcessingEnergy energy) {
+        final double energyCorrection = computePowerSpectrum(window, false);
+        if(energy.weightedEnergy == null) {
+            energy.weightedEnergy = new double[weightedSums.length];
+        }
+        double[] weightedSums = computeWeightedSums(weighting);
+        final double scale = getEnergyScale(energyCorrection);
+        for(int i = 0; i < weightedSums.length; i++) {
+            energy.weightedEnergy[i] = weightedSums[i] * scale;
+        }
+        fillEnergy(energyCorrection, outputThinFrequency, energy);
+    }
+
+    /**
+     * @param energyCorrection Energy correction of the window
+     * @return Factor from the power spectrum to the squared sound pressure divided by the squared reference
+     */
+    private double getEnergyScale(double energyCorrection) {
+        // Same as the square of squareAbsoluteFFTToRMS * energyCorrection / refSoundPressure
+        return energyCorrection * energyCorrection /
+                (2. * spectrumNormalization * spectrumNormalization * refSoundPressure * refSoundPressure);
+    }
+
+    /**
+     * Weight the power spectrum in place, after the sum of the power spectrum for each weighting
+     * @param weighting Weighting applied on squareAbsoluteFFT and powerSpectrumSum
+     * @return Sums of the power spectrum, indexed by weighting ordinal
+     */
+    private double[] computeWeightedSums(FrequencyWeighting.WEIGHTING weighting) {
+        frequencyWeighting.apply(weighting, squareAbsoluteFFT, weightedSums);
+        powerSpectrumSum = weightedSums[weighting.ordinal()];
+        return weightedSums;
+    }
+
+    private void fillEnergy(double energyCorrection, boolean outputThinFrequency, ProcessingEnergy energy) {
+        final double scale = getEnergyScale(energyCorrection);
+        if(energy.bandEnergy == null || energy.bandEnergy.length != standardFrequencies.length) {
+            energy.bandEnergy = new double[standardFrequencies.length];
+        }
+        for(int idBand = 0; idBand < energy.bandEnergy.length; idBand++) {
+            energy.bandEnergy[idBand] = bandPlan.getBandEnergy(squareAbsoluteFFT, idBand) * scale;
+        }
+        if(outputThinFrequency) {
+            int spectrumLength = getSpectrumLength();
+            if(energy.fftEnergy == null || energy.fftEnergy.length != spectrumLength) {
+                energy.fftEnergy = new double[spectrumLength];
+            }
+            for (int i = 0; i < spectrumLength; i++) {
+                energy.fftEnergy[i] = squareAbsoluteFFT[i] * scale;
+            }
+        } else {
+            energy.fftEnergy = null;
+        }
+        energy.id = sampleAdded;
+        energy.globalEnergy = powerSpectrumSum * scale;
+    }
+
+    /**
+     * @return Number of FFT cells of the thin spectrum output, limited to the highest band
+     */
+    private int getSpectrumLength() {
+        final double freqByCell = samplingRate / (double)fftSize;
+        return (int) (Math.min(samplingRate / 2, standardFrequencies[standardFrequencies.length - 1]) /
+                freqByCell);
+    }
+
+    /**
+     * Compute the power spectrum of the sample buffer into squareAbsoluteFFT and its sum into powerSpectrumSum
+     * @param window Window function applied before the FFT
+     * @param aWeighting True to apply A-weighting on the time signal
+     * @return Energy correction of the window
+     */
+    private double computePowerSpectrum(WINDOW_TYPE window, boolean aWeighting) {
+        float[] signal = fftBuffer;
+        // Unroll the circular buffer, from the oldest sample at the write cursor
+        final int oldestLength = windowSize - writeCursor;
         if(aWeighting) {
-            signal = AWeighting.aWeightingSignal(signal);
+            float[] weightedBuffer = getAWeightedSampleBuffer();
+            System.arraycopy(weightedBuffer, writeCursor, signal, 0, oldestLength);
+            System.arraycopy(weightedBuffer, 0, signal, oldestLength, writeCursor);
+        } else {
+            aWeightedSampleBuffer = null;
+            for (int i = 0; i < oldestLength; i++) {
+                signal[i] = sampleBuffer[writeCursor + i];
+            }
+            for (int i = 0; i < writeCursor; i++) {
+                signal[oldestLength + i] = sampleBuffer[i];
+            }
         }
+        // Zero-padding, the previous FFT has been computed in place
+        Arrays.fill(signal, windowSize, fftSize, 0);
+        WindowFunction windowFunction = this.windowFunction;
+        if(windowFunction == null || !windowFunction.isWindow(window, windowSize, tukeyAlpha)) {
+            windowFunction = WindowFunction.getWindow(window, windowSize, tukeyAlpha);
+            this.windowFunction = windowFunction;
+        }
+        double energyCorrection = windowFunction.apply(signal);
+        energyCorrection = 1.0 / Math.sqrt(energyCorrection / windowSize);
         floatFFT_1D.realForward(signal);
-        final double freqByCell = samplingRate / (double)windowSize;
-        float[] squareAbsoluteFFT = new float[signal.length / 2];
         //a[offa+2*k] = Re[k], 0<=k<n/2
         double sumRMS = 0;
         for(int k = 0; k < squareAbsoluteFFT.length; k++) {
@@ -184,26 +587,12 @@ public class FFTSignalProcessing {
             squareAbsoluteFFT[k] = re * re + im * im;
             sumRMS += squareAbsoluteFFT[k];
         }
-        //rmsFft = Math.sqrt((rmsFft / 2) / (fftResult.length * fftResult.length));
-        // Compute A weighted third octave bands
-        float[] splLevels = thirdOctaveProcessing(squareAbsoluteFFT, false, energyCorrection);
-        // Limit spectrum output by specified frequencies and convert to dBspl
-        float[] spectrumSplLevels = null;
-        if(outputThinFrequency) {
-            spectrumSplLevels = new float[(int) (Math.min(samplingRate / 2, standardFrequencies[standardFrequencies.length - 1]) /
-                    freqByCell)];
-            for (int i = 0; i < spectrumSplLevels.length; i++) {
-                spectrumSplLevels[i] = (float) todBspl(squareAbsoluteFFTToRMS(squareAbsoluteFFT[i
-                        ], squareAbsoluteFFT.length) * energyCorrection);
-            }
-        }
-        return new ProcessingResult(sampleAdded, spectrumSplLevels, splLevels,
-                (float)todBspl(squareAbsoluteFFTToRMS(sumRMS, squareAbsoluteFFT.length)
-                        * energyCorrection));
+        powerSpectrumSum = sumRMS;
+        return energyCorrection;
     }
 
-    private double squareAbsoluteFFTToRMS(double squareAbsoluteFFT, int sampleSize) {
-        return Math.sqrt(squareAbsoluteFFT / 2) / sampleSize;
+    private double squareAbsoluteFFTToRMS(double squareAbsoluteFFT) {
+        return Math.sqrt(squareAbsoluteFFT / 2) / spectrumNormalization;
     }
 
     public double getRefSoundPressure() {
@@ -217,34 +606,65 @@ public class FFTSignalProcessing {
      * @return Third octave bands
      */
     public float[] thirdOctaveProcessing(float[] squareAbsoluteFFT, boolean thirdOctaveAWeighting, double energyCorrection) {
-        final double freqByCell = samplingRate / (double)windowSize;
         float[] splLevels = new float[standardFrequencies.length];
-        int thirdOctaveId = 0;
-        int refFreq = Arrays.binarySearch(standardFrequencies, 1000);
-        for(double fNominal : standardFrequencies) {
-            // Compute lower and upper value of third-octave
-            // NF-EN 61260
-            // base 10
-            double fCenter = Math.pow(10, (Arrays.binarySearch(standardFrequencies, fNominal) - refFreq)/10.) * 1000;
-            final double fLower = fCenter * Math.pow(10, -1. / 20.);
-            final double fUpper = fCenter * Math.pow(10, 1. / 20.);
-            double sumVal = 0;
-            int cellLower = (int)(Math.ceil(fLower / freqByCell));
-            int cellUpper = Math.min(squareAbsoluteFFT.length - 1, (int) (Math.floor(fUpper / freqByCell)));
-            for(int idCell = cellLower; idCell <= cellUpper; idCell++) {
-                sumVal += squareAbsoluteFFT[idCell];
-            }
-            sumVal = todBspl(squareAbsoluteFFTToRMS(sumVal, squareAbsoluteFFT.length) * energyCorrection);
+        thirdOctaveProcessing(squareAbsoluteFFT, thirdOctaveAWeighting, energyCorrection, splLevels);
+        return splLevels;
+    }
+
+    /**
+     * Third-octave recombination method
+     * @param squareAbsoluteFFT Narrow frequency array, of length FFT size / 2
+     * @param thirdOctaveAWeighting True to apply a A weighting on bands
+     * @param splLevels Destination array of third octave bands, same length as standard frequencies
+     */
+    public void thirdOctaveProcessing(float[] squareAbsoluteFFT, boolean thirdOctaveAWeighting,
+                                      double energyCorrection, float[] splLevels) {
+        for(int idBand = 0; idBand < splLevels.length; idBand++) {
+            double sumVal = todBspl(squareAbsoluteFFTToRMS(bandPlan.getBandEnergy(squareAbsoluteFFT, idBand))
+                    * energyCorrection);
             if(thirdOctaveAWeighting) {
                 // Apply A weighting
-                int freqIndex = Arrays.binarySearch(
-                        ThirdOctaveFrequencies.STANDARD_FREQUENCIES, fNominal);
-                sumVal = (float) (sumVal + ThirdOctaveFrequencies.A_WEIGHTING[freqIndex]);
+                sumVal += bandPlan.getAWeighting(idBand);
             }
-            splLevels[thirdOctaveId] = (float) sumVal;
-            thirdOctaveId++;
+            splLevels[idBand] = (float) sumVal;
+        }
+    }
+
+    /**
+     * FFT processing result expressed as energy, see
+     * {@link FFTSignalProcessing#processSampleEnergy(WINDOW_TYPE, boolean, boolean, ProcessingEnergy)}
+     */
+    public static final class ProcessingEnergy {
+        double[] fftEnergy;
+        double[] bandEnergy;
+        double globalEnergy;
+        // Global energies by weighting ordinal, null if the time signal has been filtered
+        double[] weightedEnergy;
+        long id;
+
+        public long getId() {
+            return id;
+        }
+
+        public double[] getFftEnergy() {
+            return fftEnergy;
+        }
+
+        public double[] getBandEnergy() {
+            return bandEnergy;
+        }
+
+        public double getGlobalEnergy() {
+            return globalEnergy;
+        }
+
+        /**
+         * @return Global energies indexed by {@link FrequencyWeighting.WEIGHTING} ordinal, null if the time signal
+         * has been A-weighted
+         */
+        public double[] getWeightedEnergy() {
+            return weightedEnergy;
         }
-        return splLevels;
     }
 
     /**
@@ -255,12 +675,27 @@ public class FFTSignalProcessing {
         float[] fftResult;
         float[] dBaLevels;
         float globaldBaValue;
+        // Global levels by weighting ordinal, null if the time signal has been filtered
+        float[] weightedLevels;
         long id;
 
+        /**
+         * Empty result, to be filled by
+         * {@link FFTSignalProcessing#processSample(WINDOW_TYPE, boolean, boolean, ProcessingResult)}
+         */
+        public ProcessingResult() {
+        }
+
         ProcessingResult(long id, float[] fftResult, float[] dBaLevels, float globaldBaValue) {
+            this(id, fftResult, dBaLevels, globaldBaValue, null);
+        }
+
+        ProcessingResult(long id, float[] fftResult, float[] dBaLevels, float globaldBaValue,
+                         float[] weightedLevels) {
             this.fftResult = fftResult;
             this.dBaLevels = dBaLevels;
             this.globaldBaValue = globaldBaValue;
+            this.weightedLevels = weightedLevels;
             this.id = id;
         }
 
@@ -276,6 +711,14 @@ public class FFTSignalProcessing {
          * Energetic avg of provided results.
          */
         public ProcessingResult(double windowCount, ProcessingResult... toMerge) {
+            this(DecibelConversion.EXACT, windowCount, toMerge);
+        }
+
+        /**
+         * Energetic avg of provided results.
+         * @param conversion Conversion between the levels and the energies
+         */
+        public ProcessingResult(DecibelConversion conversion, double windowCount, ProcessingResult... toMerge) {
             // Take the last processing result as reference because results are moved from
             // the right to the left in the array
             if(toMerge[toMerge.length - 1] != null && toMerge.length > 0) {
@@ -285,32 +728,44 @@ public class FFTSignalProcessing {
                     for(ProcessingResult merge : toMerge) {
                         if(merge != null) {
                             for (int i = 0; i < fftResult.length; i++) {
-                                fftResult[i] += Math.pow(10, merge.fftResult[i] / 10.);
+                                fftResult[i] += conversion.toEnergy(merge.fftResult[i]);
                             }
                         }
                     }
                     for(int i = 0; i < fftResult.length; i++) {
-                        fftResult[i] = (float)(10. * Math.log10(fftResult[i] / windowCount));
+                        fftResult[i] = (float)conversion.toDecibel(fftResult[i] / windowCount);
                     }
                 }
                 this.dBaLevels = new float[toMerge[toMerge.length - 1].dBaLevels.length];
                 for(ProcessingResult merge : toMerge) {
                     if(merge != null) {
                         for (int i = 0; i < dBaLevels.length; i++) {
-                            dBaLevels[i] += Math.pow(10, merge.dBaLevels[i] / 10.);
+                            dBaLevels[i] += conversion.toEnergy(merge.dBaLevels[i]);
                         }
                     }
                 }
                 for(int i = 0; i < dBaLevels.length; i++) {
-                    dBaLevels[i] = (float)(10. * Math.log10(dBaLevels[i] / windowCount));
+                    dBaLevels[i] = (float)conversion.toDecibel(dBaLevels[i] / windowCount);
                 }
                 double sum = 0;
                 for(ProcessingResult merge : toMerge) {
                     if(merge != null) {
-                        sum += Math.pow(10, merge.getGlobaldBaValue() / 10.);
+                        sum += conversion.toEnergy(merge.getGlobaldBaValue());
+                    }
+                }
+                this.globaldBaValue = (float)conversion.toDecibel(sum / windowCount);
+                if(toMerge[toMerge.length - 1].weightedLevels != null) {
+                    this.weightedLevels = new float[toMerge[toMerge.length - 1].weightedLevels.length];
+                    for(int i = 0; i < weightedLevels.length; i++) {
+                        double weightedSum = 0;
+                        for(ProcessingResult merge : toMerge) {
+                            if(merge != null) {
+                                weightedSum += conversion.toEnergy(merge.weightedLevels[i]);
+                            }
+                        }
+                        weightedLevels[i] = (float)conversion.toDecibel(weightedSum / windowCount);
                     }
                 }
-                this.globaldBaValue = (float)(10. * Math.log10(sum / windowCount));
             }
         }
 
@@ -325,5 +780,13 @@ public class FFTSignalProcessing {
         public float getGlobaldBaValue() {
             return globaldBaValue;
         }
+
+        /**
+         * @param weighting Frequency weighting
+         * @return Global level of this weighting, NaN if the time signal has been A-weighted
+         */
+        public float getWeightedLevel(FrequencyWeighting.WEIGHTING weighting) {
+            return weightedLevels == null ? Float.NaN : weightedLevels[weighting.ordinal()];
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Frequency weightings of IEC 61672 "Electroacoustics - sound level meters" applied as gains on the FFT power
+ * spectrum, in place of a time domain filter. The gain of each FFT bin depends only on the sampling rate and the
+ * FFT size, the curves are immutable and shared by all the processing of the same configuration.
+ */
+public final class FrequencyWeighting {
+    public enum WEIGHTING { A, C, Z }
+
+    private static final ConcurrentMap<Long, FrequencyWeighting> CURVES =
+            new ConcurrentHashMap<Long, FrequencyWeighting>();
+
+    // Pole frequencies [Hz] of IEC 61672, and the gains at 1 kHz [dB]
+    private static final double F1 = 20.598997;
+    private static final double F2 = 107.65265;
+    private static final double F3 = 737.86223;
+    private static final double F4 = 12194.217;
+    private static final double A1000 = 1.9997;
+    private static final double C1000 = 0.0619;
+
+    private final int samplingRate;
+    private final int fftSize;
+    // Power gains of the bins, by weighting. Null for the Z weighting.
+    private final float[][] gains = new float[WEIGHTING.values().length][];
+
+    private FrequencyWeighting(int samplingRate, int fftSize) {
+        this.samplingRate = samplingRate;
+        this.fftSize = fftSize;
+        final double freqByCell = samplingRate / (double) fftSize;
+        for(WEIGHTING weighting : WEIGHTING.values()) {
+            if(weighting != WEIGHTING.Z) {
+                float[] curve = new float[fftSize / 2];
+                for(int k = 0; k < curve.length; k++) {
+                    curve[k] = (float) getPowerGain(weighting, k * freqByCell);
+                }
+                gains[weighting.ordinal()] = curve;
+            }
+        }
+    }
+
+    /**
+     * @param samplingRate Sampling rate [Hz]
+     * @param fftSize FFT size
+     * @return Shared weighting curves of this configuration
+     */
+    public static FrequencyWeighting getWeighting(int samplingRate, int fftSize) {
+        Long key = ((long) samplingRate << 32) | fftSize;
+        FrequencyWeighting curves = CURVES.get(key);
+        if(curves == null) {
+            curves = new FrequencyWeighting(samplingRate, fftSize);
+            FrequencyWeighting previous = CURVES.putIfAbsent(key, curves);
+            if(previous != null) {
+                curves = previous;
+            }
+        }
+        return curves;
+    }
+
+    /**
+     * @param weighting Frequency weighting
+     * @param frequency Frequency [Hz]
+     * @return Power gain of the weighting, 10 * log10 of the gain is the weighting in dB
+     */
+    public static double getPowerGain(WEIGHTING weighting, double frequency) {
+        final double f2 = frequency * frequency;
+        switch (weighting) {
+            case A:
+                return F4 * F4 * F4 * F4 * f2 * f2 * f2 * f2 /
+                        ((f2 + F1 * F1) * (f2 + F1 * F1) * (f2 + F2 * F2) * (f2 + F3 * F3) * (f2 + F4 * F4) *
+                                (f2 + F4 * F4)) * Math.pow(10, A1000 / 10);
+            case C:
+                return F4 * F4 * F4 * F4 * f2 * f2 /
+                        ((f2 + F1 * F1) * (f2 + F1 * F1) * (f2 + F4 * F4) * (f2 + F4 * F4)) *
+                        Math.pow(10, C1000 / 10);
+            default:
+                return 1;
+        }
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    /**
+     * @param weighting Frequency weighting
+     * @param squareAbsoluteFFT Square of the absolute value of the FFT bins, of length FFT size / 2
+     * @return Weighted sum of the bins
+     */
+    public double getWeightedSum(WEIGHTING weighting, float[] squareAbsoluteFFT) {
+        final float[] curve = gains[weighting.ordinal()];
+        double sum = 0;
+        if(curve == null) {
+            for(float value : squareAbsoluteFFT) {
+                sum += value;
+            }
+        } else {
+            for(int k = 0; k < curve.length; k++) {
+                sum += curve[k] * squareAbsoluteFFT[k];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Sum the bins for each weighting, then apply one weighting on the bins, in a single pass over the spectrum
+     * @param weighting Weighting applied on the bins
+     * @param squareAbsoluteFFT Square of the absolute value of the FFT bins, of length FFT size / 2
+     * @param sums Destination of the weighted sums, indexed by weighting ordinal
+     */
+    public void apply(WEIGHTING weighting, float[] squareAbsoluteFFT, double[] sums) {
+        final float[] aCurve = gains[WEIGHTING.A.ordinal()];
+        final float[] cCurve = gains[WEIGHTING.C.ordinal()];
+        final float[] curve = gains[weighting.ordinal()];
+        double aSum = 0;
+        double cSum = 0;
+        double zSum = 0;
+        for(int k = 0; k < aCurve.length; k++) {
+            final float value = squareAbsoluteFFT[k];
+            aSum += aCurve[k] * value;
+            cSum += cCurve[k] * value;
+            zSum += value;
+            if(curve != null) {
+                squareAbsoluteFFT[k] = curve[k] * value;
+            }
+        }
+        sums[WEIGHTING.A.ordinal()] = aSum;
+        sums[WEIGHTING.C.ordinal()] = cSum;
+        sums[WEIGHTING.Z.ordinal()] = zSum;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of durations in power of two buckets of nanoseconds. Recording does not allocate and does not lock,
+ * percentiles are approximated by the upper bound of their bucket, within a factor of two.
+ */
+public class LatencyHistogram {
+    // Bucket k holds the durations in [2^(k-1), 2^k - 1] ns, bucket 0 the null durations
+    private static final int BUCKET_COUNT = 64;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong totalNanos = new AtomicLong(0);
+    private final AtomicLong maxNanos = new AtomicLong(0);
+
+    /**
+     * @param nanos Duration of one occurrence, negative durations are counted as null
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while(nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Record the time elapsed since the beginning of an operation
+     * @param beginNanos {@link System#nanoTime()} at the beginning of the operation
+     */
+    public void recordSince(long beginNanos) {
+        record(System.nanoTime() - beginNanos);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return Mean duration, 0 without any occurrence
+     */
+    public double getMeanNanos() {
+        long occurrences = count.get();
+        return occurrences == 0 ? 0 : totalNanos.get() / (double) occurrences;
+    }
+
+    /**
+     * @param percentile Percentile in [0, 1], 0.5 for the median
+     * @return Upper bound of the bucket of the percentile, 0 without any occurrence
+     */
+    public long getPercentileNanos(double percentile) {
+        long occurrences = count.get();
+        if(occurrences == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * occurrences));
+        long cumulated = 0;
+        for(int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            cumulated += buckets.get(bucket);
+            if(cumulated >= rank) {
+                long upperBound = bucket == 0 ? 0 : (1L << bucket) - 1;
+                return Math.min(upperBound, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+}
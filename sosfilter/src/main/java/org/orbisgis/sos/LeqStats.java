@@ -27,33 +27,38 @@
 
 package org.orbisgis.sos;
 
-import org.apache.commons.math3.stat.descriptive.rank.Percentile;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Compute descriptive statistics on leq
+ * Compute descriptive statistics on leq.
+ * Levels are counted in a fixed histogram of classStep wide classes between {@link #MIN_LEVEL} and
+ * {@link #MAX_LEVEL}, so memory does not grow with the measurement duration and statistics can be merged.
  */
 public class LeqStats {
+    /** Lowest level of the histogram, lower levels are counted in the first class */
+    public static final double MIN_LEVEL = 0;
+    /** Highest level of the histogram, higher levels are counted in the last class */
+    public static final double MAX_LEVEL = 150;
     private double rmsSum = 0;
     private int rmsSumCount = 0;
     private double leqMin = Double.MAX_VALUE;
     private double leqMax = Double.MIN_VALUE;
-    // Sorted map of leq classes
-    private Map<Integer, AtomicInteger> leqClass = new TreeMap<>();
+    // Number of leq in each class
+    private final int[] leqClass;
     private static final double DEFAULT_CLASS_STEP = 0.1;
-    private double classStep = DEFAULT_CLASS_STEP;
+    private final double classStep;
+    private DecibelConversion decibelConversion = DecibelConversion.EXACT;
 
 
     public LeqStats() {
+        this(DEFAULT_CLASS_STEP);
     }
 
     public LeqStats(double classStep) {
         this.classStep = classStep;
+        leqClass = new int[(int)Math.ceil((MAX_LEVEL - MIN_LEVEL) / classStep) + 1];
     }
 
     public LeqStats(LeqStats copyFrom) {
@@ -62,56 +67,106 @@ public class LeqStats {
         rmsSum = copyFrom.rmsSum;
         classStep = copyFrom.classStep;
         rmsSumCount = copyFrom.rmsSumCount;
-        leqClass = new TreeMap<>(copyFrom.leqClass);
+        leqClass = Arrays.copyOf(copyFrom.leqClass, copyFrom.leqClass.length);
+        decibelConversion = copyFrom.decibelConversion;
+    }
+
+    /**
+     * @param decibelConversion Conversion between the added levels and the energies of the mean level
+     */
+    public void setDecibelConversion(DecibelConversion decibelConversion) {
+        this.decibelConversion = decibelConversion;
+    }
+
+    public DecibelConversion getDecibelConversion() {
+        return decibelConversion;
     }
 
     public void addLeq(double leq) {
         leqMin = Math.min(leqMin, leq);
         leqMax = Math.max(leqMax, leq);
-        rmsSum += Math.pow(10., leq / 10.);
-        int key = (int)(leq / classStep);
-        AtomicInteger leqCounter = leqClass.get(key);
-        if(leqCounter == null) {
-            leqCounter = new AtomicInteger(0);
-            leqClass.put(key, leqCounter);
-        }
-        leqCounter.addAndGet(1);
+        rmsSum += decibelConversion.toEnergy(leq);
+        leqClass[getClassIndex(leq)]++;
         rmsSumCount++;
     }
 
+    /**
+     * Add the leq of another instance into this one, as if all leq had been added to this instance.
+     * @param other Statistics with the same class step
+     * @throws IllegalArgumentException if the class steps are not the same
+     */
+    public void merge(LeqStats other) {
+        if(Double.compare(classStep, other.classStep) != 0) {
+            throw new IllegalArgumentException("Cannot merge leq statistics of class step " + other.classStep +
+                    " into statistics of class step " + classStep);
+        }
+        leqMin = Math.min(leqMin, other.leqMin);
+        leqMax = Math.max(leqMax, other.leqMax);
+        rmsSum += other.rmsSum;
+        rmsSumCount += other.rmsSumCount;
+        for(int idClass = 0; idClass < leqClass.length; idClass++) {
+            leqClass[idClass] += other.leqClass[idClass];
+        }
+    }
+
+    private int getClassIndex(double leq) {
+        int key = (int)((leq - MIN_LEVEL) / classStep);
+        return Math.max(0, Math.min(leqClass.length - 1, key));
+    }
+
+    private double getClassLevel(int idClass) {
+        return MIN_LEVEL + idClass * classStep;
+    }
+
+    /**
+     * Level of the class of the leq at the given rank in ascending order
+     * @param rank Rank [0-rmsSumCount[
+     * @return Class level
+     */
+    private double getLevelAtRank(int rank) {
+        int count = 0;
+        for(int idClass = 0; idClass < leqClass.length; idClass++) {
+            count += leqClass[idClass];
+            if(count > rank) {
+                return getClassLevel(idClass);
+            }
+        }
+        return getClassLevel(leqClass.length - 1);
+    }
+
+    /**
+     * Percentile estimation of the leq classes, interpolated between the two closest ranks
+     * (same estimation than commons-math Percentile).
+     * @param p Percentile ]0-100]
+     * @return Level of the percentile, NaN if there is no leq
+     */
+    private double getPercentile(double p) {
+        if(rmsSumCount == 0) {
+            return Double.NaN;
+        }
+        double pos = p * (rmsSumCount + 1) / 100;
+        if(pos < 1) {
+            return getLevelAtRank(0);
+        }
+        if(pos >= rmsSumCount) {
+            return getLevelAtRank(rmsSumCount - 1);
+        }
+        int intPos = (int)Math.floor(pos);
+        double lower = getLevelAtRank(intPos - 1);
+        double upper = getLevelAtRank(intPos);
+        return lower + (pos - intPos) * (upper - lower);
+    }
+
     /**
      * Compute Leq stats using specified range.double[][] classRanges = ;
      * @param laOccurrencesRanges Min-Max range ex: new double[][]{{Double.MIN_VALUE, 45}, {45, 55}, {55, 65}, {65, 75},{75, Double.MAX_VALUE}}
      * @return LeqOccurrences instance
      */
     public LeqOccurrences computeLeqOccurrences(double[][] laOccurrencesRanges) {
-        // Compute invert sum of class occurrences
-        List<Double> classList = new ArrayList<>(leqClass.size());
-        List<Integer> classValue = new ArrayList<>(leqClass.size());
-        long sum = 0;
-        double[] values = new double[rmsSumCount];
-        int valCounter = 0;
-        for(Map.Entry<Integer, AtomicInteger> entry : leqClass.entrySet()) {
-            double leq = entry.getKey() * classStep;
-            classList.add(leq);
-            classValue.add(0, entry.getValue().get());
-            sum += entry.getValue().get();
-            for(int classValCount = 0; classValCount < entry.getValue().get(); classValCount++) {
-                values[valCounter++] = leq;
-            }
-        }
-        List<Double> sumClassValuePerc = new ArrayList<>(classValue.size());
-        double invSum = 0.;
-        for(int classVal : classValue) {
-            invSum += classVal / (double)sum;
-            sumClassValuePerc.add(0, invSum);
-        }
-        Percentile percentile = new Percentile();
-        percentile.setData(values);
         // Fetch level at each lae
-        double la10 = percentile.evaluate(100 - 10);
-        double la50 = percentile.evaluate(50);
-        double la90 = percentile.evaluate(100 - 90);
+        double la10 = getPercentile(100 - 10);
+        double la50 = getPercentile(50);
+        double la90 = getPercentile(100 - 90);
 
         // Sum percentage between provided laOccurrancesRanges
         List<Double> laOccurrencesRangesValue = new ArrayList<>();
@@ -119,17 +174,18 @@ public class LeqStats {
             for(double[] range : laOccurrencesRanges) {
                 double min = range[0];
                 double max = range[1];
-                double sumClass = 0;
-                for(int idClass = 0; idClass < sumClassValuePerc.size(); idClass++) {
-                    if(classList.get(idClass) >= min) {
-                        if(classList.get(idClass) < max) {
-                            sumClass += classValue.get(sumClassValuePerc.size() - 1 - idClass) / (double)sum;
+                long sumClass = 0;
+                for(int idClass = 0; idClass < leqClass.length; idClass++) {
+                    double leq = getClassLevel(idClass);
+                    if(leq >= min) {
+                        if(leq < max) {
+                            sumClass += leqClass[idClass];
                         } else {
                             break;
                         }
                     }
                 }
-                laOccurrencesRangesValue.add(sumClass);
+                laOccurrencesRangesValue.add(rmsSumCount > 0 ? sumClass / (double)rmsSumCount : 0);
             }
         }
 
@@ -146,7 +202,7 @@ public class LeqStats {
 
     public double getLeqMean() {
         if(rmsSumCount > 0) {
-            return 10 * Math.log10(rmsSum / rmsSumCount);
+            return decibelConversion.toDecibel(rmsSum / rmsSumCount);
         } else {
             return 0;
         }
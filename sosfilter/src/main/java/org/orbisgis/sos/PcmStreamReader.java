@@ -0,0 +1,270 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Read 16 bits signed mono PCM samples, from raw data or from a WAV file, by fixed size frames.
+ * Bytes are read through a single direct buffer so memory does not depend on the stream length:
+ * <pre>
+ * PcmStreamReader reader = PcmStreamReader.openWav(file);
+ * short[] frame = new short[reader.getSamplingRate() / 10];
+ * while(reader.read(frame) == frame.length) {
+ *     window.pushSample(frame);
+ * }
+ * </pre>
+ */
+public final class PcmStreamReader implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 16384;
+    private static final int WAV_FORMAT_PCM = 1;
+    private static final int WAV_FORMAT_EXTENSIBLE = 0xFFFE;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final int samplingRate;
+    // Remaining samples of the data chunk, Long.MAX_VALUE for raw data
+    private long remainingSamples = Long.MAX_VALUE;
+    private boolean endOfStream = false;
+
+    /**
+     * Read raw PCM data
+     * @param channel Raw 16 bits signed mono samples
+     * @param samplingRate Sampling rate of the samples
+     * @param byteOrder Byte order of the samples
+     */
+    public PcmStreamReader(ReadableByteChannel channel, int samplingRate, ByteOrder byteOrder) {
+        this(channel, samplingRate, byteOrder, ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+        // Empty buffer in read mode
+        buffer.flip();
+    }
+
+    /**
+     * @param buffer Buffer in read mode, may already contain the first samples
+     */
+    private PcmStreamReader(ReadableByteChannel channel, int samplingRate, ByteOrder byteOrder, ByteBuffer buffer) {
+        this.channel = channel;
+        this.samplingRate = samplingRate;
+        this.buffer = buffer;
+        buffer.order(byteOrder);
+    }
+
+    /**
+     * Read a WAV stream, the header is read up to the start of the data chunk
+     * @param channel WAV stream
+     * @return Reader of the data chunk
+     * @throws IOException If the stream is not a 16 bits mono PCM WAV stream
+     */
+    public static PcmStreamReader openWav(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        if(!fill(channel, buffer, 12) || buffer.getInt() != 0x46464952 /* RIFF */) {
+            throw new IOException("Not a RIFF stream");
+        }
+        buffer.getInt();
+        if(buffer.getInt() != 0x45564157 /* WAVE */) {
+            throw new IOException("Not a WAVE stream");
+        }
+        int samplingRate = 0;
+        while(fill(channel, buffer, 8)) {
+            int chunkId = buffer.getInt();
+            long chunkSize = buffer.getInt() & 0xFFFFFFFFL;
+            if(chunkId == 0x20746d66 /* fmt */) {
+                if(chunkSize < 16 || !fill(channel, buffer, 16)) {
+                    throw new IOException("Truncated WAV format chunk");
+                }
+                int format = buffer.getShort() & 0xFFFF;
+                int channels = buffer.getShort();
+                samplingRate = buffer.getInt();
+                buffer.getInt();
+                buffer.getShort();
+                int bitsPerSample = buffer.getShort();
+                if((format != WAV_FORMAT_PCM && format != WAV_FORMAT_EXTENSIBLE) || channels != 1 ||
+                        bitsPerSample != 16) {
+                    throw new IOException("Unsupported WAV format " + format + ", " + channels + " channels " +
+                            bitsPerSample + " bits, expected 16 bits mono PCM");
+                }
+                skip(channel, buffer, chunkSize - 16 + (chunkSize & 1));
+            } else if(chunkId == 0x61746164 /* data */) {
+                if(samplingRate == 0) {
+                    throw new IOException("WAV data chunk before format chunk");
+                }
+                PcmStreamReader reader = new PcmStreamReader(channel, samplingRate, ByteOrder.LITTLE_ENDIAN, buffer);
+                reader.remainingSamples = chunkSize / 2;
+                return reader;
+            } else {
+                skip(channel, buffer, chunkSize + (chunkSize & 1));
+            }
+        }
+        throw new IOException("WAV stream without data chunk");
+    }
+
+    /**
+     * @param file WAV file
+     * @return Reader of the data chunk
+     * @throws IOException If the file is not a 16 bits mono PCM WAV file
+     */
+    public static PcmStreamReader openWav(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            return openWav(randomAccessFile.getChannel());
+        } catch (IOException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param file Raw 16 bits signed mono samples
+     * @param samplingRate Sampling rate of the samples
+     * @param byteOrder Byte order of the samples
+     * @return Reader of the file
+     * @throws IOException If the file cannot be opened
+     */
+    public static PcmStreamReader openRaw(File file, int samplingRate, ByteOrder byteOrder) throws IOException {
+        return new PcmStreamReader(new RandomAccessFile(file, "r").getChannel(), samplingRate, byteOrder);
+    }
+
+    /**
+     * Fill the buffer, in read mode, up to the given number of bytes
+     * @return False if the end of the stream is reached before
+     */
+    private static boolean fill(ReadableByteChannel channel, ByteBuffer buffer, int length) throws IOException {
+        if(buffer.remaining() >= length) {
+            return true;
+        }
+        buffer.compact();
+        try {
+            while(buffer.position() < length) {
+                if(channel.read(buffer) == -1) {
+                    return false;
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+        return true;
+    }
+
+    private static void skip(ReadableByteChannel channel, ByteBuffer buffer, long length) throws IOException {
+        while(length > 0) {
+            if(!buffer.hasRemaining() && !fill(channel, buffer, 1)) {
+                return;
+            }
+            int skipped = (int) Math.min(length, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            length -= skipped;
+        }
+    }
+
+    /**
+     * @return Sampling rate of the samples
+     */
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * Read up to the end of the data
+     * @return Number of samples available in the buffer, 0 at the end of the data
+     */
+    private int fillSamples() throws IOException {
+        if(buffer.remaining() < 2 && !endOfStream) {
+            endOfStream = !fill(channel, buffer, 2);
+        }
+        return (int) Math.min(remainingSamples, buffer.remaining() / 2);
+    }
+
+    /**
+     * Read the next frame of samples
+     * @param frame Frame to fill
+     * @return Number of samples read, lower than the frame length only at the end of the data, -1 if the end of the
+     * data has been reached
+     * @throws IOException On read error
+     */
+    public int read(short[] frame) throws IOException {
+        return read(frame, 0, frame.length);
+    }
+
+    /**
+     * Read the next samples
+     * @param samples Destination array
+     * @param offset First index to fill
+     * @param length Number of samples to read
+     * @return Number of samples read, lower than length only at the end of the data, -1 if the end of the
+     * data has been reached
+     * @throws IOException On read error
+     */
+    public int read(short[] samples, int offset, int length) throws IOException {
+        int count = 0;
+        while(count < length) {
+            int available = Math.min(fillSamples(), length - count);
+            if(available == 0) {
+                break;
+            }
+            for(int i = 0; i < available; i++) {
+                samples[offset + count++] = buffer.getShort();
+            }
+            remainingSamples -= available;
+        }
+        return count == 0 && length > 0 ? -1 : count;
+    }
+
+    /**
+     * Read the next frame of samples
+     * @param frame Frame to fill
+     * @return Number of samples read, lower than the frame length only at the end of the data, -1 if the end of the
+     * data has been reached
+     * @throws IOException On read error
+     */
+    public int read(double[] frame) throws IOException {
+        int count = 0;
+        while(count < frame.length) {
+            int available = Math.min(fillSamples(), frame.length - count);
+            if(available == 0) {
+                break;
+            }
+            for(int i = 0; i < available; i++) {
+                frame[count++] = buffer.getShort();
+            }
+            remainingSamples -= available;
+        }
+        return count == 0 && frame.length > 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named health metrics of the measurement pipeline: latency histograms of the processing stages, event counters and
+ * gauges evaluated on demand, as the queue depths. Metrics are created on first use and shared by name, the
+ * processing threads update them without locking. Names are dot separated, as {@code fast.fft}.
+ */
+public class PipelineMetrics {
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+    /**
+     * Value read when the metrics are queried
+     */
+    public interface Gauge {
+        long getValue();
+    }
+
+    /**
+     * @param name Metric name
+     * @return Histogram of this name, created if it does not exist
+     */
+    public LatencyHistogram getHistogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if(histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram previous = histograms.putIfAbsent(name, histogram);
+            if(previous != null) {
+                histogram = previous;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @param name Metric name
+     * @return Counter of this name, created if it does not exist
+     */
+    public AtomicLong getCounter(String name) {
+        AtomicLong counter = counters.get(name);
+        if(counter == null) {
+            counter = new AtomicLong(0);
+            AtomicLong previous = counters.putIfAbsent(name, counter);
+            if(previous != null) {
+                counter = previous;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * @param name Metric name, replace the previous gauge of this name
+     * @param gauge Value read when the metrics are queried
+     */
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @param name Metric name
+     * @return Current value of the gauge, null if there is no gauge of this name
+     */
+    public Long getGaugeValue(String name) {
+        Gauge gauge = gauges.get(name);
+        return gauge == null ? null : gauge.getValue();
+    }
+
+    /**
+     * Current values of all the metrics, sorted by name. Histograms are expanded into their occurrence count and
+     * their mean, median, 95th percentile and maximal durations in microseconds.
+     * @return Metric name and formatted value
+     */
+    public SortedMap<String, String> snapshot() {
+        SortedMap<String, String> values = new TreeMap<String, String>();
+        for(Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            String name = entry.getKey();
+            values.put(name + ".count", String.valueOf(histogram.getCount()));
+            values.put(name + ".mean_us", String.format(Locale.US, "%.1f", histogram.getMeanNanos() / 1000));
+            values.put(name + ".p50_us", String.valueOf(
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getPercentileNanos(0.5))));
+            values.put(name + ".p95_us", String.valueOf(
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getPercentileNanos(0.95))));
+            values.put(name + ".max_us", String.valueOf(TimeUnit.NANOSECONDS.toMicros(histogram.getMaxNanos())));
+        }
+        for(Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            values.put(entry.getKey(), String.valueOf(entry.getValue().get()));
+        }
+        for(Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), String.valueOf(entry.getValue().getValue()));
+        }
+        return values;
+    }
+}
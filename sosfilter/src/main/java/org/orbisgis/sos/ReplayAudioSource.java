@@ -0,0 +1,143 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay of a raw or WAV recording as an {@link AudioSource}. By default the samples are read as fast as the
+ * pipeline processes them, in order to evaluate recordings and benchmark the processing faster than real time.
+ * With {@link #setRealTime(boolean)} each read is delayed up to the time of its last sample, as a microphone.
+ */
+public class ReplayAudioSource implements AudioSource {
+    private final PcmStreamReader reader;
+    private final int bufferSize;
+    private boolean realTime = false;
+    private long startTime;
+    private long readSamples = 0;
+
+    /**
+     * @param reader Samples to replay, closed with this source
+     * @param bufferSize Number of samples of each read
+     */
+    public ReplayAudioSource(PcmStreamReader reader, int bufferSize) {
+        this.reader = reader;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param reader Samples to replay, read by frames of 125 ms
+     */
+    public ReplayAudioSource(PcmStreamReader reader) {
+        this(reader, (int) (AcousticIndicators.TIMEPERIOD_FAST * reader.getSamplingRate()));
+    }
+
+    /**
+     * @param file 16 bits mono PCM WAV file
+     * @return Replay of the file
+     * @throws IOException If the file is not a 16 bits mono PCM WAV file
+     */
+    public static ReplayAudioSource openWav(File file) throws IOException {
+        return new ReplayAudioSource(PcmStreamReader.openWav(file));
+    }
+
+    /**
+     * @param file Raw 16 bits signed mono samples
+     * @param samplingRate Sampling rate of the samples
+     * @param byteOrder Byte order of the samples
+     * @return Replay of the file
+     * @throws IOException If the file cannot be opened
+     */
+    public static ReplayAudioSource openRaw(File file, int samplingRate, ByteOrder byteOrder) throws IOException {
+        return new ReplayAudioSource(PcmStreamReader.openRaw(file, samplingRate, byteOrder));
+    }
+
+    /**
+     * @param realTime True to deliver the samples at the sampling rate, false to deliver them as fast as they are
+     *                 read
+     */
+    public void setRealTime(boolean realTime) {
+        this.realTime = realTime;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return realTime;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return reader.getSamplingRate();
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return Number of samples read since the start
+     */
+    public long getReadSamples() {
+        return readSamples;
+    }
+
+    @Override
+    public void start() throws IOException {
+        startTime = System.nanoTime();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        int read = reader.read(buffer, offset, length);
+        if(read > 0) {
+            readSamples += read;
+            if(realTime) {
+                long delay = startTime + TimeUnit.SECONDS.toNanos(readSamples) / getSampleRate() - System.nanoTime();
+                if(delay > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    } catch (InterruptedException ex) {
+                        throw new InterruptedIOException("Replay interrupted");
+                    }
+                }
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
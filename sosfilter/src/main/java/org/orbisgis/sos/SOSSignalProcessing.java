@@ -35,10 +35,12 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -51,18 +53,41 @@ public class SOSSignalProcessing {
     private ThirdOctaveBandsFiltering.FREQUENCY_BANDS frequencyBands;
     double[] standardFrequencies;
     boolean Aweighting = true;
+    private ThirdOctaveBandsFiltering thirdOctaveBandsFiltering;
+    // Multirate filter bank, required for bands under 100 Hz
+    private boolean decimation;
+    // Optional executor of the band filtering
+    private ExecutorService executorService;
+    // A-weighted copy of sampleBuffer, fed by addSample once a sample has been processed with A-weighting
+    private final AWeighting aWeightingFilter;
+    private double[] aWeightedSampleBuffer;
 
     public SOSSignalProcessing(int samplingRate, ThirdOctaveBandsFiltering.FREQUENCY_BANDS frequencyBands) {
         this.frequencyBands = frequencyBands;
-        if (samplingRate != 44100) {
-            throw new IllegalArgumentException("Illegal sampling rate: expected 44100Hz, got " + samplingRate + "Hz");
-        }
         this.samplingRate = samplingRate;
         this.sampleBuffer = new double[(int) (samplingRate * ThirdOctaveBandsFiltering.getSampleBufferDuration(frequencyBands))];
         this.standardFrequencies = ThirdOctaveBandsFiltering.getStandardFrequencies(frequencyBands);
+        this.thirdOctaveBandsFiltering = new ThirdOctaveBandsFiltering(samplingRate, frequencyBands);
+        this.decimation = frequencyBands == ThirdOctaveBandsFiltering.FREQUENCY_BANDS.FULL;
+        this.aWeightingFilter = new AWeighting(samplingRate);
         Arrays.fill(sampleBuffer, 0);
     }
 
+    public boolean isDecimation() {
+        return decimation;
+    }
+
+    /**
+     * @param decimation True to filter lower octaves on the decimated signal, see
+     * {@link ThirdOctaveBandsFiltering#thirdOctaveFilteringDecimated(double[])}. Always true for the full bands.
+     */
+    public void setDecimation(boolean decimation) {
+        if(!decimation && frequencyBands == ThirdOctaveBandsFiltering.FREQUENCY_BANDS.FULL) {
+            throw new IllegalArgumentException("Full frequency bands require the decimated filter bank");
+        }
+        this.decimation = decimation;
+    }
+
     public boolean isAweighting() {
         return Aweighting;
     }
@@ -71,6 +96,18 @@ public class SOSSignalProcessing {
         Aweighting = aweighting;
     }
 
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * @param executorService Executor used to filter the third octave bands concurrently, null to filter the bands
+     *                        in the calling thread
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     /**
      * @return Time in seconds of sample buffer
      */
@@ -97,10 +134,28 @@ public class SOSSignalProcessing {
      * @param sample audio sample
      */
     public void addSample(double[] sample) {
-        double[] newBuffer = new double[sampleBuffer.length];
-        System.arraycopy(sampleBuffer, sample.length, newBuffer, 0 , sampleBuffer.length - sample.length);
-        System.arraycopy(sample, 0 , newBuffer, sampleBuffer.length - sample.length ,sample.length);
-        sampleBuffer = newBuffer;
+        System.arraycopy(sampleBuffer, sample.length, sampleBuffer, 0 , sampleBuffer.length - sample.length);
+        System.arraycopy(sample, 0 , sampleBuffer, sampleBuffer.length - sample.length ,sample.length);
+        if(aWeightedSampleBuffer != null) {
+            // Filter only the new samples, the filter state carry on the previous ones
+            int offset = aWeightedSampleBuffer.length - sample.length;
+            System.arraycopy(aWeightedSampleBuffer, sample.length, aWeightedSampleBuffer, 0, offset);
+            System.arraycopy(sample, 0, aWeightedSampleBuffer, offset, sample.length);
+            aWeightingFilter.filter(aWeightedSampleBuffer, offset, sample.length);
+        }
+    }
+
+    /**
+     * @return A-weighted sample buffer, continuously filtered since the first call
+     */
+    private double[] getAWeightedSampleBuffer() {
+        if(aWeightedSampleBuffer == null) {
+            double[] weightedBuffer = Arrays.copyOf(sampleBuffer, sampleBuffer.length);
+            aWeightingFilter.reset();
+            aWeightingFilter.filter(weightedBuffer);
+            aWeightedSampleBuffer = weightedBuffer;
+        }
+        return aWeightedSampleBuffer;
     }
 
 
@@ -117,7 +172,7 @@ public class SOSSignalProcessing {
          * Apply the A-weighting filter to the input signal
          */
         if(Aweigthing) {
-            signal = AWeighting.aWeightingSignal(signal);
+            signal = AWeighting.aWeightingSignal(signal, samplingRate);
         }
 
         /**
@@ -146,25 +201,26 @@ public class SOSSignalProcessing {
         return convertShortToDouble(convertBytesToShort(buffer, length, byteOrder));
     }
 
+    /**
+     * Load a whole stream of 16 bits signed samples
+     * @param inputStream Raw samples
+     * @param byteOrder Byte order of the samples
+     * @return Samples
+     * @throws IOException On read error
+     */
     public static short[] loadShortStream(InputStream inputStream, ByteOrder byteOrder) throws IOException {
-        short[] fullArray = new short[0];
-        byte[] buffer = new byte[4096];
+        PcmStreamReader reader = new PcmStreamReader(Channels.newChannel(inputStream), 0, byteOrder);
+        short[] fullArray = new short[4096];
+        int length = 0;
         int read;
-        // Read input signal up to buffer.length
-        while ((read = inputStream.read(buffer)) != -1) {
-            // Convert bytes into double values. Samples array size is 8 times inferior than buffer size
-            if (read < buffer.length) {
-                buffer = Arrays.copyOfRange(buffer, 0, read);
-            }
-            short[] signal = SOSSignalProcessing.convertBytesToShort(buffer, buffer.length, byteOrder);
-            short[] nextFullArray = new short[fullArray.length + signal.length];
-            if(fullArray.length > 0) {
-                System.arraycopy(fullArray, 0, nextFullArray, 0, fullArray.length);
+        // Capacity is doubled when full, so the whole stream is copied at most twice
+        while ((read = reader.read(fullArray, length, fullArray.length - length)) != -1) {
+            length += read;
+            if(length == fullArray.length) {
+                fullArray = Arrays.copyOf(fullArray, fullArray.length * 2);
             }
-            System.arraycopy(signal, 0, nextFullArray, fullArray.length, signal.length);
-            fullArray = nextFullArray;
         }
-        return fullArray;
+        return Arrays.copyOf(fullArray, length);
     }
 
 
@@ -186,59 +242,83 @@ public class SOSSignalProcessing {
      * @throws IOException
      */
     public List<double[]> processAudio(int encoding, final int rate, InputStream inputStream, double leqPeriod, double refSoundPressure, ByteOrder byteOrder) throws IOException {
-        List<double[]> allLeq = new ArrayList<double[]>();
-        double[] secondSample = new double[rate];
-        int secondCursor = 0;
-        byte[] buffer = new byte[4096];
-        int read;
-        // Read input signal up to buffer.length
-        while ((read = inputStream.read(buffer)) != -1) {
-            // Convert bytes into double values. Samples array size is 8 times inferior than buffer size
-            double[] samples = convertBytesToDouble(buffer, read, byteOrder);
-            int lengthRead = Math.min(samples.length, rate - secondCursor);
-            // Copy sample fragment into second array
-            System.arraycopy(samples, 0, secondSample, secondCursor, lengthRead);
-            secondCursor += lengthRead;
-            if (lengthRead < samples.length) {
-                addSample(secondSample);
-                allLeq.add(processSample(refSoundPressure));
-                secondCursor = 0;
-                // Copy remaining sample fragment into new second array
-                int newLengthRead = samples.length - lengthRead;
-                System.arraycopy(samples, lengthRead, secondSample, secondCursor, newLengthRead);
-                secondCursor += newLengthRead;
-            }
-            if (secondCursor == rate) {
-                addSample(secondSample);
-                allLeq.add(processSample(refSoundPressure));
-                secondCursor = 0;
-            }
-        }
+        final List<double[]> allLeq = new ArrayList<double[]>();
+        processAudio(new PcmStreamReader(Channels.newChannel(inputStream), rate, byteOrder), refSoundPressure,
+                new LeqListener() {
+                    @Override
+                    public void onLeq(double[] leq) {
+                        allLeq.add(leq);
+                    }
+                });
         return allLeq;
     }
 
     /**
-     * Calculation of the equivalent sound pressure level per third octave bands
+     * Process a stream of samples by frames of one second, the incomplete last frame is not processed.
+     * Memory does not depend on the stream length.
+     * @param reader Samples at the sampling rate of this instance
+     * @param refSoundPressure Reference sound pressure
+     * @param listener Receive the equivalent sound pressure level per third octave bands of each frame
+     * @throws IOException On read error
+     */
+    public void processAudio(PcmStreamReader reader, double refSoundPressure, LeqListener listener) throws IOException {
+        if(reader.getSamplingRate() != samplingRate) {
+            throw new IllegalArgumentException("Sampling rate of the stream " + reader.getSamplingRate() +
+                    " Hz differs from the processing sampling rate " + samplingRate + " Hz");
+        }
+        double[] secondSample = new double[samplingRate];
+        while (reader.read(secondSample) == secondSample.length) {
+            addSample(secondSample);
+            listener.onLeq(processSample(refSoundPressure));
+        }
+    }
+
+    /**
+     * Receive the levels of {@link #processAudio(PcmStreamReader, double, LeqListener)}
+     */
+    public interface LeqListener {
+        /**
+         * @param leq Equivalent sound pressure level per third octave bands
+         */
+        void onLeq(double[] leq);
+    }
+
+    /**
+     * Calculation of the equivalent sound pressure level per third octave bands.
+     * With A-weighting the samples are filtered as a continuous stream by {@link #addSample(double[])} from the first
+     * call of this method.
      * @return List of double array of equivalent sound pressure level per third octave bands
      */
     public double[] processSample(double refSoundPressure) {
-        int signalLength = sampleBuffer.length;
         int nbFrequencies = standardFrequencies.length;
-        double[][] filteredSignals;
+        double[] meanSquare;
         double[] ret = new double[standardFrequencies.length];
         /*
         A-weighting and third octave bands filtering
          */
-        filteredSignals = filterSignal(isAweighting(), sampleBuffer, samplingRate, frequencyBands);
+        double[] signal;
+        if(isAweighting()) {
+            signal = getAWeightedSampleBuffer();
+        } else {
+            aWeightedSampleBuffer = null;
+            signal = sampleBuffer;
+        }
+        // Only the energy of each band is kept, the filtered signals are not stored
+        if(decimation && executorService != null) {
+            meanSquare = thirdOctaveBandsFiltering.thirdOctaveFilteringDecimatedMeanSquare(signal, executorService);
+        } else if(decimation) {
+            meanSquare = thirdOctaveBandsFiltering.thirdOctaveFilteringDecimatedMeanSquare(signal);
+        } else if(executorService != null) {
+            meanSquare = thirdOctaveBandsFiltering.thirdOctaveFilteringMeanSquare(signal, executorService);
+        } else {
+            meanSquare = thirdOctaveBandsFiltering.thirdOctaveFilteringMeanSquare(signal);
+        }
 
         /*
         Calculation of the equivalent sound pressure level per third octave bands
          */
         for (int idFreq = 0; idFreq < nbFrequencies; idFreq++) {
-            //for(double signal : filteredSignals[idFreq]) {
-            //    System.out.println(standardFrequencies[idFreq]+", "+signal);
-            //}
-            ret[idFreq] = AcousticIndicators.getLeq(filteredSignals[idFreq], refSoundPressure);
+            ret[idFreq] = AcousticIndicators.todBspl(Math.sqrt(meanSquare[idFreq]), refSoundPressure);
         }
         return ret;
     }
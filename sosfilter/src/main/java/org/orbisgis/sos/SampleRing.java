@@ -0,0 +1,306 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed capacity ring of preallocated sample frames, written by a single producer and read by several consumers.
+ * Each consumer has its own cursor, a frame is reused once all the consumers have released it. Frames are shared,
+ * the samples are not copied for each consumer. A frame can be addressed to a subset of the consumers, the other
+ * consumers skip it.
+ */
+public class SampleRing {
+    /** Maximal number of consumers, one bit of the frame consumer mask each */
+    public static final int MAX_CONSUMERS = 32;
+
+    private final Frame[] frames;
+    private final int indexMask;
+    // Sequence of the next frame to publish, written by the producer only
+    private final AtomicLong published = new AtomicLong(0);
+    // Position of the next sample to publish, written by the producer only
+    private long publishedSamples = 0;
+    private volatile Consumer[] consumers = new Consumer[0];
+    private int usedBits = 0;
+    private final AtomicLong overruns = new AtomicLong(0);
+
+    /**
+     * @param capacity Number of frames, rounded up to a power of two
+     * @param frameSize Number of samples of each frame
+     */
+    public SampleRing(int capacity, int frameSize) {
+        int size = Integer.highestOneBit(Math.max(1, capacity));
+        if(size < capacity) {
+            size <<= 1;
+        }
+        frames = new Frame[size];
+        for(int i = 0; i < size; i++) {
+            frames[i] = new Frame(frameSize);
+        }
+        indexMask = size - 1;
+    }
+
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    /**
+     * Register a consumer parking while waiting for frames, it receives the frames published from now
+     * @return New consumer
+     * @throws IllegalStateException If there is already {@link #MAX_CONSUMERS} consumers
+     */
+    public Consumer addConsumer() {
+        return addConsumer(WaitStrategy.create(WaitStrategy.TYPE.PARK));
+    }
+
+    /**
+     * Register a consumer, it receives the frames published from now
+     * @param waitStrategy How the consumer thread waits for the next frame, signaled on each frame addressed to it
+     * @return New consumer
+     * @throws IllegalStateException If there is already {@link #MAX_CONSUMERS} consumers
+     */
+    public synchronized Consumer addConsumer(WaitStrategy waitStrategy) {
+        if(usedBits == -1) {
+            throw new IllegalStateException("No more than " + MAX_CONSUMERS + " consumers");
+        }
+        int bit = Integer.lowestOneBit(~usedBits);
+        usedBits |= bit;
+        Consumer consumer = new Consumer(bit, published.get(), waitStrategy);
+        Consumer[] newConsumers = new Consumer[consumers.length + 1];
+        System.arraycopy(consumers, 0, newConsumers, 0, consumers.length);
+        newConsumers[consumers.length] = consumer;
+        consumers = newConsumers;
+        return consumer;
+    }
+
+    private synchronized void removeConsumer(Consumer consumer) {
+        Consumer[] newConsumers = new Consumer[consumers.length - 1];
+        int index = 0;
+        for(Consumer other : consumers) {
+            if(other != consumer) {
+                newConsumers[index++] = other;
+            }
+        }
+        consumers = newConsumers;
+        usedBits &= ~consumer.bit;
+    }
+
+    /**
+     * Producer only. The frame is written by the producer and then given to the consumers with
+     * {@link #publish(int, int)}.
+     * @return The next frame to write, null if the slowest consumer has not released it yet
+     */
+    public Frame claim() {
+        final long sequence = published.get();
+        for(Consumer consumer : consumers) {
+            if(sequence - consumer.sequence.get() >= frames.length) {
+                overruns.incrementAndGet();
+                return null;
+            }
+        }
+        return frames[(int) (sequence & indexMask)];
+    }
+
+    /**
+     * Producer only. Unlike {@link #claim()} a full ring is not counted as an overrun, for producers waiting for
+     * the consumers instead of dropping their samples.
+     * @return True if the slowest consumer has not released the next frame to write
+     */
+    public boolean isFull() {
+        final long sequence = published.get();
+        for(Consumer consumer : consumers) {
+            if(sequence - consumer.sequence.get() >= frames.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Producer only. Give the last claimed frame to the consumers, its first sample follows the last sample of the
+     * previous frame.
+     * @param length Number of samples written in the frame
+     * @param consumerMask Bits of the consumers receiving the frame, see {@link Consumer#getBit()}
+     */
+    public void publish(int length, int consumerMask) {
+        publish(length, consumerMask, publishedSamples);
+    }
+
+    /**
+     * Producer only. Give the last claimed frame to the consumers.
+     * @param length Number of samples written in the frame
+     * @param consumerMask Bits of the consumers receiving the frame, see {@link Consumer#getBit()}
+     * @param position Index of the first sample of the frame in the samples of the producer
+     */
+    public void publish(int length, int consumerMask, long position) {
+        final long sequence = published.get();
+        Frame frame = frames[(int) (sequence & indexMask)];
+        frame.length = length;
+        frame.consumerMask = consumerMask;
+        frame.position = position;
+        publishedSamples = position + length;
+        // The volatile write makes the frame content visible to the consumers
+        published.set(sequence + 1);
+        for(Consumer consumer : consumers) {
+            if((consumerMask & consumer.bit) != 0) {
+                consumer.waitStrategy.signal();
+            }
+        }
+    }
+
+    /**
+     * Wake all the waiting consumers, in order to let them check their stop conditions
+     */
+    public void signalConsumers() {
+        for(Consumer consumer : consumers) {
+            consumer.waitStrategy.signal();
+        }
+    }
+
+    /**
+     * @return Number of frames that could not be claimed because the ring was full
+     */
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    /**
+     * Preallocated sample frame
+     */
+    public static final class Frame {
+        private final short[] samples;
+        private int length;
+        private int consumerMask;
+        private long position;
+
+        private Frame(int frameSize) {
+            samples = new short[frameSize];
+        }
+
+        /**
+         * @return Sample array, of the frame size. Only the first {@link #getLength()} samples are published.
+         */
+        public short[] getSamples() {
+            return samples;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return Index of the first sample of the frame in the samples of the producer
+         */
+        public long getPosition() {
+            return position;
+        }
+    }
+
+    /**
+     * Cursor of a consumer thread on the ring
+     */
+    public final class Consumer {
+        private final int bit;
+        // Sequence of the next frame to read, written by the consumer only
+        private final AtomicLong sequence;
+        private final WaitStrategy waitStrategy;
+        private boolean pending = false;
+
+        private Consumer(int bit, long sequence, WaitStrategy waitStrategy) {
+            this.bit = bit;
+            this.sequence = new AtomicLong(sequence);
+            this.waitStrategy = waitStrategy;
+        }
+
+        /**
+         * @return Bit of this consumer in the consumer mask of the published frames
+         */
+        public int getBit() {
+            return bit;
+        }
+
+        /**
+         * Frames not addressed to this consumer are skipped. The returned frame is not reused by the producer until
+         * {@link #release()} is called.
+         * @return Next frame addressed to this consumer, null if there is none yet
+         */
+        public Frame poll() {
+            if(pending) {
+                throw new IllegalStateException("The previous frame has not been released");
+            }
+            long next = sequence.get();
+            final long end = published.get();
+            while(next < end) {
+                Frame frame = frames[(int) (next & indexMask)];
+                if((frame.consumerMask & bit) != 0) {
+                    sequence.lazySet(next);
+                    pending = true;
+                    return frame;
+                }
+                next++;
+            }
+            sequence.lazySet(next);
+            return null;
+        }
+
+        /**
+         * Wait for the next frame, once {@link #poll()} returned null
+         * @param idleCount Number of previous waits without frame, 0 on the first wait
+         * @param timeoutNanos Maximal waiting time
+         * @throws InterruptedException If the consumer thread has been interrupted
+         */
+        public void await(int idleCount, long timeoutNanos) throws InterruptedException {
+            waitStrategy.await(idleCount, timeoutNanos);
+        }
+
+        /**
+         * Give back the frame returned by {@link #poll()} to the producer
+         */
+        public void release() {
+            if(pending) {
+                pending = false;
+                sequence.lazySet(sequence.get() + 1);
+            }
+        }
+
+        /**
+         * @return Number of published frames not read yet by this consumer, addressed to it or not
+         */
+        public long getBacklog() {
+            return published.get() - sequence.get();
+        }
+
+        /**
+         * Stop reading the ring, the producer no longer waits for this consumer
+         */
+        public void close() {
+            removeConsumer(this);
+        }
+    }
+}
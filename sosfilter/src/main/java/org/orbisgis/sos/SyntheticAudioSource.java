@@ -0,0 +1,132 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+/**
+ * Generated signal as an {@link AudioSource}, a pattern of one second repeated up to the requested duration. The
+ * samples are delivered as fast as they are read, the source is not real time.
+ */
+public class SyntheticAudioSource implements AudioSource {
+    private final int sampleRate;
+    private final short[] pattern;
+    private final long length;
+    private final int bufferSize;
+    private long readSamples = 0;
+
+    /**
+     * @param sampleRate Sampling rate of the samples
+     * @param pattern Samples repeated up to the length of the source
+     * @param length Total number of samples of the source, {@link Long#MAX_VALUE} for an endless source
+     */
+    public SyntheticAudioSource(int sampleRate, short[] pattern, long length) {
+        if(pattern.length == 0) {
+            throw new IllegalArgumentException("Empty pattern");
+        }
+        this.sampleRate = sampleRate;
+        this.pattern = pattern;
+        this.length = length;
+        this.bufferSize = (int) (AcousticIndicators.TIMEPERIOD_FAST * sampleRate);
+    }
+
+    /**
+     * @param sampleRate Sampling rate of the samples
+     * @param frequency Frequency of the sine, in Hz. Integer frequencies are continuous between the patterns.
+     * @param rms Root mean square of the sine
+     * @param duration Duration of the source in seconds
+     * @return Pure tone source
+     */
+    public static SyntheticAudioSource sine(int sampleRate, double frequency, double rms, double duration) {
+        short[] pattern = new short[sampleRate];
+        final double amplitude = rms * Math.sqrt(2);
+        for(int i = 0; i < pattern.length; i++) {
+            pattern[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return new SyntheticAudioSource(sampleRate, pattern, (long) (duration * sampleRate));
+    }
+
+    /**
+     * @param sampleRate Sampling rate of the samples
+     * @param rms Root mean square of the noise
+     * @param seed Seed of the random generator
+     * @param duration Duration of the source in seconds
+     * @return Pink noise source
+     */
+    public static SyntheticAudioSource pinkNoise(int sampleRate, short rms, long seed, double duration) {
+        return new SyntheticAudioSource(sampleRate, SOSSignalProcessing.makePinkNoise(sampleRate, rms, seed),
+                (long) (duration * sampleRate));
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+
+    /**
+     * @return Number of samples read since the creation of the source
+     */
+    public long getReadSamples() {
+        return readSamples;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        int count = (int) Math.min(length, this.length - readSamples);
+        if(count <= 0) {
+            return length > 0 ? -1 : 0;
+        }
+        int cursor = (int) (readSamples % pattern.length);
+        int done = 0;
+        while(done < count) {
+            int copy = Math.min(count - done, pattern.length - cursor);
+            System.arraycopy(pattern, cursor, buffer, offset + done, copy);
+            done += copy;
+            cursor = 0;
+        }
+        readSamples += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
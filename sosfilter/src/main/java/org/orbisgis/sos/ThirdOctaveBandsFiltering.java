@@ -29,10 +29,15 @@ package org.orbisgis.sos;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.Arrays;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by G. Guillaume on 02/06/2015.
@@ -60,26 +65,47 @@ public class ThirdOctaveBandsFiltering {
     public static final double[] STANDARD_FREQUENCIES_FULL = new double[]{16, 20, 25, 31.5, 40, 50, 63, 80, 100, 125, 160, 200, 250, 315, 400, 500, 630, 800, 1000, 1250, 1600, 2000, 2500, 3150, 4000, 5000, 6300, 8000, 10000, 12500, 16000, 20000};
     public static final double[] STANDARD_OCTAVE_FREQUENCIES_REDUCED = new double[]{125, 250, 500, 1000, 2000, 4000, 8000, 16000};
 
+    /**
+     * Third octave bands of the multirate filter bank. The filters of these bands are applied on the signal decimated
+     * by two for each lower octave. Higher bands are filtered at the full sampling rate.
+     */
+    private static final double[] DECIMATION_REFERENCE_OCTAVE = new double[]{5000, 6300, 8000};
+    // Butterworth anti-aliasing low-pass filter applied before each decimation, cutoff relative to the sampling rate
+    private static final int ANTI_ALIASING_ORDER = 6;
+    private static final double ANTI_ALIASING_CUTOFF = 0.22;
+    // Order of the analog low-pass prototype of the third octave band-pass filters
+    private static final int BAND_PASS_ORDER = 4;
+    // Relative widening of the nominal band edges
+    private static final double BAND_EDGE_CORRECTION = 1e-4;
+    // Upper band edges are clipped under this ratio of the Nyquist frequency
+    private static final double NYQUIST_CLIP = 0.998;
+    // Reference coefficients of the 100 Hz - 20 kHz bands, other sampling rates are designed at runtime
+    private static final int CSV_SAMPLING_RATE = 44100;
+    private static final String CSV_FILE_100HZ_20KHZ = "Third_oct_filters_coefts_44100Hz_100Hz-20kHz.csv";
+    // Band filters of the 100 Hz - 20 kHz bands, by sampling rate
+    private static final ConcurrentMap<Integer, List<FiltersParameters>> FILTERS_PARAMETERS_CACHE =
+            new ConcurrentHashMap<Integer, List<FiltersParameters>>();
+    private final FiltersParameters antiAliasingFilter;
+
     /**
      * Third octave bands filtering constructor
      */
     public ThirdOctaveBandsFiltering(int samplingRate, FREQUENCY_BANDS frequency_bands) {
         this.samplingRate = samplingRate;
         this.standardFrequencies = getStandardFrequencies(frequency_bands);
-        String csvFileName;
         if (frequency_bands == FREQUENCY_BANDS.FULL) {
             // Third octave bands filtering over the full standards frequency bands (i.e. [16Hz-20kHz]) requires a
             // 5-seconds duration input signal
             this.expectedSampleLength = samplingRate * 5;
-            csvFileName = "Third_oct_filters_coefts_44100Hz_16Hz-20kHz";
         } else {
             // Third octave bands filtering over the full standards frequency bands (i.e. [100Hz-20kHz]) requires a
             // 1-second duration input signal
             this.expectedSampleLength = samplingRate;
-            csvFileName = "Third_oct_filters_coefts_44100Hz_100Hz-20kHz.csv";
         }
-        filterParameters = new ArrayList<FiltersParameters>(standardFrequencies.length);
-        getFiltersParameters(ThirdOctaveBandsFiltering.class.getResourceAsStream(csvFileName));
+        // Filters of bands under 100 Hz are not designed at full rate, the FULL bands are obtained with
+        // the decimated filter bank
+        filterParameters = getFiltersParameters(samplingRate);
+        antiAliasingFilter = butterworthLowPass(ANTI_ALIASING_ORDER, ANTI_ALIASING_CUTOFF);
     }
 
     public static double[] getStandardFrequencies(FREQUENCY_BANDS frequency_bands) {
@@ -106,10 +132,10 @@ public class ThirdOctaveBandsFiltering {
      */
     public final double[] getStandardFrequencies(int samplingRate, double sampleDuration) {
         double[] standFrequencies = new double[0];
-        if (samplingRate == 44100 && sampleDuration == 1.) {
+        if (sampleDuration == 1.) {
             standFrequencies = STANDARD_FREQUENCIES_REDUCED;
         }
-        else if (samplingRate == 44100 && sampleDuration == 5.) {
+        else if (sampleDuration == 5.) {
             standFrequencies = STANDARD_FREQUENCIES_FULL;
         }
         return standFrequencies;
@@ -119,8 +145,10 @@ public class ThirdOctaveBandsFiltering {
     /**
      * Load the .csv file containing the third octave bands filters parameters
      * @param csvFile input stream of the parameters file
+     * @return Filters parameters of each band
      */
-    private void getFiltersParameters(InputStream csvFile) {
+    static List<FiltersParameters> loadFiltersParameters(InputStream csvFile) {
+        List<FiltersParameters> filterParameters = new ArrayList<FiltersParameters>();
         BufferedReader inputStream = new BufferedReader(new InputStreamReader(csvFile));
         try {
             String line;
@@ -154,6 +182,54 @@ public class ThirdOctaveBandsFiltering {
                 // Ignore error
             }
         }
+        return filterParameters;
+    }
+
+    /**
+     * Filters of the 100 Hz - 20 kHz third octave bands, loaded or designed once per sampling rate
+     * @param samplingRate Sampling rate [Hz]
+     * @return Filters parameters of each band
+     */
+    static List<FiltersParameters> getFiltersParameters(int samplingRate) {
+        List<FiltersParameters> filtersParameters = FILTERS_PARAMETERS_CACHE.get(samplingRate);
+        if(filtersParameters == null) {
+            if(samplingRate == CSV_SAMPLING_RATE) {
+                filtersParameters = loadFiltersParameters(
+                        ThirdOctaveBandsFiltering.class.getResourceAsStream(CSV_FILE_100HZ_20KHZ));
+            } else {
+                filtersParameters = designFiltersParameters(samplingRate);
+            }
+            filtersParameters = Collections.unmodifiableList(filtersParameters);
+            List<FiltersParameters> previous = FILTERS_PARAMETERS_CACHE.putIfAbsent(samplingRate, filtersParameters);
+            if(previous != null) {
+                filtersParameters = previous;
+            }
+        }
+        return filtersParameters;
+    }
+
+    /**
+     * Design of the 100 Hz - 20 kHz third octave bands filters. The band edges are the exact base two edges of
+     * {@link ThirdOctaveFrequencies}.
+     * @param samplingRate Sampling rate [Hz]
+     * @return Filters parameters of each band
+     */
+    static List<FiltersParameters> designFiltersParameters(int samplingRate) {
+        List<FiltersParameters> filtersParameters =
+                new ArrayList<FiltersParameters>(STANDARD_FREQUENCIES_REDUCED.length);
+        for(double frequency : STANDARD_FREQUENCIES_REDUCED) {
+            ThirdOctaveFrequencies.LowHigh edges = ThirdOctaveFrequencies.getLatFreqs(
+                    Arrays.binarySearch(ThirdOctaveFrequencies.STANDARD_FREQUENCIES, frequency));
+            double lowerEdge = edges.low * (1 - BAND_EDGE_CORRECTION);
+            double upperEdge = Math.min(edges.high * (1 + BAND_EDGE_CORRECTION), NYQUIST_CLIP * samplingRate / 2.);
+            if(lowerEdge >= upperEdge) {
+                throw new IllegalArgumentException("The " + frequency + " Hz band is above the Nyquist frequency" +
+                        " of the " + samplingRate + " Hz sampling rate");
+            }
+            filtersParameters.add(butterworthBandPass(frequency, BAND_PASS_ORDER, lowerEdge / samplingRate,
+                    upperEdge / samplingRate));
+        }
+        return filtersParameters;
     }
 
     /**
@@ -162,16 +238,105 @@ public class ThirdOctaveBandsFiltering {
     public List<FiltersParameters> getFilterParameters() { return filterParameters; }
 
     /**
-     * Second-order recursive linear filtering
-     * @param signal Raw time input signal
+     * @param frequency Nominal center frequency
+     * @return Filter parameters of this third octave band
+     */
+    private FiltersParameters getFiltersParameters(double frequency) {
+        for(FiltersParameters filtersParameters : filterParameters) {
+            if(Double.compare(filtersParameters.frequency, frequency) == 0) {
+                return filtersParameters;
+            }
+        }
+        throw new IllegalArgumentException("No filter coefficients for the " + frequency + " Hz band");
+    }
+
+    /**
+     * Design of a Butterworth low-pass filter by bilinear transform
+     * @param order Even filter order
+     * @param cutoff Cutoff frequency divided by the sampling rate
+     * @return Second order sections of the filter
+     */
+    static FiltersParameters butterworthLowPass(int order, double cutoff) {
+        FiltersParameters filtersParameters = new FiltersParameters(cutoff);
+        // Pre-warped analog cutoff frequency
+        final double k = Math.tan(Math.PI * cutoff);
+        for(int idStage = 0; idStage < order / 2; idStage++) {
+            // Quality factor of the conjugate poles pair
+            final double q = 1 / (2 * Math.cos(Math.PI * (2 * idStage + 1) / (2 * order)));
+            final double norm = 1 / (1 + k / q + k * k);
+            final double b0 = k * k * norm;
+            filtersParameters.stages.add(new StageParameters(new double[]{b0, 2 * b0, b0,
+                    2 * (k * k - 1) * norm, (1 - k / q + k * k) * norm}));
+        }
+        return filtersParameters;
+    }
+
+    /**
+     * Design of a Butterworth band-pass filter by bilinear transform
+     * @param frequency Nominal center frequency of the band
+     * @param order Even order of the low-pass prototype, the band-pass filter has order * 2 poles
+     * @param lowerEdge Lower cutoff frequency divided by the sampling rate
+     * @param upperEdge Upper cutoff frequency divided by the sampling rate
+     * @return Second order sections of the filter, each one with an unit gain at the center frequency
+     */
+    static FiltersParameters butterworthBandPass(double frequency, int order, double lowerEdge, double upperEdge) {
+        FiltersParameters filtersParameters = new FiltersParameters(frequency);
+        // Pre-warped analog cutoff frequencies
+        final double w1 = Math.tan(Math.PI * lowerEdge);
+        final double w2 = Math.tan(Math.PI * upperEdge);
+        final Complex bandwidth = new Complex(w2 - w1, 0);
+        final Complex centerSquare = new Complex(4 * w1 * w2, 0);
+        final Complex one = new Complex(1, 0);
+        // Each pole of the prototype upper half plane gives two poles of the band-pass filter
+        Complex[] poles = new Complex[order];
+        for(int idPole = 0; idPole < order / 2; idPole++) {
+            double angle = Math.PI * (2 * idPole + order + 1) / (2 * order);
+            Complex prototypePole = new Complex(Math.cos(angle), Math.sin(angle)).times(bandwidth);
+            Complex delta = prototypePole.times(prototypePole).minus(centerSquare).sqrt();
+            Complex[] analogPoles = new Complex[]{prototypePole.plus(delta).times(0.5),
+                    prototypePole.minus(delta).times(0.5)};
+            for(int idRoot = 0; idRoot < analogPoles.length; idRoot++) {
+                // Bilinear transform
+                poles[idPole * 2 + idRoot] = one.plus(analogPoles[idRoot]).divides(one.minus(analogPoles[idRoot]));
+            }
+        }
+        // Higher poles are paired with the zeros at the Nyquist frequency, lower poles with the zeros at 0 Hz
+        Arrays.sort(poles, new Comparator<Complex>() {
+            @Override
+            public int compare(Complex pole1, Complex pole2) {
+                return Double.compare(pole2.phase(), pole1.phase());
+            }
+        });
+        // Digital center frequency
+        final double center = Math.atan(Math.sqrt(w1 * w2)) / Math.PI;
+        final Complex zc = new Complex(Math.cos(2 * Math.PI * center), -Math.sin(2 * Math.PI * center));
+        final Complex zc2 = zc.times(zc);
+        for(int idStage = 0; idStage < order; idStage++) {
+            final double a1 = -2 * poles[idStage].re();
+            final double a2 = poles[idStage].re() * poles[idStage].re() + poles[idStage].im() * poles[idStage].im();
+            final double b1 = idStage < order / 2 ? 2 : -2;
+            final double gain = one.plus(zc.times(a1)).plus(zc2.times(a2)).abs() /
+                    one.plus(zc.times(b1)).plus(zc2).abs();
+            filtersParameters.stages.add(new StageParameters(new double[]{gain, b1 * gain, gain, a1, a2}));
+        }
+        return filtersParameters;
+    }
+
+    /**
+     * In place second-order recursive linear filtering
+     * @param signal Time signal, replaced by the filtered signal
+     * @param length Number of samples to filter from the start of the array
      * @param filterParams Third octave band filter coefficients
      * @param states State variables array
+     * @param backward True to filter from the last sample to the first one, instead of reversing the signal
+     * @param stageCount Number of cascaded stages to apply, starting from the first one
      */
-    private void sosFiltering(final double[] signal, FiltersParameters filterParams, double[][] states){
+    private static void sosFiltering(final double[] signal, int length, FiltersParameters filterParams,
+                                     double[][] states, boolean backward, int stageCount){
 
         // Loop on the cascaded filtering stages
-        int k = 0;
-        for (StageParameters stage: filterParams.stages){
+        for (int k = 0; k < stageCount; k++){
+            StageParameters stage = filterParams.stages.get(k);
             double w1 = states[0][k];
             double w2 = states[1][k];
 
@@ -185,54 +350,91 @@ public class ThirdOctaveBandsFiltering {
             final double a2 = stage.coefficients[4];
 
             // Second-order recursive linear filtering
-            for (int idT = 0; idT < signal.length; ++idT){
-                final double w0 = signal[idT] - a1*w1 - a2*w2;
-                signal[idT] = b0*w0 + b1*w1 + b2*w2;
-                w2 = w1;
-                w1 = w0;
+            if(backward) {
+                for (int idT = length - 1; idT >= 0; --idT){
+                    final double w0 = signal[idT] - a1*w1 - a2*w2;
+                    signal[idT] = b0*w0 + b1*w1 + b2*w2;
+                    w2 = w1;
+                    w1 = w0;
+                }
+            } else {
+                for (int idT = 0; idT < length; ++idT){
+                    final double w0 = signal[idT] - a1*w1 - a2*w2;
+                    signal[idT] = b0*w0 + b1*w1 + b2*w2;
+                    w2 = w1;
+                    w1 = w0;
+                }
             }
             states[0][k] = w1;
             states[1][k] = w2;
-            k++;
         }
     }
 
     /**
-     * Reverse a double 2D array
-     * @param arr double 2D array
-     * @return the reverses double 2D array
+     * Signal backward and forward filtering by second-order recursive linear
+     * @param signal Raw time input signal
+     * @param filtParams Filter coefficients
+     * @return Filtered signal
      */
-    private double[] reverse2dArray(double[] arr){
-        double[] reversedArray = new double[arr.length];
-        for(int id = 0; id < arr.length; id++) {
-            reversedArray[arr.length - id - 1] = arr[id];
-        }
-        return reversedArray;
+    private static double[] applySosFilter(double[] signal, FiltersParameters filtParams){
+        double[] filteredSignal = new double[signal.length];
+        applySosFilter(signal, filteredSignal, filtParams);
+        return filteredSignal;
     }
 
     /**
      * Signal backward and forward filtering by second-order recursive linear
      * @param signal Raw time input signal
-     * @param idFreq Index of the central frequency
-     * @return Third octave band filtered signal
+     * @param filteredSignal Destination of the filtered signal, may be the input signal. Only the first signal.length
+     *                       samples are written.
+     * @param filtParams Filter coefficients
      */
-    private double[] applySosFilter(double[] signal, int idFreq){
-        // Check the audio input sample duration
-        //if(signal.length != expectedSampleLength) {
-        //    throw new IllegalArgumentException("Illegal audio sample duration: expected " + expectedSampleLength + ", got " + signal.length);
-        //}
-        double [][] states = new double [2][4];
-        FiltersParameters filtParams = this.filterParameters.get(idFreq);
-
+    private static void applySosFilter(double[] signal, double[] filteredSignal, FiltersParameters filtParams){
+        double [][] states = new double [2][filtParams.stages.size()];
+        if(filteredSignal != signal) {
+            System.arraycopy(signal, 0, filteredSignal, 0, signal.length);
+        }
         // Backward filtering
-        double[] reversedSignal = reverse2dArray(signal);
-        sosFiltering(reversedSignal, filtParams, states);
-
+        sosFiltering(filteredSignal, signal.length, filtParams, states, true, filtParams.stages.size());
         // Forward filtering
-        double[] reversedBackFilteredSignal = reverse2dArray(reversedSignal);
-        sosFiltering(reversedBackFilteredSignal, filtParams, states);
+        sosFiltering(filteredSignal, signal.length, filtParams, states, false, filtParams.stages.size());
+    }
 
-        return reversedBackFilteredSignal;
+    /**
+     * Signal backward and forward filtering by second-order recursive linear, the output of the last stage is
+     * accumulated without being stored
+     * @param signal Raw time input signal
+     * @param scratch Working array, at least as long as the signal
+     * @param filtParams Filter coefficients
+     * @return Mean square of the filtered signal
+     */
+    private static double applySosFilterMeanSquare(double[] signal, double[] scratch, FiltersParameters filtParams){
+        final int stageCount = filtParams.stages.size();
+        final int length = signal.length;
+        double [][] states = new double [2][stageCount];
+        System.arraycopy(signal, 0, scratch, 0, length);
+        // Backward filtering
+        sosFiltering(scratch, length, filtParams, states, true, stageCount);
+        // Forward filtering
+        sosFiltering(scratch, length, filtParams, states, false, stageCount - 1);
+        // Last stage, accumulate energy
+        final double[] coefficients = filtParams.stages.get(stageCount - 1).coefficients;
+        final double b0 = coefficients[0];
+        final double b1 = coefficients[1];
+        final double b2 = coefficients[2];
+        final double a1 = coefficients[3];
+        final double a2 = coefficients[4];
+        double w1 = states[0][stageCount - 1];
+        double w2 = states[1][stageCount - 1];
+        double sampleSum = 0;
+        for (int idT = 0; idT < length; ++idT){
+            final double w0 = scratch[idT] - a1*w1 - a2*w2;
+            final double sample = b0*w0 + b1*w1 + b2*w2;
+            sampleSum += sample * sample;
+            w2 = w1;
+            w1 = w0;
+        }
+        return sampleSum / length;
     }
 
     /**
@@ -240,37 +442,238 @@ public class ThirdOctaveBandsFiltering {
      * @param signal Raw time input signal
      */
     public double[][] thirdOctaveFiltering(double[] signal){
-        int signalLength = signal.length;
         int nbFreqs = standardFrequencies.length;
-        double [][] filteredSignals = new double[nbFreqs][signalLength];
+        double [][] filteredSignals = new double[nbFreqs][];
+        List<SosFilteringTask> tasks = getFilteringTasks(signal);
         for (int idf = 0; idf < nbFreqs; idf++){
-            filteredSignals[idf] = applySosFilter(signal, idf);
+            filteredSignals[idf] = tasks.get(idf).call();
         }
         return filteredSignals;
     }
 
-//
-//    public double[][] thirdOctaveFiltering(double[] signal){
-//        int nbFreqs = standardFrequencies.length;
-//        double [][] filteredSignals = new double[nbFreqs][];
-//        double[] decimateSignal;
-//        filteredSignals[(nbFreqs - 1)] = applySosFilter(signal, nbFreqs - 1);
-//        filteredSignals[(nbFreqs - 1) - 1] = applySosFilter(signal, nbFreqs - 2);
-//        filteredSignals[(nbFreqs - 1) - 2] = applySosFilter(signal, nbFreqs - 3);
-//        for (int idf = 3; idf < nbFreqs; idf+=3){
-//            filteredSignals[(nbFreqs - 1) - idf] = applySosFilter(signal, nbFreqs - 4);
-//            filteredSignals[(nbFreqs - 1) - idf - 1] = applySosFilter(signal, nbFreqs - 5);
-//            filteredSignals[(nbFreqs - 1) - idf - 2] = applySosFilter(signal, nbFreqs - 6);
-//            // Decimation signal by two factor
-//            decimateSignal = new double[signal.length / 2];
-//            for(int i = 0; i < decimateSignal.length; i++) {
-//                decimateSignal[i] = (signal[i * 2] + signal[i * 2 + 1]) / 2;
-//            }
-//            signal = decimateSignal;
-//        }
-//        return filteredSignals;
-//    }
+    /**
+     * Third octave filtering into caller provided buffers
+     * @param signal Raw time input signal
+     * @param filteredSignals Destination of the filtered signal of each band, each array must be at least as long as
+     *                        the signal
+     */
+    public void thirdOctaveFiltering(double[] signal, double[][] filteredSignals){
+        List<SosFilteringTask> tasks = getFilteringTasks(signal);
+        for (int idf = 0; idf < tasks.size(); idf++){
+            applySosFilter(signal, filteredSignals[idf], tasks.get(idf).filtersParameters);
+        }
+    }
+
+    /**
+     * Third octave filtering, only the energy of the filtered signals is kept.
+     * @param signal Raw time input signal
+     * @return Mean square of the filtered signal of each band
+     */
+    public double[] thirdOctaveFilteringMeanSquare(double[] signal){
+        return meanSquare(getFilteringTasks(signal), signal.length);
+    }
 
+    /**
+     * Third octave filtering, only the energy of the filtered signals is kept. The bands are filtered concurrently.
+     * @param signal Raw time input signal
+     * @param executorService Executor of the band filtering tasks
+     * @return Mean square of the filtered signal of each band
+     */
+    public double[] thirdOctaveFilteringMeanSquare(double[] signal, ExecutorService executorService){
+        return invokeAllMeanSquare(getFilteringTasks(signal), executorService);
+    }
+
+    /**
+     * Third octave filtering, the bands are filtered concurrently. The result is identical to
+     * {@link #thirdOctaveFiltering(double[])}.
+     * @param signal Raw time input signal
+     * @param executorService Executor of the band filtering tasks, a {@link java.util.concurrent.ForkJoinPool} for
+     *                        example
+     */
+    public double[][] thirdOctaveFiltering(double[] signal, ExecutorService executorService){
+        return invokeAll(getFilteringTasks(signal), executorService);
+    }
+
+    private List<SosFilteringTask> getFilteringTasks(double[] signal) {
+        int nbFreqs = standardFrequencies.length;
+        if(filterParameters.size() != nbFreqs) {
+            throw new IllegalStateException("Full rate filter coefficients are not available for all bands," +
+                    " use thirdOctaveFilteringDecimated");
+        }
+        List<SosFilteringTask> tasks = new ArrayList<SosFilteringTask>(nbFreqs);
+        for (int idf = 0; idf < nbFreqs; idf++){
+            tasks.add(new SosFilteringTask(signal, filterParameters.get(idf)));
+        }
+        return tasks;
+    }
+
+    /**
+     * Third octave filtering using a multirate filter bank.
+     * Bands above the reference octave are filtered at full rate. The three band filters of the reference octave are
+     * then applied on the signal decimated by two for each lower octave, after an anti-aliasing filter.
+     * Filtered signals of lower octaves are shorter, with a sampling rate divided by two per octave.
+     * @param signal Raw time input signal
+     * @return Filtered signal of each band, decimated for bands below the reference octave
+     */
+    public double[][] thirdOctaveFilteringDecimated(double[] signal){
+        List<SosFilteringTask> tasks = getDecimatedFilteringTasks(signal);
+        double [][] filteredSignals = new double[tasks.size()][];
+        for (int idf = 0; idf < filteredSignals.length; idf++){
+            filteredSignals[idf] = tasks.get(idf).call();
+        }
+        return filteredSignals;
+    }
+
+    /**
+     * Third octave filtering using a multirate filter bank, the bands are filtered concurrently. The decimation of
+     * the signal is done by the calling thread. The result is identical to
+     * {@link #thirdOctaveFilteringDecimated(double[])}.
+     * @param signal Raw time input signal
+     * @param executorService Executor of the band filtering tasks, a {@link java.util.concurrent.ForkJoinPool} for
+     *                        example
+     * @return Filtered signal of each band, decimated for bands below the reference octave
+     */
+    public double[][] thirdOctaveFilteringDecimated(double[] signal, ExecutorService executorService){
+        return invokeAll(getDecimatedFilteringTasks(signal), executorService);
+    }
+
+    /**
+     * Third octave filtering using a multirate filter bank, only the energy of the filtered signals is kept.
+     * @param signal Raw time input signal
+     * @return Mean square of the filtered signal of each band
+     */
+    public double[] thirdOctaveFilteringDecimatedMeanSquare(double[] signal){
+        return meanSquare(getDecimatedFilteringTasks(signal), signal.length);
+    }
+
+    /**
+     * Third octave filtering using a multirate filter bank, only the energy of the filtered signals is kept. The bands
+     * are filtered concurrently.
+     * @param signal Raw time input signal
+     * @param executorService Executor of the band filtering tasks
+     * @return Mean square of the filtered signal of each band
+     */
+    public double[] thirdOctaveFilteringDecimatedMeanSquare(double[] signal, ExecutorService executorService){
+        return invokeAllMeanSquare(getDecimatedFilteringTasks(signal), executorService);
+    }
+
+    private static double[] meanSquare(List<SosFilteringTask> tasks, int signalLength) {
+        // Single working array shared by all bands
+        double[] scratch = new double[signalLength];
+        double[] meanSquare = new double[tasks.size()];
+        for (int idf = 0; idf < meanSquare.length; idf++){
+            meanSquare[idf] = tasks.get(idf).meanSquare(scratch);
+        }
+        return meanSquare;
+    }
+
+    private List<SosFilteringTask> getDecimatedFilteringTasks(double[] signal) {
+        int nbFreqs = standardFrequencies.length;
+        SosFilteringTask[] tasks = new SosFilteringTask[nbFreqs];
+        int referenceIndex = Arrays.binarySearch(standardFrequencies, DECIMATION_REFERENCE_OCTAVE[0]);
+        int octaveLength = DECIMATION_REFERENCE_OCTAVE.length;
+        // Bands above the reference octave
+        for (int idf = referenceIndex + octaveLength; idf < nbFreqs; idf++){
+            tasks[idf] = new SosFilteringTask(signal, getFiltersParameters(standardFrequencies[idf]));
+        }
+        FiltersParameters[] referenceFilters = new FiltersParameters[octaveLength];
+        for(int idRef = 0; idRef < octaveLength; idRef++) {
+            referenceFilters[idRef] = getFiltersParameters(DECIMATION_REFERENCE_OCTAVE[idRef]);
+        }
+        double[] decimatedSignal = signal;
+        for(int octaveIndex = referenceIndex; octaveIndex + octaveLength > 0; octaveIndex -= octaveLength) {
+            for(int idRef = 0; idRef < octaveLength; idRef++) {
+                if(octaveIndex + idRef >= 0) {
+                    tasks[octaveIndex + idRef] = new SosFilteringTask(decimatedSignal, referenceFilters[idRef]);
+                }
+            }
+            if(octaveIndex > 0) {
+                decimatedSignal = decimate(decimatedSignal);
+            }
+        }
+        return Arrays.asList(tasks);
+    }
+
+    private static double[] invokeAllMeanSquare(List<SosFilteringTask> tasks, ExecutorService executorService) {
+        List<Callable<Double>> meanSquareTasks = new ArrayList<Callable<Double>>(tasks.size());
+        for(final SosFilteringTask task : tasks) {
+            meanSquareTasks.add(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return task.meanSquare(new double[task.signal.length]);
+                }
+            });
+        }
+        try {
+            List<Future<Double>> futures = executorService.invokeAll(meanSquareTasks);
+            double[] meanSquare = new double[futures.size()];
+            for (int idf = 0; idf < meanSquare.length; idf++) {
+                meanSquare[idf] = futures.get(idf).get();
+            }
+            return meanSquare;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Third octave filtering interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Error while filtering third octave bands", ex.getCause());
+        }
+    }
+
+    private static double[][] invokeAll(List<SosFilteringTask> tasks, ExecutorService executorService) {
+        try {
+            List<Future<double[]>> futures = executorService.invokeAll(tasks);
+            double[][] filteredSignals = new double[futures.size()][];
+            for (int idf = 0; idf < filteredSignals.length; idf++) {
+                filteredSignals[idf] = futures.get(idf).get();
+            }
+            return filteredSignals;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Third octave filtering interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Error while filtering third octave bands", ex.getCause());
+        }
+    }
+
+    /**
+     * Low-pass filtering and decimation by a factor of two
+     * @param signal Time signal
+     * @return Signal with the half sampling rate
+     */
+    private double[] decimate(double[] signal) {
+        double[] filteredSignal = applySosFilter(signal, antiAliasingFilter);
+        double[] decimatedSignal = new double[(filteredSignal.length + 1) / 2];
+        for(int i = 0; i < decimatedSignal.length; i++) {
+            decimatedSignal[i] = filteredSignal[i * 2];
+        }
+        return decimatedSignal;
+    }
+
+    /**
+     * Forward and backward filtering of a signal, independent of other bands
+     */
+    private static final class SosFilteringTask implements Callable<double[]> {
+        private final double[] signal;
+        private final FiltersParameters filtersParameters;
+
+        SosFilteringTask(double[] signal, FiltersParameters filtersParameters) {
+            this.signal = signal;
+            this.filtersParameters = filtersParameters;
+        }
+
+        @Override
+        public double[] call() {
+            return applySosFilter(signal, filtersParameters);
+        }
+
+        /**
+         * @param scratch Working array, at least as long as the signal
+         * @return Mean square of the filtered signal
+         */
+        double meanSquare(double[] scratch) {
+            return applySosFilterMeanSquare(signal, scratch, filtersParameters);
+        }
+    }
 
     /**
      * Cascade stage parameters
@@ -0,0 +1,234 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+/**
+ * Exponential time-weighting of IEC 61672 "Electroacoustics - sound level meters", such as the F (Fast, 125 ms) and
+ * S (Slow, 1 s) sound level meter detectors. The squared sound pressure is smoothed sample by sample by a first order
+ * low-pass filter, the detector state is kept between calls so that consecutive buffers are processed as a
+ * continuous signal. Minimum and maximum time-weighted levels, as LAFmax or LASmax, are tracked until
+ * {@link #resetMinMax()}. The minimum is tracked once the detector has settled, {@link #SETTLING_TIME_CONSTANTS}
+ * time constants after the first sample. The detector does not allocate memory while processing.
+ */
+public class TimeWeighting {
+    /** Number of time constants before the detector is within 0.03 dB of a steady level */
+    public static final int SETTLING_TIME_CONSTANTS = 5;
+
+    public enum TIME_WEIGHTING {
+        FAST(AcousticIndicators.TIMEPERIOD_FAST), SLOW(AcousticIndicators.TIMEPERIOD_SLOW);
+
+        public final double timeConstant;
+
+        TIME_WEIGHTING(double timeConstant) {
+            this.timeConstant = timeConstant;
+        }
+    }
+
+    private final int samplingRate;
+    private final double timeConstant;
+    private final double refSoundPressure;
+    // Smoothing factor of the squared sample, 1 - exp(-1 / (tau * fs))
+    private final double alpha;
+    // Number of samples of the rise of the detector from its null initial state
+    private final long settlingSamples;
+    // Optional A-weighting filter of the raw samples
+    private final AWeighting aWeighting;
+    private double meanSquare = 0;
+    private double minMeanSquare = Double.POSITIVE_INFINITY;
+    private double maxMeanSquare = 0;
+    private long processedSamples = 0;
+
+    /**
+     * @param samplingRate Sampling rate [Hz]
+     * @param timeWeighting Time constant of the detector
+     * @param aWeighting True to A-weight the raw samples before the detector, false if the provided samples are
+     *                   already weighted or for Z-weighted levels
+     * @param dbFsReference Level in dB of a full scale signal
+     */
+    public TimeWeighting(int samplingRate, TIME_WEIGHTING timeWeighting, boolean aWeighting, double dbFsReference) {
+        this(samplingRate, timeWeighting.timeConstant, aWeighting, dbFsReference);
+    }
+
+    /**
+     * @param samplingRate Sampling rate [Hz]
+     * @param timeConstant Exponential time constant [s]
+     * @param aWeighting True to A-weight the raw samples before the detector, false if the provided samples are
+     *                   already weighted or for Z-weighted levels
+     * @param dbFsReference Level in dB of a full scale signal
+     */
+    public TimeWeighting(int samplingRate, double timeConstant, boolean aWeighting, double dbFsReference) {
+        this.samplingRate = samplingRate;
+        this.timeConstant = timeConstant;
+        this.refSoundPressure = 1 / Math.pow(10, dbFsReference / 20);
+        this.alpha = 1 - Math.exp(-1 / (timeConstant * samplingRate));
+        this.settlingSamples = (long) Math.ceil(SETTLING_TIME_CONSTANTS * timeConstant * samplingRate);
+        this.aWeighting = aWeighting ? new AWeighting(samplingRate) : null;
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    public double getTimeConstant() {
+        return timeConstant;
+    }
+
+    /**
+     * @return Number of processed samples
+     */
+    public long getProcessedSamples() {
+        return processedSamples;
+    }
+
+    /**
+     * Clear the detector and the filter state, the next sample is processed as the beginning of a new signal
+     */
+    public void reset() {
+        meanSquare = 0;
+        processedSamples = 0;
+        if(aWeighting != null) {
+            aWeighting.reset();
+        }
+        resetMinMax();
+    }
+
+    /**
+     * Begin a new window of minimum and maximum levels, the detector state is kept
+     */
+    public void resetMinMax() {
+        minMeanSquare = Double.POSITIVE_INFINITY;
+        maxMeanSquare = 0;
+    }
+
+    /**
+     * @param length Number of samples to process
+     * @return Number of the first samples to process that are part of the rise of the detector
+     */
+    private int getSettlingLength(int length) {
+        return (int) Math.max(0, Math.min(length, settlingSamples - processedSamples));
+    }
+
+    /**
+     * Process audio samples, A-weighted first if this detector has been built with A-weighting
+     * @param samples Audio samples
+     * @param offset First sample to process
+     * @param length Number of samples to process
+     */
+    public void process(short[] samples, int offset, int length) {
+        double state = meanSquare;
+        double min = minMeanSquare;
+        double max = maxMeanSquare;
+        // The minimum is not tracked while the detector rises from its null initial state
+        final int minBegin = offset + getSettlingLength(length);
+        for(int i = offset; i < offset + length; i++) {
+            final double sample = aWeighting != null ? aWeighting.filterSample(samples[i]) : samples[i];
+            state += alpha * (sample * sample - state);
+            if(state > max) {
+                max = state;
+            }
+            if(i >= minBegin && state < min) {
+                min = state;
+            }
+        }
+        meanSquare = state;
+        minMeanSquare = min;
+        maxMeanSquare = max;
+        processedSamples += length;
+    }
+
+    /**
+     * Process weighted samples, such as the output of {@link AWeighting#filter(short[], int, float[], int, int)}.
+     * The samples are not filtered by this detector.
+     * @param samples Weighted audio samples
+     * @param offset First sample to process
+     * @param length Number of samples to process
+     */
+    public void process(float[] samples, int offset, int length) {
+        double state = meanSquare;
+        double min = minMeanSquare;
+        double max = maxMeanSquare;
+        // The minimum is not tracked while the detector rises from its null initial state
+        final int minBegin = offset + getSettlingLength(length);
+        for(int i = offset; i < offset + length; i++) {
+            final double sample = samples[i];
+            state += alpha * (sample * sample - state);
+            if(state > max) {
+                max = state;
+            }
+            if(i >= minBegin && state < min) {
+                min = state;
+            }
+        }
+        meanSquare = state;
+        minMeanSquare = min;
+        maxMeanSquare = max;
+        processedSamples += length;
+    }
+
+    /**
+     * @return Time-weighted level at the last processed sample [dB]
+     */
+    public double getLevel() {
+        return AcousticIndicators.todBspl(Math.sqrt(meanSquare), refSoundPressure);
+    }
+
+    /**
+     * @return Maximum time-weighted level since the last {@link #resetMinMax()} [dB]
+     */
+    public double getMaxLevel() {
+        return AcousticIndicators.todBspl(Math.sqrt(maxMeanSquare), refSoundPressure);
+    }
+
+    /**
+     * @return Minimum time-weighted level since the last {@link #resetMinMax()} [dB], NaN if no sample has been
+     * processed since once the detector has settled
+     */
+    public double getMinLevel() {
+        if(Double.isInfinite(minMeanSquare)) {
+            return Double.NaN;
+        }
+        return AcousticIndicators.todBspl(Math.sqrt(minMeanSquare), refSoundPressure);
+    }
+
+    /**
+     * Time-weighted levels of a whole signal at a regular time step, as LAF(t)
+     * @param samples Audio samples
+     * @param stepSize Number of samples between two levels
+     * @return Level at the last sample of each complete step [dB]
+     */
+    public double[] getLevels(short[] samples, int stepSize) {
+        double[] levels = new double[samples.length / stepSize];
+        for(int idStep = 0; idStep < levels.length; idStep++) {
+            process(samples, idStep * stepSize, stepSize);
+            levels[idStep] = getLevel();
+        }
+        process(samples, levels.length * stepSize, samples.length - levels.length * stepSize);
+        return levels;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How a consumer thread waits for the next samples of a producer. The consumer checks its queue and calls
+ * {@link #await(int, long)} when it is empty, the producer calls {@link #signal()} after each publication. A signal
+ * sent between the check and the wait is not lost, the wait returns immediately.
+ */
+public abstract class WaitStrategy {
+    public enum TYPE {
+        /** Fixed period polling, the historical behaviour, see {@link SleepWaitStrategy} */
+        SLEEP,
+        /** Park the consumer thread until the producer unparks it, see {@link ParkWaitStrategy} */
+        PARK,
+        /** Lock and condition, see {@link BlockingWaitStrategy} */
+        BLOCKING,
+        /** Busy spin, then yield, then park, see {@link ProgressiveWaitStrategy} */
+        PROGRESSIVE
+    }
+
+    public static final int DEFAULT_SLEEP_MILLIS = 5;
+    public static final int DEFAULT_SPIN_TRIES = 100;
+    public static final int DEFAULT_YIELD_TRIES = 10;
+
+    /**
+     * @param type Wait strategy
+     * @return New instance with the default settings, for a single consumer thread
+     */
+    public static WaitStrategy create(TYPE type) {
+        switch (type) {
+            case SLEEP:
+                return new SleepWaitStrategy(DEFAULT_SLEEP_MILLIS);
+            case BLOCKING:
+                return new BlockingWaitStrategy();
+            case PROGRESSIVE:
+                return new ProgressiveWaitStrategy(DEFAULT_SPIN_TRIES, DEFAULT_YIELD_TRIES);
+            default:
+                return new ParkWaitStrategy();
+        }
+    }
+
+    /**
+     * Consumer side, wait for a signal of the producer
+     * @param idleCount Number of previous waits without new data, 0 on the first wait
+     * @param timeoutNanos Maximal waiting time, in order to check the other stop conditions of the consumer
+     * @throws InterruptedException If the consumer thread has been interrupted
+     */
+    public abstract void await(int idleCount, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Producer side, wake the consumer
+     */
+    public abstract void signal();
+
+    /**
+     * Sleep for a fixed period, signals are ignored
+     */
+    public static class SleepWaitStrategy extends WaitStrategy {
+        private final long periodMillis;
+
+        public SleepWaitStrategy(long periodMillis) {
+            this.periodMillis = periodMillis;
+        }
+
+        @Override
+        public void await(int idleCount, long timeoutNanos) throws InterruptedException {
+            Thread.sleep(Math.min(periodMillis, TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    /**
+     * Park the single consumer thread, the producer unparks it. The producer pays an unpark only when the consumer
+     * is waiting.
+     */
+    public static class ParkWaitStrategy extends WaitStrategy {
+        private volatile Thread waiter;
+        private final AtomicBoolean signaled = new AtomicBoolean(false);
+
+        @Override
+        public void await(int idleCount, long timeoutNanos) throws InterruptedException {
+            park(timeoutNanos);
+        }
+
+        protected void park(long timeoutNanos) throws InterruptedException {
+            waiter = Thread.currentThread();
+            if(!signaled.getAndSet(false)) {
+                LockSupport.parkNanos(this, timeoutNanos);
+                signaled.set(false);
+            }
+            waiter = null;
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        @Override
+        public void signal() {
+            if(!signaled.getAndSet(true)) {
+                Thread thread = waiter;
+                if(thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait on a condition, several consumer threads can share the instance
+     */
+    public static class BlockingWaitStrategy extends WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private boolean signaled = false;
+
+        @Override
+        public void await(int idleCount, long timeoutNanos) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                if(!signaled) {
+                    published.awaitNanos(timeoutNanos);
+                }
+                signaled = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signal() {
+            lock.lock();
+            try {
+                signaled = true;
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Busy spin for the first waits, then yield, then park. Spinning gives the lowest latency when the consumer has
+     * its own core, parking saves the battery once the producer is idle.
+     */
+    public static class ProgressiveWaitStrategy extends ParkWaitStrategy {
+        private final int spinTries;
+        private final int yieldTries;
+
+        /**
+         * @param spinTries Number of waits returning immediately
+         * @param yieldTries Number of following waits yielding the processor
+         */
+        public ProgressiveWaitStrategy(int spinTries, int yieldTries) {
+            this.spinTries = spinTries;
+            this.yieldTries = yieldTries;
+        }
+
+        @Override
+        public void await(int idleCount, long timeoutNanos) throws InterruptedException {
+            if(idleCount < spinTries) {
+                if(Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } else if(idleCount < spinTries + yieldTries) {
+                Thread.yield();
+            } else {
+                park(timeoutNanos);
+            }
+        }
+    }
+}
@@ -34,7 +34,8 @@ import java.util.Arrays;
  */
 
 public class Window {
-    public final FFTSignalProcessing.WINDOW_TYPE window;
+    private FFTSignalProcessing.WINDOW_TYPE window;
+    private final double dbFsReference;
     private FFTSignalProcessing signalProcessing;
     // processed sample index
     private int lastProcessedSpectrum = 0;
@@ -42,9 +43,19 @@ public class Window {
     private int pushedSamples;
     private int windowSize;
     private boolean aWeighting;
+    // Weighting of the power spectrum, null to use the time domain A-weighting filter
+    private FrequencyWeighting.WEIGHTING frequencyWeighting;
     private boolean outputThinFrequency;
     private double overlap = 0;
-    private FFTSignalProcessing.ProcessingResult[] windowResults;
+    // Energies of the stored overlapping windows, the oldest one is replaced by the next processed window
+    private final FFTSignalProcessing.ProcessingEnergy[] windowEnergies;
+    private int windowCount = 0;
+    private int nextWindow = 0;
+    // Running sums of the stored windows energies
+    private double[] bandEnergySum;
+    private double[] fftEnergySum;
+    private double globalEnergySum;
+    private double[] weightedEnergySum;
 
     public Window(FFTSignalProcessing.WINDOW_TYPE window, int samplingRate, double[] standardFrequencies,
                   double windowTime, boolean aWeighting,
@@ -68,13 +79,29 @@ public class Window {
     public Window(FFTSignalProcessing.WINDOW_TYPE window, int samplingRate, double[] standardFrequencies,
                   double windowTime, boolean aWeighting,
                   double dbFsReference,boolean outputThinFrequency, double overlap) {
+        this(window, samplingRate, standardFrequencies, windowTime, aWeighting, dbFsReference, outputThinFrequency,
+                overlap, false);
+    }
+
+    /**
+     * @param powerOfTwoFFT True to zero-pad the window up to the next power of two FFT size, faster than the FFT of
+     *                      other sizes. The levels of the window are unchanged, the thin spectrum has more cells.
+     */
+    public Window(FFTSignalProcessing.WINDOW_TYPE window, int samplingRate, double[] standardFrequencies,
+                  double windowTime, boolean aWeighting,
+                  double dbFsReference,boolean outputThinFrequency, double overlap, boolean powerOfTwoFFT) {
         this.overlap = overlap;
-        this.signalProcessing = new FFTSignalProcessing(samplingRate, standardFrequencies,
-                (int)(samplingRate * windowTime), dbFsReference);
+        int size = (int)(samplingRate * windowTime);
+        this.signalProcessing = new FFTSignalProcessing(samplingRate, standardFrequencies, size, dbFsReference,
+                powerOfTwoFFT ? FFTSignalProcessing.getPowerOfTwoSize(size) : size);
         this.window = window;
+        this.dbFsReference = dbFsReference;
         this.aWeighting = aWeighting;
         this.windowSize = (int)(samplingRate * windowTime);
-        this.windowResults = new FFTSignalProcessing.ProcessingResult[(int)(Math.round(1 / (1 - overlap)))];
+        this.windowEnergies = new FFTSignalProcessing.ProcessingEnergy[(int)(Math.round(1 / (1 - overlap)))];
+        for(int i = 0; i < windowEnergies.length; i++) {
+            windowEnergies[i] = new FFTSignalProcessing.ProcessingEnergy();
+        }
         this.outputThinFrequency = outputThinFrequency;
     }
 
@@ -86,6 +113,109 @@ public class Window {
         this.aWeighting = aWeighting;
     }
 
+    /**
+     * Weight the power spectrum instead of filtering the time signal. The A, C and Z weighted global levels are
+     * then available in the results. Stored windows are cleared.
+     * @param frequencyWeighting Weighting of the bands, the thin spectrum and the global level. Null to go back to
+     *                           the time domain A-weighting of {@link #setaWeighting(boolean)}.
+     */
+    public void setFrequencyWeighting(FrequencyWeighting.WEIGHTING frequencyWeighting) {
+        this.frequencyWeighting = frequencyWeighting;
+        cleanWindows();
+    }
+
+    /**
+     * @return Weighting of the power spectrum, null if the time signal is filtered
+     */
+    public FrequencyWeighting.WEIGHTING getFrequencyWeighting() {
+        return frequencyWeighting;
+    }
+
+    /**
+     * @param decibelConversion Conversion of the summed energies into the levels of the window results
+     */
+    public void setDecibelConversion(DecibelConversion decibelConversion) {
+        signalProcessing.setDecibelConversion(decibelConversion);
+    }
+
+    public DecibelConversion getDecibelConversion() {
+        return signalProcessing.getDecibelConversion();
+    }
+
+    /**
+     * @param partialBinWeighting True to weight the FFT bins on the band edges by the part of the bin covered by the
+     *                            band, see {@link FFTSignalProcessing#setPartialBinWeighting(boolean)}
+     */
+    public void setPartialBinWeighting(boolean partialBinWeighting) {
+        signalProcessing.setPartialBinWeighting(partialBinWeighting);
+    }
+
+    public boolean isPartialBinWeighting() {
+        return signalProcessing.isPartialBinWeighting();
+    }
+
+    /**
+     * @param aWeightingTiming Receiver of the durations of the time domain A-weighting filter, null to not measure
+     *                         them
+     */
+    public void setAWeightingTiming(LatencyHistogram aWeightingTiming) {
+        signalProcessing.setAWeightingTiming(aWeightingTiming);
+    }
+
+    /**
+     * @param timeWeighting Detector fed with the A-weighted pushed samples, see
+     *                      {@link FFTSignalProcessing#setTimeWeighting(TimeWeighting)}
+     */
+    public void setTimeWeighting(TimeWeighting timeWeighting) {
+        signalProcessing.setTimeWeighting(timeWeighting);
+    }
+
+    /**
+     * @return True if the FFT is zero-padded up to a power of two size
+     */
+    public boolean isPowerOfTwoFFT() {
+        return signalProcessing.getFftSize() != windowSize;
+    }
+
+    /**
+     * @return Frequency in Hz covered by one cell of the thin spectrum
+     */
+    public double getFFTFreqArrayStep() {
+        return signalProcessing.samplingRate / (double) signalProcessing.getFftSize();
+    }
+
+    /**
+     * Change the window function, keeping the sample history. Stored windows are cleared as they have been
+     * processed with the previous function.
+     * @param windowType Window function
+     */
+    public void setWindowType(FFTSignalProcessing.WINDOW_TYPE windowType) {
+        setWindowType(windowType, isPowerOfTwoFFT());
+    }
+
+    /**
+     * Change the window function and the FFT size, keeping the sample history. Stored windows are cleared as they
+     * have been processed with the previous function.
+     * @param windowType Window function
+     * @param powerOfTwoFFT True to zero-pad the window up to the next power of two FFT size
+     */
+    public void setWindowType(FFTSignalProcessing.WINDOW_TYPE windowType, boolean powerOfTwoFFT) {
+        int fftSize = powerOfTwoFFT ? FFTSignalProcessing.getPowerOfTwoSize(windowSize) : windowSize;
+        if(fftSize != signalProcessing.getFftSize()) {
+            // FFT plan and band plan are shared, only the buffers are allocated
+            FFTSignalProcessing previous = signalProcessing;
+            signalProcessing = new FFTSignalProcessing(previous.samplingRate, previous.getStandardFrequencies(),
+                    windowSize, dbFsReference, fftSize);
+            signalProcessing.copySamples(previous);
+            signalProcessing.setDecibelConversion(previous.getDecibelConversion());
+            signalProcessing.setPartialBinWeighting(previous.isPartialBinWeighting());
+            signalProcessing.setAWeightingTiming(previous.getAWeightingTiming());
+            signalProcessing.setTimeWeighting(previous.getTimeWeighting());
+        }
+        this.window = windowType;
+        cleanWindows();
+    }
+
     public FFTSignalProcessing.WINDOW_TYPE getWindowType() {
         return window;
     }
@@ -99,6 +229,9 @@ public class Window {
     }
 
     public double computeWindowLeq() {
+        if(frequencyWeighting != null) {
+            return signalProcessing.computeSpl(frequencyWeighting);
+        }
         return signalProcessing.computeSpl(aWeighting);
     }
     /**
@@ -106,43 +239,112 @@ public class Window {
      */
     private void processSample() {
         lastProcessedSpectrum = pushedSamples;
-        FFTSignalProcessing.ProcessingResult result = signalProcessing.processSample(window,
-                aWeighting, true);
-        // Move result by 1 backward
-        if(windowResults.length > 1) {
-            System.arraycopy(windowResults, 1, windowResults, 0, windowResults.length - 1);
+        FFTSignalProcessing.ProcessingEnergy energy = windowEnergies[nextWindow];
+        if(windowCount == windowEnergies.length) {
+            // Remove the oldest window from the sums
+            addEnergy(energy, -1);
+        } else {
+            windowCount++;
+        }
+        if(frequencyWeighting != null) {
+            signalProcessing.processSampleEnergy(window, frequencyWeighting, true, energy);
+        } else {
+            signalProcessing.processSampleEnergy(window, aWeighting, true, energy);
+        }
+        nextWindow = (nextWindow + 1) % windowEnergies.length;
+        if(nextWindow == 0) {
+            // Sum again the stored windows in order to not accumulate rounding errors
+            resetSums();
+            for(int i = 0; i < windowCount; i++) {
+                addEnergy(windowEnergies[i], 1);
+            }
+        } else {
+            addEnergy(energy, 1);
+        }
+    }
+
+    private void addEnergy(FFTSignalProcessing.ProcessingEnergy energy, int sign) {
+        double[] bandEnergy = energy.getBandEnergy();
+        if(bandEnergySum == null || bandEnergySum.length != bandEnergy.length) {
+            bandEnergySum = new double[bandEnergy.length];
+        }
+        for(int i = 0; i < bandEnergy.length; i++) {
+            bandEnergySum[i] += sign * bandEnergy[i];
+        }
+        double[] fftEnergy = energy.getFftEnergy();
+        if(fftEnergySum == null || fftEnergySum.length != fftEnergy.length) {
+            fftEnergySum = new double[fftEnergy.length];
+        }
+        for(int i = 0; i < fftEnergy.length; i++) {
+            fftEnergySum[i] += sign * fftEnergy[i];
+        }
+        globalEnergySum += sign * energy.getGlobalEnergy();
+        double[] weightedEnergy = energy.getWeightedEnergy();
+        if(weightedEnergy != null) {
+            if(weightedEnergySum == null) {
+                weightedEnergySum = new double[weightedEnergy.length];
+            }
+            for(int i = 0; i < weightedEnergy.length; i++) {
+                weightedEnergySum[i] += sign * weightedEnergy[i];
+            }
+        }
+    }
+
+    private void resetSums() {
+        if(bandEnergySum != null) {
+            Arrays.fill(bandEnergySum, 0);
+        }
+        if(fftEnergySum != null) {
+            Arrays.fill(fftEnergySum, 0);
+        }
+        globalEnergySum = 0;
+        if(weightedEnergySum != null) {
+            Arrays.fill(weightedEnergySum, 0);
         }
-        windowResults[windowResults.length - 1] = result;
     }
 
     /**
      * Remove stored windows
      */
     public void cleanWindows() {
-        Arrays.fill(windowResults, null);
+        windowCount = 0;
+        nextWindow = 0;
+        resetSums();
     }
 
     /**
      * @return The sum of overlaps windows, null if not available
      */
     public FFTSignalProcessing.ProcessingResult getLastWindowMean() {
-        if(windowResults.length > 1) {
-            return new FFTSignalProcessing.ProcessingResult(1, windowResults);
-        } else {
-            return windowResults[0];
+        if(windowCount == 0) {
+            return null;
         }
+        final DecibelConversion conversion = signalProcessing.getDecibelConversion();
+        float[] dBaLevels = new float[bandEnergySum.length];
+        for(int i = 0; i < dBaLevels.length; i++) {
+            dBaLevels[i] = (float) conversion.toDecibel(bandEnergySum[i]);
+        }
+        float[] fftResult = new float[fftEnergySum.length];
+        for(int i = 0; i < fftResult.length; i++) {
+            fftResult[i] = (float) conversion.toDecibel(fftEnergySum[i]);
+        }
+        float[] weightedLevels = null;
+        if(frequencyWeighting != null) {
+            weightedLevels = new float[weightedEnergySum.length];
+            for(int i = 0; i < weightedLevels.length; i++) {
+                weightedLevels[i] = (float) conversion.toDecibel(weightedEnergySum[i]);
+            }
+        }
+        long id = windowEnergies[(nextWindow + windowEnergies.length - 1) % windowEnergies.length].getId();
+        return new FFTSignalProcessing.ProcessingResult(id, fftResult, dBaLevels,
+                (float) conversion.toDecibel(globalEnergySum), weightedLevels);
     }
 
     /**
      * @return False if a window mean is available
      */
     public boolean isCacheEmpty() {
-        for(FFTSignalProcessing.ProcessingResult windowCache : windowResults) {
-            if(windowCache != null) {
-                return false;
-            }
-        }
-        return true;
+        return windowCount == 0;
     }
 
     /**
@@ -169,8 +371,18 @@ public class Window {
      * @return The last result, null if the pushed samples was not enough to get a leq.
      */
     public void pushSample(short[] buffer) {
-        signalProcessing.addSample(buffer);
-        pushedSamples += buffer.length;
+        pushSample(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Push a part of the provided samples, the array is not kept
+     * @param buffer Audio signal
+     * @param offset First sample to push
+     * @param length Number of samples to push, see {@link #getMaximalBufferSize()}
+     */
+    public void pushSample(short[] buffer, int offset, int length) {
+        signalProcessing.addSample(buffer, offset, length);
+        pushedSamples += length;
         if(pushedSamples - lastProcessedSpectrum >= (int)(windowSize * (1 - overlap))) {
             processSample();
         }
@@ -0,0 +1,182 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precomputed coefficients of a window function and their energy correction. Coefficients depend only on the window
+ * type, the size and the Tukey ratio, they are immutable and shared by all the processing of the same configuration.
+ * Tables are never evicted, they are only kept for the window sizes of {@link FFTSignalProcessing}. Windows of
+ * arbitrary length are applied by {@link AcousticIndicators#hannWindow(float[], int)} and
+ * {@link AcousticIndicators#tukeyWindow(float[], int, double)} without table.
+ */
+public final class WindowFunction {
+    private static final ConcurrentMap<Key, WindowFunction> WINDOWS = new ConcurrentHashMap<Key, WindowFunction>();
+
+    private final FFTSignalProcessing.WINDOW_TYPE windowType;
+    private final int size;
+    private final double tukeyAlpha;
+    // Null for the rectangular window
+    private final double[] coefficients;
+    private final double energy;
+
+    private WindowFunction(FFTSignalProcessing.WINDOW_TYPE windowType, int size, double tukeyAlpha) {
+        this.windowType = windowType;
+        this.size = size;
+        this.tukeyAlpha = tukeyAlpha;
+        double sum = 0;
+        switch (windowType) {
+            case HANN:
+                coefficients = new double[size];
+                // The first sample is left unchanged and out of the energy, as the former per window computation
+                coefficients[0] = 1;
+                for (int n = 1; n < size; n++) {
+                    coefficients[n] = 0.5 * (1 - Math.cos((2 * Math.PI * n) / (size - 1)));
+                    sum += coefficients[n] * coefficients[n];
+                }
+                break;
+            case TUKEY:
+                coefficients = new double[size];
+                int indexBeginFlat = (int)((tukeyAlpha / 2) * size);
+                int indexEndFlat = size - indexBeginFlat;
+                for(int i = 0; i < size; i++) {
+                    if(i < indexBeginFlat) {
+                        coefficients[i] = 0.5 * (1 + Math.cos(2 * Math.PI / tukeyAlpha * ((i / (float)size) -
+                                tukeyAlpha / 2)));
+                    } else if(i >= indexEndFlat) {
+                        coefficients[i] = 0.5 * (1 + Math.cos(2 * Math.PI / tukeyAlpha * ((i / (float)size) - 1 +
+                                tukeyAlpha / 2)));
+                    } else {
+                        coefficients[i] = 1;
+                    }
+                    sum += coefficients[i] * coefficients[i];
+                }
+                break;
+            default:
+                coefficients = null;
+                sum = size;
+        }
+        this.energy = sum;
+    }
+
+    /**
+     * @param windowType Window type
+     * @param size Number of samples of the window
+     * @param tukeyAlpha Ratio of the Tukey window in the cosine tapers, ignored by the other windows
+     * @return Shared window of this configuration, kept until the end of the application
+     */
+    public static WindowFunction getWindow(FFTSignalProcessing.WINDOW_TYPE windowType, int size, double tukeyAlpha) {
+        Key key = new Key(windowType, size, windowType == FFTSignalProcessing.WINDOW_TYPE.TUKEY ? tukeyAlpha : 0);
+        WindowFunction window = WINDOWS.get(key);
+        if(window == null) {
+            window = new WindowFunction(key.windowType, size, key.tukeyAlpha);
+            WindowFunction previous = WINDOWS.putIfAbsent(key, window);
+            if(previous != null) {
+                window = previous;
+            }
+        }
+        return window;
+    }
+
+    /**
+     * @param windowType Window type
+     * @param size Number of samples of the window
+     * @param tukeyAlpha Ratio of the Tukey window in the cosine tapers, ignored by the other windows
+     * @return True if this window has this configuration
+     */
+    public boolean isWindow(FFTSignalProcessing.WINDOW_TYPE windowType, int size, double tukeyAlpha) {
+        return this.windowType == windowType && this.size == size &&
+                (windowType != FFTSignalProcessing.WINDOW_TYPE.TUKEY || this.tukeyAlpha == tukeyAlpha);
+    }
+
+    public FFTSignalProcessing.WINDOW_TYPE getWindowType() {
+        return windowType;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Sum of the squared coefficients
+     */
+    public double getEnergy() {
+        return energy;
+    }
+
+    /**
+     * Multiply the first samples of the signal by the window coefficients
+     * @param signal Time signal, at least of the window size. Following samples are not modified.
+     * @return Sum of the squared coefficients
+     */
+    public double apply(float[] signal) {
+        if(coefficients != null) {
+            for(int i = 0; i < size; i++) {
+                signal[i] *= coefficients[i];
+            }
+        }
+        return energy;
+    }
+
+    private static final class Key {
+        private final FFTSignalProcessing.WINDOW_TYPE windowType;
+        private final int size;
+        private final double tukeyAlpha;
+
+        Key(FFTSignalProcessing.WINDOW_TYPE windowType, int size, double tukeyAlpha) {
+            this.windowType = windowType;
+            this.size = size;
+            this.tukeyAlpha = tukeyAlpha;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return windowType == key.windowType && size == key.size &&
+                    Double.compare(tukeyAlpha, key.tukeyAlpha) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = windowType.hashCode();
+            result = 31 * result + size;
+            long alphaBits = Double.doubleToLongBits(tukeyAlpha);
+            result = 31 * result + (int) (alphaBits ^ (alphaBits >>> 32));
+            return result;
+        }
+    }
+}
@@ -33,6 +33,9 @@ import org.junit.Test;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -44,6 +47,20 @@ import java.util.Scanner;
  */
 public class AWeightingTest {
 
+    private static double[] loadPinkNoise() throws IOException {
+        Scanner scanAudio = new Scanner(new File("src/test/resources/org/orbisgis/sos/pinknoise_1s.txt"));
+        List<Double> audioSignal = new ArrayList<Double>();
+        while (scanAudio.hasNext()) {
+            audioSignal.add(Double.parseDouble(scanAudio.next()));
+        }
+        scanAudio.close();
+        double[] audioSignalArr = new double[audioSignal.size()];
+        for (int idT = 0; idT < audioSignalArr.length; idT++) {
+            audioSignalArr[idT] = audioSignal.get(idT);
+        }
+        return audioSignalArr;
+    }
+
     /**
      * Unit test on getting A-weighting coefficients
      */
@@ -55,6 +72,40 @@ public class AWeightingTest {
         Assert.assertEquals(numerator.length, denominator.length);
     }
 
+    /**
+     * Coefficients designed at runtime must match the published 44.1 kHz coefficients
+     */
+    @Test
+    public void testDesignedCoefficients() {
+        double[][] coefficients = AWeighting.designCoefficients(44100);
+        Assert.assertArrayEquals(AWeighting.numerator, coefficients[0], 1e-12);
+        Assert.assertArrayEquals(AWeighting.denominator, coefficients[1], 1e-12);
+    }
+
+    /**
+     * A-weighting of tones at 48 kHz against the IEC 61672 nominal weightings
+     */
+    @Test
+    public void testAWeighting48kHz() {
+        final int samplingRate = 48000;
+        double[] frequencies = new double[]{100, 1000, 4000};
+        double[] expectedGains = new double[]{-19.1, 0, 1.0};
+        for(int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+            double[] signal = new double[samplingRate];
+            for(int i = 0; i < signal.length; i++) {
+                signal[i] = Math.sin(2 * Math.PI * frequencies[idFreq] * i / samplingRate);
+            }
+            double[] weighted = AWeighting.aWeightingSignal(signal, samplingRate);
+            // Skip the filter transient
+            int start = samplingRate / 2;
+            double[] weightedEnd = Arrays.copyOfRange(weighted, start, signal.length);
+            double[] signalEnd = Arrays.copyOfRange(signal, start, signal.length);
+            double gain = 20 * Math.log10(AcousticIndicators.computeRms(weightedEnd) /
+                    AcousticIndicators.computeRms(signalEnd));
+            Assert.assertEquals(expectedGains[idFreq], gain, 0.1);
+        }
+    }
+
     /**
      * Unit test on A-weighting a 1-second pink noise
      * @throws IOException
@@ -114,6 +165,76 @@ public class AWeightingTest {
 
 
 
+    /**
+     * The streaming filter fed by chunks must give the same signal than the filtering of the whole signal
+     */
+    @Test
+    public void testStreamingAWeighting() throws IOException {
+        double[] audioSignalArr = loadPinkNoise();
+        double[] expectedAWeightedSignal = AWeighting.aWeightingSignal(audioSignalArr);
+
+        double[] actualAWeightedSignal = Arrays.copyOf(audioSignalArr, audioSignalArr.length);
+        AWeighting aWeighting = new AWeighting();
+        // Odd sized chunks, like the reads of an audio device
+        int chunkSize = 1021;
+        for(int cursor = 0; cursor < actualAWeightedSignal.length; cursor += chunkSize) {
+            aWeighting.filter(actualAWeightedSignal, cursor, Math.min(chunkSize, actualAWeightedSignal.length - cursor));
+        }
+        Assert.assertArrayEquals(expectedAWeightedSignal, actualAWeightedSignal, 0);
+
+        // Reset must restart the filter from a zero state
+        aWeighting.reset();
+        double[] resetAWeightedSignal = Arrays.copyOf(audioSignalArr, audioSignalArr.length);
+        aWeighting.filter(resetAWeightedSignal);
+        Assert.assertArrayEquals(expectedAWeightedSignal, resetAWeightedSignal, 0);
+    }
+
+    /**
+     * The 16 bits samples streaming filter must match the double precision filter
+     */
+    @Test
+    public void testStreamingAWeightingShort() throws IOException {
+        InputStream inputStream = AWeightingTest.class.getResourceAsStream("pinknoise_1s.raw");
+        short[] signal = SOSSignalProcessing.loadShortStream(inputStream, ByteOrder.BIG_ENDIAN);
+        inputStream.close();
+        double[] expected = AWeighting.aWeightingSignal(SOSSignalProcessing.convertShortToDouble(signal));
+        float[] actual = new float[signal.length];
+        AWeighting aWeighting = new AWeighting();
+        int chunkSize = 882;
+        for(int cursor = 0; cursor < signal.length; cursor += chunkSize) {
+            int length = Math.min(chunkSize, signal.length - cursor);
+            aWeighting.filter(signal, cursor, actual, cursor, length);
+        }
+        Assert.assertEquals(AcousticIndicators.computeRms(expected), AcousticIndicators.computeRms(actual), 1e-3);
+        for(int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], actual[i], 0.01);
+        }
+    }
+
+    /**
+     * The streaming filter works in place and must not allocate once created
+     */
+    @Test
+    public void testStreamingAWeightingAllocation() throws IOException {
+        double[] audioSignalArr = loadPinkNoise();
+        final int iterations = 50;
+        double[] buffer = new double[audioSignalArr.length];
+        AWeighting aWeighting = new AWeighting();
+        // Warmup
+        for(int i = 0; i < iterations; i++) {
+            System.arraycopy(audioSignalArr, 0, buffer, 0, buffer.length);
+            aWeighting.filter(buffer);
+        }
+        long allocatedBefore = AllocationCounter.getThreadAllocatedBytes();
+        for(int i = 0; i < iterations; i++) {
+            System.arraycopy(audioSignalArr, 0, buffer, 0, buffer.length);
+            aWeighting.filter(buffer);
+        }
+        long allocated = AllocationCounter.getThreadAllocatedBytes() - allocatedBefore;
+        Assert.assertTrue("Allocated " + allocated + " bytes for " + iterations + " filterings",
+                allocated <= AllocationCounter.MEASUREMENT_TOLERANCE);
+    }
+
 //    @Test
 //    public void testAWeightingAttenuation() throws IOException{
 //
@@ -0,0 +1,119 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the replay and generated audio sources
+ */
+public class AudioSourceTest {
+    private static final String CAPTURE = "capture_1000hz_16bits_44100hz_signed.raw";
+
+    private static short[] readAll(AudioSource source, int expectedLength) throws IOException {
+        short[] read = new short[expectedLength];
+        short[] buffer = new short[source.getBufferSize()];
+        int cursor = 0;
+        int length;
+        source.start();
+        try {
+            while ((length = source.read(buffer, 0, buffer.length)) != -1) {
+                System.arraycopy(buffer, 0, read, cursor, length);
+                cursor += length;
+            }
+        } finally {
+            source.close();
+        }
+        assertEquals(expectedLength, cursor);
+        return read;
+    }
+
+    @Test
+    public void testReplayRaw() throws IOException {
+        InputStream inputStream = AudioSourceTest.class.getResourceAsStream(CAPTURE);
+        short[] signal;
+        try {
+            signal = SOSSignalProcessing.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            inputStream.close();
+        }
+        ReplayAudioSource source = new ReplayAudioSource(new PcmStreamReader(Channels.newChannel(
+                AudioSourceTest.class.getResourceAsStream(CAPTURE)), 44100, ByteOrder.LITTLE_ENDIAN));
+        assertEquals(44100, source.getSampleRate());
+        assertEquals(5512, source.getBufferSize());
+        assertArrayEquals(signal, readAll(source, signal.length));
+        assertEquals(signal.length, source.getReadSamples());
+    }
+
+    @Test
+    public void testReplayRealTime() throws IOException {
+        // A quarter of second of silence
+        byte[] data = new byte[44100 / 4 * 2];
+        ReplayAudioSource source = new ReplayAudioSource(new PcmStreamReader(Channels.newChannel(
+                new ByteArrayInputStream(data)), 44100, ByteOrder.LITTLE_ENDIAN));
+        source.setRealTime(true);
+        assertTrue(source.isRealTime());
+        long begin = System.nanoTime();
+        readAll(source, data.length / 2);
+        assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS.toNanos(240));
+    }
+
+    @Test
+    public void testSine() throws IOException {
+        SyntheticAudioSource source = SyntheticAudioSource.sine(48000, 1000, 2500, 2.5);
+        assertEquals(6000, source.getBufferSize());
+        short[] signal = readAll(source, 120000);
+        assertEquals(2500, AcousticIndicators.computeRms(signal), 0.5);
+        // Continuous over the repetitions of the pattern
+        assertArrayEquals(Arrays.copyOfRange(signal, 0, 100), Arrays.copyOfRange(signal, 48000, 48100));
+        assertEquals(-1, source.read(new short[10], 0, 10));
+    }
+
+    @Test
+    public void testSineLevel() throws IOException {
+        SyntheticAudioSource source = SyntheticAudioSource.sine(48000, 1000, 2500, 1);
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, 48000,
+                FFTSignalProcessing.computeFFTCenterFrequency(16000), AcousticIndicators.TIMEPERIOD_SLOW, false,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        window.pushSample(readAll(source, 48000));
+        assertEquals(90, window.getLastWindowMean().getGlobaldBaValue(), 0.1);
+    }
+}
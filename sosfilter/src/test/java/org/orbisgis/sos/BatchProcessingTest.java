@@ -0,0 +1,158 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the batch reprocessing of recordings
+ */
+public class BatchProcessingTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void writeRaw(File file, short[] signal) throws IOException {
+        ByteBuffer raw = ByteBuffer.allocate(signal.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        raw.asShortBuffer().put(signal);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(raw.array());
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static List<double[]> readCsv(File file) throws IOException {
+        List<double[]> rows = new ArrayList<double[]>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line = reader.readLine();
+            while((line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                double[] row = new double[values.length - 1];
+                for(int i = 0; i < row.length; i++) {
+                    row[i] = Double.parseDouble(values[i + 1]);
+                }
+                rows.add(row);
+            }
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+
+    @Test
+    public void testProcessCsv() throws IOException, InterruptedException {
+        File input = folder.newFolder("input");
+        short[] signal = SOSSignalProcessing.makePinkNoise(SAMPLE_RATE * 3, (short) 2500, 1);
+        writeRaw(new File(input, "a.raw"), signal);
+        writeRaw(new File(input, "b.raw"), Arrays.copyOf(signal, SAMPLE_RATE * 2));
+        // Not a WAV file, reported as an error
+        writeRaw(new File(input, "c.wav"), Arrays.copyOf(signal, SAMPLE_RATE));
+        List<File> files = BatchProcessing.listFiles(Arrays.asList(input.getPath()));
+        assertEquals(3, files.size());
+        double[][] levels = new double[2][];
+        for(BatchProcessing.ENGINE engine : BatchProcessing.ENGINE.values()) {
+            BatchProcessing batchProcessing = new BatchProcessing();
+            batchProcessing.setEngine(engine);
+            batchProcessing.setThreads(2);
+            batchProcessing.setOutputDirectory(folder.newFolder(engine.name()));
+            BatchProcessing.Report report = batchProcessing.process(files);
+            assertEquals(2, report.getProcessedFiles());
+            assertEquals(5, report.getAudioSeconds());
+            assertEquals(1, report.getErrors().size());
+            assertTrue(report.getThroughput() > 0);
+            List<double[]> rows = readCsv(batchProcessing.getOutputFile(files.get(0)));
+            assertEquals(3, rows.size());
+            assertEquals(2, readCsv(batchProcessing.getOutputFile(files.get(1))).size());
+            levels[engine.ordinal()] = rows.get(2);
+        }
+        // Both engines give close band levels of the pink noise (same tolerance than the Tukey window in WindowTest),
+        // except the highest bands where the SOS filters are cut by the Nyquist frequency
+        for(int idFreq = 0; idFreq < levels[0].length - 2; idFreq++) {
+            assertEquals(levels[0][idFreq], levels[1][idFreq], 1.0);
+        }
+    }
+
+    @Test
+    public void testProcessBinary() throws IOException, InterruptedException {
+        File input = folder.newFile("a.raw");
+        short[] signal = SOSSignalProcessing.makePinkNoise(SAMPLE_RATE * 2, (short) 2500, 1);
+        writeRaw(input, signal);
+        BatchProcessing batchProcessing = new BatchProcessing();
+        batchProcessing.setFormat(BatchProcessing.FORMAT.BINARY);
+        batchProcessing.setCalibration(FFTSignalProcessing.DB_FS_REFERENCE, 10);
+        BatchProcessing.Report report = batchProcessing.process(Arrays.asList(input));
+        assertEquals(2, report.getAudioSeconds());
+        SOSSignalProcessing expected = new SOSSignalProcessing(SAMPLE_RATE, ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED);
+        expected.setAweighting(false);
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(batchProcessing.getOutputFile(input)));
+        try {
+            double[] frequencies = ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED;
+            assertEquals(frequencies.length, inputStream.readInt());
+            for(double frequency : frequencies) {
+                assertEquals(frequency, inputStream.readFloat(), 1e-3);
+            }
+            for(int second = 0; second < 2; second++) {
+                double[] secondSample = new double[SAMPLE_RATE];
+                for(int i = 0; i < secondSample.length; i++) {
+                    secondSample[i] = signal[second * SAMPLE_RATE + i];
+                }
+                expected.addSample(secondSample);
+                double[] leq = expected.processSample(1 / Math.pow(10, FFTSignalProcessing.DB_FS_REFERENCE / 20));
+                for(double level : leq) {
+                    assertEquals(level + 10, inputStream.readFloat(), 1e-3);
+                }
+            }
+            assertEquals(-1, inputStream.read());
+        } finally {
+            inputStream.close();
+        }
+    }
+}
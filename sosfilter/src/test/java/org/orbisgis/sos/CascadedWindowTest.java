@@ -0,0 +1,244 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Slow levels derived from the fast windows, compared to the slow window FFT
+ */
+public class CascadedWindowTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CascadedWindowTest.class);
+    private static final int SAMPLE_RATE = 44100;
+    // The 44.1 kHz test signals are processed as 48 kHz signals, so that eight 125 ms windows are exactly 1 s
+    private static final int ALIGNED_SAMPLE_RATE = 48000;
+    private static final double[] FREQUENCIES = FFTSignalProcessing.computeFFTCenterFrequency(16000);
+
+    private static Window makeWindow(FFTSignalProcessing.WINDOW_TYPE windowType, int sampleRate, double windowTime) {
+        Window window = new Window(windowType, sampleRate, FREQUENCIES, windowTime, false,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        window.setFrequencyWeighting(FrequencyWeighting.WEIGHTING.A);
+        return window;
+    }
+
+    /**
+     * @return Slow results derived from the fast windows, then slow results of the slow window
+     */
+    private static List<List<FFTSignalProcessing.ProcessingResult>> process(short[] signal, int sampleRate,
+            FFTSignalProcessing.WINDOW_TYPE fastWindowType, FFTSignalProcessing.WINDOW_TYPE slowWindowType) {
+        Window fast = makeWindow(fastWindowType, sampleRate, AcousticIndicators.TIMEPERIOD_FAST);
+        // The bands of the fast windows cover the same frequencies as the bands of the slow window
+        fast.setPartialBinWeighting(true);
+        Window slow = makeWindow(slowWindowType, sampleRate, AcousticIndicators.TIMEPERIOD_SLOW);
+        final int hopSize = (int) (sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        CascadedWindow cascadedWindow = new CascadedWindow(AcousticIndicators.TIMEPERIOD_FAST,
+                AcousticIndicators.TIMEPERIOD_SLOW);
+        List<FFTSignalProcessing.ProcessingResult> derived = new ArrayList<FFTSignalProcessing.ProcessingResult>();
+        List<FFTSignalProcessing.ProcessingResult> expected = new ArrayList<FFTSignalProcessing.ProcessingResult>();
+        for(int cursor = 0; cursor + hopSize <= signal.length; cursor += hopSize) {
+            short[] samples = Arrays.copyOfRange(signal, cursor, cursor + hopSize);
+            fast.pushSample(samples);
+            FFTSignalProcessing.ProcessingResult slowResult = cascadedWindow.addResult(fast.getLastWindowMean());
+            fast.cleanWindows();
+            if(slowResult != null) {
+                derived.add(slowResult);
+            }
+            // The frames are split at the end of the slow window, as in the processing threads of the application
+            int offset = 0;
+            while(offset < samples.length) {
+                int length = Math.min(slow.getMaximalBufferSize(), samples.length - offset);
+                slow.pushSample(samples, offset, length);
+                offset += length;
+                if(!slow.isCacheEmpty()) {
+                    expected.add(slow.getLastWindowMean());
+                    slow.cleanWindows();
+                }
+            }
+        }
+        List<List<FFTSignalProcessing.ProcessingResult>> results =
+                new ArrayList<List<FFTSignalProcessing.ProcessingResult>>();
+        results.add(derived);
+        results.add(expected);
+        return results;
+    }
+
+    /**
+     * Log the maximal and the mean absolute deviation of each band. At 44.1 kHz the derived windows end 4 samples
+     * earlier each second, the last slow window may not be complete yet.
+     * @return Maximal deviation of the global levels, then maximal deviation of the bands
+     */
+    private static double[] getDeviation(String name, int sampleRate,
+                                         List<List<FFTSignalProcessing.ProcessingResult>> results) {
+        List<FFTSignalProcessing.ProcessingResult> derived = results.get(0);
+        List<FFTSignalProcessing.ProcessingResult> expected = results.get(1);
+        final int derivedWindowSize = 8 * (int) (sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        assertTrue(derived.size() - expected.size() <= 1);
+        double globalDeviation = 0;
+        double[] bandDeviation = new double[FREQUENCIES.length];
+        double[] bandMeanDeviation = new double[FREQUENCIES.length];
+        for(int idResult = 0; idResult < expected.size(); idResult++) {
+            assertEquals((idResult + 1) * sampleRate, expected.get(idResult).getId());
+            assertEquals((idResult + 1) * derivedWindowSize, derived.get(idResult).getId());
+            globalDeviation = Math.max(globalDeviation, Math.abs(expected.get(idResult).getGlobaldBaValue() -
+                    derived.get(idResult).getGlobaldBaValue()));
+            for(int idBand = 0; idBand < FREQUENCIES.length; idBand++) {
+                double deviation = Math.abs(expected.get(idResult).getdBaLevels()[idBand] -
+                        derived.get(idResult).getdBaLevels()[idBand]);
+                bandDeviation[idBand] = Math.max(bandDeviation[idBand], deviation);
+                bandMeanDeviation[idBand] += deviation / expected.size();
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        double maxBandDeviation = 0;
+        for(int idBand = 0; idBand < FREQUENCIES.length; idBand++) {
+            sb.append(String.format(" %.0f Hz: %.2f (%.2f)", FREQUENCIES[idBand], bandDeviation[idBand],
+                    bandMeanDeviation[idBand]));
+            maxBandDeviation = Math.max(maxBandDeviation, bandDeviation[idBand]);
+        }
+        LOGGER.info(String.format("%s global: %.2f dB, bands max (mean):%s", name, globalDeviation, sb.toString()));
+        return new double[]{globalDeviation, maxBandDeviation};
+    }
+
+    private static short[] load(String resource) throws IOException {
+        InputStream inputStream = CascadedWindowTest.class.getResourceAsStream(resource);
+        try {
+            return SOSSignalProcessing.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testAggregation() {
+        CascadedWindow cascadedWindow = new CascadedWindow(2);
+        float[] bands = new float[]{60, 70};
+        assertNull(cascadedWindow.addResult(new FFTSignalProcessing.ProcessingResult(1, null, bands, 80,
+                new float[]{80, 81, 82})));
+        assertEquals(80, cascadedWindow.getMovingLevel(), 1e-6);
+        FFTSignalProcessing.ProcessingResult result = cascadedWindow.addResult(
+                new FFTSignalProcessing.ProcessingResult(2, null, new float[]{50, 70}, 70, new float[]{70, 71, 72}));
+        assertEquals(2, result.getId());
+        assertEquals(10 * Math.log10((1e6 + 1e5) / 2), result.getdBaLevels()[0], 1e-4);
+        assertEquals(70, result.getdBaLevels()[1], 1e-4);
+        assertEquals(10 * Math.log10((1e8 + 1e7) / 2), result.getGlobaldBaValue(), 1e-4);
+        assertEquals(10 * Math.log10((Math.pow(10, 8.2) + Math.pow(10, 7.2)) / 2),
+                result.getWeightedLevel(FrequencyWeighting.WEIGHTING.Z), 1e-4);
+        assertEquals(0, cascadedWindow.getPendingCount());
+        assertNull(cascadedWindow.flush());
+        assertEquals(result.getGlobaldBaValue(), cascadedWindow.getMovingLevel(), 1e-4);
+    }
+
+    /**
+     * The short windows added before the weighted levels are enabled or disabled are not part of the long window
+     */
+    @Test
+    public void testWeightedLevelsChange() {
+        CascadedWindow cascadedWindow = new CascadedWindow(2);
+        float[] bands = new float[]{60, 70};
+        cascadedWindow.addResult(new FFTSignalProcessing.ProcessingResult(1, null, bands, 80));
+        assertNull(cascadedWindow.addResult(new FFTSignalProcessing.ProcessingResult(2, null, bands, 70,
+                new float[]{70, 71, 72})));
+        assertEquals(1, cascadedWindow.getPendingCount());
+        FFTSignalProcessing.ProcessingResult result = cascadedWindow.addResult(
+                new FFTSignalProcessing.ProcessingResult(3, null, bands, 70, new float[]{70, 71, 72}));
+        assertEquals(70, result.getGlobaldBaValue(), 1e-4);
+        assertEquals(72, result.getWeightedLevel(FrequencyWeighting.WEIGHTING.Z), 1e-4);
+        cascadedWindow.addResult(new FFTSignalProcessing.ProcessingResult(4, null, bands, 70,
+                new float[]{70, 71, 72}));
+        assertNull(cascadedWindow.addResult(new FFTSignalProcessing.ProcessingResult(5, null, bands, 80)));
+        result = cascadedWindow.flush();
+        assertEquals(5, result.getId());
+        assertEquals(80, result.getGlobaldBaValue(), 1e-4);
+        assertTrue(Float.isNaN(result.getWeightedLevel(FrequencyWeighting.WEIGHTING.Z)));
+        // Energies of another decibel conversion are not aggregated
+        cascadedWindow.addResult(new FFTSignalProcessing.ProcessingResult(6, null, bands, 80));
+        cascadedWindow.setDecibelConversion(DecibelConversion.FAST);
+        assertEquals(0, cascadedWindow.getPendingCount());
+        assertTrue(Double.isNaN(cascadedWindow.getMovingLevel()));
+    }
+
+    /**
+     * Rectangular fast windows give about the same Z-weighted level as a rectangular slow window. At 44.1 kHz the
+     * derived windows lag 4 more samples behind each second. The A-weighted level differs slightly as the weighting
+     * is applied on the spectrum of each window.
+     */
+    @Test
+    public void testRectangularGlobalLevel() throws IOException {
+        List<List<FFTSignalProcessing.ProcessingResult>> results = process(load("speak_44100Hz_16bitsPCM_10s.raw"),
+                SAMPLE_RATE, FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR);
+        for(int idResult = 0; idResult < results.get(1).size(); idResult++) {
+            assertEquals(results.get(1).get(idResult).getWeightedLevel(FrequencyWeighting.WEIGHTING.Z),
+                    results.get(0).get(idResult).getWeightedLevel(FrequencyWeighting.WEIGHTING.Z), 0.05);
+        }
+        double[] deviation = getDeviation("Rectangular speak", SAMPLE_RATE, results);
+        assertEquals(0, deviation[0], 0.1);
+    }
+
+    /**
+     * Deviation of the derived slow levels from the current slow levels, 125 ms rectangular windows against 1 s
+     * Tukey windows. The windows are aligned, the deviation comes from the window functions and the band edges.
+     */
+    @Test
+    public void testDeviation() throws IOException {
+        double[] speak = getDeviation("Speak", ALIGNED_SAMPLE_RATE, process(load("speak_44100Hz_16bitsPCM_10s.raw"),
+                ALIGNED_SAMPLE_RATE, FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR,
+                FFTSignalProcessing.WINDOW_TYPE.TUKEY));
+        double[] whiteNoise = getDeviation("White noise", ALIGNED_SAMPLE_RATE,
+                process(load("whitenoise_44100Hz_16bitPCM_10s.raw"), ALIGNED_SAMPLE_RATE,
+                        FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, FFTSignalProcessing.WINDOW_TYPE.TUKEY));
+        double[] tone = getDeviation("1 kHz capture", ALIGNED_SAMPLE_RATE,
+                process(load("capture_1000hz_16bits_44100hz_signed.raw"), ALIGNED_SAMPLE_RATE,
+                        FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, FFTSignalProcessing.WINDOW_TYPE.TUKEY));
+        double[] pinkNoise = getDeviation("Pink noise", ALIGNED_SAMPLE_RATE,
+                process(SOSSignalProcessing.makePinkNoise(ALIGNED_SAMPLE_RATE * 10, (short) 2500, 0),
+                        ALIGNED_SAMPLE_RATE, FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR,
+                        FFTSignalProcessing.WINDOW_TYPE.TUKEY));
+        // Speech has bands of low level, where the leakage of the rectangular window dominates
+        assertEquals(0, speak[0], 0.5);
+        assertEquals(0, whiteNoise[0], 0.1);
+        assertEquals(0, whiteNoise[1], 1.5);
+        assertEquals(0, tone[0], 0.01);
+        assertEquals(0, tone[1], 0.01);
+        assertEquals(0, pinkNoise[0], 0.1);
+        assertEquals(0, pinkNoise[1], 1.5);
+    }
+}
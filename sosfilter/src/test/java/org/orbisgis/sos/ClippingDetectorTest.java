@@ -0,0 +1,136 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Clipping detection fused with the software gain
+ */
+public class ClippingDetectorTest {
+
+    private static short[] makeSine(int length, double amplitude, double offset) {
+        short[] signal = new short[length];
+        for(int i = 0; i < length; i++) {
+            signal[i] = (short)(offset + amplitude * Math.sin(2 * Math.PI * 1000 * i / 44100.));
+        }
+        return signal;
+    }
+
+    @Test
+    public void testGain() {
+        short[] signal = makeSine(4410, 20000, 0);
+        short[] expected = new short[signal.length];
+        for(int i = 0; i < signal.length; i++) {
+            expected[i] = (short)(Math.max(Math.min(signal[i] * 2.5f, Short.MAX_VALUE), Short.MIN_VALUE));
+        }
+        ClippingDetector detector = new ClippingDetector();
+        detector.process(signal, 0, signal.length, 2.5f);
+        assertArrayEquals(expected, signal);
+        ClippingDetector.Statistics statistics = detector.getStatistics(0, signal.length);
+        assertEquals(signal.length, statistics.getSamples());
+        assertEquals(ClippingDetector.FLAG_CLIPPED | ClippingDetector.FLAG_FLAT_TOPPED, statistics.getFlags());
+        int fullScale = 0;
+        for(short sample : expected) {
+            if(sample == Short.MAX_VALUE || sample == Short.MIN_VALUE) {
+                fullScale++;
+            }
+        }
+        assertEquals(fullScale, statistics.getFullScaleSamples());
+    }
+
+    @Test
+    public void testCleanSignal() {
+        short[] signal = makeSine(44100, 20000, 0);
+        ClippingDetector detector = new ClippingDetector();
+        detector.process(signal, 0, signal.length, 1);
+        ClippingDetector.Statistics statistics = detector.getStatistics(0, signal.length);
+        assertEquals(0, statistics.getFlags());
+        assertEquals(0, statistics.getFullScaleSamples());
+        assertEquals(0, statistics.getFlatSamples());
+        assertEquals(0, statistics.getDcOffset(), 1);
+    }
+
+    @Test
+    public void testFlatTopAndDcOffset() {
+        short[] signal = makeSine(4410, 30000, 1000);
+        // Saturation of the analog stage below the full scale
+        for(int i = 0; i < signal.length; i++) {
+            signal[i] = (short)Math.max(Math.min(signal[i], 25000), -25000);
+        }
+        ClippingDetector detector = new ClippingDetector();
+        detector.process(signal, 0, signal.length, 1);
+        ClippingDetector.Statistics statistics = detector.getStatistics(0, signal.length);
+        assertEquals(ClippingDetector.FLAG_FLAT_TOPPED | ClippingDetector.FLAG_DC_OFFSET, statistics.getFlags());
+        assertEquals(0, statistics.getFullScaleSamples());
+        assertEquals(true, statistics.getFlatSamples() > 0);
+    }
+
+    @Test
+    public void testRange() {
+        ClippingDetector detector = new ClippingDetector(4, ClippingDetector.DEFAULT_FLAT_THRESHOLD,
+                ClippingDetector.DEFAULT_DC_OFFSET_THRESHOLD, 4);
+        short[] clean = makeSine(1000, 10000, 0);
+        short[] clipped = makeSine(1000, 10000, 0);
+        clipped[10] = Short.MAX_VALUE;
+        detector.process(clean.clone(), 0, clean.length, 1);
+        detector.process(clipped, 0, clipped.length, 1);
+        detector.process(clean.clone(), 0, clean.length, 1);
+        assertEquals(0, detector.getStatistics(0, 1000).getFlags());
+        assertEquals(ClippingDetector.FLAG_CLIPPED, detector.getStatistics(1000, 2000).getFlags());
+        assertEquals(0, detector.getStatistics(2000, 3000).getFlags());
+        assertEquals(1, detector.getStatistics(0, 3000).getFullScaleSamples());
+        // The first buffers leave the history, the range begins at the oldest kept buffer end
+        detector.process(clean.clone(), 0, clean.length, 1);
+        detector.process(clean.clone(), 0, clean.length, 1);
+        assertEquals(3000, detector.getStatistics(0, 5000).getSamples());
+        assertEquals(5000, detector.getProcessedSamples());
+    }
+
+    @Test
+    public void testDroppedSamples() {
+        ClippingDetector detector = new ClippingDetector();
+        short[] clean = makeSine(1000, 10000, 0);
+        detector.process(clean.clone(), 0, clean.length, 1);
+        detector.process(clean.clone(), 0, clean.length, 1);
+        // The samples captured while the processing was late are lost between the second and the third buffer
+        detector.drop(500);
+        detector.process(clean.clone(), 0, clean.length, 1);
+        detector.process(clean.clone(), 0, clean.length, 1);
+        assertEquals(0, detector.getStatistics(0, 2000).getFlags());
+        ClippingDetector.Statistics statistics = detector.getStatistics(1000, 3000);
+        assertEquals(ClippingDetector.FLAG_DROPPED_SAMPLES, statistics.getFlags());
+        assertEquals(500, statistics.getDroppedSamples());
+        assertEquals(0, detector.getStatistics(3000, 4000).getFlags());
+        assertEquals(4000, detector.getProcessedSamples());
+    }
+}
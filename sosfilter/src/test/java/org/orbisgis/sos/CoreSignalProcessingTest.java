@@ -27,11 +27,14 @@
 
 package org.orbisgis.sos;
 
+import org.apache.commons.math3.stat.descriptive.moment.Mean;
+import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.InputStream;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -117,6 +120,53 @@ public class CoreSignalProcessingTest {
         assertEquals(0, classRangesValues.get(3), 0.01);  // [65-75)
         assertEquals(0, classRangesValues.get(4), 0.01);    // > 75
     }
+    /**
+     * Full third octave bands [16Hz-20kHz] of a pink noise using the multirate filter bank
+     */
+    @Test
+    public void testProcessSampleFullBands() {
+        final int rate = 44100;
+        ThirdOctaveBandsFiltering.FREQUENCY_BANDS frequencyBands = ThirdOctaveBandsFiltering.FREQUENCY_BANDS.FULL;
+        SOSSignalProcessing signalProcessing = new SOSSignalProcessing(rate, frequencyBands);
+        signalProcessing.setAweighting(false);
+        short[] pinkNoise = SOSSignalProcessing.makePinkNoise((int)(rate * signalProcessing.getSampleDuration()),
+                (short)2500, 0);
+        signalProcessing.addSample(SOSSignalProcessing.convertShortToDouble(pinkNoise));
+        double[] leq = signalProcessing.processSample(REF_SOUND_PRESSURE);
+        assertEquals(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_FULL.length, leq.length);
+        // Pink noise has the same energy in each third octave band
+        double[] highBands = Arrays.copyOfRange(leq, 8, leq.length);
+        assertEquals(0, new StandardDeviation().evaluate(highBands), 0.5);
+        double mean = new Mean().evaluate(highBands);
+        for(int idFreq = 0; idFreq < 8; idFreq++) {
+            // Less periods of low frequencies in 5 seconds
+            assertEquals(mean, leq[idFreq], 2);
+        }
+    }
+
+    /**
+     * Full third octave bands of tones at a sampling rate without reference filter coefficients
+     */
+    @Test
+    public void testProcessSample48kHz() {
+        final int rate = 48000;
+        final double rms = 2500;
+        SOSSignalProcessing signalProcessing = new SOSSignalProcessing(rate,
+                ThirdOctaveBandsFiltering.FREQUENCY_BANDS.FULL);
+        signalProcessing.setAweighting(false);
+        for(int idFreq : new int[]{0, 8, 18, 31}) {
+            double frequency = ThirdOctaveFrequencies.getLatFreqs(idFreq).ctr;
+            double[] tone = new double[(int)(rate * signalProcessing.getSampleDuration())];
+            for(int i = 0; i < tone.length; i++) {
+                tone[i] = rms * Math.sqrt(2) * Math.sin(2 * Math.PI * frequency * i / rate);
+            }
+            signalProcessing.addSample(tone);
+            double[] leq = signalProcessing.processSample(REF_SOUND_PRESSURE);
+            // Filter transients at the signal ends slightly lower the level of narrow bands
+            assertEquals(AcousticIndicators.todBspl(rms, REF_SOUND_PRESSURE), leq[idFreq], 0.2);
+        }
+    }
+
     public void testProcessAudioOneSecond() throws Exception {
 
         /*
@@ -0,0 +1,107 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Accuracy of the decibel conversions
+ */
+public class DecibelConversionTest {
+    private static final double MAX_ERROR = 0.01;
+
+    @Test
+    public void testToDecibelOctaves() {
+        // Every 1/4096 of each octave of the normal double range
+        double maxError = 0;
+        for(int exponent = -1022; exponent <= 1023; exponent++) {
+            final double octave = Math.scalb(1., exponent);
+            for(int i = 0; i < 1 << 12; i++) {
+                final double energy = octave * (1 + i / 4096.);
+                maxError = Math.max(maxError, Math.abs(DecibelConversion.FAST.toDecibel(energy) -
+                        DecibelConversion.EXACT.toDecibel(energy)));
+            }
+        }
+        assertTrue("Max error " + maxError, maxError < MAX_ERROR);
+        assertEquals(0, maxError, 1e-4);
+    }
+
+    @Test
+    public void testToEnergyLevels() {
+        // Every 1e-4 dB of the measurable range
+        double maxError = 0;
+        for(int i = -3000000; i <= 3000000; i++) {
+            final double level = i * 1e-4;
+            final double energy = DecibelConversion.FAST.toEnergy(level);
+            maxError = Math.max(maxError, Math.abs(DecibelConversion.EXACT.toDecibel(energy) - level));
+        }
+        assertTrue("Max error " + maxError, maxError < MAX_ERROR);
+        assertEquals(0, maxError, 1e-4);
+    }
+
+    @Test
+    public void testToEnergyFloatLevels() {
+        // Every float level from 16 dB to 256 dB, as stored in the processing results
+        double maxError = 0;
+        for(float level = 16; level < 256; level = Math.nextUp(level)) {
+            final double energy = DecibelConversion.FAST.toEnergy(level);
+            maxError = Math.max(maxError, Math.abs(DecibelConversion.EXACT.toDecibel(energy) - level));
+        }
+        assertTrue("Max error " + maxError, maxError < MAX_ERROR);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for(int i = -3000; i <= 3000; i++) {
+            final double level = i * 0.1;
+            assertEquals(level, DecibelConversion.FAST.toDecibel(DecibelConversion.FAST.toEnergy(level)), 1e-4);
+        }
+    }
+
+    @Test
+    public void testSpecialValues() {
+        for(DecibelConversion conversion : DecibelConversion.values()) {
+            assertEquals(Double.NEGATIVE_INFINITY, conversion.toDecibel(0), 0);
+            assertTrue(Double.isNaN(conversion.toDecibel(-1)));
+            assertTrue(Double.isNaN(conversion.toDecibel(Double.NaN)));
+            assertEquals(Double.POSITIVE_INFINITY, conversion.toDecibel(Double.POSITIVE_INFINITY), 0);
+            assertEquals(-3233.06, conversion.toDecibel(Double.MIN_VALUE), 0.01);
+            assertEquals(0, conversion.toEnergy(Double.NEGATIVE_INFINITY), 0);
+            assertEquals(Double.POSITIVE_INFINITY, conversion.toEnergy(Double.POSITIVE_INFINITY), 0);
+            assertTrue(Double.isNaN(conversion.toEnergy(Double.NaN)));
+            assertEquals(1, conversion.toEnergy(0), 1e-6);
+            assertEquals(0, conversion.toDecibel(1), 1e-6);
+            assertEquals(100, conversion.toDecibel(1e10), 1e-5);
+            assertEquals(1e-5, conversion.toEnergy(-50), 1e-10);
+        }
+    }
+}
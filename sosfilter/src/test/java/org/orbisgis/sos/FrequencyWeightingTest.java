@@ -0,0 +1,144 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the weighting of the power spectrum
+ */
+public class FrequencyWeightingTest {
+
+    private static short[] makeSine(int samplingRate, int samples, double frequency, double rms) {
+        short[] signal = new short[samples];
+        for(int i = 0; i < samples; i++) {
+            signal[i] = (short) (Math.sqrt(2) * rms * Math.sin(2 * Math.PI * frequency * i / samplingRate));
+        }
+        return signal;
+    }
+
+    /**
+     * @param nominalFrequency Nominal third octave frequency
+     * @return Exact base 10 center frequency of IEC 61672 tables
+     */
+    private static double getCenterFrequency(double nominalFrequency) {
+        return 1000 * Math.pow(10, Math.round(10 * Math.log10(nominalFrequency / 1000)) / 10.);
+    }
+
+    /**
+     * Gains must match the tabulated weightings of IEC 61672 at the third octave center frequencies
+     */
+    @Test
+    public void testWeightingCurves() {
+        for(int i = 0; i < ThirdOctaveFrequencies.STANDARD_FREQUENCIES.length; i++) {
+            double frequency = ThirdOctaveFrequencies.STANDARD_FREQUENCIES[i];
+            double aWeighting = 10 * Math.log10(FrequencyWeighting.getPowerGain(FrequencyWeighting.WEIGHTING.A,
+                    getCenterFrequency(frequency)));
+            assertEquals(frequency + " Hz", ThirdOctaveFrequencies.A_WEIGHTING[i], aWeighting, 0.1);
+        }
+        // C-weighting table of IEC 61672-1
+        double[] frequencies = new double[]{31.5, 63, 125, 1000, 4000, 8000};
+        double[] cWeighting = new double[]{-3.0, -0.8, -0.2, 0, -0.8, -3.0};
+        for(int i = 0; i < frequencies.length; i++) {
+            assertEquals(frequencies[i] + " Hz", cWeighting[i], 10 * Math.log10(FrequencyWeighting.getPowerGain(
+                    FrequencyWeighting.WEIGHTING.C, getCenterFrequency(frequencies[i]))),
+                    0.1);
+        }
+        assertEquals(1, FrequencyWeighting.getPowerGain(FrequencyWeighting.WEIGHTING.Z, 10), 0);
+        assertSame(FrequencyWeighting.getWeighting(44100, 4096), FrequencyWeighting.getWeighting(44100, 4096));
+    }
+
+    /**
+     * A, C and Z weighted levels of pure tones from a single FFT
+     */
+    @Test
+    public void testWeightedLevels() {
+        final int samplingRate = 44100;
+        FFTSignalProcessing signalProcessing = new FFTSignalProcessing(samplingRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, samplingRate);
+        FFTSignalProcessing.ProcessingResult result = new FFTSignalProcessing.ProcessingResult();
+        // 1 kHz, 2500 RMS is 90 dB with any weighting
+        signalProcessing.addSample(makeSine(samplingRate, samplingRate, 1000, 2500));
+        signalProcessing.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY, FrequencyWeighting.WEIGHTING.A, false,
+                result);
+        assertEquals(90, result.getWeightedLevel(FrequencyWeighting.WEIGHTING.Z), 0.05);
+        assertEquals(90, result.getWeightedLevel(FrequencyWeighting.WEIGHTING.A), 0.05);
+        assertEquals(90, result.getWeightedLevel(FrequencyWeighting.WEIGHTING.C), 0.05);
+        assertEquals(90, result.getGlobaldBaValue(), 0.05);
+        // 125 Hz
+        signalProcessing.addSample(makeSine(samplingRate, samplingRate, 125, 2500));
+        signalProcessing.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY, FrequencyWeighting.WEIGHTING.C, false,
+                result);
+        assertEquals(90, result.getWeightedLevel(FrequencyWeighting.WEIGHTING.Z), 0.05);
+        assertEquals(90 - 16.1, result.getWeightedLevel(FrequencyWeighting.WEIGHTING.A), 0.1);
+        assertEquals(90 - 0.2, result.getWeightedLevel(FrequencyWeighting.WEIGHTING.C), 0.1);
+        assertEquals(result.getWeightedLevel(FrequencyWeighting.WEIGHTING.C), result.getGlobaldBaValue(), 0);
+        assertEquals(90 - 0.2, signalProcessing.computeSpl(FrequencyWeighting.WEIGHTING.C), 0.1);
+    }
+
+    /**
+     * The spectrum weighting must give the same levels as the time domain A-weighting filter, up to the frequency
+     * warping of the bilinear transform of the filter that attenuates the highest bands
+     */
+    @Test
+    public void testTimeDomainEquivalence() {
+        final int samplingRate = 44100;
+        short[] signal = SOSSignalProcessing.makePinkNoise(samplingRate * 4, (short) 2500, 1);
+        Window timeWeighting = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, samplingRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_SLOW, true,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        Window frequencyWeighting = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, samplingRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_SLOW, false,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        frequencyWeighting.setFrequencyWeighting(FrequencyWeighting.WEIGHTING.A);
+        timeWeighting.pushSample(signal);
+        frequencyWeighting.pushSample(signal);
+        FFTSignalProcessing.ProcessingResult expected = timeWeighting.getLastWindowMean();
+        FFTSignalProcessing.ProcessingResult result = frequencyWeighting.getLastWindowMean();
+        assertEquals(Float.NaN, expected.getWeightedLevel(FrequencyWeighting.WEIGHTING.A), 0);
+        assertEquals(expected.getGlobaldBaValue(), result.getGlobaldBaValue(), 0.5);
+        assertEquals(result.getGlobaldBaValue(), result.getWeightedLevel(FrequencyWeighting.WEIGHTING.A), 1e-4);
+        float[] expectedBands = expected.getdBaLevels();
+        float[] bands = result.getdBaLevels();
+        for(int i = 0; i < bands.length; i++) {
+            if(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED[i] > 5000) {
+                // Filter warping
+                assertTrue(bands[i] > expectedBands[i]);
+                continue;
+            }
+            assertEquals(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED[i] + " Hz", expectedBands[i],
+                    bands[i], 0.15);
+        }
+        assertEquals(timeWeighting.computeWindowLeq(), frequencyWeighting.computeWindowLeq(), 0.5);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of the leq statistics histogram
+ */
+public class LeqStatsTest {
+    private static final double[][] CLASS_RANGES = new double[][]{{Double.MIN_VALUE, 45}, {45, 55}, {55, 65},
+            {65, 75}, {75, Double.MAX_VALUE}};
+
+    private static double[] makeLevels(int count, long seed) {
+        Random random = new Random(seed);
+        double[] levels = new double[count];
+        for(int i = 0; i < count; i++) {
+            levels[i] = 55 + random.nextGaussian() * 10;
+        }
+        return levels;
+    }
+
+    /**
+     * Percentile of the raw values, estimated the same way than commons-math Percentile
+     */
+    private static double percentile(double[] values, double p) {
+        double[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        double pos = p * (sorted.length + 1) / 100;
+        if(pos < 1) {
+            return sorted[0];
+        }
+        if(pos >= sorted.length) {
+            return sorted[sorted.length - 1];
+        }
+        int intPos = (int)Math.floor(pos);
+        return sorted[intPos - 1] + (pos - intPos) * (sorted[intPos] - sorted[intPos - 1]);
+    }
+
+    @Test
+    public void testPercentiles() {
+        double[] levels = makeLevels(10000, 1);
+        LeqStats leqStats = new LeqStats();
+        for(double level : levels) {
+            leqStats.addLeq(level);
+        }
+        LeqStats.LeqOccurrences occurrences = leqStats.computeLeqOccurrences(CLASS_RANGES);
+        // Histogram classes truncate the levels, results are within one class step
+        assertEquals(percentile(levels, 90), occurrences.getLa10(), 0.1);
+        assertEquals(percentile(levels, 50), occurrences.getLa50(), 0.1);
+        assertEquals(percentile(levels, 10), occurrences.getLa90(), 0.1);
+        double sum = 0;
+        for(double occurrence : occurrences.getUserDefinedOccurrences()) {
+            sum += occurrence;
+        }
+        assertEquals(1, sum, 1e-9);
+        assertEquals(0.341, occurrences.getUserDefinedOccurrences().get(2), 0.01);
+    }
+
+    @Test
+    public void testMerge() {
+        double[] levels = makeLevels(5000, 2);
+        LeqStats all = new LeqStats();
+        LeqStats first = new LeqStats();
+        LeqStats second = new LeqStats();
+        for(int i = 0; i < levels.length; i++) {
+            all.addLeq(levels[i]);
+            if(i < levels.length / 3) {
+                first.addLeq(levels[i]);
+            } else {
+                second.addLeq(levels[i]);
+            }
+        }
+        LeqStats merged = new LeqStats(first);
+        merged.merge(second);
+        assertEquals(all.getLeqMean(), merged.getLeqMean(), 1e-9);
+        assertEquals(all.getLeqMin(), merged.getLeqMin(), 0);
+        assertEquals(all.getLeqMax(), merged.getLeqMax(), 0);
+        LeqStats.LeqOccurrences expected = all.computeLeqOccurrences(CLASS_RANGES);
+        LeqStats.LeqOccurrences got = merged.computeLeqOccurrences(CLASS_RANGES);
+        assertEquals(expected.getLa10(), got.getLa10(), 1e-9);
+        assertEquals(expected.getLa50(), got.getLa50(), 1e-9);
+        assertEquals(expected.getLa90(), got.getLa90(), 1e-9);
+        assertEquals(expected.getUserDefinedOccurrences(), got.getUserDefinedOccurrences());
+        // Copy is not altered by the merge
+        assertEquals(first.computeLeqOccurrences(null).getLa50(),
+                new LeqStats(first).computeLeqOccurrences(null).getLa50(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeClassStep() {
+        new LeqStats(0.1).merge(new LeqStats(0.01));
+    }
+
+    @Test
+    public void testOutOfRange() {
+        LeqStats leqStats = new LeqStats();
+        leqStats.addLeq(-12);
+        leqStats.addLeq(160);
+        leqStats.addLeq(170);
+        LeqStats.LeqOccurrences occurrences = leqStats.computeLeqOccurrences(null);
+        assertEquals(LeqStats.MIN_LEVEL, occurrences.getLa90(), 0);
+        assertEquals(LeqStats.MAX_LEVEL, occurrences.getLa10(), 0);
+        // Extremes are not clamped
+        assertEquals(-12, leqStats.getLeqMin(), 0);
+        assertEquals(170, leqStats.getLeqMax(), 0);
+    }
+}
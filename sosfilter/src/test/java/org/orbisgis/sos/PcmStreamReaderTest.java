@@ -0,0 +1,166 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of the raw and WAV PCM reader
+ */
+public class PcmStreamReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static short[] loadCapture() throws IOException {
+        InputStream inputStream = PcmStreamReaderTest.class.getResourceAsStream("capture_1000hz_16bits_44100hz_signed.raw");
+        try {
+            return SOSSignalProcessing.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private File writeWav(short[] signal, int samplingRate, int channels) throws IOException {
+        ByteBuffer wav = ByteBuffer.allocate(44 + 12 + signal.length * 2 + 10).order(ByteOrder.LITTLE_ENDIAN);
+        wav.putInt(0x46464952).putInt(wav.capacity() - 8).putInt(0x45564157);
+        // Format chunk
+        wav.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort((short) channels).putInt(samplingRate)
+                .putInt(samplingRate * 2 * channels).putShort((short) (2 * channels)).putShort((short) 16);
+        // Unknown chunk of odd size with its padding byte
+        wav.putInt(0x5453494c).putInt(3).put(new byte[4]);
+        // Data chunk
+        wav.putInt(0x61746164).putInt(signal.length * 2);
+        for(short sample : signal) {
+            wav.putShort(sample);
+        }
+        // Trailing chunk, not samples
+        wav.putInt(0x5453494c).putInt(2).putShort((short) 0x7FFF);
+        File file = folder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(wav.array(), 0, wav.position());
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testReadRawFrames() throws IOException {
+        short[] signal = loadCapture();
+        assertEquals(44100, signal.length);
+        PcmStreamReader reader = new PcmStreamReader(Channels.newChannel(PcmStreamReaderTest.class
+                .getResourceAsStream("capture_1000hz_16bits_44100hz_signed.raw")), 44100, ByteOrder.LITTLE_ENDIAN);
+        short[] frame = new short[4999];
+        short[] read = new short[signal.length];
+        int cursor = 0;
+        int length;
+        while((length = reader.read(frame)) != -1) {
+            System.arraycopy(frame, 0, read, cursor, length);
+            cursor += length;
+        }
+        reader.close();
+        assertEquals(signal.length, cursor);
+        assertArrayEquals(signal, read);
+    }
+
+    @Test
+    public void testReadWav() throws IOException {
+        short[] signal = loadCapture();
+        File wavFile = writeWav(signal, 44100, 1);
+        PcmStreamReader reader = PcmStreamReader.openWav(wavFile);
+        try {
+            assertEquals(44100, reader.getSamplingRate());
+            double[] frame = new double[signal.length + 100];
+            assertEquals(signal.length, reader.read(frame));
+            for(int i = 0; i < signal.length; i++) {
+                assertEquals(signal[i], frame[i], 0);
+            }
+            assertEquals(-1, reader.read(frame));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadWavStereo() throws IOException {
+        PcmStreamReader.openWav(writeWav(new short[100], 44100, 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadNotWav() throws IOException {
+        PcmStreamReader.openWav(Channels.newChannel(PcmStreamReaderTest.class
+                .getResourceAsStream("capture_1000hz_16bits_44100hz_signed.raw")));
+    }
+
+    @Test
+    public void testProcessAudioWav() throws IOException {
+        short[] signal = SOSSignalProcessing.makePinkNoise(44100 * 3 + 500, (short) 2500, 1);
+        File wavFile = writeWav(signal, 44100, 1);
+        SOSSignalProcessing signalProcessing = new SOSSignalProcessing(44100, ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED);
+        final List<double[]> leqs = new ArrayList<double[]>();
+        PcmStreamReader reader = PcmStreamReader.openWav(wavFile);
+        try {
+            signalProcessing.processAudio(reader, 1, new SOSSignalProcessing.LeqListener() {
+                @Override
+                public void onLeq(double[] leq) {
+                    leqs.add(leq);
+                }
+            });
+        } finally {
+            reader.close();
+        }
+        // Incomplete last second is not processed
+        assertEquals(3, leqs.size());
+        SOSSignalProcessing expected = new SOSSignalProcessing(44100, ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED);
+        for(int second = 0; second < 3; second++) {
+            double[] secondSample = new double[44100];
+            for(int i = 0; i < secondSample.length; i++) {
+                secondSample[i] = signal[second * 44100 + i];
+            }
+            expected.addSample(secondSample);
+            assertArrayEquals(expected.processSample(1), leqs.get(second), 1e-9);
+        }
+    }
+}
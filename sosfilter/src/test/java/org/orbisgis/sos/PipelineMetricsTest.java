@@ -0,0 +1,90 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+
+import java.util.SortedMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests of the pipeline metrics registry
+ */
+public class PipelineMetricsTest {
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        for(int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50500, histogram.getMeanNanos(), 1e-6);
+        assertEquals(100000, histogram.getMaxNanos());
+        // 50 us is in the bucket [32768, 65535] ns
+        assertEquals(65535, histogram.getPercentileNanos(0.5));
+        // Bounded by the maximal duration
+        assertEquals(100000, histogram.getPercentileNanos(0.95));
+        assertEquals(1023, histogram.getPercentileNanos(0));
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentileNanos(0));
+    }
+
+    @Test
+    public void testRegistry() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        assertSame(metrics.getHistogram("fast.fft"), metrics.getHistogram("fast.fft"));
+        assertSame(metrics.getCounter("capture.frames"), metrics.getCounter("capture.frames"));
+        metrics.getHistogram("fast.fft").record(2000);
+        metrics.getHistogram("fast.fft").record(4000);
+        metrics.getCounter("capture.frames").addAndGet(3);
+        metrics.registerGauge("fast.queue_depth", new PipelineMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        });
+        assertEquals(Long.valueOf(7), metrics.getGaugeValue("fast.queue_depth"));
+        assertNull(metrics.getGaugeValue("slow.queue_depth"));
+        SortedMap<String, String> snapshot = metrics.snapshot();
+        assertEquals("3", snapshot.get("capture.frames"));
+        assertEquals("7", snapshot.get("fast.queue_depth"));
+        assertEquals("2", snapshot.get("fast.fft.count"));
+        assertEquals("3.0", snapshot.get("fast.fft.mean_us"));
+        // 2 us is in the bucket [1024, 2047] ns
+        assertEquals("2", snapshot.get("fast.fft.p50_us"));
+        assertEquals("4", snapshot.get("fast.fft.max_us"));
+        assertEquals(7, snapshot.size());
+        assertEquals("capture.frames", snapshot.firstKey());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Single producer, multiple consumers ring of sample frames
+ */
+public class SampleRingTest {
+
+    private static void write(SampleRing ring, short value, int length, int consumerMask) {
+        SampleRing.Frame frame = ring.claim();
+        assertNotNull(frame);
+        for(int i = 0; i < length; i++) {
+            frame.getSamples()[i] = value;
+        }
+        ring.publish(length, consumerMask);
+    }
+
+    @Test
+    public void testConsumerMask() {
+        SampleRing ring = new SampleRing(3, 10);
+        assertEquals(4, ring.getCapacity());
+        SampleRing.Consumer first = ring.addConsumer();
+        SampleRing.Consumer second = ring.addConsumer();
+        assertNull(first.poll());
+        write(ring, (short) 1, 10, first.getBit() | second.getBit());
+        write(ring, (short) 2, 5, second.getBit());
+        write(ring, (short) 3, 8, first.getBit());
+        SampleRing.Frame frame = first.poll();
+        assertEquals(1, frame.getSamples()[0]);
+        assertEquals(10, frame.getLength());
+        first.release();
+        frame = first.poll();
+        assertEquals(3, frame.getSamples()[0]);
+        assertEquals(8, frame.getLength());
+        first.release();
+        assertNull(first.poll());
+        assertEquals(0, first.getBacklog());
+        assertEquals(1, second.poll().getSamples()[0]);
+        second.release();
+        assertEquals(2, second.poll().getSamples()[0]);
+        second.release();
+        assertNull(second.poll());
+    }
+
+    @Test
+    public void testOverrun() {
+        SampleRing ring = new SampleRing(2, 4);
+        SampleRing.Consumer slow = ring.addConsumer();
+        write(ring, (short) 1, 4, -1);
+        write(ring, (short) 2, 4, -1);
+        // The slowest consumer keeps the frames
+        assertNull(ring.claim());
+        assertEquals(1, ring.getOverruns());
+        SampleRing.Frame frame = slow.poll();
+        assertEquals(1, frame.getSamples()[0]);
+        assertNull(ring.claim());
+        slow.release();
+        write(ring, (short) 3, 4, -1);
+        // A late consumer receives only the new frames
+        SampleRing.Consumer late = ring.addConsumer();
+        assertNull(late.poll());
+        // A closed consumer does not hold the frames
+        slow.close();
+        write(ring, (short) 4, 4, -1);
+        write(ring, (short) 5, 4, -1);
+        assertEquals(4, late.poll().getSamples()[0]);
+    }
+
+    @Test
+    public void testReuseFrames() {
+        SampleRing ring = new SampleRing(2, 4);
+        SampleRing.Consumer consumer = ring.addConsumer();
+        SampleRing.Frame first = ring.claim();
+        ring.publish(4, -1);
+        consumer.poll();
+        consumer.release();
+        ring.claim();
+        ring.publish(4, -1);
+        consumer.poll();
+        consumer.release();
+        assertSame(first, ring.claim());
+    }
+
+    @Test
+    public void testPosition() {
+        SampleRing ring = new SampleRing(4, 10);
+        SampleRing.Consumer first = ring.addConsumer();
+        SampleRing.Consumer second = ring.addConsumer();
+        write(ring, (short) 1, 10, first.getBit() | second.getBit());
+        write(ring, (short) 2, 5, second.getBit());
+        // The producer skipped 20 samples
+        ring.claim();
+        ring.publish(8, first.getBit(), 35);
+        write(ring, (short) 4, 6, first.getBit());
+        assertEquals(0, first.poll().getPosition());
+        first.release();
+        assertEquals(35, first.poll().getPosition());
+        first.release();
+        assertEquals(43, first.poll().getPosition());
+        first.release();
+        second.poll();
+        second.release();
+        assertEquals(10, second.poll().getPosition());
+        second.release();
+    }
+
+    @Test
+    public void testAllocationFree() {
+        Assume.assumeTrue(AllocationCounter.isSupported());
+        final int frameCount = 10000;
+        SampleRing ring = new SampleRing(8, 64);
+        SampleRing.Consumer consumer = ring.addConsumer();
+        long sum = 0;
+        // Warmup, let the JIT compile the ring methods
+        for(int i = 0; i < frameCount; i++) {
+            ring.claim();
+            ring.publish(64, -1);
+            sum += consumer.poll().getLength();
+            consumer.release();
+        }
+        AllocationCounter.getThreadAllocatedBytes();
+        long allocatedBefore = AllocationCounter.getThreadAllocatedBytes();
+        for(int i = 0; i < frameCount; i++) {
+            ring.claim();
+            ring.publish(64, -1);
+            sum += consumer.poll().getLength();
+            consumer.release();
+        }
+        long allocated = AllocationCounter.getThreadAllocatedBytes() - allocatedBefore;
+        assertTrue("Allocated " + allocated + " bytes for " + frameCount + " frames",
+                allocated <= AllocationCounter.MEASUREMENT_TOLERANCE);
+        assertEquals(2 * frameCount * 64, sum);
+    }
+
+    @Test
+    public void testConcurrentConsumers() throws InterruptedException {
+        final int frameCount = 4000;
+        final SampleRing ring = new SampleRing(16, 32);
+        final AtomicReference<String> error = new AtomicReference<String>();
+        Thread[] threads = new Thread[WaitStrategy.TYPE.values().length];
+        for(int t = 0; t < threads.length; t++) {
+            final SampleRing.Consumer consumer = ring.addConsumer(
+                    WaitStrategy.create(WaitStrategy.TYPE.values()[t]));
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int expected = 0;
+                    int idleCount = 0;
+                    while(expected < frameCount) {
+                        SampleRing.Frame frame = consumer.poll();
+                        if(frame == null) {
+                            try {
+                                consumer.await(idleCount++, TimeUnit.SECONDS.toNanos(1));
+                            } catch (InterruptedException ex) {
+                                break;
+                            }
+                            continue;
+                        }
+                        idleCount = 0;
+                        short[] samples = frame.getSamples();
+                        for(int i = 0; i < frame.getLength(); i++) {
+                            if(samples[i] != (short) expected) {
+                                error.compareAndSet(null, "Frame " + expected + " got " + samples[i]);
+                            }
+                        }
+                        expected++;
+                        consumer.release();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        int written = 0;
+        while(written < frameCount) {
+            SampleRing.Frame frame = ring.claim();
+            if(frame == null) {
+                Thread.yield();
+                continue;
+            }
+            int length = 1 + written % 32;
+            for(int i = 0; i < length; i++) {
+                frame.getSamples()[i] = (short) written;
+            }
+            ring.publish(length, -1);
+            written++;
+        }
+        for(Thread thread : threads) {
+            thread.join(30000);
+        }
+        assertNull(error.get());
+    }
+}
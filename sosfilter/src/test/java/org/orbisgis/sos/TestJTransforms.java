@@ -29,6 +29,7 @@ package org.orbisgis.sos;
 
 import org.jtransforms.fft.FloatFFT_1D;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -39,6 +40,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 public class TestJTransforms {
@@ -109,6 +111,34 @@ public class TestJTransforms {
 
     }
 
+    /**
+     * A-weighting is 0 dB at 1000 Hz, the streaming filter must not alter the level of consecutive windows
+     */
+    @Test
+    public void testProcessingAWeighting() {
+        final int sampleRate = 44100;
+        final int signalFrequency = 1000;
+        double powerRMS = 2500; // 90 dBspl
+        double powerPeak = powerRMS * Math.sqrt(2);
+        short[] signal = new short[sampleRate * 2];
+        for (int s = 0; s < signal.length; s++) {
+            double t = s * (1 / (double) sampleRate);
+            signal[s] = (short)(Math.sin(2 * Math.PI * signalFrequency * t) * (powerPeak));
+        }
+        int windowSize = (int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        FFTSignalProcessing fftSignalProcessing =
+                new FFTSignalProcessing(sampleRate, ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+        for(int cursor = 0; cursor + windowSize <= signal.length; cursor += windowSize) {
+            fftSignalProcessing.addSample(Arrays.copyOfRange(signal, cursor, cursor + windowSize));
+            FFTSignalProcessing.ProcessingResult processingResult =
+                    fftSignalProcessing.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY, true, false);
+            if(cursor > 0) {
+                assertEquals(90, processingResult.getGlobaldBaValue(), 0.1);
+                assertEquals(90, fftSignalProcessing.computeSpl(true), 0.1);
+            }
+        }
+    }
+
     @Test
     public void testProcessingFast() {
         // Make 1000 Hz signal
@@ -206,6 +236,70 @@ public class TestJTransforms {
         assertEquals(signalFrequency, maxValueFreq);
     }
 
+    @Test
+    public void testProcessSampleReuseResult() {
+        final int sampleRate = 44100;
+        final int signalFrequency = 1000;
+        double powerRMS = 2500; // 90 dBspl
+        double powerPeak = powerRMS * Math.sqrt(2);
+        short[] signal = new short[(int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST)];
+        for (int s = 0; s < signal.length; s++) {
+            double t = s * (1 / (double) sampleRate);
+            signal[s] = (short)(Math.sin(2 * Math.PI * signalFrequency * t) * (powerPeak));
+        }
+        FFTSignalProcessing fftSignalProcessing =
+                new FFTSignalProcessing(sampleRate, ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, signal.length);
+        fftSignalProcessing.addSample(signal);
+        for(FFTSignalProcessing.WINDOW_TYPE windowType : FFTSignalProcessing.WINDOW_TYPE.values()) {
+            FFTSignalProcessing.ProcessingResult expected = fftSignalProcessing.processSample(windowType, false, true);
+            FFTSignalProcessing.ProcessingResult result = new FFTSignalProcessing.ProcessingResult();
+            // Process twice in order to check that reused arrays do not keep previous values
+            fftSignalProcessing.processSample(windowType, false, true, result);
+            fftSignalProcessing.processSample(windowType, false, true, result);
+            Assert.assertArrayEquals(expected.getdBaLevels(), result.getdBaLevels(), 0);
+            Assert.assertArrayEquals(expected.getFftResult(), result.getFftResult(), 0);
+            assertEquals(expected.getGlobaldBaValue(), result.getGlobaldBaValue(), 0);
+            assertEquals(expected.getId(), result.getId());
+        }
+    }
+
+    /**
+     * Steady state processing with a caller provided result must not allocate memory.
+     * JTransforms allocates its own work arrays when the FFT size is not factorable by 2, 3 and 5 (Bluestein
+     * algorithm) so a power of two window size is used here.
+     */
+    @Test
+    public void testProcessSampleNoAllocation() {
+        Assume.assumeTrue(AllocationCounter.isSupported());
+        checkProcessSampleNoAllocation(false);
+        checkProcessSampleNoAllocation(true);
+    }
+
+    private void checkProcessSampleNoAllocation(boolean aWeighting) {
+        final int sampleRate = 44100;
+        final int windowSize = 4096;
+        short[] signal = SOSSignalProcessing.makePinkNoise(windowSize, (short)2500, 0);
+        FFTSignalProcessing fftSignalProcessing =
+                new FFTSignalProcessing(sampleRate, ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+        FFTSignalProcessing.ProcessingResult result = new FFTSignalProcessing.ProcessingResult();
+        final int windowCount = 1000;
+        // Warmup, let the JIT compile the processing methods
+        for(int i = 0; i < windowCount * 5; i++) {
+            fftSignalProcessing.addSample(signal);
+            fftSignalProcessing.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY, aWeighting, true, result);
+        }
+        AllocationCounter.getThreadAllocatedBytes();
+        long allocatedBefore = AllocationCounter.getThreadAllocatedBytes();
+        for(int i = 0; i < windowCount; i++) {
+            fftSignalProcessing.addSample(signal);
+            fftSignalProcessing.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY, aWeighting, true, result);
+        }
+        long allocated = AllocationCounter.getThreadAllocatedBytes() - allocatedBefore;
+        // A single object by window would exceed the tolerance
+        assertTrue("Allocated " + allocated + " bytes for " + windowCount + " windows",
+                allocated <= AllocationCounter.MEASUREMENT_TOLERANCE);
+    }
+
     private float[] getMinMax(float[] signal) {
         float localMin = Float.MAX_VALUE;
         float localMax = Float.MIN_VALUE;
@@ -221,4 +315,94 @@ public class TestJTransforms {
         }
         return new float[] {localMin, localMax, (float) maxVal};
     }
+
+    /**
+     * Windows of the same configuration share the band plan. Each bin covered by contiguous bands is summed once, the
+     * energy of the bins on the band edges is kept by the partial bin weights.
+     */
+    @Test
+    public void testBandPlan() {
+        final int sampleRate = 44100;
+        final int windowSize = (int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        double[] frequencies = ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED;
+        FFTBandPlan plan = FFTBandPlan.getPlan(sampleRate, windowSize, frequencies);
+        Assert.assertSame(plan, FFTBandPlan.getPlan(sampleRate, windowSize, Arrays.copyOf(frequencies,
+                frequencies.length)));
+        Assert.assertNotSame(plan, FFTBandPlan.getPlan(sampleRate, windowSize * 2, frequencies));
+        FFTBandPlan partialPlan = FFTBandPlan.getPlan(sampleRate, windowSize, frequencies, true);
+        Assert.assertNotSame(plan, partialPlan);
+        Assert.assertSame(partialPlan, FFTBandPlan.getPlan(sampleRate, windowSize, frequencies, true));
+        Assert.assertFalse(plan.isPartialBins());
+        Assert.assertTrue(partialPlan.isPartialBins());
+        float[] whiteSpectrum = new float[windowSize / 2];
+        Arrays.fill(whiteSpectrum, 1);
+        double sum = 0;
+        double partialSum = 0;
+        for(int idBand = 0; idBand < plan.getBandCount(); idBand++) {
+            sum += plan.getBandEnergy(whiteSpectrum, idBand);
+            partialSum += partialPlan.getBandEnergy(whiteSpectrum, idBand);
+        }
+        final double freqByCell = sampleRate / (double) windowSize;
+        int refFreq = Arrays.binarySearch(frequencies, 1000);
+        double lowerEdge = Math.pow(10, -refFreq / 10.) * 1000 * Math.pow(10, -1. / 20.);
+        // The upper band is clipped at the last bin
+        assertEquals(whiteSpectrum.length - Math.ceil(lowerEdge / freqByCell), sum, 0);
+        double upperEdge = (whiteSpectrum.length - 0.5) * freqByCell;
+        assertEquals((upperEdge - lowerEdge) / freqByCell, partialSum, 1e-6);
+        assertEquals(0, plan.getAWeighting(Arrays.binarySearch(frequencies, 1000)), 0);
+        assertEquals(-19.1, plan.getAWeighting(0), 1e-6);
+    }
+
+    private static FFTSignalProcessing.ProcessingResult pushChunks(FFTSignalProcessing fftSignalProcessing,
+                                                                   short[] signal, int[] chunkSizes) {
+        int cursor = 0;
+        int idChunk = 0;
+        while(cursor < signal.length) {
+            int length = Math.min(signal.length - cursor, chunkSizes[idChunk++ % chunkSizes.length]);
+            fftSignalProcessing.addSample(Arrays.copyOfRange(signal, cursor, cursor + length));
+            cursor += length;
+        }
+        return fftSignalProcessing.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY, true, true);
+    }
+
+    /**
+     * The circular sample buffer must give the same window whatever the size of the pushed samples
+     */
+    @Test
+    public void testCircularSampleBuffer() {
+        final int sampleRate = 44100;
+        final int windowSize = (int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        short[] signal = SOSSignalProcessing.makePinkNoise(windowSize * 3 + 123, (short)2500, 0);
+        FFTSignalProcessing reference = new FFTSignalProcessing(sampleRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+        reference.addSample(signal);
+        Assert.assertArrayEquals(Arrays.copyOfRange(signal, signal.length - windowSize, signal.length),
+                reference.getSampleBuffer());
+        FFTSignalProcessing.ProcessingResult expected = reference.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY,
+                false, true);
+        // Chunks smaller, equal and greater than the window
+        int[][] chunkSizesList = new int[][] {{441}, {1000, 37, 5512, 2047}, {windowSize * 2, 3}};
+        List<FFTSignalProcessing.ProcessingResult> aWeightedResults = new ArrayList<FFTSignalProcessing.ProcessingResult>();
+        for(int[] chunkSizes : chunkSizesList) {
+            FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(sampleRate,
+                    ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+            pushChunks(fftSignalProcessing, signal, chunkSizes);
+            Assert.assertArrayEquals(reference.getSampleBuffer(), fftSignalProcessing.getSampleBuffer());
+            FFTSignalProcessing.ProcessingResult result = fftSignalProcessing.processSample(
+                    FFTSignalProcessing.WINDOW_TYPE.TUKEY, false, true);
+            Assert.assertArrayEquals(expected.getdBaLevels(), result.getdBaLevels(), 1e-4f);
+            Assert.assertArrayEquals(expected.getFftResult(), result.getFftResult(), 1e-4f);
+            // A-weighting streamed from the first window, whatever the chunks
+            FFTSignalProcessing streamed = new FFTSignalProcessing(sampleRate,
+                    ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+            streamed.addSample(Arrays.copyOfRange(signal, 0, windowSize));
+            streamed.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY, true, false);
+            aWeightedResults.add(pushChunks(streamed, Arrays.copyOfRange(signal, windowSize, signal.length),
+                    chunkSizes));
+        }
+        for(FFTSignalProcessing.ProcessingResult result : aWeightedResults) {
+            Assert.assertArrayEquals(aWeightedResults.get(0).getdBaLevels(), result.getdBaLevels(), 1e-4f);
+            assertEquals(aWeightedResults.get(0).getGlobaldBaValue(), result.getGlobaldBaValue(), 1e-4f);
+        }
+    }
 }
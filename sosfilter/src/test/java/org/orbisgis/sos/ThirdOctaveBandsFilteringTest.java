@@ -37,10 +37,14 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -341,6 +345,210 @@ public class ThirdOctaveBandsFilteringTest {
     }
 
 
+    private double[] loadSignal(File file) throws IOException {
+        Scanner scanner = new Scanner(file);
+        List<Double> signal = new ArrayList<Double>();
+        while (scanner.hasNext()) {
+            signal.add(Double.parseDouble(scanner.next()));
+        }
+        scanner.close();
+        double[] signalArr = new double[signal.size()];
+        for (int idT = 0; idT < signalArr.length; idT++) {
+            signalArr[idT] = signal.get(idT);
+        }
+        return signalArr;
+    }
+
+    /**
+     * Unit test on the multirate filter bank: comparison of the equivalent sound pressure levels per third octave
+     * bands with the ones of the reference full rate filtered signals
+     * @throws IOException
+     */
+    @Test
+    public void testDecimatedThirdOctaveBandsFiltering() throws IOException {
+        int samplingRate = 44100;
+        ThirdOctaveBandsFiltering.FREQUENCY_BANDS frequencyBands = ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED;
+        ThirdOctaveBandsFiltering thirdOctaveBandsFiltering = new ThirdOctaveBandsFiltering(samplingRate, frequencyBands);
+        double[] standardFrequencies = ThirdOctaveBandsFiltering.getStandardFrequencies(frequencyBands);
+        int nbFrequencies = standardFrequencies.length;
+
+        // Reference third octave bands filtered signals
+        File filesPath = new File("src/test/resources/org/orbisgis/sos/");
+        String fileNameRoot = "pinknoise_1s_3rd_oct_";
+        double[] expectedLeq = new double[nbFrequencies];
+        for (File file : getFilesListStartingWith(filesPath, fileNameRoot)) {
+            String fileName = file.getName();
+            double ctrFreq = Double.parseDouble(fileName.substring(fileNameRoot.length(), fileName.indexOf("Hz")));
+            int idCtrFreq = getIndexOfElementInArray(standardFrequencies, ctrFreq);
+            expectedLeq[idCtrFreq] = AcousticIndicators.getLeq(loadSignal(file), REF_SOUND_PRESSURE);
+        }
+
+        double[] audioSignalArr = loadSignal(new File("src/test/resources/org/orbisgis/sos/pinknoise_1s.txt"));
+        // Warmup
+        for(int i = 0; i < 5; i++) {
+            thirdOctaveBandsFiltering.thirdOctaveFilteringDecimated(audioSignalArr);
+        }
+        long beginFiltering = System.currentTimeMillis();
+        double[][] actualFilteredSignal = thirdOctaveBandsFiltering.thirdOctaveFilteringDecimated(audioSignalArr);
+        LOGGER.info("Decimated filtering done in {} ms", (System.currentTimeMillis() - beginFiltering));
+
+        double[] actualLeq = new double[nbFrequencies];
+        for (int idf = 0; idf < nbFrequencies; idf++) {
+            actualLeq[idf] = AcousticIndicators.getLeq(actualFilteredSignal[idf], REF_SOUND_PRESSURE);
+        }
+        LOGGER.info("Decimated filtering deviation {}", Arrays.toString(deviation(expectedLeq, actualLeq)));
+        Assert.assertArrayEquals(expectedLeq, actualLeq, 0.1);
+    }
+
+    /**
+     * Concurrent filtering must be bit identical to the sequential filtering
+     */
+    @Test
+    public void testParallelFiltering() {
+        int samplingRate = 44100;
+        short[] pinkNoise = SOSSignalProcessing.makePinkNoise(samplingRate * 5, (short)2500, 0);
+        double[] signal = SOSSignalProcessing.convertShortToDouble(pinkNoise);
+        ThirdOctaveBandsFiltering reducedFiltering = new ThirdOctaveBandsFiltering(samplingRate,
+                ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED);
+        ThirdOctaveBandsFiltering fullFiltering = new ThirdOctaveBandsFiltering(samplingRate,
+                ThirdOctaveBandsFiltering.FREQUENCY_BANDS.FULL);
+        double[][] expectedReduced = reducedFiltering.thirdOctaveFiltering(signal);
+        double[][] expectedFull = fullFiltering.thirdOctaveFilteringDecimated(signal);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            double[][] actualReduced = reducedFiltering.thirdOctaveFiltering(signal, executorService);
+            double[][] actualFull = fullFiltering.thirdOctaveFilteringDecimated(signal, executorService);
+            for (int idf = 0; idf < expectedReduced.length; idf++) {
+                Assert.assertArrayEquals(expectedReduced[idf], actualReduced[idf], 0);
+            }
+            for (int idf = 0; idf < expectedFull.length; idf++) {
+                Assert.assertArrayEquals(expectedFull[idf], actualFull[idf], 0);
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Filtering into caller buffers and energy accumulation must give the same result than the filtered signals
+     */
+    @Test
+    public void testInPlaceFiltering() throws IOException {
+        int samplingRate = 44100;
+        ThirdOctaveBandsFiltering thirdOctaveBandsFiltering = new ThirdOctaveBandsFiltering(samplingRate,
+                ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED);
+        double[] signal = loadSignal(new File("src/test/resources/org/orbisgis/sos/pinknoise_1s.txt"));
+        double[][] expectedFilteredSignal = thirdOctaveBandsFiltering.thirdOctaveFiltering(signal);
+        int nbFrequencies = expectedFilteredSignal.length;
+        double[][] actualFilteredSignal = new double[nbFrequencies][signal.length];
+        thirdOctaveBandsFiltering.thirdOctaveFiltering(signal, actualFilteredSignal);
+        double[] meanSquare = thirdOctaveBandsFiltering.thirdOctaveFilteringMeanSquare(signal);
+        for (int idf = 0; idf < nbFrequencies; idf++) {
+            Assert.assertArrayEquals(expectedFilteredSignal[idf], actualFilteredSignal[idf], 0);
+            assertEquals(AcousticIndicators.computeRms(expectedFilteredSignal[idf]), Math.sqrt(meanSquare[idf]), 0);
+        }
+        double[][] expectedDecimated = thirdOctaveBandsFiltering.thirdOctaveFilteringDecimated(signal);
+        double[] decimatedMeanSquare = thirdOctaveBandsFiltering.thirdOctaveFilteringDecimatedMeanSquare(signal);
+        for (int idf = 0; idf < nbFrequencies; idf++) {
+            assertEquals(AcousticIndicators.computeRms(expectedDecimated[idf]), Math.sqrt(decimatedMeanSquare[idf]), 0);
+        }
+        // Energy accumulation only allocates a single working array, and the band tasks, instead of one filtered
+        // signal by band
+        for(int i = 0; i < 5; i++) {
+            thirdOctaveBandsFiltering.thirdOctaveFiltering(signal);
+            thirdOctaveBandsFiltering.thirdOctaveFilteringMeanSquare(signal);
+        }
+        long allocatedBefore = AllocationCounter.getThreadAllocatedBytes();
+        thirdOctaveBandsFiltering.thirdOctaveFiltering(signal);
+        long filteringAllocated = AllocationCounter.getThreadAllocatedBytes() - allocatedBefore;
+        allocatedBefore = AllocationCounter.getThreadAllocatedBytes();
+        thirdOctaveBandsFiltering.thirdOctaveFilteringMeanSquare(signal);
+        long meanSquareAllocated = AllocationCounter.getThreadAllocatedBytes() - allocatedBefore;
+        assertTrue("Mean square allocated " + meanSquareAllocated + " bytes",
+                meanSquareAllocated < 2 * signal.length * 8);
+        assertTrue("Mean square allocated " + meanSquareAllocated + " bytes, filtering " + filteringAllocated +
+                " bytes", meanSquareAllocated * 10 < filteringAllocated);
+    }
+
+    /**
+     * @param filtersParameters Filter coefficients
+     * @param frequency Frequency divided by the sampling rate
+     * @return Gain of the filter in dB
+     */
+    private static double gain(ThirdOctaveBandsFiltering.FiltersParameters filtersParameters, double frequency) {
+        Complex z = new Complex(Math.cos(2 * Math.PI * frequency), -Math.sin(2 * Math.PI * frequency));
+        Complex z2 = z.times(z);
+        double gain = 1;
+        for(ThirdOctaveBandsFiltering.StageParameters stage : filtersParameters.stages) {
+            double[] c = stage.coefficients;
+            Complex num = new Complex(c[0], 0).plus(z.times(c[1])).plus(z2.times(c[2]));
+            Complex den = new Complex(1, 0).plus(z.times(c[3])).plus(z2.times(c[4]));
+            gain *= num.abs() / den.abs();
+        }
+        return 20 * Math.log10(gain);
+    }
+
+    /**
+     * Filters designed at runtime must match the reference coefficients of the 44.1 kHz file
+     */
+    @Test
+    public void testDesignedFiltersParameters() {
+        List<ThirdOctaveBandsFiltering.FiltersParameters> designed =
+                ThirdOctaveBandsFiltering.designFiltersParameters(44100);
+        List<ThirdOctaveBandsFiltering.FiltersParameters> reference =
+                new ThirdOctaveBandsFiltering(44100, ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED)
+                        .getFilterParameters();
+        assertEquals(reference.size(), designed.size());
+        for(int idf = 0; idf < reference.size(); idf++) {
+            assertEquals(reference.get(idf).frequency, designed.get(idf).frequency, 0);
+            // The upper edge of the last band is clipped under the Nyquist frequency
+            boolean lastBand = idf == reference.size() - 1;
+            for(int idFreq = 1; idFreq < (lastBand ? 900 : 1000); idFreq++) {
+                double frequency = idFreq / 2000.;
+                double referenceGain = gain(reference.get(idf), frequency);
+                if(referenceGain > -60) {
+                    assertEquals(referenceGain, gain(designed.get(idf), frequency), lastBand ? 0.2 : 1e-6);
+                }
+            }
+        }
+    }
+
+    /**
+     * Third octave bands of a tone at a sampling rate without reference coefficients
+     */
+    @Test
+    public void testThirdOctaveFiltering48kHz() {
+        final int samplingRate = 48000;
+        ThirdOctaveBandsFiltering thirdOctaveBandsFiltering = new ThirdOctaveBandsFiltering(samplingRate,
+                ThirdOctaveBandsFiltering.FREQUENCY_BANDS.REDUCED);
+        double[] standardFrequencies = ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED;
+        for(int idFreq : new int[]{0, 10, standardFrequencies.length - 1}) {
+            // Exact center frequency of the band
+            double frequency = ThirdOctaveFrequencies.getLatFreqs(Arrays.binarySearch(
+                    ThirdOctaveFrequencies.STANDARD_FREQUENCIES, standardFrequencies[idFreq])).ctr;
+            double[] signal = new double[samplingRate];
+            for(int i = 0; i < signal.length; i++) {
+                signal[i] = Math.sqrt(2) * Math.sin(2 * Math.PI * frequency * i / samplingRate);
+            }
+            double[] meanSquare = thirdOctaveBandsFiltering.thirdOctaveFilteringMeanSquare(signal);
+            // Unit RMS tone in its band, minus the filter transients at the signal ends, attenuated in the other bands
+            assertEquals(0, 10 * Math.log10(meanSquare[idFreq]), 0.2);
+            for(int idf = 0; idf < meanSquare.length; idf++) {
+                if(Math.abs(idf - idFreq) > 1) {
+                    Assert.assertTrue(10 * Math.log10(meanSquare[idf]) < -20);
+                }
+            }
+        }
+    }
+
+    private static double[] deviation(double[] expected, double[] actual) {
+        double[] deviation = new double[expected.length];
+        for(int i = 0; i < expected.length; i++) {
+            deviation[i] = actual[i] - expected[i];
+        }
+        return deviation;
+    }
+
     @Test
     public void testPinkNoise() {
         short[] pinkNoise = SOSSignalProcessing.makePinkNoise(441000, (short)2500, 0);
@@ -0,0 +1,173 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the exponential time-weighting detector
+ */
+public class TimeWeightingTest {
+    private static final int SAMPLING_RATE = 44100;
+
+    /**
+     * @param samples Signal length
+     * @param begin First sample of the tone
+     * @param end Sample following the tone
+     * @return 4 kHz tone, 2500 RMS (90 dB) from begin to end, silence elsewhere
+     */
+    private static short[] makeToneBurst(int samples, int begin, int end) {
+        short[] signal = new short[samples];
+        for(int i = begin; i < end; i++) {
+            signal[i] = (short) (Math.sqrt(2) * 2500 * Math.sin(2 * Math.PI * 4000 * i / SAMPLING_RATE));
+        }
+        return signal;
+    }
+
+    @Test
+    public void testSteadyLevel() {
+        short[] signal = makeToneBurst(SAMPLING_RATE * 10, 0, SAMPLING_RATE * 10);
+        for(TimeWeighting.TIME_WEIGHTING timeWeighting : TimeWeighting.TIME_WEIGHTING.values()) {
+            TimeWeighting zWeighting = new TimeWeighting(SAMPLING_RATE, timeWeighting, false,
+                    FFTSignalProcessing.DB_FS_REFERENCE);
+            zWeighting.process(signal, 0, signal.length);
+            assertEquals(90, zWeighting.getLevel(), 0.05);
+            TimeWeighting aWeighting = new TimeWeighting(SAMPLING_RATE, timeWeighting, true,
+                    FFTSignalProcessing.DB_FS_REFERENCE);
+            aWeighting.process(signal, 0, signal.length);
+            // A-weighting of 4 kHz is +1 dB
+            assertEquals(91, aWeighting.getLevel(), 0.1);
+        }
+    }
+
+    /**
+     * The minimum level of a steady signal is not the rise of a fresh detector
+     */
+    @Test
+    public void testSteadyMinLevel() {
+        short[] signal = makeToneBurst(SAMPLING_RATE * 10, 0, SAMPLING_RATE * 10);
+        for(TimeWeighting.TIME_WEIGHTING timeWeighting : TimeWeighting.TIME_WEIGHTING.values()) {
+            TimeWeighting detector = new TimeWeighting(SAMPLING_RATE, timeWeighting, false,
+                    FFTSignalProcessing.DB_FS_REFERENCE);
+            int settlingSamples = (int) Math.ceil(TimeWeighting.SETTLING_TIME_CONSTANTS *
+                    timeWeighting.timeConstant * SAMPLING_RATE);
+            detector.process(signal, 0, settlingSamples - 1);
+            assertTrue(Double.isNaN(detector.getMinLevel()));
+            // Buffers of 125 ms
+            int cursor = settlingSamples - 1;
+            while(cursor < signal.length) {
+                int length = Math.min(SAMPLING_RATE / 8, signal.length - cursor);
+                detector.process(signal, cursor, length);
+                cursor += length;
+            }
+            assertEquals(timeWeighting.name(), 90, detector.getMinLevel(), 0.05);
+            assertEquals(timeWeighting.name(), 90, detector.getMaxLevel(), 0.05);
+        }
+    }
+
+    /**
+     * Maximum level of 4 kHz tone bursts relative to the steady level, table 4 of IEC 61672-1
+     */
+    @Test
+    public void testToneBurstResponse() {
+        double[] durations = new double[]{1, 0.5, 0.2, 0.1, 0.05, 0.02, 0.01, 0.005, 0.002};
+        double[] fastResponse = new double[]{0, -0.1, -1.0, -2.6, -4.8, -8.3, -11.1, -14.1, -18.0};
+        double[] slowResponse = new double[]{-2.0, -4.1, -7.4, -10.2, -13.1, -17.0, -20.0, -23.0, -27.0};
+        for(int i = 0; i < durations.length; i++) {
+            int begin = SAMPLING_RATE / 2;
+            short[] signal = makeToneBurst(SAMPLING_RATE * 6, begin,
+                    begin + (int) Math.round(durations[i] * SAMPLING_RATE));
+            TimeWeighting fast = new TimeWeighting(SAMPLING_RATE, TimeWeighting.TIME_WEIGHTING.FAST, false,
+                    FFTSignalProcessing.DB_FS_REFERENCE);
+            fast.process(signal, 0, signal.length);
+            assertEquals(durations[i] + " s", 90 + fastResponse[i], fast.getMaxLevel(), 0.3);
+            TimeWeighting slow = new TimeWeighting(SAMPLING_RATE, TimeWeighting.TIME_WEIGHTING.SLOW, false,
+                    FFTSignalProcessing.DB_FS_REFERENCE);
+            slow.process(signal, 0, signal.length);
+            assertEquals(durations[i] + " s", 90 + slowResponse[i], slow.getMaxLevel(), 0.3);
+        }
+    }
+
+    /**
+     * Decay rate after the end of a steady signal, 34.7 dB/s for Fast and 4.3 dB/s for Slow
+     */
+    @Test
+    public void testDecay() {
+        short[] signal = makeToneBurst(SAMPLING_RATE * 11, 0, SAMPLING_RATE * 10);
+        TimeWeighting fast = new TimeWeighting(SAMPLING_RATE, TimeWeighting.TIME_WEIGHTING.FAST, false,
+                FFTSignalProcessing.DB_FS_REFERENCE);
+        TimeWeighting slow = new TimeWeighting(SAMPLING_RATE, TimeWeighting.TIME_WEIGHTING.SLOW, false,
+                FFTSignalProcessing.DB_FS_REFERENCE);
+        fast.process(signal, 0, SAMPLING_RATE * 10);
+        slow.process(signal, 0, SAMPLING_RATE * 10);
+        fast.resetMinMax();
+        slow.resetMinMax();
+        fast.process(signal, SAMPLING_RATE * 10, SAMPLING_RATE / 2);
+        slow.process(signal, SAMPLING_RATE * 10, SAMPLING_RATE / 2);
+        assertEquals(90 - 34.7 / 2, fast.getLevel(), 0.1);
+        assertEquals(90 - 4.3 / 2, slow.getLevel(), 0.1);
+        assertEquals(fast.getLevel(), fast.getMinLevel(), 1e-9);
+        assertEquals(90, fast.getMaxLevel(), 0.05);
+    }
+
+    /**
+     * Levels must not depend on the buffer sizes
+     */
+    @Test
+    public void testStreaming() {
+        short[] signal = SOSSignalProcessing.makePinkNoise(SAMPLING_RATE * 2, (short) 2500, 0);
+        TimeWeighting reference = new TimeWeighting(SAMPLING_RATE, TimeWeighting.TIME_WEIGHTING.FAST, true,
+                FFTSignalProcessing.DB_FS_REFERENCE);
+        int stepSize = SAMPLING_RATE / 100;
+        double[] levels = reference.getLevels(signal, stepSize);
+        assertEquals(200, levels.length);
+        TimeWeighting streaming = new TimeWeighting(SAMPLING_RATE, TimeWeighting.TIME_WEIGHTING.FAST, true,
+                FFTSignalProcessing.DB_FS_REFERENCE);
+        int cursor = 0;
+        int bufferSize = 1000;
+        double max = Double.NEGATIVE_INFINITY;
+        while(cursor < signal.length) {
+            int length = Math.min(bufferSize, signal.length - cursor);
+            streaming.process(signal, cursor, length);
+            cursor += length;
+            if(cursor % stepSize == 0) {
+                assertEquals(levels[cursor / stepSize - 1], streaming.getLevel(), 1e-9);
+            }
+        }
+        for(double level : levels) {
+            max = Math.max(max, level);
+        }
+        assertTrue(streaming.getMaxLevel() >= max);
+        assertEquals(reference.getMaxLevel(), streaming.getMaxLevel(), 1e-9);
+        assertEquals(reference.getMinLevel(), streaming.getMinLevel(), 1e-9);
+    }
+}
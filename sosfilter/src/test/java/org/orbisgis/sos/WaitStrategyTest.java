@@ -0,0 +1,114 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+
+package org.orbisgis.sos;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Wake up of the consumer threads
+ */
+public class WaitStrategyTest {
+    private static final long LONG_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void testSignalBeforeAwait() throws InterruptedException {
+        for(WaitStrategy.TYPE type : WaitStrategy.TYPE.values()) {
+            if(type == WaitStrategy.TYPE.SLEEP) {
+                continue;
+            }
+            WaitStrategy waitStrategy = WaitStrategy.create(type);
+            waitStrategy.signal();
+            long start = System.nanoTime();
+            // Idle count of a parked wait for the progressive strategy
+            waitStrategy.await(Integer.MAX_VALUE / 2, LONG_TIMEOUT);
+            assertTrue(type.name(), System.nanoTime() - start < LONG_TIMEOUT / 2);
+        }
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        for(WaitStrategy.TYPE type : WaitStrategy.TYPE.values()) {
+            WaitStrategy waitStrategy = WaitStrategy.create(type);
+            long start = System.nanoTime();
+            waitStrategy.await(Integer.MAX_VALUE / 2, TimeUnit.MILLISECONDS.toNanos(2));
+            long elapsed = System.nanoTime() - start;
+            assertTrue(type.name() + " " + elapsed, elapsed >= TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    @Test
+    public void testWakeUp() throws InterruptedException {
+        for(WaitStrategy.TYPE type : WaitStrategy.TYPE.values()) {
+            if(type == WaitStrategy.TYPE.SLEEP) {
+                continue;
+            }
+            final WaitStrategy waitStrategy = WaitStrategy.create(type);
+            final AtomicLong wakeUp = new AtomicLong(0);
+            Thread consumer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        waitStrategy.await(Integer.MAX_VALUE / 2, LONG_TIMEOUT);
+                        wakeUp.set(System.nanoTime());
+                    } catch (InterruptedException ex) {
+                        // Ignore
+                    }
+                }
+            });
+            consumer.start();
+            Thread.sleep(50);
+            long signal = System.nanoTime();
+            waitStrategy.signal();
+            consumer.join(LONG_TIMEOUT / 1000000);
+            assertTrue(type.name(), wakeUp.get() - signal < LONG_TIMEOUT / 2);
+        }
+    }
+
+    @Test
+    public void testInterrupt() {
+        Thread.currentThread().interrupt();
+        int interrupted = 0;
+        for(WaitStrategy.TYPE type : WaitStrategy.TYPE.values()) {
+            try {
+                WaitStrategy.create(type).await(Integer.MAX_VALUE / 2, LONG_TIMEOUT);
+            } catch (InterruptedException ex) {
+                interrupted++;
+            }
+            Thread.currentThread().interrupt();
+        }
+        Thread.interrupted();
+        assertEquals(WaitStrategy.TYPE.values().length, interrupted);
+    }
+}
@@ -89,8 +89,17 @@ public class WindowTest {
     }
 
     private float[] testFFTWindow(short[] signal, int sampleRate, double windowTime, FFTSignalProcessing.WINDOW_TYPE windowType, double dbFsReference) {
+        return testFFTWindow(signal, sampleRate, windowTime, windowType, dbFsReference, false);
+    }
+
+    private float[] testFFTWindow(short[] signal, int sampleRate, double windowTime, FFTSignalProcessing.WINDOW_TYPE windowType, double dbFsReference, boolean powerOfTwoFFT) {
+        return testFFTWindow(signal, sampleRate, windowTime, windowType, dbFsReference, powerOfTwoFFT, false);
+    }
+
+    private float[] testFFTWindow(short[] signal, int sampleRate, double windowTime, FFTSignalProcessing.WINDOW_TYPE windowType, double dbFsReference, boolean powerOfTwoFFT, boolean partialBinWeighting) {
         Window window = new Window(windowType, sampleRate,
-                STANDARD_FREQUENCIES_UNITTEST, windowTime, false, dbFsReference, false);
+                STANDARD_FREQUENCIES_UNITTEST, windowTime, false, dbFsReference, false, 0, powerOfTwoFFT);
+        window.setPartialBinWeighting(partialBinWeighting);
 
         int packetSize = (int) (0.1 * sampleRate);
         int idSampleStart = 0;
@@ -161,6 +170,14 @@ public class WindowTest {
 
         checkSplSpectrum(refSpl, testFFTWindow(signal, sampleRate, 0.125, FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, dbFsReference), 0, 2.64);
 
+        // Zero-padded power of two FFT of the 125 ms window
+        checkSplSpectrum(refSpl, testFFTWindow(signal, sampleRate, 0.125, FFTSignalProcessing.WINDOW_TYPE.TUKEY, dbFsReference, true), 0, 1.14);
+
+        // Partial weights of the wide bins on the band edges of the 125 ms window
+        checkSplSpectrum(refSpl, testFFTWindow(signal, sampleRate, 0.125, FFTSignalProcessing.WINDOW_TYPE.TUKEY, dbFsReference, false, true), 0, 1.06);
+
+        checkSplSpectrum(refSpl, testFFTWindow(signal, sampleRate, 0.125, FFTSignalProcessing.WINDOW_TYPE.TUKEY, dbFsReference, true, true), 0, 1.03);
+
         checkSplSpectrum(refSpl, testFFTWindow(signal, sampleRate, 1., FFTSignalProcessing.WINDOW_TYPE.TUKEY, dbFsReference), 0, 0.36);
 
         checkSplSpectrum(refSpl, testFFTWindow(signal, sampleRate, 1., FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, dbFsReference), 0, 0.774);
@@ -189,4 +206,198 @@ public class WindowTest {
         //        dBError = 0.;
         //        checkSplSpectrum(refSpl, sosBands, 0, dBError);
     }
-}
\ No newline at end of file
+
+    /**
+     * The running energy sums of overlapped windows must match the energetic sum of the window levels
+     */
+    @Test
+    public void testOverlapEnergySum() {
+        final int sampleRate = 44100;
+        final double windowTime = 0.125;
+        final double overlap = 0.75;
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, windowTime, false, FFTSignalProcessing.DB_FS_REFERENCE, true, overlap);
+        int windowSize = (int)(sampleRate * windowTime);
+        FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(sampleRate, STANDARD_FREQUENCIES_UNITTEST,
+                windowSize, FFTSignalProcessing.DB_FS_REFERENCE);
+        short[] signal = SOSSignalProcessing.makePinkNoise(sampleRate * 2, (short)2500, 0);
+        int hopSize = (int)(windowSize * (1 - overlap));
+        int overlappedWindows = (int) Math.round(1 / (1 - overlap));
+        List<FFTSignalProcessing.ProcessingResult> results = new ArrayList<FFTSignalProcessing.ProcessingResult>();
+        for(int cursor = 0; cursor + hopSize <= signal.length; cursor += hopSize) {
+            short[] samples = Arrays.copyOfRange(signal, cursor, cursor + hopSize);
+            window.pushSample(samples);
+            fftSignalProcessing.addSample(samples);
+            results.add(fftSignalProcessing.processSample(FFTSignalProcessing.WINDOW_TYPE.TUKEY, false, true));
+            List<FFTSignalProcessing.ProcessingResult> lastResults =
+                    results.subList(Math.max(0, results.size() - overlappedWindows), results.size());
+            FFTSignalProcessing.ProcessingResult expected = new FFTSignalProcessing.ProcessingResult(1,
+                    lastResults.toArray(new FFTSignalProcessing.ProcessingResult[lastResults.size()]));
+            FFTSignalProcessing.ProcessingResult actual = window.getLastWindowMean();
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getGlobaldBaValue(), actual.getGlobaldBaValue(), 1e-3);
+            assertArrayEquals(expected.getdBaLevels(), actual.getdBaLevels(), 1e-3f);
+            assertArrayEquals(expected.getFftResult(), actual.getFftResult(), 1e-3f);
+        }
+        window.cleanWindows();
+        assertTrue(window.isCacheEmpty());
+        assertNull(window.getLastWindowMean());
+    }
+
+    /**
+     * A tapered window zero-padded up to a power of two FFT size must give the same levels
+     */
+    @Test
+    public void testPowerOfTwoFFT() throws IOException {
+        final int sampleRate = 44100;
+        InputStream inputStream = WindowTest.class.getResourceAsStream("capture_1000hz_16bits_44100hz_signed.raw");
+        short[] signal = SOSSignalProcessing.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+        int windowSize = (int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        assertEquals(8192, FFTSignalProcessing.getPowerOfTwoSize(windowSize));
+        assertEquals(8192, FFTSignalProcessing.getPowerOfTwoSize(8192));
+        int idBand1000 = Arrays.binarySearch(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, 1000);
+        for(FFTSignalProcessing.WINDOW_TYPE windowType : new FFTSignalProcessing.WINDOW_TYPE[] {
+                FFTSignalProcessing.WINDOW_TYPE.HANN, FFTSignalProcessing.WINDOW_TYPE.TUKEY}) {
+            Window window = new Window(windowType, sampleRate, ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
+                    AcousticIndicators.TIMEPERIOD_FAST, false, FFTSignalProcessing.DB_FS_REFERENCE, false);
+            Window powerOfTwoWindow = new Window(windowType, sampleRate,
+                    ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_FAST, false,
+                    FFTSignalProcessing.DB_FS_REFERENCE, false, 0, true);
+            assertTrue(powerOfTwoWindow.isPowerOfTwoFFT());
+            assertEquals(sampleRate / 8192., powerOfTwoWindow.getFFTFreqArrayStep(), 1e-9);
+            for(int cursor = 0; cursor + windowSize <= signal.length; cursor += windowSize) {
+                short[] samples = Arrays.copyOfRange(signal, cursor, cursor + windowSize);
+                window.pushSample(samples);
+                powerOfTwoWindow.pushSample(samples);
+                FFTSignalProcessing.ProcessingResult expected = window.getLastWindowMean();
+                FFTSignalProcessing.ProcessingResult actual = powerOfTwoWindow.getLastWindowMean();
+                window.cleanWindows();
+                powerOfTwoWindow.cleanWindows();
+                assertEquals(expected.getGlobaldBaValue(), actual.getGlobaldBaValue(), 0.01);
+                assertEquals(expected.getdBaLevels()[idBand1000], actual.getdBaLevels()[idBand1000], 0.01);
+            }
+        }
+    }
+
+    /**
+     * Precomputed window coefficients must give the same windowed signal as the direct computation
+     */
+    @Test
+    public void testWindowFunction() {
+        final int size = 5512;
+        final double alpha = 0.2;
+        float[] signal = new float[size];
+        short[] noise = SOSSignalProcessing.makeWhiteNoise(size, (short) 2500, 0);
+        for(int i = 0; i < size; i++) {
+            signal[i] = noise[i];
+        }
+        // Direct computation of the Tukey window
+        float[] expected = Arrays.copyOf(signal, size);
+        double expectedEnergy = 0;
+        int indexBeginFlat = (int)((alpha / 2) * size);
+        for(int i = 0; i < size; i++) {
+            double coefficient = 1;
+            if(i < indexBeginFlat) {
+                coefficient = 0.5 * (1 + Math.cos(2 * Math.PI / alpha * ((i / (float)size) - alpha / 2)));
+            } else if(i >= size - indexBeginFlat) {
+                coefficient = 0.5 * (1 + Math.cos(2 * Math.PI / alpha * ((i / (float)size) - 1 + alpha / 2)));
+            }
+            expected[i] *= coefficient;
+            expectedEnergy += coefficient * coefficient;
+        }
+        WindowFunction tukey = WindowFunction.getWindow(FFTSignalProcessing.WINDOW_TYPE.TUKEY, size, alpha);
+        assertSame(tukey, WindowFunction.getWindow(FFTSignalProcessing.WINDOW_TYPE.TUKEY, size, alpha));
+        assertNotSame(tukey, WindowFunction.getWindow(FFTSignalProcessing.WINDOW_TYPE.TUKEY, size, 0.5));
+        float[] windowed = Arrays.copyOf(signal, size);
+        assertEquals(expectedEnergy, tukey.apply(windowed), 1e-9);
+        assertArrayEquals(expected, windowed, 0);
+        assertEquals(size, WindowFunction.getWindow(FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, size, alpha)
+                .getEnergy(), 0);
+        // AcousticIndicators windows are computed without table
+        float[] directTukey = Arrays.copyOf(signal, size);
+        assertEquals(expectedEnergy, AcousticIndicators.tukeyWindow(directTukey, alpha), 1e-6);
+        assertArrayEquals(expected, directTukey, 0);
+        float[] hann = Arrays.copyOf(signal, size);
+        double hannEnergy = AcousticIndicators.hannWindow(hann);
+        float[] tableHann = Arrays.copyOf(signal, size);
+        assertEquals(hannEnergy, WindowFunction.getWindow(FFTSignalProcessing.WINDOW_TYPE.HANN, size, 0)
+                .apply(tableHann), 1e-6);
+        assertArrayEquals(hann, tableHann, 0);
+        assertEquals(size * 0.375, hannEnergy, 1);
+        assertEquals(signal[size / 2], hann[size / 2], 1e-3);
+        assertEquals(0, hann[size - 1], 1e-3);
+    }
+
+    /**
+     * Changing the window type keeps the sample history, as a new window fed with the same samples
+     */
+    @Test
+    public void testSetWindowType() {
+        final int sampleRate = 44100;
+        short[] signal = SOSSignalProcessing.makePinkNoise(sampleRate, (short) 2500, 0);
+        int hopSize = (int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, sampleRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_FAST, false,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        Window expectedWindow = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_FAST, false,
+                FFTSignalProcessing.DB_FS_REFERENCE, false, 0, true);
+        for(int cursor = 0; cursor + hopSize <= signal.length; cursor += hopSize) {
+            if(cursor == hopSize * 3) {
+                window.setWindowType(FFTSignalProcessing.WINDOW_TYPE.TUKEY, true);
+                assertTrue(window.isCacheEmpty());
+                assertTrue(window.isPowerOfTwoFFT());
+            }
+            short[] samples = Arrays.copyOfRange(signal, cursor, cursor + hopSize);
+            window.pushSample(samples);
+            expectedWindow.pushSample(samples);
+            FFTSignalProcessing.ProcessingResult result = window.getLastWindowMean();
+            FFTSignalProcessing.ProcessingResult expected = expectedWindow.getLastWindowMean();
+            window.cleanWindows();
+            expectedWindow.cleanWindows();
+            if(cursor >= hopSize * 3) {
+                assertEquals(expected.getId(), result.getId());
+                assertArrayEquals(expected.getdBaLevels(), result.getdBaLevels(), 0);
+            }
+        }
+        assertEquals(expectedWindow.getWindowIndex(), window.getWindowIndex());
+    }
+
+    /**
+     * Pushing parts of a shared array, as done from the capture ring, gives the same levels as pushing copies
+     */
+    @Test
+    public void testPushSampleRange() {
+        final int sampleRate = 44100;
+        short[] signal = SOSSignalProcessing.makePinkNoise(sampleRate, (short) 2500, 0);
+        // Frames of 10 ms, not aligned with the windows
+        int frameSize = sampleRate / 100;
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_FAST, true,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        Window expectedWindow = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, AcousticIndicators.TIMEPERIOD_FAST, true,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        int windowCount = 0;
+        for(int frame = 0; frame + frameSize <= signal.length; frame += frameSize) {
+            int cursor = frame;
+            while(cursor < frame + frameSize) {
+                int length = Math.min(window.getMaximalBufferSize(), frame + frameSize - cursor);
+                int lastIndex = window.getWindowIndex();
+                window.pushSample(signal, cursor, length);
+                expectedWindow.pushSample(Arrays.copyOfRange(signal, cursor, cursor + length));
+                cursor += length;
+                if(window.getWindowIndex() != lastIndex) {
+                    FFTSignalProcessing.ProcessingResult result = window.getLastWindowMean();
+                    FFTSignalProcessing.ProcessingResult expected = expectedWindow.getLastWindowMean();
+                    window.cleanWindows();
+                    expectedWindow.cleanWindows();
+                    assertEquals(expected.getId(), result.getId());
+                    assertArrayEquals(expected.getdBaLevels(), result.getdBaLevels(), 0);
+                    windowCount++;
+                }
+            }
+        }
+        assertEquals(8, windowCount);
+    }
+}